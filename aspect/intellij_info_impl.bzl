@@ -50,6 +50,11 @@ RUNTIME_DEPS = [
 
 PREREQUISITE_DEPS = []
 
+# Suffix of the files holding the ide info of several targets in the same package.
+BUNDLE_FILE_SUFFIX = ".intellij-info-bundle.txt"
+
+INFO_GROUP_PREFIX = "intellij-info-"
+
 # Dependency type enum
 COMPILE_TIME = 0
 
@@ -685,7 +690,8 @@ def build_java_package_manifest(ctx, target, source_files, suffix):
         join_with = ":",
         map_each = _package_manifest_file_argument,
     )
-    args.use_param_file("@%s")
+    # persistent workers require the arguments to be passed in a param file
+    args.use_param_file("@%s", use_always = True)
     args.set_param_file_format("multiline")
 
     ctx.actions.run(
@@ -693,6 +699,7 @@ def build_java_package_manifest(ctx, target, source_files, suffix):
         outputs = [output],
         executable = ctx.executable._package_parser,
         arguments = [args],
+        execution_requirements = {"supports-workers": "1"},
         mnemonic = "JavaPackageManifest",
         progress_message = "Parsing java package strings for " + str(target.label),
     )
@@ -714,24 +721,29 @@ def _build_filtered_gen_jar(ctx, target, java_outputs, gen_java_sources, srcjars
 
     filtered_jar = ctx.actions.declare_file(target.label.name + "-filtered-gen.jar")
     filtered_source_jar = ctx.actions.declare_file(target.label.name + "-filtered-gen-src.jar")
-    args = []
+    args = ctx.actions.args()
     for jar in jar_artifacts:
-        args += ["--filter_jar", jar.path]
+        args.add("--filter_jar", jar)
     for jar in source_jar_artifacts:
-        args += ["--filter_source_jar", jar.path]
-    args += ["--filtered_jar", filtered_jar.path]
-    args += ["--filtered_source_jar", filtered_source_jar.path]
+        args.add("--filter_source_jar", jar)
+    args.add("--filtered_jar", filtered_jar)
+    args.add("--filtered_source_jar", filtered_source_jar)
     if gen_java_sources:
         for java_file in gen_java_sources:
-            args += ["--keep_java_file", java_file.path]
+            args.add("--keep_java_file", java_file)
     if srcjars:
         for source_jar in srcjars:
-            args += ["--keep_source_jar", source_jar.path]
+            args.add("--keep_source_jar", source_jar)
+
+    # persistent workers require the arguments to be passed in a param file
+    args.use_param_file("@%s", use_always = True)
+    args.set_param_file_format("multiline")
     ctx.actions.run(
         inputs = jar_artifacts + source_jar_artifacts + gen_java_sources + srcjars,
         outputs = [filtered_jar, filtered_source_jar],
         executable = ctx.executable._jar_filter,
-        arguments = args,
+        arguments = [args],
+        execution_requirements = {"supports-workers": "1"},
         mnemonic = "JarFilter",
         progress_message = "Filtering generated code for " + str(target.label),
     )
@@ -1049,6 +1061,9 @@ def intellij_info_aspect_impl(target, ctx, semantics):
     output_groups = dict()
     for dep in prerequisites:
         for k, v in dep.intellij_info.output_groups.items():
+            # bundles are rolled up separately, see _collect_ide_info_bundles
+            if k.endswith("-bundle"):
+                continue
             if dep in forwarded_deps:
                 # unconditionally roll up deps for these targets
                 output_groups[k] = output_groups[k] + [v] if k in output_groups else [v]
@@ -1082,8 +1097,7 @@ def intellij_info_aspect_impl(target, ctx, semantics):
     if aspect_ids:
         aspect_hash = hash(".".join(aspect_ids))
         file_name = file_name + "-" + str(aspect_hash)
-    file_name = file_name + ".intellij-info.txt"
-    ide_info_file = ctx.actions.declare_file(file_name)
+    ide_info_file = ctx.actions.declare_file(file_name + ".intellij-info.txt")
 
     target_key = make_target_key(target.label, aspect_ids)
     ide_info = dict(
@@ -1098,6 +1112,9 @@ def intellij_info_aspect_impl(target, ctx, semantics):
     # Collect test info
     ide_info["test_info"] = build_test_info(ctx)
 
+    # Snapshot the info output groups, to find those the language-specific handlers add to
+    info_groups_before = {k: v for k, v in output_groups.items() if k.startswith(INFO_GROUP_PREFIX)}
+
     handled = False
     handled = collect_py_info(target, ctx, semantics, ide_info, ide_info_file, output_groups) or handled
     handled = collect_cpp_info(target, ctx, semantics, ide_info, ide_info_file, output_groups) or handled
@@ -1118,11 +1135,30 @@ def intellij_info_aspect_impl(target, ctx, semantics):
 
     # Output the ide information file.
     info = struct_omit_none(**ide_info)
-    ctx.actions.write(ide_info_file, info.to_proto())
+    info_text = info.to_proto()
+    ctx.actions.write(ide_info_file, info_text)
+
+    own_info_groups = [
+        k
+        for k, v in output_groups.items()
+        if (k.startswith(INFO_GROUP_PREFIX) and
+            not k.endswith(("-outputs", "-direct-deps")) and
+            v != info_groups_before.get(k))
+    ]
+    bundles = _collect_ide_info_bundles(
+        target,
+        ctx,
+        prerequisites,
+        own_info_groups,
+        file_name,
+        info_text,
+        output_groups,
+    )
 
     # Return providers.
     return struct_omit_none(
         intellij_info = struct(
+            bundles = bundles,
             export_deps = export_deps,
             kind = ctx.rule.kind,
             output_groups = output_groups,
@@ -1131,6 +1167,87 @@ def intellij_info_aspect_impl(target, ctx, semantics):
         output_groups = output_groups,
     )
 
+def _is_same_package(target, dep):
+    return (dep.label.workspace_name == target.label.workspace_name and
+            dep.label.package == target.label.package)
+
+def _collect_ide_info_bundles(
+        target,
+        ctx,
+        prerequisites,
+        own_info_groups,
+        file_name,
+        info_text,
+        output_groups):
+    """Aggregates the ide info of targets in the same package into bundle files.
+
+    For each info output group, the ide info of a target is passed up to the targets in the same
+    package depending on it, and written to a single bundle file together with theirs. The bundles
+    are added to a '-bundle' variant of each info output group. A target's bundle is only built if
+    it's a top-level target, or if it's depended on from another package, so the IDE reads a few
+    files per package rather than one per target.
+
+    Args:
+      target: the target the aspect is applied to.
+      ctx: the aspect context.
+      prerequisites: the dependencies whose ide info is rolled up.
+      own_info_groups: the info output groups the target's ide info file was added to.
+      file_name: the base name of the target's ide info file.
+      info_text: the target's ide info, as a text proto.
+      output_groups: the output groups dict, which the '-bundle' output groups are added to.
+
+    Returns:
+      A struct holding, for each info output group, the ide info entries not yet written to a
+      requested bundle, the target's bundle file, and the other outputs of the '-bundle' group.
+    """
+    pending = {}
+    outputs = {}
+    for dep in prerequisites:
+        dep_bundles = dep.intellij_info.bundles
+        same_package = _is_same_package(target, dep)
+        for k, v in dep_bundles.outputs.items():
+            outputs[k] = outputs.get(k, []) + [v]
+        for k, bundle_file in dep_bundles.files.items():
+            if same_package and k in own_info_groups:
+                pending[k] = pending.get(k, []) + [dep_bundles.pending[k]]
+            else:
+                outputs[k] = outputs.get(k, []) + [depset([bundle_file])]
+
+    bundle_pending = {}
+    bundle_files = {}
+    bundle_outputs = {}
+    entry = "targets {\n" + info_text + "}\n"
+    for k in own_info_groups:
+        bundle_pending[k] = depset([entry], transitive = pending.get(k, []))
+        bundle_file = ctx.actions.declare_file(
+            file_name + "-" + k[len(INFO_GROUP_PREFIX):] + BUNDLE_FILE_SUFFIX,
+        )
+        args = ctx.actions.args()
+        args.set_param_file_format("multiline")
+        args.add_all(bundle_pending[k])
+        ctx.actions.write(bundle_file, args)
+        bundle_files[k] = bundle_file
+
+        # other files in the info output group (e.g. package manifests) are built alongside
+        own_outputs = [
+            f
+            for f in output_groups.get(k + "-outputs", depset()).to_list()
+            if not f.basename.endswith(".intellij-info.txt")
+        ]
+        bundle_outputs[k] = depset(own_outputs, transitive = outputs.pop(k, []))
+    for k, v in outputs.items():
+        bundle_outputs[k] = depset(transitive = v)
+
+    for k, v in bundle_outputs.items():
+        own_bundle = [bundle_files[k]] if k in bundle_files else []
+        output_groups[k + "-bundle"] = depset(own_bundle, transitive = [v])
+
+    return struct(
+        files = bundle_files,
+        outputs = bundle_outputs,
+        pending = bundle_pending,
+    )
+
 def semantics_extra_deps(base, semantics, name):
     if not hasattr(semantics, name):
         return base
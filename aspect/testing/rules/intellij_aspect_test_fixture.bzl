@@ -6,6 +6,7 @@ load(
 )
 load(
     "//aspect:intellij_info_impl.bzl",
+    "BUNDLE_FILE_SUFFIX",
     "update_set_in_dict",
 )
 
@@ -13,6 +14,7 @@ def _impl(ctx):
     """Implementation method for _intellij_aspect_test_fixture."""
     output_groups = dict()
     inputs = depset()
+    bundle_inputs = depset()
     deps = [dep for dep in ctx.attr.deps if hasattr(dep, "intellij_info")]
     for dep in deps:
         for k, v in dep.intellij_info.output_groups.items():
@@ -21,12 +23,17 @@ def _impl(ctx):
                 [f for f in v.to_list() if f.short_path.endswith(".intellij-info.txt")],
                 transitive = [inputs],
             )
+            bundle_inputs = depset(
+                [f for f in v.to_list() if f.short_path.endswith(BUNDLE_FILE_SUFFIX)],
+                transitive = [bundle_inputs],
+            )
 
     output_name = ctx.attr.output
     output = ctx.actions.declare_file(output_name)
 
     args = [output.path]
     args += [":".join([f.path for f in inputs.to_list()])]
+    args += [":".join([f.path for f in bundle_inputs.to_list()])]
     for k, v in output_groups.items():
         args.append(k)
         args.append(":".join([f.short_path for f in v.to_list()]))
@@ -36,7 +43,7 @@ def _impl(ctx):
 
     ctx.actions.write(output = argfile, content = "\n".join(args))
     ctx.actions.run(
-        inputs = inputs.to_list() + [argfile],
+        inputs = inputs.to_list() + bundle_inputs.to_list() + [argfile],
         outputs = [output],
         executable = ctx.executable._intellij_aspect_test_fixture_builder,
         arguments = ["@" + argfile.path],
@@ -19,9 +19,11 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
+import com.google.devtools.intellij.IntellijAspectTestFixtureOuterClass.IdeInfoBundle;
 import com.google.devtools.intellij.IntellijAspectTestFixtureOuterClass.IntellijAspectTestFixture;
 import com.google.devtools.intellij.IntellijAspectTestFixtureOuterClass.OutputGroup;
 import com.google.devtools.intellij.ideinfo.IntellijIdeInfo.TargetIdeInfo;
+import com.google.devtools.intellij.ideinfo.IntellijIdeInfo.TargetIdeInfoBundle;
 import com.google.protobuf.TextFormat;
 import java.io.File;
 import java.io.FileInputStream;
@@ -46,7 +48,11 @@ public class IntellijAspectTestFixtureBuilder {
       String outputFilePath = realArgs.get(0);
       String[] aspectFiles = realArgs.get(1).split(":");
       builder.addAllTargets(parseTargets(aspectFiles));
-      for (int i = 2; i < realArgs.size(); i += 2) {
+      for (String path : Splitter.on(':').omitEmptyStrings().split(realArgs.get(2))) {
+        builder.addBundles(
+            IdeInfoBundle.newBuilder().setFilePath(path).setContents(readBundle(new File(path))));
+      }
+      for (int i = 3; i < realArgs.size(); i += 2) {
         String name = realArgs.get(i);
         List<String> paths = Splitter.on(':').omitEmptyStrings().splitToList(realArgs.get(i + 1));
 
@@ -72,6 +78,15 @@ public class IntellijAspectTestFixtureBuilder {
     return targets.build();
   }
 
+  private static TargetIdeInfoBundle readBundle(File file) throws IOException {
+    try (InputStream inputStream = new FileInputStream(file)) {
+      TargetIdeInfoBundle.Builder builder = TargetIdeInfoBundle.newBuilder();
+      TextFormat.Parser parser = TextFormat.Parser.newBuilder().build();
+      parser.merge(new InputStreamReader(inputStream, UTF_8), builder);
+      return builder.build();
+    }
+  }
+
   private static TargetIdeInfo readAspectFile(File file) throws IOException {
     try (InputStream inputStream = new FileInputStream(file)) {
       TargetIdeInfo.Builder builder = TargetIdeInfo.newBuilder();
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.aspect.general.bundle;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.devtools.intellij.IntellijAspectTestFixtureOuterClass.IdeInfoBundle;
+import com.google.devtools.intellij.IntellijAspectTestFixtureOuterClass.IntellijAspectTestFixture;
+import com.google.devtools.intellij.ideinfo.IntellijIdeInfo.TargetIdeInfo;
+import com.google.idea.blaze.BazelIntellijAspectTest;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests the ide info bundles written by the aspect. */
+@RunWith(JUnit4.class)
+public class IdeInfoBundleTest extends BazelIntellijAspectTest {
+
+  private static final String BUNDLE_FILE_SUFFIX = ".intellij-info-bundle.txt";
+
+  @Test
+  public void testBundleOutputGroupsContainBundles() throws Exception {
+    IntellijAspectTestFixture testFixture = loadTestFixture(":bundle_fixture");
+
+    assertThat(
+            getOutputGroupFiles(testFixture, "intellij-info-java-bundle").stream()
+                .anyMatch(path -> isBundleFile(path, "foo", "java")))
+        .isTrue();
+    assertThat(
+            getOutputGroupFiles(testFixture, "intellij-info-generic-bundle").stream()
+                .anyMatch(path -> isBundleFile(path, "foo", "generic")))
+        .isTrue();
+  }
+
+  @Test
+  public void testBundleContainsSamePackageDependencies() throws Exception {
+    IntellijAspectTestFixture testFixture = loadTestFixture(":bundle_fixture");
+    IdeInfoBundle bundle = findBundle(testFixture, "foo", "java");
+
+    assertThat(getLabels(bundle)).containsExactly(testRelative(":foo"), testRelative(":bar"));
+    TargetIdeInfo foo = findTarget(bundle, testRelative(":foo"));
+    assertThat(foo.hasJavaIdeInfo()).isTrue();
+    assertThat(foo).isEqualTo(findTarget(testFixture, ":foo"));
+  }
+
+  @Test
+  public void testBundleExcludesOtherPackages() throws Exception {
+    IntellijAspectTestFixture testFixture = loadTestFixture(":bundle_fixture");
+    IdeInfoBundle bundle = findBundle(testFixture, "foo", "java");
+    IdeInfoBundle otherBundle = findBundle(testFixture, "other/baz", "java");
+
+    assertThat(getLabels(bundle)).doesNotContain(testRelative("other:baz"));
+    assertThat(getLabels(otherBundle)).containsExactly(testRelative("other:baz"));
+  }
+
+  /**
+   * Whether the path is the bundle file of the given target and info group. The middle of the
+   * file name is a hash, which varies.
+   */
+  private boolean isBundleFile(String path, String relativeTarget, String group) {
+    return path.contains(testRelative(relativeTarget) + "-")
+        && path.endsWith("-" + group + BUNDLE_FILE_SUFFIX);
+  }
+
+  private IdeInfoBundle findBundle(
+      IntellijAspectTestFixture testFixture, String relativeTarget, String group) {
+    return testFixture.getBundlesList().stream()
+        .filter(bundle -> isBundleFile(bundle.getFilePath(), relativeTarget, group))
+        .findAny()
+        .orElseThrow(() -> new AssertionError("No " + group + " bundle for " + relativeTarget));
+  }
+
+  private static TargetIdeInfo findTarget(IdeInfoBundle bundle, String label) {
+    return bundle.getContents().getTargetsList().stream()
+        .filter(target -> target.getKey().getLabel().equals(label))
+        .findAny()
+        .orElse(null);
+  }
+
+  private static ImmutableList<String> getLabels(IdeInfoBundle bundle) {
+    return bundle.getContents().getTargetsList().stream()
+        .map(target -> target.getKey().getLabel())
+        .collect(toImmutableList());
+  }
+}
@@ -19,22 +19,27 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.io.Files;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystems;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.FileTime;
 import java.util.Enumeration;
 import java.util.HashSet;
@@ -90,7 +95,22 @@ public final class JarFilter {
   private static final Pattern JAVA_PACKAGE_PATTERN =
       Pattern.compile("^\\s*package\\s+([\\w\\.]+);");
 
+  /** Shared between work requests when running as a persistent worker. */
+  private static final ListeningExecutorService executorService =
+      MoreExecutors.listeningDecorator(
+          Executors.newFixedThreadPool(
+              Runtime.getRuntime().availableProcessors(),
+              new ThreadFactoryBuilder().setDaemon(true).build()));
+
   public static void main(String[] args) throws Exception {
+    if (PersistentWorker.isPersistentWorker(args)) {
+      PersistentWorker.run(
+          (request, output) -> {
+            main(parseArgs(PersistentWorker.getArguments(request)));
+            return 0;
+          });
+      System.exit(0);
+    }
     JarFilterOptions options = parseArgs(args);
     try {
       main(options);
@@ -120,6 +140,9 @@ public final class JarFilter {
       archiveFileNamePrefixes.addAll(parseSrcJars(options.keepSourceJars));
     }
 
+    // Each output is filtered on the calling thread, reading its input jars in parallel. Tasks
+    // running on the executor must not block on other tasks submitted to it, as the pool may have
+    // a single thread.
     filterJars(
         options.filterJars,
         options.filteredJar,
@@ -132,6 +155,18 @@ public final class JarFilter {
     }
   }
 
+  private static <T> T getUnchecked(ListenableFuture<T> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      throw new IOException(e.getCause());
+    }
+  }
+
   private static String[] parseParamFileIfUsed(String[] args) {
     if (args.length != 1 || !args[0].startsWith("@")) {
       return args;
@@ -146,10 +181,6 @@ public final class JarFilter {
 
   /** Finds the expected jar archive file name prefixes for the java files. */
   private static List<String> parseJavaFiles(List<Path> javaFiles) throws IOException {
-    ListeningExecutorService executorService =
-        MoreExecutors.listeningDecorator(
-            Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors()));
-
     List<ListenableFuture<String>> futures = Lists.newArrayList();
     for (final Path javaFile : javaFiles) {
       futures.add(
@@ -179,24 +210,32 @@ public final class JarFilter {
   }
 
   private static List<String> parseSrcJars(List<Path> srcJars) throws IOException {
-    List<String> result = Lists.newArrayList();
+    List<ListenableFuture<List<String>>> futures = Lists.newArrayList();
     for (Path srcJar : srcJars) {
-      try (ZipFile sourceZipFile = new ZipFile(srcJar.toFile())) {
-        Enumeration<? extends ZipEntry> entries = sourceZipFile.entries();
-        while (entries.hasMoreElements()) {
-          ZipEntry entry = entries.nextElement();
-          if (!entry.getName().endsWith(".java")) {
-            continue;
-          }
-          try (BufferedReader reader =
-              new BufferedReader(
-                  new InputStreamReader(sourceZipFile.getInputStream(entry), UTF_8))) {
-            String packageString = parseDeclaredPackage(reader);
-            if (packageString != null) {
-              String archiveFileNamePrefix =
-                  getArchiveFileNamePrefix(entry.getName(), packageString);
-              result.add(archiveFileNamePrefix);
-            }
+      futures.add(executorService.submit(() -> parseSrcJar(srcJar)));
+    }
+    List<String> result = Lists.newArrayList();
+    for (List<String> prefixes : getUnchecked(Futures.allAsList(futures))) {
+      result.addAll(prefixes);
+    }
+    return result;
+  }
+
+  private static List<String> parseSrcJar(Path srcJar) throws IOException {
+    List<String> result = Lists.newArrayList();
+    try (ZipFile sourceZipFile = new ZipFile(srcJar.toFile())) {
+      Enumeration<? extends ZipEntry> entries = sourceZipFile.entries();
+      while (entries.hasMoreElements()) {
+        ZipEntry entry = entries.nextElement();
+        if (!entry.getName().endsWith(".java")) {
+          continue;
+        }
+        try (BufferedReader reader =
+            new BufferedReader(new InputStreamReader(sourceZipFile.getInputStream(entry), UTF_8))) {
+          String packageString = parseDeclaredPackage(reader);
+          if (packageString != null) {
+            String archiveFileNamePrefix = getArchiveFileNamePrefix(entry.getName(), packageString);
+            result.add(archiveFileNamePrefix);
           }
         }
       }
@@ -247,6 +286,55 @@ public final class JarFilter {
   /** Filters a list of jars, keeping anything matching the passed predicate. */
   private static void filterJars(List<Path> jars, Path output, Predicate<String> shouldKeep)
       throws IOException {
+    List<List<RawJarWriter.Entry>> keptEntries = readKeptEntries(jars, shouldKeep);
+    if (keptEntries != null && RawJarWriter.canWrite(Iterables.concat(keptEntries))) {
+      try (RawJarWriter writer = new RawJarWriter(output)) {
+        for (int i = 0; i < jars.size(); i++) {
+          try (FileChannel jar = FileChannel.open(jars.get(i), StandardOpenOption.READ)) {
+            for (RawJarWriter.Entry entry : keptEntries.get(i)) {
+              writer.add(jar, entry);
+            }
+          }
+        }
+      }
+    } else {
+      filterJarsWithRecompression(jars, output, shouldKeep);
+    }
+  }
+
+  /**
+   * Reads the central directories of the given jars in parallel, returning the entries to keep
+   * from each jar, or null if any jar can't be copied without recompression.
+   */
+  @Nullable
+  private static List<List<RawJarWriter.Entry>> readKeptEntries(
+      List<Path> jars, Predicate<String> shouldKeep) throws IOException {
+    List<ListenableFuture<List<RawJarWriter.Entry>>> futures = Lists.newArrayList();
+    for (Path jar : jars) {
+      futures.add(executorService.submit(() -> RawJarWriter.readEntries(jar)));
+    }
+    List<List<RawJarWriter.Entry>> allEntries = getUnchecked(Futures.allAsList(futures));
+    List<List<RawJarWriter.Entry>> keptEntries = Lists.newArrayList();
+    Set<String> names = new HashSet<>();
+    for (List<RawJarWriter.Entry> entries : allEntries) {
+      if (entries == null) {
+        return null;
+      }
+      List<RawJarWriter.Entry> kept = Lists.newArrayList();
+      for (RawJarWriter.Entry entry : entries) {
+        // ignore duplicate entries, on the assumption that their contents are identical
+        if (shouldKeep.test(entry.name) && names.add(entry.name)) {
+          kept.add(entry);
+        }
+      }
+      keptEntries.add(kept);
+    }
+    return keptEntries;
+  }
+
+  /** Filters a list of jars, decompressing and recompressing each kept entry. */
+  private static void filterJarsWithRecompression(
+      List<Path> jars, Path output, Predicate<String> shouldKeep) throws IOException {
     final int bufferSize = 8 * 1024;
     byte[] buffer = new byte[bufferSize];
     Set<String> names = new HashSet<>();
@@ -17,17 +17,25 @@ package com.google.idea.blaze.aspect;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 import com.google.common.io.Files;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.devtools.build.lib.worker.WorkerProtocol.WorkRequest;
 import com.google.devtools.intellij.aspect.Common.ArtifactLocation;
 import com.google.devtools.intellij.ideinfo.IntellijIdeInfo.JavaSourcePackage;
 import com.google.devtools.intellij.ideinfo.IntellijIdeInfo.PackageManifest;
+import com.google.repackaged.bazel.protobuf.ByteString;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystems;
 import java.nio.file.Path;
@@ -68,7 +76,15 @@ public class PackageParser {
 
   private static final Pattern PACKAGE_PATTERN = Pattern.compile("^\\s*package\\s+([\\w\\.]+)");
 
+  /** The maximum number of parsed packages cached between work requests in worker mode. */
+  private static final int MAX_CACHED_PACKAGES = 200_000;
+
   public static void main(String[] args) throws Exception {
+    if (PersistentWorker.isPersistentWorker(args)) {
+      PackageParser parser = new PackageParser(PackageParserIoProvider.INSTANCE);
+      PersistentWorker.run(parser::handleWorkRequest);
+      System.exit(0);
+    }
     PackageParserOptions options = parseArgs(args);
     Preconditions.checkNotNull(options.outputManifest);
 
@@ -83,6 +99,18 @@ public class PackageParser {
     System.exit(0);
   }
 
+  private int handleWorkRequest(WorkRequest request, PrintWriter output) throws Exception {
+    PackageParserOptions options = parseArgs(PersistentWorker.getArguments(request));
+    if (options.outputManifest == null) {
+      output.println("Missing --output_manifest");
+      return 1;
+    }
+    Map<ArtifactLocation, String> outputMap =
+        parsePackageStrings(options.sources, PersistentWorker.getInputDigests(request));
+    writeManifest(outputMap, options.outputManifest);
+    return 0;
+  }
+
   private static Path getExecutionPath(ArtifactLocation location) {
     return Paths.get(location.getRootExecutionPathFragment(), location.getRelativePath());
   }
@@ -100,6 +128,18 @@ public class PackageParser {
   }
 
   private final PackageParserIoProvider ioProvider;
+  private final ListeningExecutorService executorService =
+      MoreExecutors.listeningDecorator(
+          Executors.newFixedThreadPool(
+              Runtime.getRuntime().availableProcessors(),
+              new ThreadFactoryBuilder().setDaemon(true).build()));
+
+  /**
+   * Parsed packages keyed by source digest. Only used in worker mode, where the digests are
+   * provided by Bazel, and the parser handles many requests.
+   */
+  private final Cache<ByteString, String> packagesByDigest =
+      CacheBuilder.newBuilder().maximumSize(MAX_CACHED_PACKAGES).build();
 
   @VisibleForTesting
   PackageParser(PackageParserIoProvider ioProvider) {
@@ -129,14 +169,36 @@ public class PackageParser {
   @VisibleForTesting
   Map<ArtifactLocation, String> parsePackageStrings(List<ArtifactLocation> sources)
       throws Exception {
+    return parsePackageStrings(sources, ImmutableMap.of());
+  }
 
-    ListeningExecutorService executorService =
-        MoreExecutors.listeningDecorator(
-            Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors()));
-
+  /**
+   * Parses the package of each source. Sources with a known digest whose package was previously
+   * parsed aren't read again.
+   *
+   * @param digests source digests, keyed by execution root-relative path
+   */
+  @VisibleForTesting
+  Map<ArtifactLocation, String> parsePackageStrings(
+      List<ArtifactLocation> sources, Map<String, ByteString> digests) throws Exception {
     Map<ArtifactLocation, ListenableFuture<String>> futures = Maps.newHashMap();
     for (final ArtifactLocation source : sources) {
-      futures.put(source, executorService.submit(() -> getDeclaredPackageOfJavaFile(source)));
+      ByteString digest = digests.get(getExecutionPath(source).toString());
+      String cached = digest != null ? packagesByDigest.getIfPresent(digest) : null;
+      if (cached != null) {
+        futures.put(source, Futures.immediateFuture(cached));
+        continue;
+      }
+      futures.put(
+          source,
+          executorService.submit(
+              () -> {
+                String packageString = getDeclaredPackageOfJavaFile(source);
+                if (digest != null && packageString != null) {
+                  packagesByDigest.put(digest, packageString);
+                }
+                return packageString;
+              }));
     }
     Map<ArtifactLocation, String> map = Maps.newHashMap();
     for (Entry<ArtifactLocation, ListenableFuture<String>> entry : futures.entrySet()) {
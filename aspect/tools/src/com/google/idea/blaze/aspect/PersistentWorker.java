@@ -0,0 +1,109 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.aspect;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.devtools.build.lib.worker.WorkerProtocol.Input;
+import com.google.devtools.build.lib.worker.WorkerProtocol.WorkRequest;
+import com.google.devtools.build.lib.worker.WorkerProtocol.WorkResponse;
+import com.google.repackaged.bazel.protobuf.ByteString;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Runs an aspect tool as a Bazel persistent worker, keeping the JVM (and any caches) warm between
+ * actions.
+ */
+final class PersistentWorker {
+
+  /** The flag Bazel passes to tools started as persistent workers. */
+  static final String PERSISTENT_WORKER_FLAG = "--persistent_worker";
+
+  /** Handles a single work request. */
+  interface RequestHandler {
+    /**
+     * Runs the tool with the request's arguments, and returns its exit code. Messages for the user
+     * are written to {@code output}.
+     */
+    int handle(WorkRequest request, PrintWriter output) throws Exception;
+  }
+
+  private PersistentWorker() {}
+
+  static boolean isPersistentWorker(String[] args) {
+    return Arrays.asList(args).contains(PERSISTENT_WORKER_FLAG);
+  }
+
+  /** Handles work requests from stdin until it's closed. */
+  static void run(RequestHandler handler) throws IOException {
+    InputStream in = System.in;
+    PrintStream out = System.out;
+    // stdout is reserved for work responses
+    System.setOut(System.err);
+    run(handler, in, out);
+  }
+
+  static void run(RequestHandler handler, InputStream in, OutputStream out) throws IOException {
+    while (true) {
+      WorkRequest request = WorkRequest.parseDelimitedFrom(in);
+      if (request == null) {
+        return;
+      }
+      StringWriter output = new StringWriter();
+      int exitCode;
+      try (PrintWriter writer = new PrintWriter(output)) {
+        try {
+          exitCode = handler.handle(request, writer);
+        } catch (Exception e) {
+          e.printStackTrace(writer);
+          exitCode = 1;
+        }
+      }
+      WorkResponse.newBuilder()
+          .setExitCode(exitCode)
+          .setOutput(output.toString())
+          .setRequestId(request.getRequestId())
+          .build()
+          .writeDelimitedTo(out);
+      out.flush();
+    }
+  }
+
+  static String[] getArguments(WorkRequest request) {
+    return request.getArgumentsList().toArray(new String[0]);
+  }
+
+  /**
+   * Returns the digests of the request's inputs, keyed by execution root-relative path. Inputs
+   * without a digest are omitted.
+   */
+  static ImmutableMap<String, ByteString> getInputDigests(WorkRequest request) {
+    Map<String, ByteString> digests = new HashMap<>();
+    for (Input input : request.getInputsList()) {
+      if (!input.getDigest().isEmpty()) {
+        digests.put(input.getPath(), input.getDigest());
+      }
+    }
+    return ImmutableMap.copyOf(digests);
+  }
+}
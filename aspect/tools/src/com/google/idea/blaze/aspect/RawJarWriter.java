@@ -0,0 +1,316 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.aspect;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableList;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import javax.annotation.Nullable;
+
+/**
+ * Writes a jar by transferring entries from other jars as is, without decompressing and
+ * recompressing them.
+ *
+ * <p>Only plain zip files are supported: {@link #readEntries} returns null for jars using zip64 or
+ * encryption, which must be copied some other way.
+ */
+final class RawJarWriter implements Closeable {
+
+  private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+  private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+  private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+
+  private static final int LOCAL_HEADER_SIZE = 30;
+  private static final int CENTRAL_HEADER_SIZE = 46;
+  private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+  private static final int MAX_COMMENT_SIZE = 0xffff;
+
+  private static final int FLAG_ENCRYPTED = 1;
+  private static final int FLAG_UTF8 = 1 << 11;
+  private static final int VERSION = 20;
+
+  /** A fixed timestamp (1980-01-01 00:00), so that the output is deterministic. */
+  private static final int DOS_TIME = 0;
+
+  private static final int DOS_DATE = (1 << 5) | 1;
+
+  /** The largest number of entries or offset which can be written without zip64 extensions. */
+  private static final long MAX_ENTRIES = 0xffff;
+
+  private static final long MAX_OFFSET = 0xffffffffL;
+
+  /** An entry of a jar, read from its central directory. */
+  static final class Entry {
+    final String name;
+    final byte[] nameBytes;
+    final int flags;
+    final int method;
+    final long crc;
+    final long compressedSize;
+    final long size;
+    final long localHeaderOffset;
+
+    private Entry(
+        String name,
+        byte[] nameBytes,
+        int flags,
+        int method,
+        long crc,
+        long compressedSize,
+        long size,
+        long localHeaderOffset) {
+      this.name = name;
+      this.nameBytes = nameBytes;
+      this.flags = flags;
+      this.method = method;
+      this.crc = crc;
+      this.compressedSize = compressedSize;
+      this.size = size;
+      this.localHeaderOffset = localHeaderOffset;
+    }
+
+    /** An upper bound on the number of bytes this entry takes up in the output jar. */
+    long getOutputSize() {
+      return LOCAL_HEADER_SIZE + CENTRAL_HEADER_SIZE + 2L * nameBytes.length + compressedSize;
+    }
+  }
+
+  /**
+   * Reads the entries of a jar from its central directory. Returns null if the jar can't be
+   * copied as is.
+   */
+  @Nullable
+  static ImmutableList<Entry> readEntries(Path jar) throws IOException {
+    try (FileChannel channel = FileChannel.open(jar, StandardOpenOption.READ)) {
+      ByteBuffer end = findEndOfCentralDirectory(channel);
+      if (end == null) {
+        return null;
+      }
+      int diskNumber = Short.toUnsignedInt(end.getShort(4));
+      int centralDirectoryDisk = Short.toUnsignedInt(end.getShort(6));
+      int entryCount = Short.toUnsignedInt(end.getShort(10));
+      long centralDirectorySize = Integer.toUnsignedLong(end.getInt(12));
+      long centralDirectoryOffset = Integer.toUnsignedLong(end.getInt(16));
+      if (diskNumber != 0
+          || centralDirectoryDisk != 0
+          || entryCount == MAX_ENTRIES
+          || centralDirectoryOffset == MAX_OFFSET
+          || centralDirectorySize > Integer.MAX_VALUE) {
+        // multi-volume or zip64
+        return null;
+      }
+      ByteBuffer directory = read(channel, centralDirectoryOffset, (int) centralDirectorySize);
+      ImmutableList.Builder<Entry> entries = ImmutableList.builder();
+      for (int i = 0; i < entryCount; i++) {
+        if (directory.remaining() < CENTRAL_HEADER_SIZE
+            || directory.getInt(directory.position()) != CENTRAL_HEADER_SIGNATURE) {
+          return null;
+        }
+        int start = directory.position();
+        int flags = Short.toUnsignedInt(directory.getShort(start + 8));
+        int method = Short.toUnsignedInt(directory.getShort(start + 10));
+        long crc = Integer.toUnsignedLong(directory.getInt(start + 16));
+        long compressedSize = Integer.toUnsignedLong(directory.getInt(start + 20));
+        long size = Integer.toUnsignedLong(directory.getInt(start + 24));
+        int nameLength = Short.toUnsignedInt(directory.getShort(start + 28));
+        int extraLength = Short.toUnsignedInt(directory.getShort(start + 30));
+        int commentLength = Short.toUnsignedInt(directory.getShort(start + 32));
+        long localHeaderOffset = Integer.toUnsignedLong(directory.getInt(start + 42));
+        if ((flags & FLAG_ENCRYPTED) != 0
+            || compressedSize == MAX_OFFSET
+            || size == MAX_OFFSET
+            || localHeaderOffset == MAX_OFFSET
+            || directory.remaining() < CENTRAL_HEADER_SIZE + nameLength) {
+          return null;
+        }
+        byte[] nameBytes = new byte[nameLength];
+        directory.position(start + CENTRAL_HEADER_SIZE);
+        directory.get(nameBytes);
+        directory.position(
+            Math.min(directory.limit(), directory.position() + extraLength + commentLength));
+        entries.add(
+            new Entry(
+                new String(nameBytes, UTF_8),
+                nameBytes,
+                flags,
+                method,
+                crc,
+                compressedSize,
+                size,
+                localHeaderOffset));
+      }
+      return entries.build();
+    }
+  }
+
+  @Nullable
+  private static ByteBuffer findEndOfCentralDirectory(FileChannel channel) throws IOException {
+    long fileSize = channel.size();
+    if (fileSize < END_OF_CENTRAL_DIRECTORY_SIZE) {
+      return null;
+    }
+    int length = (int) Math.min(fileSize, END_OF_CENTRAL_DIRECTORY_SIZE + MAX_COMMENT_SIZE);
+    ByteBuffer tail = read(channel, fileSize - length, length);
+    for (int i = length - END_OF_CENTRAL_DIRECTORY_SIZE; i >= 0; i--) {
+      if (tail.getInt(i) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+        tail.position(i);
+        return tail.slice().order(ByteOrder.LITTLE_ENDIAN);
+      }
+    }
+    return null;
+  }
+
+  private static ByteBuffer read(FileChannel channel, long offset, int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, offset + buffer.position()) < 0) {
+        throw new IOException("Unexpected end of file");
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  /** Whether the given entries can be written to a single jar without zip64 extensions. */
+  static boolean canWrite(Iterable<Entry> entries) {
+    long count = 0;
+    long size = END_OF_CENTRAL_DIRECTORY_SIZE;
+    for (Entry entry : entries) {
+      count++;
+      size += entry.getOutputSize();
+    }
+    return count < MAX_ENTRIES && size < MAX_OFFSET;
+  }
+
+  private final FileChannel output;
+  private final ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+  private int entryCount = 0;
+
+  RawJarWriter(Path output) throws IOException {
+    this.output =
+        FileChannel.open(
+            output,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING);
+  }
+
+  /** Copies an entry from the given jar, without decompressing it. */
+  void add(FileChannel jar, Entry entry) throws IOException {
+    ByteBuffer localHeader = read(jar, entry.localHeaderOffset, LOCAL_HEADER_SIZE);
+    if (localHeader.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+      throw new IOException("Invalid local header for entry " + entry.name);
+    }
+    long dataOffset =
+        entry.localHeaderOffset
+            + LOCAL_HEADER_SIZE
+            + Short.toUnsignedInt(localHeader.getShort(26))
+            + Short.toUnsignedInt(localHeader.getShort(28));
+
+    long offset = output.position();
+    // sizes are always known up front, so data descriptors are never needed
+    int flags = entry.flags & FLAG_UTF8;
+    ByteBuffer header =
+        ByteBuffer.allocate(LOCAL_HEADER_SIZE + entry.nameBytes.length)
+            .order(ByteOrder.LITTLE_ENDIAN)
+            .putInt(LOCAL_HEADER_SIGNATURE)
+            .putShort((short) VERSION)
+            .putShort((short) flags)
+            .putShort((short) entry.method)
+            .putShort((short) DOS_TIME)
+            .putShort((short) DOS_DATE)
+            .putInt((int) entry.crc)
+            .putInt((int) entry.compressedSize)
+            .putInt((int) entry.size)
+            .putShort((short) entry.nameBytes.length)
+            .putShort((short) 0)
+            .put(entry.nameBytes);
+    header.flip();
+    writeFully(header);
+
+    long transferred = 0;
+    while (transferred < entry.compressedSize) {
+      long count =
+          jar.transferTo(
+              dataOffset + transferred, entry.compressedSize - transferred, output);
+      if (count <= 0) {
+        throw new IOException("Unexpected end of file reading entry " + entry.name);
+      }
+      transferred += count;
+    }
+
+    ByteBuffer centralHeader =
+        ByteBuffer.allocate(CENTRAL_HEADER_SIZE + entry.nameBytes.length)
+            .order(ByteOrder.LITTLE_ENDIAN)
+            .putInt(CENTRAL_HEADER_SIGNATURE)
+            .putShort((short) VERSION)
+            .putShort((short) VERSION)
+            .putShort((short) flags)
+            .putShort((short) entry.method)
+            .putShort((short) DOS_TIME)
+            .putShort((short) DOS_DATE)
+            .putInt((int) entry.crc)
+            .putInt((int) entry.compressedSize)
+            .putInt((int) entry.size)
+            .putShort((short) entry.nameBytes.length)
+            .putShort((short) 0) // extra field length
+            .putShort((short) 0) // comment length
+            .putShort((short) 0) // disk number
+            .putShort((short) 0) // internal attributes
+            .putInt(0) // external attributes
+            .putInt((int) offset)
+            .put(entry.nameBytes);
+    centralDirectory.write(centralHeader.array(), 0, centralHeader.position());
+    entryCount++;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      long centralDirectoryOffset = output.position();
+      writeFully(ByteBuffer.wrap(centralDirectory.toByteArray()));
+      ByteBuffer end =
+          ByteBuffer.allocate(END_OF_CENTRAL_DIRECTORY_SIZE)
+              .order(ByteOrder.LITTLE_ENDIAN)
+              .putInt(END_OF_CENTRAL_DIRECTORY_SIGNATURE)
+              .putShort((short) 0) // disk number
+              .putShort((short) 0) // central directory disk
+              .putShort((short) entryCount)
+              .putShort((short) entryCount)
+              .putInt(centralDirectory.size())
+              .putInt((int) centralDirectoryOffset)
+              .putShort((short) 0); // comment length
+      end.flip();
+      writeFully(end);
+    } finally {
+      output.close();
+    }
+  }
+
+  private void writeFully(ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      output.write(buffer);
+    }
+  }
+}
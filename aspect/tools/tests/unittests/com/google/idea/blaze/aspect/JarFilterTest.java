@@ -20,12 +20,15 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.Files;
 import com.google.idea.blaze.aspect.JarFilter.JarFilterOptions;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
@@ -172,4 +175,55 @@ public class JarFilterTest {
             "gen/Gen2.java",
             "gen/Gen3.java");
   }
+
+  @Test
+  public void testKeptEntriesCopiedUnchanged() throws Exception {
+    File fooJava = folder.newFile("Foo.java");
+    Files.write("package com.google.foo; class Foo {}".getBytes(UTF_8), fooJava);
+
+    byte[] deflatedContents = new byte[10000];
+    Arrays.fill(deflatedContents, (byte) 'a');
+    byte[] storedContents = "stored".getBytes(UTF_8);
+    File filterJar = folder.newFile("foo.jar");
+    try (ZipOutputStream zo = new ZipOutputStream(new FileOutputStream(filterJar))) {
+      zo.putNextEntry(new ZipEntry("com/google/foo/Foo.class"));
+      zo.write(deflatedContents);
+      zo.closeEntry();
+      ZipEntry stored = new ZipEntry("com/google/foo/Foo$Inner.class");
+      stored.setMethod(ZipEntry.STORED);
+      stored.setSize(storedContents.length);
+      CRC32 crc = new CRC32();
+      crc.update(storedContents);
+      stored.setCrc(crc.getValue());
+      zo.putNextEntry(stored);
+      zo.write(storedContents);
+      zo.closeEntry();
+      zo.putNextEntry(new ZipEntry("com/google/foo/Foo2.class"));
+      zo.closeEntry();
+    }
+    File filteredJar = folder.newFile("foo-filtered-gen.jar");
+
+    String[] args =
+        new String[] {
+          "--keep_java_file",
+          fooJava.getPath(),
+          "--filter_jar",
+          filterJar.getPath(),
+          "--filtered_jar",
+          filteredJar.getPath()
+        };
+    JarFilter.main(JarFilter.parseArgs(args));
+
+    try (ZipFile zipFile = new ZipFile(filteredJar)) {
+      assertThat(zipFile.size()).isEqualTo(2);
+      ZipEntry deflated = zipFile.getEntry("com/google/foo/Foo.class");
+      assertThat(deflated.getMethod()).isEqualTo(ZipEntry.DEFLATED);
+      assertThat(ByteStreams.toByteArray(zipFile.getInputStream(deflated)))
+          .isEqualTo(deflatedContents);
+      ZipEntry stored = zipFile.getEntry("com/google/foo/Foo$Inner.class");
+      assertThat(stored.getMethod()).isEqualTo(ZipEntry.STORED);
+      assertThat(ByteStreams.toByteArray(zipFile.getInputStream(stored)))
+          .isEqualTo(storedContents);
+    }
+  }
 }
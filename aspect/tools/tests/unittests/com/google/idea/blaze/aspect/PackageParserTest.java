@@ -19,10 +19,12 @@ import static com.google.common.truth.Truth.assertThat;
 import static org.junit.Assert.fail;
 
 import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.devtools.intellij.aspect.Common.ArtifactLocation;
+import com.google.repackaged.bazel.protobuf.ByteString;
 import com.google.repackaged.bazel.protobuf.MessageLite;
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
@@ -161,6 +163,25 @@ public class PackageParserTest {
     assertThat(map).containsEntry(DUMMY_SOURCE_ARTIFACT, "com.google");
   }
 
+  @Test
+  public void testPackagesCachedByDigest() throws Exception {
+    String path = "java/com/google/Foo.java";
+    List<ArtifactLocation> sources = ImmutableList.of(DUMMY_SOURCE_ARTIFACT);
+    mockIoProvider.addSource(DUMMY_SOURCE_ARTIFACT, "package com.test;\n public class Foo {}\"");
+    assertThat(parser.parsePackageStrings(sources, ImmutableMap.of(path, digest("1"))))
+        .containsExactly(DUMMY_SOURCE_ARTIFACT, "com.test");
+
+    mockIoProvider.addSource(DUMMY_SOURCE_ARTIFACT, "package com.other;\n public class Foo {}\"");
+    assertThat(parser.parsePackageStrings(sources, ImmutableMap.of(path, digest("1"))))
+        .containsExactly(DUMMY_SOURCE_ARTIFACT, "com.test");
+    assertThat(parser.parsePackageStrings(sources, ImmutableMap.of(path, digest("2"))))
+        .containsExactly(DUMMY_SOURCE_ARTIFACT, "com.other");
+  }
+
+  private static ByteString digest(String value) {
+    return ByteString.copyFromUtf8(value);
+  }
+
   @Test
   public void testMultiRead() throws Exception {
     mockIoProvider
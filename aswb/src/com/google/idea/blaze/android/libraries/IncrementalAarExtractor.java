@@ -0,0 +1,300 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.android.libraries;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.idea.blaze.base.command.buildresult.BlazeArtifact;
+import com.google.idea.blaze.base.command.buildresult.BlazeArtifact.LocalFileArtifact;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import javax.annotation.Nullable;
+
+/**
+ * Unpacks AARs into a directory, only rewriting the entries whose contents changed since the
+ * previous extraction.
+ *
+ * <p>The name, CRC and size of each extracted entry are recorded in a manifest, which is compared
+ * against the AAR's entries on the next extraction. The manifest also identifies AARs with
+ * identical contents, whose unpacked directories can then share files via hard links.
+ */
+final class IncrementalAarExtractor {
+
+  private IncrementalAarExtractor() {}
+
+  /** An extracted AAR entry. */
+  static final class EntryInfo {
+    final String name;
+    final long crc;
+    final long size;
+
+    EntryInfo(String name, long crc, long size) {
+      this.name = name;
+      this.crc = crc;
+      this.size = size;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof EntryInfo)) {
+        return false;
+      }
+      EntryInfo other = (EntryInfo) o;
+      return name.equals(other.name) && crc == other.crc && size == other.size;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(name, crc, size);
+    }
+  }
+
+  /** Whether the entry is unpacked. Jars are skipped; the merged jar is copied separately. */
+  private static boolean shouldExtract(ZipEntry entry) {
+    return !entry.isDirectory() && !entry.getName().endsWith(".jar");
+  }
+
+  /**
+   * Reads the entries to extract from a local AAR, using only its central directory. Returns null
+   * if the AAR isn't a local file or can't be read.
+   */
+  @Nullable
+  static ImmutableMap<String, EntryInfo> readEntries(BlazeArtifact aar) {
+    if (!(aar instanceof LocalFileArtifact)) {
+      return null;
+    }
+    try (ZipFile zipFile = new ZipFile(((LocalFileArtifact) aar).getFile())) {
+      Map<String, EntryInfo> entries = new LinkedHashMap<>();
+      Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+      while (zipEntries.hasMoreElements()) {
+        ZipEntry entry = zipEntries.nextElement();
+        if (shouldExtract(entry)) {
+          entries.put(
+              entry.getName(), new EntryInfo(entry.getName(), entry.getCrc(), entry.getSize()));
+        }
+      }
+      return ImmutableMap.copyOf(entries);
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Extracts the AAR into {@code aarDir}, skipping entries which are unchanged from {@code
+   * previous} and deleting those no longer present. Returns the extracted entries.
+   */
+  static ImmutableMap<String, EntryInfo> extract(
+      BlazeArtifact aar, File aarDir, Map<String, EntryInfo> previous) throws IOException {
+    Map<String, EntryInfo> extracted = new LinkedHashMap<>();
+    if (aar instanceof LocalFileArtifact) {
+      // read the CRCs from the central directory, and only decompress the changed entries
+      try (ZipFile zipFile = new ZipFile(((LocalFileArtifact) aar).getFile())) {
+        Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+        while (zipEntries.hasMoreElements()) {
+          ZipEntry entry = zipEntries.nextElement();
+          if (!shouldExtract(entry)) {
+            continue;
+          }
+          EntryInfo info = new EntryInfo(entry.getName(), entry.getCrc(), entry.getSize());
+          Path target = resolveEntry(aarDir, entry.getName());
+          if (!isUpToDate(info, target, previous)) {
+            try (InputStream in = zipFile.getInputStream(entry)) {
+              writeIfChanged(in, entry.getName(), target, ImmutableMap.of());
+            }
+          }
+          extracted.put(info.name, info);
+        }
+      }
+    } else {
+      try (ZipInputStream zip =
+          new ZipInputStream(new BufferedInputStream(aar.getInputStream()))) {
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+          if (!shouldExtract(entry)) {
+            continue;
+          }
+          Path target = resolveEntry(aarDir, entry.getName());
+          EntryInfo info = new EntryInfo(entry.getName(), entry.getCrc(), entry.getSize());
+          if (entry.getCrc() == -1 || !isUpToDate(info, target, previous)) {
+            // the local header may not have the CRC, in which case it's only known once the entry
+            // has been read
+            info = writeIfChanged(zip, entry.getName(), target, previous);
+          }
+          extracted.put(info.name, info);
+        }
+      }
+    }
+    deleteRemovedEntries(aarDir, previous, extracted);
+    return ImmutableMap.copyOf(extracted);
+  }
+
+  /**
+   * Populates {@code aarDir} with the given entries from an identical AAR already unpacked into
+   * {@code sourceDir}, hard linking the files where possible.
+   */
+  static void linkFrom(
+      File sourceDir, File aarDir, Map<String, EntryInfo> entries, Map<String, EntryInfo> previous)
+      throws IOException {
+    for (EntryInfo info : entries.values()) {
+      Path target = resolveEntry(aarDir, info.name);
+      if (isUpToDate(info, target, previous)) {
+        continue;
+      }
+      Path source = resolveEntry(sourceDir, info.name);
+      Files.createDirectories(target.getParent());
+      Files.deleteIfExists(target);
+      try {
+        Files.createLink(target, source);
+      } catch (UnsupportedOperationException | IOException e) {
+        // e.g. hard links aren't supported by the file system
+        Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+      }
+    }
+    deleteRemovedEntries(aarDir, previous, entries);
+  }
+
+  /** A digest identifying the AAR's extracted contents. */
+  static String digest(Map<String, EntryInfo> entries) {
+    Hasher hasher = Hashing.sha256().newHasher();
+    entries.values().stream()
+        .sorted((a, b) -> a.name.compareTo(b.name))
+        .forEach(
+            e -> hasher.putString(e.name, UTF_8).putByte((byte) 0).putLong(e.crc).putLong(e.size));
+    return hasher.hash().toString();
+  }
+
+  /** Reads a manifest written by {@link #writeManifest}, returning an empty map if invalid. */
+  static ImmutableMap<String, EntryInfo> readManifest(File manifest) {
+    List<String> lines;
+    try {
+      lines = Files.readAllLines(manifest.toPath(), UTF_8);
+    } catch (IOException e) {
+      return ImmutableMap.of();
+    }
+    Map<String, EntryInfo> entries = new LinkedHashMap<>();
+    for (String line : lines) {
+      String[] parts = line.split(" ", 3);
+      if (parts.length != 3) {
+        return ImmutableMap.of();
+      }
+      try {
+        entries.put(
+            parts[2],
+            new EntryInfo(parts[2], Long.parseLong(parts[0], 16), Long.parseLong(parts[1])));
+      } catch (NumberFormatException e) {
+        return ImmutableMap.of();
+      }
+    }
+    return ImmutableMap.copyOf(entries);
+  }
+
+  static void writeManifest(File manifest, Map<String, EntryInfo> entries) throws IOException {
+    List<String> lines = new ArrayList<>(entries.size());
+    for (EntryInfo info : entries.values()) {
+      lines.add(Long.toHexString(info.crc) + " " + info.size + " " + info.name);
+    }
+    Files.write(manifest.toPath(), lines, UTF_8);
+  }
+
+  private static boolean isUpToDate(EntryInfo info, Path target, Map<String, EntryInfo> previous) {
+    if (!info.equals(previous.get(info.name))) {
+      return false;
+    }
+    try {
+      return Files.size(target) == info.size;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  private static void deleteRemovedEntries(
+      File aarDir, Map<String, EntryInfo> previous, Map<String, EntryInfo> current)
+      throws IOException {
+    for (String name : previous.keySet()) {
+      if (!current.containsKey(name)) {
+        try {
+          Files.deleteIfExists(resolveEntry(aarDir, name));
+        } catch (NoSuchFileException e) {
+          // the parent directory is already gone
+        }
+      }
+    }
+  }
+
+  private static Path resolveEntry(File aarDir, String name) throws IOException {
+    Path root = aarDir.toPath().toAbsolutePath().normalize();
+    Path target = root.resolve(name).normalize();
+    if (!target.startsWith(root) || target.equals(root)) {
+      throw new IOException("Invalid AAR entry name: " + name);
+    }
+    return target;
+  }
+
+  /**
+   * Writes the stream to a temporary file, then moves it over the target unless its contents match
+   * the previously extracted entry. Files shared with other unpacked AARs via hard links are
+   * therefore never modified in place.
+   */
+  private static EntryInfo writeIfChanged(
+      InputStream in, String name, Path target, Map<String, EntryInfo> previous)
+      throws IOException {
+    Files.createDirectories(target.getParent());
+    Path tmp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+    try {
+      CRC32 crc = new CRC32();
+      long size = 0;
+      byte[] buffer = new byte[8192];
+      try (OutputStream out = Files.newOutputStream(tmp)) {
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+          out.write(buffer, 0, read);
+          crc.update(buffer, 0, read);
+          size += read;
+        }
+      }
+      EntryInfo info = new EntryInfo(name, crc.getValue(), size);
+      if (!isUpToDate(info, target, previous)) {
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+      }
+      return info;
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+}
@@ -27,6 +27,7 @@ import com.google.idea.blaze.base.filecache.FileCache;
 import com.google.idea.blaze.base.ideinfo.AndroidIdeInfo;
 import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
 import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
+import com.google.idea.blaze.base.io.FileOperationProvider;
 import com.google.idea.blaze.base.model.BlazeProjectData;
 import com.google.idea.blaze.base.projectview.ProjectViewManager;
 import com.google.idea.blaze.base.projectview.ProjectViewSet;
@@ -38,9 +39,11 @@ import com.google.idea.blaze.base.sync.aspects.BlazeBuildOutputs;
 import com.google.idea.blaze.base.sync.data.BlazeDataStorage;
 import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
 import com.google.idea.blaze.base.sync.workspace.ArtifactLocationDecoder;
+import com.google.idea.common.experiments.BoolExperiment;
 import com.intellij.openapi.project.Project;
 import java.io.File;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 import java.util.stream.Collectors;
@@ -53,6 +56,10 @@ import org.jetbrains.annotations.Nullable;
  * {@link RenderJarClassFileFinder} for more information about RenderJARs.
  */
 public class RenderJarCache {
+  /** Experiment to index the class files of render JARs whenever they're cached. */
+  private static final BoolExperiment indexClasses =
+      new BoolExperiment("aswb.renderjar.class.index", true);
+
   public static RenderJarCache getInstance(Project project) {
     return project.getService(RenderJarCache.class);
   }
@@ -75,6 +82,8 @@ public class RenderJarCache {
 
   private final ArtifactCache artifactCache;
 
+  private final RenderJarClassIndex classIndex = new RenderJarClassIndex();
+
   public RenderJarCache(Project project) {
     this(
         project,
@@ -95,11 +104,30 @@ public class RenderJarCache {
     return cacheDir;
   }
 
+  /** Returns the class index of the cached render JARs. */
+  public RenderJarClassIndex getClassIndex() {
+    return classIndex;
+  }
+
   private void initialize() {
     if (!RenderJarClassFileFinder.isEnabled()) {
       return;
     }
     artifactCache.initialize();
+    // the cached JARs aren't refreshed until the next sync or build, so index them now
+    if (indexClasses.getValue()) {
+      classIndex.update(listCachedJars(), /* removeOthers= */ false);
+    }
+  }
+
+  private ImmutableList<File> listCachedJars() {
+    File[] files = FileOperationProvider.getInstance().listFiles(cacheDir);
+    if (files == null) {
+      return ImmutableList.of();
+    }
+    return Arrays.stream(files)
+        .filter(file -> file.getName().endsWith(".jar"))
+        .collect(ImmutableList.toImmutableList());
   }
 
   private void onSync(
@@ -113,6 +141,7 @@ public class RenderJarCache {
     boolean fullRefresh = syncMode == SyncMode.FULL;
     if (fullRefresh) {
       artifactCache.clearCache();
+      classIndex.clear();
     }
 
     if (!RenderResolveOutputGroupProvider.buildOnSync.getValue()) {
@@ -126,6 +155,7 @@ public class RenderJarCache {
         getArtifactsToCache(projectViewSet, projectData);
 
     artifactCache.putAll(artifactsToCache, context, removeMissingFiles);
+    updateClassIndex(artifactsToCache, /* removeOthers= */ removeMissingFiles);
   }
 
   /**
@@ -145,6 +175,22 @@ public class RenderJarCache {
             .collect(ImmutableList.toImmutableList());
 
     artifactCache.putAll(renderJars, context, false);
+    updateClassIndex(renderJars, /* removeOthers= */ false);
+  }
+
+  /** Re-indexes the cached copies of the given render JARs. */
+  private void updateClassIndex(ImmutableList<BlazeArtifact> renderJars, boolean removeOthers) {
+    if (!indexClasses.getValue()) {
+      classIndex.clear();
+      return;
+    }
+    ImmutableList<File> cachedJars =
+        renderJars.stream()
+            .map(artifactCache::get)
+            .filter(Objects::nonNull)
+            .map(Path::toFile)
+            .collect(ImmutableList.toImmutableList());
+    classIndex.update(cachedJars, removeOthers);
   }
 
   private ImmutableList<BlazeArtifact> getArtifactsToCache(
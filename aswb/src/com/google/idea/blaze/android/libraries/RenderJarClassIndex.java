@@ -0,0 +1,139 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.android.libraries;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.idea.blaze.base.prefetch.FetchExecutor;
+import com.google.idea.blaze.base.run.targetfinder.FuturesUtil;
+import com.intellij.openapi.diagnostic.Logger;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import javax.annotation.Nullable;
+
+/**
+ * The class file entries of each cached render JAR, read from the JAR's central directory when
+ * {@link RenderJarCache} refreshes its cached JARs.
+ *
+ * <p>Lets class lookups check whether a render JAR contains a class with a set lookup, rather than
+ * opening and traversing the JAR through the VFS.
+ */
+public final class RenderJarClassIndex {
+  private static final Logger logger = Logger.getInstance(RenderJarClassIndex.class);
+
+  private static final String CLASS_SUFFIX = ".class";
+
+  private final Map<File, ImmutableSet<String>> classEntriesByJar = new ConcurrentHashMap<>();
+
+  /** Incremented whenever the index changes, so that callers can invalidate derived caches. */
+  private final AtomicLong modificationCount = new AtomicLong();
+
+  /**
+   * Returns the class file entry names (e.g. 'com/google/Foo$Bar.class') of the given JAR, or null
+   * if the JAR hasn't been indexed.
+   */
+  @Nullable
+  public ImmutableSet<String> getClassEntries(File jar) {
+    return classEntriesByJar.get(jar);
+  }
+
+  public long getModificationCount() {
+    return modificationCount.get();
+  }
+
+  /** Returns the JAR entry name of the class file for the given fully qualified class name. */
+  public static String getClassEntryName(String fqcn) {
+    return fqcn.replace('.', '/') + CLASS_SUFFIX;
+  }
+
+  /**
+   * Indexes the given JARs, replacing any existing entries for them. If {@code removeOthers} is
+   * true, all other JARs are removed from the index.
+   */
+  void update(Collection<File> jars, boolean removeOthers) {
+    ImmutableMap<File, ImmutableSet<String>> indexed = readClassEntries(jars);
+    if (removeOthers) {
+      classEntriesByJar.keySet().retainAll(jars);
+    }
+    for (File jar : jars) {
+      ImmutableSet<String> entries = indexed.get(jar);
+      if (entries != null) {
+        classEntriesByJar.put(jar, entries);
+      } else {
+        // fall back to VFS lookups for JARs we failed to read
+        classEntriesByJar.remove(jar);
+      }
+    }
+    modificationCount.incrementAndGet();
+  }
+
+  void clear() {
+    classEntriesByJar.clear();
+    modificationCount.incrementAndGet();
+  }
+
+  /** Reads the JARs in parallel. JARs which couldn't be read are omitted from the result. */
+  private static ImmutableMap<File, ImmutableSet<String>> readClassEntries(Collection<File> jars) {
+    Map<File, ListenableFuture<ImmutableSet<String>>> futures = new LinkedHashMap<>();
+    for (File jar : jars) {
+      futures.put(jar, FetchExecutor.EXECUTOR.submit(() -> readClassEntries(jar)));
+    }
+    List<ImmutableSet<String>> results =
+        FuturesUtil.getIgnoringErrors(Futures.successfulAsList(futures.values()));
+    if (results == null) {
+      return ImmutableMap.of();
+    }
+    ImmutableMap.Builder<File, ImmutableSet<String>> builder = ImmutableMap.builder();
+    int i = 0;
+    for (File jar : futures.keySet()) {
+      ImmutableSet<String> entries = results.get(i++);
+      if (entries != null) {
+        builder.put(jar, entries);
+      }
+    }
+    return builder.build();
+  }
+
+  /** Returns the class file entries in the JAR, or null if it couldn't be read. */
+  @Nullable
+  private static ImmutableSet<String> readClassEntries(File jar) {
+    try (ZipFile zipFile = new ZipFile(jar)) {
+      ImmutableSet.Builder<String> entries = ImmutableSet.builder();
+      Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+      while (zipEntries.hasMoreElements()) {
+        ZipEntry entry = zipEntries.nextElement();
+        if (!entry.isDirectory() && entry.getName().endsWith(CLASS_SUFFIX)) {
+          entries.add(entry.getName());
+        }
+      }
+      return entries.build();
+    } catch (IOException e) {
+      logger.warn("Failed to index render JAR " + jar, e);
+      return null;
+    }
+  }
+}
@@ -23,6 +23,7 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.idea.blaze.android.libraries.IncrementalAarExtractor.EntryInfo;
 import com.google.idea.blaze.android.sync.model.AarLibrary;
 import com.google.idea.blaze.base.async.FutureUtil;
 import com.google.idea.blaze.base.command.buildresult.BlazeArtifact;
@@ -49,6 +50,7 @@ import com.google.idea.blaze.base.sync.data.BlazeDataStorage;
 import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
 import com.google.idea.blaze.base.sync.libraries.BlazeLibraryCollector;
 import com.google.idea.blaze.base.sync.workspace.ArtifactLocationDecoder;
+import com.google.idea.common.experiments.BoolExperiment;
 import com.intellij.openapi.components.ServiceManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
@@ -66,6 +68,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -95,6 +98,13 @@ import javax.annotation.Nullable;
 public class UnpackedAars {
   private static final Logger logger = Logger.getInstance(UnpackedAars.class);
 
+  /**
+   * Only rewrite the AAR entries which changed since the last extraction, and share the unpacked
+   * files of AARs with identical contents.
+   */
+  private static final BoolExperiment incrementalExtraction =
+      new BoolExperiment("aswb.aar.incremental.extraction", true);
+
   private final Project project;
   private final File cacheDir;
 
@@ -382,7 +392,8 @@ public class UnpackedAars {
    *
    * <p>We use a stamp file instead of the directory itself to stash the timestamp. Directory
    * timestamps are bit more brittle and can change whenever an operation is done to a child of the
-   * directory.
+   * directory. When extracting incrementally, the stamp file also holds the manifest of extracted
+   * entries (see {@link IncrementalAarExtractor}).
    *
    * <p>Also sets the in-memory @link #cacheState}.
    */
@@ -404,12 +415,149 @@ public class UnpackedAars {
       ImmutableMap<String, AarLibraryContents> toCache, Set<String> updatedKeys) {
     FileOperationProvider ops = FileOperationProvider.getInstance();
     List<ListenableFuture<?>> futures = new ArrayList<>();
-    updatedKeys.forEach(
-        key ->
-            futures.add(FetchExecutor.EXECUTOR.submit(() -> copyLocally(ops, toCache.get(key)))));
+    if (!incrementalExtraction.getValue()) {
+      updatedKeys.forEach(
+          key ->
+              futures.add(
+                  FetchExecutor.EXECUTOR.submit(() -> copyLocally(ops, toCache.get(key)))));
+      return futures;
+    }
+
+    // group the updated AARs by content, so that each distinct AAR is only extracted once
+    Map<String, List<String>> keysByDigest = new LinkedHashMap<>();
+    Map<String, ImmutableMap<String, EntryInfo>> entriesByDigest = new HashMap<>();
+    for (String key : updatedKeys) {
+      ImmutableMap<String, EntryInfo> entries =
+          IncrementalAarExtractor.readEntries(toCache.get(key).aar());
+      if (entries == null || entries.isEmpty()) {
+        futures.add(FetchExecutor.EXECUTOR.submit(() -> extractLocally(ops, toCache.get(key))));
+        continue;
+      }
+      String digest = IncrementalAarExtractor.digest(entries);
+      keysByDigest.computeIfAbsent(digest, d -> new ArrayList<>()).add(key);
+      entriesByDigest.put(digest, entries);
+    }
+    if (keysByDigest.isEmpty()) {
+      return futures;
+    }
+
+    Map<String, File> unchangedDirsByDigest = getUnchangedAarDirsByDigest(toCache, updatedKeys);
+    keysByDigest.forEach(
+        (digest, keys) -> {
+          ImmutableMap<String, EntryInfo> entries = entriesByDigest.get(digest);
+          File unchangedDir = unchangedDirsByDigest.get(digest);
+          ListenableFuture<File> sourceDir;
+          List<String> toLink;
+          if (unchangedDir != null) {
+            sourceDir = Futures.immediateFuture(unchangedDir);
+            toLink = keys;
+          } else {
+            String first = keys.get(0);
+            sourceDir =
+                FetchExecutor.EXECUTOR.submit(
+                    () -> {
+                      extractLocally(ops, toCache.get(first));
+                      return aarDirForKey(first);
+                    });
+            futures.add(sourceDir);
+            toLink = keys.subList(1, keys.size());
+          }
+          for (String key : toLink) {
+            futures.add(
+                Futures.transform(
+                    sourceDir,
+                    dir -> {
+                      linkLocally(ops, dir, toCache.get(key), entries);
+                      return null;
+                    },
+                    FetchExecutor.EXECUTOR));
+          }
+        });
     return futures;
   }
 
+  /**
+   * Returns the cached AAR directories which aren't being updated or removed, keyed by the digest
+   * of their contents.
+   */
+  private Map<String, File> getUnchangedAarDirsByDigest(
+      ImmutableMap<String, AarLibraryContents> toCache, Set<String> updatedKeys) {
+    Map<String, File> dirsByDigest = new HashMap<>();
+    for (Map.Entry<String, File> entry : cacheState.entrySet()) {
+      String key = entry.getKey();
+      if (updatedKeys.contains(key) || !toCache.containsKey(key)) {
+        continue;
+      }
+      ImmutableMap<String, EntryInfo> entries =
+          IncrementalAarExtractor.readManifest(entry.getValue());
+      if (!entries.isEmpty()) {
+        dirsByDigest.putIfAbsent(IncrementalAarExtractor.digest(entries), aarDirForKey(key));
+      }
+    }
+    return dirsByDigest;
+  }
+
+  /** Incrementally extracts the AAR, only rewriting entries which changed since last time. */
+  private void extractLocally(FileOperationProvider ops, AarLibraryContents aarAndJar) {
+    File aarDir = aarDirForKey(UnpackedAarUtils.getAarDirName(aarAndJar.aar()));
+    try {
+      ImmutableMap<String, EntryInfo> previous = startUpdate(ops, aarDir);
+      ImmutableMap<String, EntryInfo> entries =
+          IncrementalAarExtractor.extract(aarAndJar.aar(), aarDir, previous);
+      finishUpdate(ops, aarDir, aarAndJar, entries);
+    } catch (IOException e) {
+      logger.warn(String.format("Failed to extract AAR %s to %s", aarAndJar.aar(), aarDir), e);
+    }
+  }
+
+  /**
+   * Populates the AAR's directory from the directory of an already unpacked AAR with identical
+   * contents. Falls back to extracting the AAR if that fails.
+   */
+  private void linkLocally(
+      FileOperationProvider ops,
+      File sourceDir,
+      AarLibraryContents aarAndJar,
+      ImmutableMap<String, EntryInfo> entries) {
+    File aarDir = aarDirForKey(UnpackedAarUtils.getAarDirName(aarAndJar.aar()));
+    try {
+      ImmutableMap<String, EntryInfo> previous = startUpdate(ops, aarDir);
+      IncrementalAarExtractor.linkFrom(sourceDir, aarDir, entries, previous);
+      finishUpdate(ops, aarDir, aarAndJar, entries);
+    } catch (IOException e) {
+      logger.warn(String.format("Failed to copy AAR %s from %s", aarAndJar.aar(), sourceDir), e);
+      extractLocally(ops, aarAndJar);
+    }
+  }
+
+  /**
+   * Returns the entries previously extracted to the AAR directory, and removes the stamp file so
+   * that an interrupted update is redone from scratch.
+   */
+  private static ImmutableMap<String, EntryInfo> startUpdate(
+      FileOperationProvider ops, File aarDir) throws IOException {
+    File stampFile = new File(aarDir, STAMP_FILE_NAME);
+    ImmutableMap<String, EntryInfo> previous = IncrementalAarExtractor.readManifest(stampFile);
+    if (previous.isEmpty() && ops.exists(aarDir)) {
+      // the directory contents are unknown
+      ops.deleteRecursively(aarDir, true);
+    }
+    ops.mkdirs(aarDir);
+    Files.deleteIfExists(stampFile.toPath());
+    return previous;
+  }
+
+  private static void finishUpdate(
+      FileOperationProvider ops,
+      File aarDir,
+      AarLibraryContents aarAndJar,
+      ImmutableMap<String, EntryInfo> entries)
+      throws IOException {
+    IncrementalAarExtractor.writeManifest(new File(aarDir, STAMP_FILE_NAME), entries);
+    createStampFile(ops, aarDir, aarAndJar.aar());
+    copyMergedJar(ops, aarDir, aarAndJar);
+  }
+
   private void copyLocally(FileOperationProvider ops, AarLibraryContents aarAndJar) {
     String cacheKey = UnpackedAarUtils.getAarDirName(aarAndJar.aar());
     File aarDir = aarDirForKey(cacheKey);
@@ -427,21 +575,25 @@ public class UnpackedAars {
           (dir, name) -> !name.endsWith(".jar"));
 
       createStampFile(ops, aarDir, aarAndJar.aar());
-
-      // copy merged jar
-      if (aarAndJar.jar() != null) {
-        try (InputStream stream = aarAndJar.jar().getInputStream()) {
-          Path destination = Paths.get(UnpackedAarUtils.getJarFile(aarDir).getPath());
-          ops.mkdirs(destination.getParent().toFile());
-          Files.copy(stream, destination, StandardCopyOption.REPLACE_EXISTING);
-        }
-      }
+      copyMergedJar(ops, aarDir, aarAndJar);
 
     } catch (IOException e) {
       logger.warn(String.format("Failed to extract AAR %s to %s", aarAndJar.aar(), aarDir), e);
     }
   }
 
+  private static void copyMergedJar(
+      FileOperationProvider ops, File aarDir, AarLibraryContents aarAndJar) throws IOException {
+    if (aarAndJar.jar() == null) {
+      return;
+    }
+    try (InputStream stream = aarAndJar.jar().getInputStream()) {
+      Path destination = Paths.get(UnpackedAarUtils.getJarFile(aarDir).getPath());
+      ops.mkdirs(destination.getParent().toFile());
+      Files.copy(stream, destination, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
   private static void createStampFile(
       FileOperationProvider fileOps, File aarDir, BlazeArtifact aar) {
     File stampFile = new File(aarDir, STAMP_FILE_NAME);
@@ -23,6 +23,7 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableSet;
 import com.google.idea.blaze.android.libraries.RenderJarCache;
+import com.google.idea.blaze.android.libraries.RenderJarClassIndex;
 import com.google.idea.blaze.android.sync.model.AndroidResourceModule;
 import com.google.idea.blaze.android.sync.model.AndroidResourceModuleRegistry;
 import com.google.idea.blaze.android.targetmaps.TargetToBinaryMap;
@@ -42,6 +43,8 @@ import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.JarFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
 import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.regex.Pattern;
 import org.jetbrains.annotations.Nullable;
 
@@ -82,6 +85,9 @@ public class RenderJarClassFileFinder implements ClassFileFinder {
   // matches foo.bar.R or foo.bar.R$baz
   private static final Pattern RESOURCE_CLASS_NAME = Pattern.compile(".+\\.R(\\$[^.]+)?$");
 
+  /** The negative lookup cache is reset rather than grown past this size. */
+  private static final int MAX_MISSING_CLASSES = 10000;
+
   private final Module module;
   private final Project project;
 
@@ -97,6 +103,10 @@ public class RenderJarClassFileFinder implements ClassFileFinder {
   // true if the current module is the .workspace Module
   private final boolean isWorkspaceModule;
 
+  // classes which couldn't be found in any render JAR. Only populated when all of the module's
+  // render JARs are indexed, and cleared whenever the binary targets or the index changes
+  private final MissingClassCache missingClasses = new MissingClassCache(MAX_MISSING_CLASSES);
+
   public RenderJarClassFileFinder(Module module) {
     this.module = module;
     this.project = module.getProject();
@@ -156,17 +166,34 @@ public class RenderJarClassFileFinder implements ClassFileFinder {
     // Remove internal package prefix if present
     fqcn = StringUtil.trimStart(fqcn, INTERNAL_PACKAGE);
 
+    RenderJarClassIndex classIndex = RenderJarCache.getInstance(project).getClassIndex();
+    long indexModificationCount = classIndex.getModificationCount();
+    if (missingClasses.isMissing(fqcn, indexModificationCount)) {
+      return null;
+    }
+
     // Look through render resolve JARs of the binaries that depend on the given
     // androidResourceModule. One androidResourceModule can comprise of multiple resource targets.
     // The binaries can depend on any subset of these resource targets. Generally, we only
     // expect one, or a small number of binaries here.
+    boolean allJarsIndexed = true;
     for (TargetKey binaryTarget : binaryTargets) {
-      VirtualFile classFile = getClassFromRenderResolveJar(projectData, fqcn, binaryTarget);
+      File renderResolveJarFile = getRenderResolveJar(projectData, binaryTarget);
+      if (renderResolveJarFile == null) {
+        continue;
+      }
+      ImmutableSet<String> classEntries = classIndex.getClassEntries(renderResolveJarFile);
+      allJarsIndexed &= classEntries != null;
+      VirtualFile classFile =
+          getClassFromRenderResolveJar(renderResolveJarFile, classEntries, fqcn);
       if (classFile != null) {
         return classFile;
       }
     }
 
+    if (allJarsIndexed) {
+      missingClasses.add(fqcn, indexModificationCount);
+    }
     log.warn(String.format("Could not find class `%1$s` (module: `%2$s`)", fqcn, module.getName()));
     return null;
   }
@@ -188,6 +215,7 @@ public class RenderJarClassFileFinder implements ClassFileFinder {
       return binaryTargets;
     }
     lastSyncCount = currentSyncCount;
+    missingClasses.clear();
 
     AndroidResourceModule androidResourceModule =
         AndroidResourceModuleRegistry.getInstance(project).get(module);
@@ -212,23 +240,29 @@ public class RenderJarClassFileFinder implements ClassFileFinder {
     return binaryTargets;
   }
 
-  /**
-   * Returns class file for fqcn if found in the render JAR corresponding to {@code binaryTarget}.
-   * Returns null if something goes wrong or if render JAR does not contain fqcn
-   */
+  /** Returns the cached render JAR corresponding to {@code binaryTarget}, if any. */
   @Nullable
-  private VirtualFile getClassFromRenderResolveJar(
-      BlazeProjectData projectData, String fqcn, TargetKey binaryTarget) {
+  private File getRenderResolveJar(BlazeProjectData projectData, TargetKey binaryTarget) {
     TargetIdeInfo ideInfo = projectData.getTargetMap().get(binaryTarget);
     if (ideInfo == null) {
       return null;
     }
+    return RenderJarCache.getInstance(project)
+        .getCachedJarForBinaryTarget(projectData.getArtifactLocationDecoder(), ideInfo);
+  }
 
-    File renderResolveJarFile =
-        RenderJarCache.getInstance(project)
-            .getCachedJarForBinaryTarget(projectData.getArtifactLocationDecoder(), ideInfo);
-
-    if (renderResolveJarFile == null) {
+  /**
+   * Returns class file for fqcn if found in the given render JAR. Returns null if something goes
+   * wrong or if render JAR does not contain fqcn.
+   *
+   * @param classEntries the indexed class entries of the render JAR, or null if it isn't indexed
+   */
+  @Nullable
+  private static VirtualFile getClassFromRenderResolveJar(
+      File renderResolveJarFile, @Nullable ImmutableSet<String> classEntries, String fqcn) {
+    String classEntryName = RenderJarClassIndex.getClassEntryName(fqcn);
+    if (classEntries != null && !classEntries.contains(classEntryName)) {
+      // avoid opening the JAR through the VFS if the class isn't there
       return null;
     }
 
@@ -237,17 +271,13 @@ public class RenderJarClassFileFinder implements ClassFileFinder {
     if (renderResolveJarVF == null) {
       return null;
     }
-
-    return findClassInJar(renderResolveJarVF, fqcn);
-  }
-
-  @Nullable
-  private static VirtualFile findClassInJar(final VirtualFile classJar, String fqcn) {
-    VirtualFile jarRoot = getJarRootForLocalFile(classJar);
+    VirtualFile jarRoot = getJarRootForLocalFile(renderResolveJarVF);
     if (jarRoot == null) {
       return null;
     }
-    return ClassFileFinderUtil.findClassFileInOutputRoot(jarRoot, fqcn);
+    return classEntries != null
+        ? jarRoot.findFileByRelativePath(classEntryName)
+        : ClassFileFinderUtil.findClassFileInOutputRoot(jarRoot, fqcn);
   }
 
   /** Test aware method to redirect JARs to {@link VirtualFileSystemProvider} for tests */
@@ -259,6 +289,53 @@ public class RenderJarClassFileFinder implements ClassFileFinder {
         : JarFileSystem.getInstance().getJarRootForLocalFile(file);
   }
 
+  /**
+   * Classes which couldn't be found in any of a module's indexed render JARs. Cleared whenever the
+   * render JAR index changes, and reset rather than grown past a maximum size.
+   */
+  @VisibleForTesting
+  static final class MissingClassCache {
+    private final int maxSize;
+    private final Set<String> missingClasses = new HashSet<>();
+
+    // the value of {@link RenderJarClassIndex#getModificationCount} the classes were missing from
+    private long indexModificationCount = -1;
+
+    MissingClassCache(int maxSize) {
+      this.maxSize = maxSize;
+    }
+
+    /** Returns true if the class was missing from the index at the given modification count. */
+    synchronized boolean isMissing(String fqcn, long indexModificationCount) {
+      if (indexModificationCount != this.indexModificationCount) {
+        missingClasses.clear();
+        this.indexModificationCount = indexModificationCount;
+        return false;
+      }
+      return missingClasses.contains(fqcn);
+    }
+
+    /** Records a class missing from the index at the given modification count. */
+    synchronized void add(String fqcn, long indexModificationCount) {
+      if (indexModificationCount != this.indexModificationCount) {
+        return; // the index has changed since the lookup
+      }
+      if (missingClasses.size() >= maxSize) {
+        missingClasses.clear();
+      }
+      missingClasses.add(fqcn);
+    }
+
+    synchronized void clear() {
+      missingClasses.clear();
+    }
+
+    @VisibleForTesting
+    synchronized int size() {
+      return missingClasses.size();
+    }
+  }
+
   public static boolean isEnabled() {
     return enabled.getValue();
   }
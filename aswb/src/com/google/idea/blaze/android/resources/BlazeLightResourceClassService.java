@@ -15,12 +15,14 @@
  */
 package com.google.idea.blaze.android.resources;
 
+import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.collect.ImmutableSet.toImmutableSet;
 
 import com.android.tools.idea.projectsystem.LightResourceClassService;
 import com.android.tools.idea.res.AndroidLightPackage;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
@@ -36,13 +38,21 @@ import com.intellij.psi.PsiManager;
 import com.intellij.psi.PsiPackage;
 import com.intellij.psi.search.GlobalSearchScope;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
 import org.jetbrains.android.facet.AndroidFacet;
 import org.jetbrains.annotations.Nullable;
 
-/** Implementation of {@link LightResourceClassService} set up at Blaze sync time. */
+/**
+ * Implementation of {@link LightResourceClassService} set up at Blaze sync time.
+ *
+ * <p>R classes and stub resource packages are created lazily, on first lookup. R classes whose
+ * module, facet and resource package are unchanged are carried over between syncs, so that only
+ * modules whose resource packages changed get new R classes.
+ */
 public class BlazeLightResourceClassService implements LightResourceClassService {
 
   @VisibleForTesting
@@ -58,13 +68,21 @@ public class BlazeLightResourceClassService implements LightResourceClassService
 
   private final Project project;
 
-  private Map<String, BlazeRClass> rClasses = Maps.newHashMap();
-  private Map<Module, BlazeRClass> rClassesByModule = Maps.newHashMap();
-  private Map<String, PsiPackage> rClassPackages = Maps.newHashMap();
-  private Map<String, BlazeRClass> workspaceRClasses = Maps.newHashMap();
-  private Set<String> workspaceRClassNames = ImmutableSet.of();
+  // R classes of resource modules, by qualified name and by module. Replaced wholesale each sync.
+  private volatile Map<String, LazyRClass> rClasses = ImmutableMap.of();
+  private volatile Map<Module, LazyRClass> rClassesByModule = ImmutableMap.of();
+
+  // Names of all stub resource packages, and the (lazily created) packages themselves.
+  private volatile Set<String> rClassPackageNames = ImmutableSet.of();
+  private final Map<String, PsiPackage> rClassPackages = new ConcurrentHashMap<>();
+
+  // R classes for workspace resource packages, created on demand.
+  private final Map<String, LazyRClass> workspaceRClasses = new ConcurrentHashMap<>();
+  private volatile Set<String> workspaceRClassNames = ImmutableSet.of();
+
+  // Materialized R class lists, reset on install and rebuilt when workspace R classes are added.
+  @Nullable private volatile MaterializedRClasses materializedRClasses;
 
-  private final Set<BlazeRClass> allRClasses = Sets.newHashSet();
   private PsiManager psiManager;
 
   public static BlazeLightResourceClassService getInstance(Project project) {
@@ -73,13 +91,14 @@ public class BlazeLightResourceClassService implements LightResourceClassService
 
   private BlazeLightResourceClassService(Project project) {
     this.project = project;
+    this.psiManager = PsiManager.getInstance(project);
   }
 
   /** Builds light R classes */
   public static class Builder {
-    Map<String, BlazeRClass> rClassMap = Maps.newHashMap();
-    Map<Module, BlazeRClass> rClassByModuleMap = Maps.newHashMap();
-    Map<String, PsiPackage> rClassPackages = Maps.newHashMap();
+    Map<String, LazyRClass> rClassMap = Maps.newHashMap();
+    Map<Module, LazyRClass> rClassByModuleMap = Maps.newHashMap();
+    Set<String> rClassPackages = Sets.newHashSet();
     Set<String> workspaceRClassNames = ImmutableSet.of();
 
     PsiManager psiManager;
@@ -93,7 +112,7 @@ public class BlazeLightResourceClassService implements LightResourceClassService
       if (androidFacet == null) {
         return; // Do not register R class if android facet is not present.
       }
-      BlazeRClass rClass = new BlazeRClass(psiManager, androidFacet, resourceJavaPackage);
+      LazyRClass rClass = new LazyRClass(androidFacet, resourceJavaPackage);
       rClassMap.put(getQualifiedRClassName(resourceJavaPackage), rClass);
       rClassByModuleMap.put(module, rClass);
       if (createStubResourcePackages.getValue()) {
@@ -118,12 +137,9 @@ public class BlazeLightResourceClassService implements LightResourceClassService
 
     private void addStubPackages(String resourceJavaPackage) {
       while (!resourceJavaPackage.isEmpty()) {
-        if (rClassPackages.containsKey(resourceJavaPackage)) {
+        if (!rClassPackages.add(resourceJavaPackage)) {
           return;
         }
-        rClassPackages.put(
-            resourceJavaPackage,
-            AndroidLightPackage.withName(resourceJavaPackage, psiManager.getProject()));
         int nextIndex = resourceJavaPackage.lastIndexOf('.');
         if (nextIndex < 0) {
           return;
@@ -133,42 +149,65 @@ public class BlazeLightResourceClassService implements LightResourceClassService
     }
   }
 
-  public void installRClasses(Builder builder) {
-    this.rClasses = builder.rClassMap;
-    this.rClassesByModule = builder.rClassByModuleMap;
-    this.rClassPackages = builder.rClassPackages;
+  /**
+   * Installs the R classes from the given builder, reusing the existing R class for any module
+   * whose facet and resource package haven't changed.
+   */
+  public synchronized void installRClasses(Builder builder) {
+    Map<String, LazyRClass> previousRClasses = this.rClasses;
+    Map<LazyRClass, LazyRClass> reused = Maps.newIdentityHashMap();
+    ImmutableMap.Builder<String, LazyRClass> newRClasses = ImmutableMap.builder();
+    for (Map.Entry<String, LazyRClass> entry : builder.rClassMap.entrySet()) {
+      LazyRClass previous = previousRClasses.get(entry.getKey());
+      LazyRClass rClass =
+          previous != null && previous.isEquivalent(entry.getValue())
+              ? previous
+              : entry.getValue();
+      reused.put(entry.getValue(), rClass);
+      newRClasses.put(entry.getKey(), rClass);
+    }
+    ImmutableMap.Builder<Module, LazyRClass> newRClassesByModule = ImmutableMap.builder();
+    builder.rClassByModuleMap.forEach(
+        (module, rClass) -> newRClassesByModule.put(module, reused.getOrDefault(rClass, rClass)));
 
-    this.workspaceRClasses = new HashMap<>();
-    this.workspaceRClassNames = ImmutableSet.copyOf(builder.workspaceRClassNames);
     this.psiManager = builder.psiManager;
+    this.rClasses = newRClasses.build();
+    this.rClassesByModule = newRClassesByModule.build();
+
+    this.rClassPackageNames = ImmutableSet.copyOf(builder.rClassPackages);
+    this.rClassPackages.keySet().retainAll(rClassPackageNames);
 
-    this.allRClasses.clear();
-    this.allRClasses.addAll(rClasses.values());
+    this.workspaceRClassNames = ImmutableSet.copyOf(builder.workspaceRClassNames);
+    this.workspaceRClasses
+        .entrySet()
+        .removeIf(e -> !workspaceRClassNames.contains(e.getKey()) || !e.getValue().isValid());
+    this.materializedRClasses = null;
   }
 
   @Override
   public Collection<? extends PsiClass> getLightRClasses(
       String qualifiedName, GlobalSearchScope scope) {
-    BlazeRClass rClass = this.rClasses.get(qualifiedName);
+    LazyRClass rClass = this.rClasses.get(qualifiedName);
 
     if (rClass == null) {
       rClass = getRClassForWorkspace(qualifiedName, scope);
     }
 
+    // check the scope before creating the R class
     if (rClass != null && scope.isSearchInModuleContent(rClass.getModule())) {
-      return ImmutableList.of(rClass);
+      return ImmutableList.of(rClass.get(psiManager));
     }
 
     return ImmutableList.of();
   }
 
   @Nullable
-  private BlazeRClass getRClassForWorkspace(String qualifiedName, GlobalSearchScope scope) {
+  private LazyRClass getRClassForWorkspace(String qualifiedName, GlobalSearchScope scope) {
     if (!workspaceResourcesFeature.isEnabled() || !workspaceRClassNames.contains(qualifiedName)) {
       return null;
     }
 
-    BlazeRClass rClass = workspaceRClasses.get(qualifiedName);
+    LazyRClass rClass = workspaceRClasses.get(qualifiedName);
     if (rClass != null) {
       if (scope.isSearchInModuleContent(rClass.getModule())) {
         return rClass;
@@ -190,10 +229,8 @@ public class BlazeLightResourceClassService implements LightResourceClassService
       return null;
     }
 
-    rClass = new BlazeRClass(psiManager, workspaceFacet, packageName);
-    workspaceRClasses.put(qualifiedName, rClass);
-    allRClasses.add(rClass);
-    return rClass;
+    return workspaceRClasses.computeIfAbsent(
+        qualifiedName, name -> new LazyRClass(workspaceFacet, packageName));
   }
 
   @Override
@@ -208,31 +245,143 @@ public class BlazeLightResourceClassService implements LightResourceClassService
       // correct and the autocomplete will be slightly off when initial `R` is typed in the editor,
       // but this workaround is being used to mitigate issues (b/136685602) while resources
       // are re-worked.
-      return allRClasses;
+      return getAllLightRClasses();
     } else {
-      return rClasses.values();
+      return getResourceModuleRClasses();
     }
   }
 
   // @Override #api4.0: override added in as4.1
   public Collection<? extends PsiClass> getLightRClassesDefinedByModule(
       Module module, boolean includeTestClasses) {
-    BlazeRClass rClass = rClassesByModule.get(module);
-    return rClass == null ? ImmutableSet.of() : ImmutableSet.of(rClass);
+    LazyRClass rClass = rClassesByModule.get(module);
+    return rClass == null ? ImmutableSet.of() : ImmutableSet.of(rClass.get(psiManager));
   }
 
   public Collection<? extends PsiClass> getLightRClassesContainingModuleResources(Module module) {
-    return rClasses.values();
+    return getResourceModuleRClasses();
   }
 
   @Override
   @Nullable
   public PsiPackage findRClassPackage(String qualifiedName) {
-    return rClassPackages.get(qualifiedName);
+    if (!rClassPackageNames.contains(qualifiedName)) {
+      return null;
+    }
+    return rClassPackages.computeIfAbsent(
+        qualifiedName, name -> AndroidLightPackage.withName(name, project));
   }
 
   @Override
   public Collection<? extends PsiClass> getAllLightRClasses() {
-    return allRClasses;
+    return getMaterializedRClasses().allRClasses;
+  }
+
+  private ImmutableList<BlazeRClass> getResourceModuleRClasses() {
+    return getMaterializedRClasses().resourceModuleRClasses;
+  }
+
+  private MaterializedRClasses getMaterializedRClasses() {
+    MaterializedRClasses materialized = this.materializedRClasses;
+    if (materialized != null && materialized.isCurrent(workspaceRClasses)) {
+      return materialized;
+    }
+    synchronized (this) {
+      materialized = this.materializedRClasses;
+      if (materialized == null || !materialized.isCurrent(workspaceRClasses)) {
+        materialized = new MaterializedRClasses(rClasses, workspaceRClasses, psiManager);
+        this.materializedRClasses = materialized;
+      }
+      return materialized;
+    }
+  }
+
+  /** Whether the R class with the given qualified name has been created yet. */
+  @VisibleForTesting
+  boolean isRClassCreated(String qualifiedName) {
+    LazyRClass rClass = rClasses.get(qualifiedName);
+    if (rClass == null) {
+      rClass = workspaceRClasses.get(qualifiedName);
+    }
+    return rClass != null && rClass.isCreated();
+  }
+
+  /**
+   * All R classes created from a snapshot of the resource module and workspace R classes. Workspace
+   * R classes are only added between installs, so it's current for as long as their count matches.
+   */
+  private static final class MaterializedRClasses {
+    private final ImmutableList<BlazeRClass> resourceModuleRClasses;
+    private final ImmutableList<BlazeRClass> allRClasses;
+    private final int workspaceRClassCount;
+
+    MaterializedRClasses(
+        Map<String, LazyRClass> rClasses,
+        Map<String, LazyRClass> workspaceRClasses,
+        PsiManager psiManager) {
+      // read the count first, so that any R classes added concurrently trigger a rebuild
+      this.workspaceRClassCount = workspaceRClasses.size();
+      this.resourceModuleRClasses =
+          rClasses.values().stream()
+              .map(rClass -> rClass.get(psiManager))
+              .collect(toImmutableList());
+      this.allRClasses =
+          Stream.concat(
+                  resourceModuleRClasses.stream(),
+                  workspaceRClasses.values().stream().map(rClass -> rClass.get(psiManager)))
+              .distinct()
+              .collect(toImmutableList());
+    }
+
+    boolean isCurrent(Map<String, LazyRClass> workspaceRClasses) {
+      return workspaceRClassCount == workspaceRClasses.size();
+    }
+  }
+
+  /** An R class for a resource package, created on first use. */
+  private static final class LazyRClass {
+    private final AndroidFacet androidFacet;
+    private final String packageName;
+    @Nullable private volatile BlazeRClass rClass;
+
+    LazyRClass(AndroidFacet androidFacet, String packageName) {
+      this.androidFacet = androidFacet;
+      this.packageName = packageName;
+    }
+
+    Module getModule() {
+      return androidFacet.getModule();
+    }
+
+    boolean isCreated() {
+      return rClass != null;
+    }
+
+    BlazeRClass get(PsiManager psiManager) {
+      BlazeRClass rClass = this.rClass;
+      if (rClass != null) {
+        return rClass;
+      }
+      synchronized (this) {
+        if (this.rClass == null) {
+          this.rClass = new BlazeRClass(psiManager, androidFacet, packageName);
+        }
+        return this.rClass;
+      }
+    }
+
+    /** Returns false if the underlying module or facet has since been disposed or replaced. */
+    boolean isValid() {
+      return !androidFacet.isDisposed()
+          && !getModule().isDisposed()
+          && AndroidFacet.getInstance(getModule()) == androidFacet;
+    }
+
+    /** Whether this R class can stand in for {@code other}. */
+    boolean isEquivalent(LazyRClass other) {
+      return androidFacet == other.androidFacet
+          && Objects.equals(packageName, other.packageName)
+          && isValid();
+    }
   }
 }
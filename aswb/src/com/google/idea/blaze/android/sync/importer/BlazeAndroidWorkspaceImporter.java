@@ -46,6 +46,7 @@ import com.google.idea.blaze.base.scope.output.IssueOutput.Category;
 import com.google.idea.blaze.base.scope.output.PerformanceWarning;
 import com.google.idea.common.experiments.BoolExperiment;
 import com.intellij.openapi.project.Project;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -107,9 +108,8 @@ public class BlazeAndroidWorkspaceImporter {
   public BlazeAndroidImportResult importWorkspace() {
     List<TargetIdeInfo> sourceTargets = BlazeImportUtil.getSourceTargets(input);
     LibraryFactory libraries = new LibraryFactory();
-    ImmutableList.Builder<AndroidResourceModule> resourceModules = new ImmutableList.Builder<>();
-    ImmutableList.Builder<AndroidResourceModule> workspaceResourceModules =
-        new ImmutableList.Builder<>();
+    List<AndroidResourceModule.Builder> resourceModules = new ArrayList<>();
+    List<AndroidResourceModule.Builder> workspaceResourceModules = new ArrayList<>();
     Map<TargetKey, AndroidResourceModule.Builder> targetKeyToAndroidResourceModuleBuilder =
         new HashMap<>();
 
@@ -120,7 +120,7 @@ public class BlazeAndroidWorkspaceImporter {
         AndroidResourceModule.Builder androidResourceModuleBuilder =
             getOrCreateResourceModuleBuilder(
                 target, libraries, targetKeyToAndroidResourceModuleBuilder);
-        resourceModules.add(androidResourceModuleBuilder.build());
+        resourceModules.add(androidResourceModuleBuilder);
       } else if (dependsOnResourceDeclaringDependencies(target)) {
         // Add the target to list of potential resource modules if any of target's dependencies
         // declare resources. A target is allowed to consume resources even if it does not declare
@@ -128,7 +128,7 @@ public class BlazeAndroidWorkspaceImporter {
         AndroidResourceModule.Builder resourceModuleBuilder =
             getOrCreateResourceModuleBuilder(
                 target, libraries, targetKeyToAndroidResourceModuleBuilder);
-        workspaceResourceModules.add(resourceModuleBuilder.build());
+        workspaceResourceModules.add(resourceModuleBuilder);
       }
     }
 
@@ -141,7 +141,7 @@ public class BlazeAndroidWorkspaceImporter {
         allowedGenResourcePaths);
 
     ImmutableList<AndroidResourceModule> androidResourceModules =
-        buildAndroidResourceModules(resourceModules.build(), workspaceResourceModules.build());
+        buildAndroidResourceModules(buildAll(resourceModules), buildAll(workspaceResourceModules));
 
     return new BlazeAndroidImportResult(
         androidResourceModules,
@@ -150,6 +150,17 @@ public class BlazeAndroidWorkspaceImporter {
         BlazeImportUtil.getResourceJars(input.targetMap.targets()));
   }
 
+  /**
+   * Builds the given resource modules in parallel. Each module aggregates the transitive resources
+   * of its dependencies, which is the bulk of the import time for deep dependency graphs.
+   */
+  private static ImmutableList<AndroidResourceModule> buildAll(
+      List<AndroidResourceModule.Builder> builders) {
+    return builders.parallelStream()
+        .map(AndroidResourceModule.Builder::build)
+        .collect(ImmutableList.toImmutableList());
+  }
+
   /**
    * Creates and populates an AndroidResourceModule.Builder for the given target by recursively
    * aggregating the AndroidResourceModule.Builders of its transitive dependencies, or reuses an
@@ -189,12 +200,8 @@ public class BlazeAndroidWorkspaceImporter {
     if (depIdeInfo != null) {
       AndroidResourceModule.Builder depTargetResourceModule =
           getOrCreateResourceModuleBuilder(depIdeInfo, libraryFactory, resourceModuleBuilderCache);
-      targetResourceModule.addTransitiveResources(depTargetResourceModule.getTransitiveResources());
-      targetResourceModule.addResourceLibraryKeys(depTargetResourceModule.getResourceLibraryKeys());
-      targetResourceModule.addTransitiveResourceDependencies(
-          depTargetResourceModule.getTransitiveResourceDependencies().stream()
-              .filter(key -> !targetKey.equals(key))
-              .collect(Collectors.toList()));
+      // shares the dependency's transitive sets rather than copying them into every dependent
+      targetResourceModule.addTransitiveDependency(depTargetResourceModule);
       if (containsProjectRelevantResources(depIdeInfo.getAndroidIdeInfo())
           && !depKey.equals(targetKey)) {
         targetResourceModule.addTransitiveResourceDependency(depKey);
@@ -23,8 +23,16 @@ import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
 import com.google.idea.blaze.base.ideinfo.ProtoWrapper;
 import com.google.idea.blaze.base.ideinfo.TargetKey;
 import com.google.idea.blaze.base.model.primitives.Label;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Set;
+import java.util.function.Function;
 import javax.annotation.concurrent.Immutable;
 import org.jetbrains.annotations.NotNull;
 
@@ -141,7 +149,15 @@ public final class AndroidResourceModule
     return resources.isEmpty() && transitiveResources.isEmpty() && resourceLibraryKeys.isEmpty();
   }
 
-  /** Builder for the resource module */
+  /**
+   * Builder for the resource module.
+   *
+   * <p>Transitive resources, library keys and resource dependencies can be inherited from other
+   * builders via {@link #addTransitiveDependency}. These are shared by reference and only
+   * aggregated when read or built, so that dependents don't each need a copy of the dependency's
+   * transitive sets. The getters for these sets therefore return copies, which include everything
+   * inherited as of the time they're called.
+   */
   public static class Builder {
     private final TargetKey targetKey;
     private final Set<ArtifactLocation> resources = Sets.newHashSet();
@@ -149,6 +165,7 @@ public final class AndroidResourceModule
     private final Set<String> resourceLibraryKeys = Sets.newHashSet();
     private final Set<TargetKey> transitiveResourceDependencies = Sets.newHashSet();
     private final Set<TargetKey> sourceTargetKeys = Sets.newHashSet();
+    private final List<Builder> transitiveDependencies = new ArrayList<>();
 
     public Builder(TargetKey targetKey) {
       this.targetKey = targetKey;
@@ -179,8 +196,9 @@ public final class AndroidResourceModule
       return this;
     }
 
+    /** Returns a copy of the resource library keys, including those inherited. */
     public Set<String> getResourceLibraryKeys() {
-      return this.resourceLibraryKeys;
+      return aggregate(b -> b.resourceLibraryKeys);
     }
 
     public Builder addResourceAndTransitiveResource(ArtifactLocation resource) {
@@ -199,8 +217,9 @@ public final class AndroidResourceModule
       return this;
     }
 
+    /** Returns a copy of the transitive resources, including those inherited. */
     public Set<ArtifactLocation> getTransitiveResources() {
-      return this.transitiveResources;
+      return aggregate(b -> b.transitiveResources);
     }
 
     public Builder addTransitiveResourceDependency(TargetKey dependency) {
@@ -232,18 +251,86 @@ public final class AndroidResourceModule
       return this;
     }
 
+    /**
+     * Inherits the transitive resources, resource library keys and transitive resource dependencies
+     * of the given builder, including those it inherits itself. These are read lazily, so later
+     * changes to {@code dependency} are reflected in this builder.
+     */
+    public Builder addTransitiveDependency(Builder dependency) {
+      if (dependency != this) {
+        this.transitiveDependencies.add(dependency);
+      }
+      return this;
+    }
+
+    /**
+     * Returns a copy of the transitive resource dependencies, including those inherited. This
+     * module's own target is only included if it was added to this builder directly.
+     */
     public Set<TargetKey> getTransitiveResourceDependencies() {
-      return this.transitiveResourceDependencies;
+      return excludeInheritedSelf(aggregate(b -> b.transitiveResourceDependencies));
+    }
+
+    /** A module doesn't inherit itself as a resource dependency. */
+    private Set<TargetKey> excludeInheritedSelf(Set<TargetKey> dependencies) {
+      if (!transitiveResourceDependencies.contains(targetKey)) {
+        dependencies.remove(targetKey);
+      }
+      return dependencies;
+    }
+
+    /** Collects the union of the given set over this builder and its transitive dependencies. */
+    private <T> Set<T> aggregate(Function<Builder, Set<T>> getter) {
+      Set<T> result = new HashSet<>();
+      for (Builder builder : reachableBuilders()) {
+        result.addAll(getter.apply(builder));
+      }
+      return result;
+    }
+
+    /** Returns this builder and all builders it transitively depends on, each once. */
+    private List<Builder> reachableBuilders() {
+      if (transitiveDependencies.isEmpty()) {
+        return ImmutableList.of(this);
+      }
+      List<Builder> result = new ArrayList<>();
+      Set<Builder> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+      Deque<Builder> toVisit = new ArrayDeque<>();
+      toVisit.add(this);
+      visited.add(this);
+      while (!toVisit.isEmpty()) {
+        Builder builder = toVisit.removeLast();
+        result.add(builder);
+        for (Builder dependency : builder.transitiveDependencies) {
+          if (visited.add(dependency)) {
+            toVisit.add(dependency);
+          }
+        }
+      }
+      return result;
     }
 
+    /**
+     * Builds the resource module, aggregating the inherited sets in a single traversal of the
+     * reachable builders. Safe to call concurrently with other builders' {@code build} methods, as
+     * long as no builder is being modified.
+     */
     @NotNull
     public AndroidResourceModule build() {
+      Set<ArtifactLocation> allTransitiveResources = new HashSet<>();
+      Set<String> allResourceLibraryKeys = new HashSet<>();
+      Set<TargetKey> allTransitiveResourceDependencies = new HashSet<>();
+      for (Builder builder : reachableBuilders()) {
+        allTransitiveResources.addAll(builder.transitiveResources);
+        allResourceLibraryKeys.addAll(builder.resourceLibraryKeys);
+        allTransitiveResourceDependencies.addAll(builder.transitiveResourceDependencies);
+      }
       return new AndroidResourceModule(
           targetKey,
           ImmutableList.sortedCopyOf(resources),
-          ImmutableList.sortedCopyOf(transitiveResources),
-          ImmutableList.sortedCopyOf(resourceLibraryKeys),
-          ImmutableList.sortedCopyOf(transitiveResourceDependencies),
+          ImmutableList.sortedCopyOf(allTransitiveResources),
+          ImmutableList.sortedCopyOf(allResourceLibraryKeys),
+          ImmutableList.sortedCopyOf(excludeInheritedSelf(allTransitiveResourceDependencies)),
           ImmutableList.sortedCopyOf(sourceTargetKeys));
     }
   }
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.android.resources;
+
+import static com.google.common.collect.Iterables.getOnlyElement;
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.idea.blaze.android.targetmapbuilder.NbAndroidTarget.android_library;
+
+import com.google.idea.blaze.android.BlazeAndroidIntegrationTestCase;
+import com.google.idea.blaze.android.MockSdkUtil;
+import com.google.idea.blaze.base.model.primitives.WorkspacePath;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.search.GlobalSearchScope;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Integration tests for {@link BlazeLightResourceClassService}. */
+@RunWith(JUnit4.class)
+public class BlazeLightResourceClassServiceTest extends BlazeAndroidIntegrationTestCase {
+
+  private static final String FOO_R_CLASS = "com.example.foo.R";
+  private static final String BAR_R_CLASS = "com.example.bar.R";
+
+  private BlazeLightResourceClassService service;
+
+  @Before
+  public void setup() {
+    setProjectView(
+        "directories:",
+        "  java/com/example",
+        "targets:",
+        "  //java/com/example/...:all",
+        "android_sdk_platform: android-27");
+    MockSdkUtil.registerSdk(workspace, "27");
+    createManifest("java/com/example/foo", "com.example.foo");
+    createManifest("java/com/example/bar", "com.example.bar");
+    service = BlazeLightResourceClassService.getInstance(getProject());
+  }
+
+  private void createManifest(String directory, String packageName) {
+    workspace.createFile(
+        new WorkspacePath(directory + "/AndroidManifest.xml"),
+        "<?xml version=\"1.0\" encoding=\"utf-8\"?>",
+        "<manifest package=\"" + packageName + "\"/>");
+  }
+
+  private void setResourceTargets(String barResourcePackage) {
+    setTargetMap(
+        android_library("//java/com/example/foo:foo")
+            .setResourceJavaPackage("com.example.foo")
+            .res("res/values/strings.xml")
+            .manifest("AndroidManifest.xml"),
+        android_library("//java/com/example/bar:bar")
+            .setResourceJavaPackage(barResourcePackage)
+            .res("res/values/strings.xml")
+            .manifest("AndroidManifest.xml"));
+  }
+
+  private PsiClass getRClass(String qualifiedName) {
+    return getOnlyElement(
+        service.getLightRClasses(qualifiedName, GlobalSearchScope.allScope(getProject())));
+  }
+
+  @Test
+  public void rClassesCreatedOnFirstLookup() {
+    setResourceTargets("com.example.bar");
+    runFullBlazeSyncWithNoIssues();
+
+    assertThat(service.isRClassCreated(FOO_R_CLASS)).isFalse();
+    assertThat(service.isRClassCreated(BAR_R_CLASS)).isFalse();
+
+    getRClass(FOO_R_CLASS);
+
+    assertThat(service.isRClassCreated(FOO_R_CLASS)).isTrue();
+    assertThat(service.isRClassCreated(BAR_R_CLASS)).isFalse();
+  }
+
+  @Test
+  public void unchangedRClassesRetainedAcrossSyncs() {
+    setResourceTargets("com.example.bar");
+    runFullBlazeSyncWithNoIssues();
+    PsiClass fooRClass = getRClass(FOO_R_CLASS);
+    PsiClass barRClass = getRClass(BAR_R_CLASS);
+
+    setResourceTargets("com.example.bar.changed");
+    runFullBlazeSyncWithNoIssues();
+
+    assertThat(getRClass(FOO_R_CLASS)).isSameInstanceAs(fooRClass);
+    assertThat(service.getLightRClasses(BAR_R_CLASS, GlobalSearchScope.allScope(getProject())))
+        .isEmpty();
+    assertThat(getRClass("com.example.bar.changed.R")).isNotSameInstanceAs(barRClass);
+  }
+
+  @Test
+  public void allRClassesMemoizedUntilNextSync() {
+    setResourceTargets("com.example.bar");
+    runFullBlazeSyncWithNoIssues();
+
+    assertThat(service.getAllLightRClasses())
+        .containsExactly(getRClass(FOO_R_CLASS), getRClass(BAR_R_CLASS));
+    assertThat(service.getAllLightRClasses()).isSameInstanceAs(service.getAllLightRClasses());
+
+    setResourceTargets("com.example.bar.changed");
+    runFullBlazeSyncWithNoIssues();
+
+    assertThat(service.getAllLightRClasses())
+        .containsExactly(getRClass(FOO_R_CLASS), getRClass("com.example.bar.changed.R"));
+  }
+}
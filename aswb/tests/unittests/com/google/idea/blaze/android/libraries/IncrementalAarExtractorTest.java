@@ -0,0 +1,318 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.android.libraries;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.fail;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.idea.blaze.android.libraries.IncrementalAarExtractor.EntryInfo;
+import com.google.idea.blaze.base.command.buildresult.BlazeArtifact;
+import com.google.idea.blaze.base.command.buildresult.BlazeArtifact.LocalFileArtifact;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link IncrementalAarExtractor} */
+@RunWith(JUnit4.class)
+public class IncrementalAarExtractorTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private static final String MANIFEST = "AndroidManifest.xml";
+  private static final String STRINGS = "res/values/strings.xml";
+  private static final String COLORS = "res/values/colors.xml";
+
+  private static final long OLD_TIMESTAMP = 100000L;
+
+  private File aarDir;
+
+  @Before
+  public void setUp() throws IOException {
+    aarDir = temporaryFolder.newFolder("aar_dir");
+  }
+
+  @Test
+  public void extract_unpacksEntriesExceptJars() throws IOException {
+    BlazeArtifact aar =
+        localAar(
+            "lib.aar",
+            ImmutableMap.of(MANIFEST, "<manifest/>", STRINGS, "strings", "classes.jar", "jar"));
+
+    ImmutableMap<String, EntryInfo> entries =
+        IncrementalAarExtractor.extract(aar, aarDir, ImmutableMap.of());
+
+    assertThat(entries.keySet()).containsExactly(MANIFEST, STRINGS);
+    assertThat(read(aarDir, MANIFEST)).isEqualTo("<manifest/>");
+    assertThat(read(aarDir, STRINGS)).isEqualTo("strings");
+    assertThat(new File(aarDir, "classes.jar").exists()).isFalse();
+    assertThat(entries).isEqualTo(IncrementalAarExtractor.readEntries(aar));
+  }
+
+  @Test
+  public void extract_onlyRewritesChangedEntries() throws IOException {
+    ImmutableMap<String, EntryInfo> previous =
+        IncrementalAarExtractor.extract(
+            localAar("v1.aar", ImmutableMap.of(MANIFEST, "<manifest/>", STRINGS, "strings")),
+            aarDir,
+            ImmutableMap.of());
+    setOldTimestamp(aarDir, MANIFEST);
+    setOldTimestamp(aarDir, STRINGS);
+
+    IncrementalAarExtractor.extract(
+        localAar("v2.aar", ImmutableMap.of(MANIFEST, "<manifest/>", STRINGS, "changed")),
+        aarDir,
+        previous);
+
+    assertThat(new File(aarDir, MANIFEST).lastModified()).isEqualTo(OLD_TIMESTAMP);
+    assertThat(read(aarDir, STRINGS)).isEqualTo("changed");
+  }
+
+  @Test
+  public void extract_deletesRemovedEntries() throws IOException {
+    ImmutableMap<String, EntryInfo> previous =
+        IncrementalAarExtractor.extract(
+            localAar("v1.aar", ImmutableMap.of(STRINGS, "strings", COLORS, "colors")),
+            aarDir,
+            ImmutableMap.of());
+
+    ImmutableMap<String, EntryInfo> entries =
+        IncrementalAarExtractor.extract(
+            localAar("v2.aar", ImmutableMap.of(STRINGS, "strings")), aarDir, previous);
+
+    assertThat(entries.keySet()).containsExactly(STRINGS);
+    assertThat(new File(aarDir, COLORS).exists()).isFalse();
+  }
+
+  @Test
+  public void extract_restoresMissingFilesEvenIfUnchanged() throws IOException {
+    BlazeArtifact aar = localAar("lib.aar", ImmutableMap.of(STRINGS, "strings"));
+    ImmutableMap<String, EntryInfo> previous =
+        IncrementalAarExtractor.extract(aar, aarDir, ImmutableMap.of());
+    Files.delete(new File(aarDir, STRINGS).toPath());
+
+    IncrementalAarExtractor.extract(aar, aarDir, previous);
+
+    assertThat(read(aarDir, STRINGS)).isEqualTo("strings");
+  }
+
+  @Test
+  public void extract_nonLocalAar_fallsBackToStreamingEntries() throws IOException {
+    File aarFile = createAar("lib.aar", ImmutableMap.of(MANIFEST, "<manifest/>", STRINGS, "a"));
+
+    ImmutableMap<String, EntryInfo> previous =
+        IncrementalAarExtractor.extract(streamedAar(aarFile), aarDir, ImmutableMap.of());
+
+    assertThat(read(aarDir, STRINGS)).isEqualTo("a");
+    // CRCs are computed while streaming, so match those in the central directory
+    assertThat(previous).isEqualTo(IncrementalAarExtractor.readEntries(localAar(aarFile)));
+
+    setOldTimestamp(aarDir, MANIFEST);
+    File changedAarFile =
+        createAar("changed.aar", ImmutableMap.of(MANIFEST, "<manifest/>", STRINGS, "b"));
+    IncrementalAarExtractor.extract(streamedAar(changedAarFile), aarDir, previous);
+
+    assertThat(new File(aarDir, MANIFEST).lastModified()).isEqualTo(OLD_TIMESTAMP);
+    assertThat(read(aarDir, STRINGS)).isEqualTo("b");
+  }
+
+  @Test
+  public void extract_rejectsEntriesOutsideAarDirectory() throws IOException {
+    BlazeArtifact aar = localAar("evil.aar", ImmutableMap.of("../evil.xml", "evil"));
+
+    try {
+      IncrementalAarExtractor.extract(aar, aarDir, ImmutableMap.of());
+      fail("Expected IOException");
+    } catch (IOException e) {
+      assertThat(e).hasMessageThat().contains("../evil.xml");
+    }
+    assertThat(new File(aarDir.getParentFile(), "evil.xml").exists()).isFalse();
+  }
+
+  @Test
+  public void readEntries_returnsNullForUnreadableOrNonLocalAars() throws IOException {
+    File notAnAar = temporaryFolder.newFile("not_an.aar");
+    Files.write(notAnAar.toPath(), "not a zip".getBytes(UTF_8));
+    File aarFile = createAar("lib.aar", ImmutableMap.of(STRINGS, "strings"));
+
+    assertThat(IncrementalAarExtractor.readEntries(localAar(notAnAar))).isNull();
+    assertThat(IncrementalAarExtractor.readEntries(streamedAar(aarFile))).isNull();
+  }
+
+  @Test
+  public void digest_identifiesAarsWithIdenticalContents() throws IOException {
+    ImmutableMap<String, EntryInfo> entries =
+        IncrementalAarExtractor.readEntries(
+            localAar("a.aar", ImmutableMap.of(MANIFEST, "<manifest/>", STRINGS, "strings")));
+    ImmutableMap<String, EntryInfo> reordered =
+        IncrementalAarExtractor.readEntries(
+            localAar("b.aar", ImmutableMap.of(STRINGS, "strings", MANIFEST, "<manifest/>")));
+
+    assertThat(IncrementalAarExtractor.digest(reordered))
+        .isEqualTo(IncrementalAarExtractor.digest(entries));
+  }
+
+  @Test
+  public void digest_differsForDifferentContentsOfTheSameSize() throws IOException {
+    ImmutableMap<String, EntryInfo> entries =
+        IncrementalAarExtractor.readEntries(localAar("a.aar", ImmutableMap.of(STRINGS, "aaaa")));
+    ImmutableMap<String, EntryInfo> sameSize =
+        IncrementalAarExtractor.readEntries(localAar("b.aar", ImmutableMap.of(STRINGS, "bbbb")));
+    ImmutableMap<String, EntryInfo> renamed =
+        IncrementalAarExtractor.readEntries(localAar("c.aar", ImmutableMap.of(COLORS, "aaaa")));
+
+    String digest = IncrementalAarExtractor.digest(entries);
+    assertThat(IncrementalAarExtractor.digest(sameSize)).isNotEqualTo(digest);
+    assertThat(IncrementalAarExtractor.digest(renamed)).isNotEqualTo(digest);
+  }
+
+  @Test
+  public void linkFrom_hardLinksFilesOfIdenticalAar() throws IOException {
+    File sourceDir = temporaryFolder.newFolder("source_dir");
+    ImmutableMap<String, EntryInfo> entries =
+        IncrementalAarExtractor.extract(
+            localAar("lib.aar", ImmutableMap.of(MANIFEST, "<manifest/>", STRINGS, "strings")),
+            sourceDir,
+            ImmutableMap.of());
+
+    IncrementalAarExtractor.linkFrom(sourceDir, aarDir, entries, ImmutableMap.of());
+
+    assertThat(read(aarDir, STRINGS)).isEqualTo("strings");
+    assertThat(
+            Files.isSameFile(
+                new File(sourceDir, STRINGS).toPath(), new File(aarDir, STRINGS).toPath()))
+        .isTrue();
+  }
+
+  @Test
+  public void extract_neverModifiesFilesSharedWithOtherAars() throws IOException {
+    File sourceDir = temporaryFolder.newFolder("source_dir");
+    ImmutableMap<String, EntryInfo> entries =
+        IncrementalAarExtractor.extract(
+            localAar("lib.aar", ImmutableMap.of(STRINGS, "strings")), sourceDir, ImmutableMap.of());
+    IncrementalAarExtractor.linkFrom(sourceDir, aarDir, entries, ImmutableMap.of());
+
+    IncrementalAarExtractor.extract(
+        localAar("changed.aar", ImmutableMap.of(STRINGS, "changed")), aarDir, entries);
+
+    assertThat(read(aarDir, STRINGS)).isEqualTo("changed");
+    assertThat(read(sourceDir, STRINGS)).isEqualTo("strings");
+  }
+
+  @Test
+  public void linkFrom_deletesRemovedEntries() throws IOException {
+    ImmutableMap<String, EntryInfo> previous =
+        IncrementalAarExtractor.extract(
+            localAar("v1.aar", ImmutableMap.of(STRINGS, "strings", COLORS, "colors")),
+            aarDir,
+            ImmutableMap.of());
+    File sourceDir = temporaryFolder.newFolder("source_dir");
+    ImmutableMap<String, EntryInfo> entries =
+        IncrementalAarExtractor.extract(
+            localAar("v2.aar", ImmutableMap.of(STRINGS, "strings")), sourceDir, ImmutableMap.of());
+
+    IncrementalAarExtractor.linkFrom(sourceDir, aarDir, entries, previous);
+
+    assertThat(read(aarDir, STRINGS)).isEqualTo("strings");
+    assertThat(new File(aarDir, COLORS).exists()).isFalse();
+  }
+
+  @Test
+  public void manifest_roundTrips() throws IOException {
+    ImmutableMap<String, EntryInfo> entries =
+        IncrementalAarExtractor.readEntries(
+            localAar("lib.aar", ImmutableMap.of(MANIFEST, "<manifest/>", "res/raw/a b.txt", "x")));
+    File manifest = new File(aarDir, "manifest");
+
+    IncrementalAarExtractor.writeManifest(manifest, entries);
+
+    assertThat(IncrementalAarExtractor.readManifest(manifest)).isEqualTo(entries);
+  }
+
+  @Test
+  public void readManifest_invalidOrMissingManifestIsEmpty() throws IOException {
+    File manifest = new File(aarDir, "manifest");
+    assertThat(IncrementalAarExtractor.readManifest(manifest)).isEmpty();
+
+    Files.write(manifest.toPath(), "not a manifest\n".getBytes(UTF_8));
+    assertThat(IncrementalAarExtractor.readManifest(manifest)).isEmpty();
+  }
+
+  private BlazeArtifact localAar(String name, Map<String, String> entries) throws IOException {
+    return localAar(createAar(name, entries));
+  }
+
+  private File createAar(String name, Map<String, String> entries) throws IOException {
+    File aar = new File(temporaryFolder.getRoot(), name);
+    try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(aar))) {
+      for (Map.Entry<String, String> entry : entries.entrySet()) {
+        out.putNextEntry(new ZipEntry(entry.getKey()));
+        out.write(entry.getValue().getBytes(UTF_8));
+        out.closeEntry();
+      }
+    }
+    return aar;
+  }
+
+  private static BlazeArtifact localAar(File file) {
+    return new LocalFileArtifact() {
+      @Override
+      public File getFile() {
+        return file;
+      }
+
+      @Override
+      public BufferedInputStream getInputStream() throws IOException {
+        return new BufferedInputStream(new FileInputStream(file));
+      }
+    };
+  }
+
+  /** An AAR which is only available as a stream, e.g. a remote output. */
+  private static BlazeArtifact streamedAar(File file) {
+    return new BlazeArtifact() {
+      @Override
+      public long getLength() {
+        return file.length();
+      }
+
+      @Override
+      public BufferedInputStream getInputStream() throws IOException {
+        return new BufferedInputStream(new FileInputStream(file));
+      }
+    };
+  }
+
+  private static void setOldTimestamp(File aarDir, String name) {
+    assertThat(new File(aarDir, name).setLastModified(OLD_TIMESTAMP)).isTrue();
+  }
+
+  private static String read(File aarDir, String name) throws IOException {
+    return new String(Files.readAllBytes(new File(aarDir, name).toPath()), UTF_8);
+  }
+}
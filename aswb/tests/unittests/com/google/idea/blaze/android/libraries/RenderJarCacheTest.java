@@ -66,12 +66,15 @@ import com.google.idea.common.experiments.ExperimentService;
 import com.google.idea.common.experiments.MockExperimentService;
 import com.google.idea.testing.IntellijRule;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.nio.file.Paths;
 import java.util.Collection;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -191,6 +194,27 @@ public class RenderJarCacheTest {
             "com/foo/bar/baz/baz_render_jar.jar", "com/foo/bar/qux/qux_render_jar.jar");
   }
 
+  /** Test that the render JARs cached in a previous session are indexed on initialization */
+  @Test
+  public void initialize_indexesCachedJars() throws IOException {
+    File cacheDir = RenderJarCache.getCacheDirForProject(intellijRule.getProject());
+    assertThat(cacheDir.mkdirs()).isTrue();
+    File cachedJar = new File(cacheDir, "baz_render_jar_1234.jar");
+    try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(cachedJar))) {
+      out.putNextEntry(new ZipEntry("com/foo/bar/baz/Baz.class"));
+      out.closeEntry();
+    }
+
+    FileCache.EP_NAME.extensions().forEach(ep -> ep.initialize(intellijRule.getProject()));
+
+    verify(mockedArtifactCache).initialize();
+    assertThat(
+            RenderJarCache.getInstance(intellijRule.getProject())
+                .getClassIndex()
+                .getClassEntries(cachedJar))
+        .containsExactly("com/foo/bar/baz/Baz.class");
+  }
+
   /**
    * Sets up a mock {@link com.google.devtools.intellij.model.ProjectData} and creates the render
    * JARs in File System
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.android.libraries;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.idea.testing.IntellijRule;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link RenderJarClassIndex} */
+@RunWith(JUnit4.class)
+public class RenderJarClassIndexTest {
+  @Rule public final IntellijRule intellijRule = new IntellijRule();
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final RenderJarClassIndex index = new RenderJarClassIndex();
+
+  @Test
+  public void update_indexesClassEntriesOnly() throws IOException {
+    File jar =
+        createJar(
+            "foo.jar", "com/foo/Foo.class", "com/foo/Foo$Inner.class", "com/foo/res/values.xml");
+
+    index.update(ImmutableList.of(jar), /* removeOthers= */ false);
+
+    assertThat(index.getClassEntries(jar))
+        .containsExactly("com/foo/Foo.class", "com/foo/Foo$Inner.class");
+    assertThat(index.getClassEntries(jar))
+        .contains(RenderJarClassIndex.getClassEntryName("com.foo.Foo"));
+  }
+
+  @Test
+  public void update_replacesEntriesOfReindexedJar() throws IOException {
+    File jar = createJar("foo.jar", "com/foo/Foo.class");
+    index.update(ImmutableList.of(jar), /* removeOthers= */ false);
+
+    Files.delete(jar.toPath());
+    createJar("foo.jar", "com/foo/Bar.class");
+    index.update(ImmutableList.of(jar), /* removeOthers= */ false);
+
+    assertThat(index.getClassEntries(jar)).containsExactly("com/foo/Bar.class");
+  }
+
+  @Test
+  public void update_keepsOrRemovesOtherJars() throws IOException {
+    File foo = createJar("foo.jar", "com/foo/Foo.class");
+    File bar = createJar("bar.jar", "com/bar/Bar.class");
+    index.update(ImmutableList.of(foo), /* removeOthers= */ false);
+
+    index.update(ImmutableList.of(bar), /* removeOthers= */ false);
+    assertThat(index.getClassEntries(foo)).isNotNull();
+
+    index.update(ImmutableList.of(bar), /* removeOthers= */ true);
+    assertThat(index.getClassEntries(foo)).isNull();
+    assertThat(index.getClassEntries(bar)).containsExactly("com/bar/Bar.class");
+  }
+
+  @Test
+  public void update_unreadableJarIsNotIndexed() throws IOException {
+    File jar = createJar("foo.jar", "com/foo/Foo.class");
+    index.update(ImmutableList.of(jar), /* removeOthers= */ false);
+
+    Files.write(jar.toPath(), "not a jar".getBytes(StandardCharsets.UTF_8));
+    index.update(ImmutableList.of(jar), /* removeOthers= */ false);
+
+    // unindexed JARs fall back to VFS lookups, rather than being treated as empty
+    assertThat(index.getClassEntries(jar)).isNull();
+  }
+
+  @Test
+  public void modificationCount_incrementedOnEveryChange() throws IOException {
+    File jar = createJar("foo.jar", "com/foo/Foo.class");
+    long initialCount = index.getModificationCount();
+
+    index.update(ImmutableList.of(jar), /* removeOthers= */ false);
+    long updatedCount = index.getModificationCount();
+    index.clear();
+
+    assertThat(updatedCount).isGreaterThan(initialCount);
+    assertThat(index.getModificationCount()).isGreaterThan(updatedCount);
+    assertThat(index.getClassEntries(jar)).isNull();
+  }
+
+  private File createJar(String name, String... entries) throws IOException {
+    File jar = new File(temporaryFolder.getRoot(), name);
+    try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+      for (String entry : entries) {
+        out.putNextEntry(new ZipEntry(entry));
+        out.closeEntry();
+      }
+    }
+    return jar;
+  }
+}
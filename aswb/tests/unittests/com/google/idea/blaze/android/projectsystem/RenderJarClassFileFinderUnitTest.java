@@ -17,6 +17,7 @@ package com.google.idea.blaze.android.projectsystem;
 
 import static com.google.common.truth.Truth.assertThat;
 
+import com.google.idea.blaze.android.projectsystem.RenderJarClassFileFinder.MissingClassCache;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -36,4 +37,52 @@ public class RenderJarClassFileFinderUnitTest {
     assertThat(RenderJarClassFileFinder.isResourceClass("com.foo.bar.R$dimen")).isTrue();
     assertThat(RenderJarClassFileFinder.isResourceClass("com.foo.bar.NonR$InnerClass")).isFalse();
   }
+
+  @Test
+  public void testMissingClassCache_remembersMissingClasses() {
+    MissingClassCache cache = new MissingClassCache(10);
+    assertThat(cache.isMissing("com.foo.Bar", 1)).isFalse();
+
+    cache.add("com.foo.Bar", 1);
+
+    assertThat(cache.isMissing("com.foo.Bar", 1)).isTrue();
+    assertThat(cache.isMissing("com.foo.Baz", 1)).isFalse();
+  }
+
+  @Test
+  public void testMissingClassCache_clearedWhenIndexChanges() {
+    MissingClassCache cache = new MissingClassCache(10);
+    cache.isMissing("com.foo.Bar", 1);
+    cache.add("com.foo.Bar", 1);
+
+    assertThat(cache.isMissing("com.foo.Bar", 2)).isFalse();
+    assertThat(cache.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void testMissingClassCache_ignoresClassesMissingFromStaleIndex() {
+    MissingClassCache cache = new MissingClassCache(10);
+    cache.isMissing("com.foo.Bar", 1);
+    cache.isMissing("com.foo.Baz", 2);
+
+    cache.add("com.foo.Bar", 1);
+
+    assertThat(cache.isMissing("com.foo.Bar", 2)).isFalse();
+  }
+
+  @Test
+  public void testMissingClassCache_resetRatherThanGrownPastMaxSize() {
+    MissingClassCache cache = new MissingClassCache(3);
+    cache.isMissing("com.foo.A", 1);
+    cache.add("com.foo.A", 1);
+    cache.add("com.foo.B", 1);
+    cache.add("com.foo.C", 1);
+    assertThat(cache.size()).isEqualTo(3);
+
+    cache.add("com.foo.D", 1);
+
+    assertThat(cache.size()).isEqualTo(1);
+    assertThat(cache.isMissing("com.foo.D", 1)).isTrue();
+    assertThat(cache.isMissing("com.foo.A", 1)).isFalse();
+  }
 }
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.android.sync.model;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
+import com.google.idea.blaze.base.ideinfo.TargetKey;
+import com.google.idea.blaze.base.model.primitives.Label;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link AndroidResourceModule.Builder}. */
+@RunWith(JUnit4.class)
+public class AndroidResourceModuleTest {
+
+  private static final TargetKey APP = key("//app:app");
+  private static final TargetKey LIB = key("//lib:lib");
+  private static final TargetKey BASE = key("//base:base");
+
+  @Test
+  public void build_inheritsTransitiveSetsOfDependencies() {
+    AndroidResourceModule.Builder base =
+        AndroidResourceModule.builder(BASE)
+            .addResourceAndTransitiveResource(res("base/res"))
+            .addResourceLibraryKey("base_aar");
+    AndroidResourceModule.Builder lib =
+        AndroidResourceModule.builder(LIB)
+            .addResourceAndTransitiveResource(res("lib/res"))
+            .addTransitiveResourceDependency(BASE)
+            .addTransitiveDependency(base);
+    AndroidResourceModule.Builder app =
+        AndroidResourceModule.builder(APP)
+            .addResourceAndTransitiveResource(res("app/res"))
+            .addTransitiveResourceDependency(LIB)
+            .addTransitiveDependency(lib);
+
+    AndroidResourceModule module = app.build();
+
+    assertThat(module.resources).containsExactly(res("app/res"));
+    assertThat(module.transitiveResources)
+        .containsExactly(res("app/res"), res("lib/res"), res("base/res"));
+    assertThat(module.resourceLibraryKeys).containsExactly("base_aar");
+    assertThat(module.transitiveResourceDependencies).containsExactly(LIB, BASE);
+    assertThat(app.getTransitiveResources()).containsExactlyElementsIn(module.transitiveResources);
+    assertThat(app.getResourceLibraryKeys()).containsExactlyElementsIn(module.resourceLibraryKeys);
+    assertThat(app.getTransitiveResourceDependencies())
+        .containsExactlyElementsIn(module.transitiveResourceDependencies);
+  }
+
+  @Test
+  public void getTransitiveResourceDependencies_ownKeyNotInherited() {
+    AndroidResourceModule.Builder lib =
+        AndroidResourceModule.builder(LIB).addTransitiveResourceDependency(APP);
+    AndroidResourceModule.Builder app =
+        AndroidResourceModule.builder(APP).addTransitiveDependency(lib);
+
+    assertThat(app.getTransitiveResourceDependencies()).isEmpty();
+    assertThat(app.build().transitiveResourceDependencies).isEmpty();
+  }
+
+  @Test
+  public void getTransitiveResourceDependencies_ownKeyKeptIfAddedDirectly() {
+    AndroidResourceModule.Builder lib =
+        AndroidResourceModule.builder(LIB).addTransitiveResourceDependency(APP);
+    AndroidResourceModule.Builder app =
+        AndroidResourceModule.builder(APP)
+            .addTransitiveResourceDependency(APP)
+            .addTransitiveDependency(lib);
+
+    assertThat(app.getTransitiveResourceDependencies()).containsExactly(APP);
+    assertThat(app.build().transitiveResourceDependencies).containsExactly(APP);
+  }
+
+  @Test
+  public void build_cyclicDependencies_eachBuilderVisitedOnce() {
+    AndroidResourceModule.Builder app =
+        AndroidResourceModule.builder(APP).addTransitiveResource(res("app/res"));
+    AndroidResourceModule.Builder lib =
+        AndroidResourceModule.builder(LIB)
+            .addTransitiveResource(res("lib/res"))
+            .addTransitiveResourceDependency(APP)
+            .addTransitiveDependency(app);
+    app.addTransitiveResourceDependency(LIB).addTransitiveDependency(lib);
+    // a dependency on itself is ignored
+    app.addTransitiveDependency(app);
+
+    AndroidResourceModule appModule = app.build();
+    AndroidResourceModule libModule = lib.build();
+
+    assertThat(appModule.transitiveResources).containsExactly(res("app/res"), res("lib/res"));
+    assertThat(appModule.transitiveResourceDependencies).containsExactly(LIB);
+    assertThat(libModule.transitiveResources).containsExactly(res("app/res"), res("lib/res"));
+    assertThat(libModule.transitiveResourceDependencies).containsExactly(APP);
+  }
+
+  @Test
+  public void build_reflectsLaterChangesToDependencies() {
+    AndroidResourceModule.Builder base = AndroidResourceModule.builder(BASE);
+    AndroidResourceModule.Builder lib =
+        AndroidResourceModule.builder(LIB).addTransitiveDependency(base);
+    AndroidResourceModule.Builder app =
+        AndroidResourceModule.builder(APP).addTransitiveDependency(lib);
+    AndroidResourceModule before = app.build();
+
+    base.addTransitiveResource(res("base/res"))
+        .addResourceLibraryKey("base_aar")
+        .addTransitiveResourceDependency(key("//other:other"));
+    AndroidResourceModule after = app.build();
+
+    assertThat(before.transitiveResources).isEmpty();
+    assertThat(after.transitiveResources).containsExactly(res("base/res"));
+    assertThat(after.resourceLibraryKeys).containsExactly("base_aar");
+    assertThat(after.transitiveResourceDependencies).containsExactly(key("//other:other"));
+  }
+
+  @Test
+  public void getters_returnCopies() {
+    AndroidResourceModule.Builder lib =
+        AndroidResourceModule.builder(LIB).addTransitiveResource(res("lib/res"));
+    AndroidResourceModule.Builder app =
+        AndroidResourceModule.builder(APP).addTransitiveDependency(lib);
+
+    app.getTransitiveResources().clear();
+    app.getResourceLibraryKeys().add("other_aar");
+    app.getTransitiveResourceDependencies().add(BASE);
+    lib.addTransitiveResource(res("lib/res2"));
+
+    assertThat(app.getTransitiveResources()).containsExactly(res("lib/res"), res("lib/res2"));
+    assertThat(app.getResourceLibraryKeys()).isEmpty();
+    assertThat(app.getTransitiveResourceDependencies()).isEmpty();
+  }
+
+  private static TargetKey key(String label) {
+    return TargetKey.forPlainTarget(Label.create(label));
+  }
+
+  private static ArtifactLocation res(String relativePath) {
+    return ArtifactLocation.builder().setRelativePath(relativePath).setIsSource(true).build();
+  }
+}
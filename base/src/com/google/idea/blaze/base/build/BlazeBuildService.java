@@ -214,31 +214,42 @@ public class BlazeBuildService {
                     SaveUtil.saveAllFiles();
                     BlazeBuildListener.EP_NAME.extensions().forEach(e -> e.buildStarting(project));
 
-                    ShardedTargetsResult shardedTargets =
-                        BlazeBuildTargetSharder.expandAndShardTargets(
-                            project,
-                            context,
-                            workspaceRoot,
-                            buildParams,
-                            projectView,
-                            projectData.getWorkspacePathResolver(),
-                            targets);
-                    if (shardedTargets.buildResult.status == BuildResult.Status.FATAL_ERROR) {
-                      return null;
+                    // listeners are always notified of the build's completion once it has started
+                    BlazeBuildOutputs buildOutputs;
+                    boolean buildFinished = false;
+                    try {
+                      ShardedTargetsResult shardedTargets =
+                          BlazeBuildTargetSharder.expandAndShardTargets(
+                              project,
+                              context,
+                              workspaceRoot,
+                              buildParams,
+                              projectView,
+                              projectData.getWorkspacePathResolver(),
+                              targets);
+                      if (shardedTargets.buildResult.status == BuildResult.Status.FATAL_ERROR) {
+                        return null;
+                      }
+                      buildOutputs =
+                          BlazeIdeInterface.getInstance()
+                              .build(
+                                  project,
+                                  context,
+                                  workspaceRoot,
+                                  projectData.getBlazeVersionData(),
+                                  buildParams,
+                                  projectView,
+                                  projectData.getBlazeInfo(),
+                                  shardedTargets.shardedTargets,
+                                  projectData.getWorkspaceLanguageSettings(),
+                                  ImmutableSet.of(OutputGroup.COMPILE));
+                      buildFinished = true;
+                    } finally {
+                      if (!buildFinished) {
+                        notifyBuildCompleted(
+                            project, BlazeBuildOutputs.noOutputs(BuildResult.FATAL_ERROR));
+                      }
                     }
-                    BlazeBuildOutputs buildOutputs =
-                        BlazeIdeInterface.getInstance()
-                            .build(
-                                project,
-                                context,
-                                workspaceRoot,
-                                projectData.getBlazeVersionData(),
-                                buildParams,
-                                projectView,
-                                projectData.getBlazeInfo(),
-                                shardedTargets.shardedTargets,
-                                projectData.getWorkspaceLanguageSettings(),
-                                ImmutableSet.of(OutputGroup.COMPILE));
 
                     refreshFileCachesAndNotifyListeners(context, buildOutputs, project);
 
@@ -263,20 +274,20 @@ public class BlazeBuildService {
         new FutureCallback<Void>() {
           @Override
           public void onSuccess(@Nullable Void unused) {
-            BlazeBuildListener.EP_NAME
-                .extensions()
-                .forEach(ep -> ep.buildCompleted(project, buildOutputs));
+            notifyBuildCompleted(project, buildOutputs);
           }
 
           @Override
           public void onFailure(Throwable throwable) {
             // No additional steps for failures. The file caches notify users and
             // print logs as required.
-            BlazeBuildListener.EP_NAME
-                .extensions()
-                .forEach(ep -> ep.buildCompleted(project, buildOutputs));
+            notifyBuildCompleted(project, buildOutputs);
           }
         },
         MoreExecutors.directExecutor());
   }
+
+  private static void notifyBuildCompleted(Project project, BlazeBuildOutputs buildOutputs) {
+    BlazeBuildListener.EP_NAME.extensions().forEach(ep -> ep.buildCompleted(project, buildOutputs));
+  }
 }
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.dependencies;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Multimaps;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.idea.blaze.base.command.BlazeInvocationContext.ContextType;
+import com.google.idea.blaze.base.model.primitives.Label;
+import com.google.idea.blaze.base.model.primitives.WorkspacePath;
+import com.google.idea.blaze.base.scope.Scope;
+import com.google.idea.blaze.base.scope.scopes.IdeaLogScope;
+import com.google.idea.common.experiments.IntExperiment;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import org.jetbrains.ide.PooledThreadExecutor;
+
+/**
+ * Coalesces concurrent background rdeps lookups into batched 'same_pkg_direct_rdeps' queries.
+ *
+ * <p>Lookups arriving within a short window of each other are run as a single blaze query, and only
+ * one query runs at a time, so the query output base stays warm and the blaze server isn't
+ * monopolized by many concurrent invocations. Lookups arriving while a query is running are batched
+ * into the next one.
+ *
+ * <p>Since the direct rdeps of a source are always in the source's package, the results of a
+ * batched query can be attributed to each source by package. Each batch therefore contains at most
+ * one source per package.
+ */
+final class BlazeQueryRdepsBatcher {
+
+  private static final IntExperiment batchWindowMillis =
+      new IntExperiment("blaze.query.rdeps.batch.window.millis", 100);
+
+  private static final IntExperiment maxBatchSize =
+      new IntExperiment("blaze.query.rdeps.max.batch.size", 100);
+
+  /** Runs a direct rdeps query for the given sources. */
+  @VisibleForTesting
+  interface RdepsQuery {
+    /** Returns the direct rdeps of the given sources, or null if the query failed. */
+    @Nullable
+    ImmutableList<TargetInfo> run(Collection<Label> sources);
+  }
+
+  private final RdepsQuery query;
+
+  /** Arranges for the given task to run on a background thread after the batch window. */
+  private final Consumer<Runnable> batchScheduler;
+
+  @GuardedBy("this")
+  private final Map<Label, SettableFuture<List<TargetInfo>>> pending = new LinkedHashMap<>();
+
+  /** Lookups in the currently running batch, shared with later lookups of the same sources. */
+  @GuardedBy("this")
+  private final Map<Label, SettableFuture<List<TargetInfo>>> inFlight = new HashMap<>();
+
+  /** Whether a batch is scheduled or running. Pending lookups are picked up by that batch. */
+  @GuardedBy("this")
+  private boolean batchScheduled = false;
+
+  BlazeQueryRdepsBatcher(Project project) {
+    this(
+        sources ->
+            Scope.root(
+                context -> {
+                  context.push(new IdeaLogScope());
+                  return BlazeQuerySourceToTargetProvider.runDirectRdepsQuery(
+                      project, sources, context, ContextType.Other);
+                }),
+        task ->
+            AppExecutorUtil.getAppScheduledExecutorService()
+                .schedule(
+                    () -> PooledThreadExecutor.INSTANCE.execute(task),
+                    batchWindowMillis.getValue(),
+                    TimeUnit.MILLISECONDS));
+  }
+
+  @VisibleForTesting
+  BlazeQueryRdepsBatcher(RdepsQuery query, Consumer<Runnable> batchScheduler) {
+    this.query = query;
+    this.batchScheduler = batchScheduler;
+  }
+
+  static BlazeQueryRdepsBatcher getInstance(Project project) {
+    return ServiceManager.getService(project, BlazeQueryRdepsBatcher.class);
+  }
+
+  /**
+   * Returns the direct rdeps of the given source, from a batched query. The future's value is null
+   * if the query failed.
+   */
+  ListenableFuture<List<TargetInfo>> getTargetsBuildingSource(Label source) {
+    synchronized (this) {
+      SettableFuture<List<TargetInfo>> future = inFlight.get(source);
+      if (future == null || future.isCancelled()) {
+        future = pending.get(source);
+      }
+      if (future != null && !future.isCancelled()) {
+        return future;
+      }
+      future = SettableFuture.create();
+      pending.put(source, future);
+      if (!batchScheduled) {
+        batchScheduled = true;
+        batchScheduler.accept(this::runPendingBatches);
+      }
+      return future;
+    }
+  }
+
+  private void runPendingBatches() {
+    boolean finished = false;
+    try {
+      while (true) {
+        ImmutableMap<Label, SettableFuture<List<TargetInfo>>> batch;
+        synchronized (this) {
+          if (pending.isEmpty()) {
+            batchScheduled = false;
+            finished = true;
+            return;
+          }
+          batch = takeBatch(pending, maxBatchSize.getValue());
+          inFlight.putAll(batch);
+        }
+        try {
+          runBatch(batch);
+        } finally {
+          synchronized (this) {
+            batch.forEach(inFlight::remove);
+          }
+        }
+      }
+    } finally {
+      if (!finished) {
+        // don't leave the remaining lookups waiting on a batch which will never run
+        synchronized (this) {
+          batchScheduled = !pending.isEmpty();
+          if (batchScheduled) {
+            batchScheduler.accept(this::runPendingBatches);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes and returns up to {@code maxSize} pending lookups, with at most one per package.
+   * Cancelled lookups are dropped.
+   */
+  @VisibleForTesting
+  static <T> ImmutableMap<Label, SettableFuture<T>> takeBatch(
+      Map<Label, SettableFuture<T>> pending, int maxSize) {
+    ImmutableMap.Builder<Label, SettableFuture<T>> batch = ImmutableMap.builder();
+    Set<WorkspacePath> packages = new HashSet<>();
+    Iterator<Map.Entry<Label, SettableFuture<T>>> iterator = pending.entrySet().iterator();
+    while (iterator.hasNext() && packages.size() < Math.max(maxSize, 1)) {
+      Map.Entry<Label, SettableFuture<T>> entry = iterator.next();
+      if (entry.getValue().isCancelled()) {
+        iterator.remove();
+      } else if (packages.add(entry.getKey().blazePackage())) {
+        batch.put(entry);
+        iterator.remove();
+      }
+    }
+    return batch.build();
+  }
+
+  private void runBatch(ImmutableMap<Label, SettableFuture<List<TargetInfo>>> batch) {
+    if (batch.isEmpty()) {
+      return;
+    }
+    try {
+      ImmutableList<TargetInfo> targets = query.run(batch.keySet());
+      if (targets == null) {
+        batch.values().forEach(future -> future.set(null));
+        return;
+      }
+      ImmutableListMultimap<WorkspacePath, TargetInfo> byPackage =
+          Multimaps.index(targets, t -> t.label.blazePackage());
+      batch.forEach((source, future) -> future.set(byPackage.get(source.blazePackage())));
+    } catch (Throwable t) {
+      batch.values().forEach(future -> future.setException(t));
+    }
+  }
+}
@@ -65,6 +65,10 @@ public class BlazeQuerySourceToTargetProvider implements SourceToTargetProvider
   private static final BoolExperiment enabled =
       new BoolExperiment("use.blaze.query.for.background.rdeps", false);
 
+  /** Coalesce concurrent background lookups into batched queries. */
+  private static final BoolExperiment batchQueries =
+      new BoolExperiment("blaze.query.rdeps.batching", true);
+
   @Override
   public Future<List<TargetInfo>> getTargetsBuildingSourceFile(
       Project project, String workspaceRelativePath) {
@@ -75,6 +79,9 @@ public class BlazeQuerySourceToTargetProvider implements SourceToTargetProvider
     if (label == null) {
       return Futures.immediateFuture(null);
     }
+    if (batchQueries.getValue()) {
+      return BlazeQueryRdepsBatcher.getInstance(project).getTargetsBuildingSource(label);
+    }
     return PooledThreadExecutor.INSTANCE.submit(
         () ->
             Scope.root(
@@ -98,7 +105,7 @@ public class BlazeQuerySourceToTargetProvider implements SourceToTargetProvider
   }
 
   @Nullable
-  private static ImmutableList<TargetInfo> runDirectRdepsQuery(
+  static ImmutableList<TargetInfo> runDirectRdepsQuery(
       Project project, Collection<Label> sources, BlazeContext context, ContextType type) {
     if (sources.isEmpty()) {
       return ImmutableList.of();
@@ -0,0 +1,307 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.run;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.idea.blaze.base.bazel.BuildSystemProvider;
+import com.google.idea.blaze.base.dependencies.TargetInfo;
+import com.google.idea.blaze.base.dependencies.TestSize;
+import com.google.idea.blaze.base.model.BlazeProjectData;
+import com.google.idea.blaze.base.model.primitives.RuleType;
+import com.google.idea.blaze.base.run.targetfinder.FuturesUtil;
+import com.google.idea.blaze.base.settings.Blaze;
+import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
+import com.google.idea.common.experiments.BoolExperiment;
+import com.google.idea.common.experiments.IntExperiment;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent;
+import com.intellij.psi.PsiFile;
+import com.intellij.util.PathUtil;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
+import org.jetbrains.ide.PooledThreadExecutor;
+
+/**
+ * Caches the results of {@link SourceToTargetFinder} and {@link TestTargetHeuristic} lookups, so
+ * that repeatedly computing run configurations and gutter markers for the same source file doesn't
+ * repeatedly search the target map or run blaze queries.
+ *
+ * <p>The cache is cleared whenever the project data changes (i.e. after each sync) or a BUILD file
+ * is modified.
+ */
+public final class SourceToTargetCache {
+
+  private static final BoolExperiment enabled =
+      new BoolExperiment("blaze.source.to.target.cache", true);
+
+  private static final IntExperiment maxCachedLookups =
+      new IntExperiment("blaze.source.to.target.cache.size", 1000);
+
+  private final Project project;
+  private final Cache<TargetsKey, ListenableFuture<Collection<TargetInfo>>> targetsCache;
+  private final Cache<TestTargetKey, ListenableFuture<TargetInfo>> testTargetCache;
+
+  /** The project data the cached results were computed from. */
+  @Nullable private volatile BlazeProjectData projectData;
+
+  public SourceToTargetCache(Project project) {
+    this.project = project;
+    int maxSize = maxCachedLookups.getValue();
+    this.targetsCache = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+    this.testTargetCache = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+    project
+        .getMessageBus()
+        .connect(project)
+        .subscribe(VirtualFileManager.VFS_CHANGES, new BuildFileListener());
+  }
+
+  @Nullable
+  static SourceToTargetCache getInstance(Project project) {
+    return enabled.getValue()
+        ? ServiceManager.getService(project, SourceToTargetCache.class)
+        : null;
+  }
+
+  /**
+   * Finds the candidate targets for the given sources via the {@link SourceToTargetFinder}s, using
+   * the cache if enabled.
+   */
+  static ListenableFuture<Collection<TargetInfo>> findTargetInfoFuture(
+      Project project, Set<File> sourceFiles, Optional<RuleType> ruleType) {
+    SourceToTargetCache cache = getInstance(project);
+    if (cache == null) {
+      return findTargetInfoFutureUncached(project, sourceFiles, ruleType);
+    }
+    return cache.getTargets(
+        sourceFiles,
+        ruleType,
+        () -> findTargetInfoFutureUncached(project, sourceFiles, ruleType));
+  }
+
+  /**
+   * Chooses the test target for the given source via the {@link TestTargetHeuristic}s, using the
+   * cache if enabled.
+   */
+  @Nullable
+  static ListenableFuture<TargetInfo> targetFutureForSourceFile(
+      Project project, PsiFile psiFile, File file, @Nullable TestSize testSize) {
+    SourceToTargetCache cache = getInstance(project);
+    if (cache == null) {
+      return targetFutureForSourceFileUncached(project, psiFile, file, testSize);
+    }
+    return cache.getTestTarget(
+        file,
+        psiFile.getModificationStamp(),
+        testSize,
+        () -> targetFutureForSourceFileUncached(project, psiFile, file, testSize));
+  }
+
+  private static ListenableFuture<Collection<TargetInfo>> findTargetInfoFutureUncached(
+      Project project, Set<File> sourceFiles, Optional<RuleType> ruleType) {
+    Iterable<Future<Collection<TargetInfo>>> futures =
+        Iterables.transform(
+            Arrays.asList(SourceToTargetFinder.EP_NAME.getExtensions()),
+            f -> f.targetsForSourceFiles(project, sourceFiles, ruleType));
+    return FuturesUtil.getFirstFutureSatisfyingPredicate(futures, t -> t != null && !t.isEmpty());
+  }
+
+  @Nullable
+  private static ListenableFuture<TargetInfo> targetFutureForSourceFileUncached(
+      Project project, PsiFile psiFile, File file, @Nullable TestSize testSize) {
+    ListenableFuture<Collection<TargetInfo>> targets =
+        SourceToTargetFinder.findTargetInfoFuture(project, file, Optional.of(RuleType.TEST));
+    if (targets.isDone() && FuturesUtil.getIgnoringErrors(targets) == null) {
+      return null;
+    }
+    Executor executor =
+        ApplicationManager.getApplication().isUnitTestMode()
+            ? MoreExecutors.directExecutor()
+            : PooledThreadExecutor.INSTANCE;
+    return Futures.transform(
+        targets,
+        list ->
+            list == null
+                ? null
+                : TestTargetHeuristic.chooseTestTargetForSourceFile(
+                    project, psiFile, file, list, testSize),
+        executor);
+  }
+
+  /** Returns the cached candidate targets for the given sources, computing them if necessary. */
+  ListenableFuture<Collection<TargetInfo>> getTargets(
+      Set<File> sourceFiles,
+      Optional<RuleType> ruleType,
+      Supplier<ListenableFuture<Collection<TargetInfo>>> loader) {
+    return get(targetsCache, new TargetsKey(sourceFiles, ruleType), loader);
+  }
+
+  /**
+   * Returns the cached test target chosen for the given source, computing it if necessary. The PSI
+   * modification stamp is part of the key, as the heuristics may inspect the source's contents.
+   */
+  @Nullable
+  ListenableFuture<TargetInfo> getTestTarget(
+      File sourceFile,
+      long psiModificationStamp,
+      @Nullable TestSize testSize,
+      Supplier<ListenableFuture<TargetInfo>> loader) {
+    return get(
+        testTargetCache, new TestTargetKey(sourceFile, psiModificationStamp, testSize), loader);
+  }
+
+  private <K, V> ListenableFuture<V> get(
+      Cache<K, ListenableFuture<V>> cache, K key, Supplier<ListenableFuture<V>> loader) {
+    BlazeProjectData currentProjectData =
+        BlazeProjectDataManager.getInstance(project).getBlazeProjectData();
+    if (currentProjectData != projectData) {
+      projectData = currentProjectData;
+      invalidateAll();
+    }
+    ListenableFuture<V> future = cache.getIfPresent(key);
+    if (future == null || isFailed(future)) {
+      future = loader.get();
+      if (future != null) {
+        cache.put(key, future);
+      }
+    }
+    return future;
+  }
+
+  /** Failed or cancelled lookups aren't cached. */
+  private static boolean isFailed(ListenableFuture<?> future) {
+    if (!future.isDone()) {
+      return false;
+    }
+    try {
+      Futures.getDone(future);
+      return false;
+    } catch (ExecutionException | CancellationException e) {
+      return true;
+    }
+  }
+
+  private void invalidateAll() {
+    targetsCache.invalidateAll();
+    testTargetCache.invalidateAll();
+  }
+
+  private class BuildFileListener implements BulkFileListener {
+    @Override
+    public void after(List<? extends VFileEvent> events) {
+      if (!Blaze.isBlazeProject(project)) {
+        return;
+      }
+      BuildSystemProvider provider = Blaze.getBuildSystemProvider(project);
+      for (VFileEvent event : events) {
+        if (provider.isBuildFile(PathUtil.getFileName(event.getPath()))
+            || isRenamedToBuildFile(provider, event)) {
+          invalidateAll();
+          return;
+        }
+      }
+    }
+
+    private boolean isRenamedToBuildFile(BuildSystemProvider provider, VFileEvent event) {
+      if (!(event instanceof VFilePropertyChangeEvent)) {
+        return false;
+      }
+      VFilePropertyChangeEvent change = (VFilePropertyChangeEvent) event;
+      return VirtualFile.PROP_NAME.equals(change.getPropertyName())
+          && provider.isBuildFile(String.valueOf(change.getNewValue()));
+    }
+  }
+
+  private static final class TargetsKey {
+    final ImmutableSet<File> sourceFiles;
+    final Optional<RuleType> ruleType;
+
+    TargetsKey(Set<File> sourceFiles, Optional<RuleType> ruleType) {
+      this.sourceFiles = ImmutableSet.copyOf(sourceFiles);
+      this.ruleType = ruleType;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof TargetsKey)) {
+        return false;
+      }
+      TargetsKey other = (TargetsKey) o;
+      return sourceFiles.equals(other.sourceFiles) && ruleType.equals(other.ruleType);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(sourceFiles, ruleType);
+    }
+  }
+
+  private static final class TestTargetKey {
+    final File sourceFile;
+    final long psiModificationStamp;
+    @Nullable final TestSize testSize;
+
+    TestTargetKey(File sourceFile, long psiModificationStamp, @Nullable TestSize testSize) {
+      this.sourceFile = sourceFile;
+      this.psiModificationStamp = psiModificationStamp;
+      this.testSize = testSize;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof TestTargetKey)) {
+        return false;
+      }
+      TestTargetKey other = (TestTargetKey) o;
+      return sourceFile.equals(other.sourceFile)
+          && psiModificationStamp == other.psiModificationStamp
+          && testSize == other.testSize;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(sourceFile, psiModificationStamp, testSize);
+    }
+  }
+}
@@ -17,7 +17,6 @@ package com.google.idea.blaze.base.run;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Iterables;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.idea.blaze.base.dependencies.TargetInfo;
 import com.google.idea.blaze.base.model.primitives.RuleType;
@@ -25,7 +24,6 @@ import com.google.idea.blaze.base.run.targetfinder.FuturesUtil;
 import com.intellij.openapi.extensions.ExtensionPointName;
 import com.intellij.openapi.project.Project;
 import java.io.File;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Optional;
 import java.util.Set;
@@ -75,11 +73,7 @@ public interface SourceToTargetFinder {
    */
   static ListenableFuture<Collection<TargetInfo>> findTargetInfoFuture(
       Project project, Set<File> sourceFiles, Optional<RuleType> ruleType) {
-    Iterable<Future<Collection<TargetInfo>>> futures =
-        Iterables.transform(
-            Arrays.asList(EP_NAME.getExtensions()),
-            f -> f.targetsForSourceFiles(project, sourceFiles, ruleType));
-    return FuturesUtil.getFirstFutureSatisfyingPredicate(futures, t -> t != null && !t.isEmpty());
+    return SourceToTargetCache.findTargetInfoFuture(project, sourceFiles, ruleType);
   }
 
   /**
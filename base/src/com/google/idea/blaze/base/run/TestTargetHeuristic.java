@@ -15,14 +15,10 @@
  */
 package com.google.idea.blaze.base.run;
 
-import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
-import com.google.common.util.concurrent.MoreExecutors;
 import com.google.idea.blaze.base.dependencies.TargetInfo;
 import com.google.idea.blaze.base.dependencies.TestSize;
 import com.google.idea.blaze.base.model.primitives.RuleType;
-import com.google.idea.blaze.base.run.targetfinder.FuturesUtil;
-import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.extensions.ExtensionPointName;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
@@ -34,10 +30,8 @@ import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
-import org.jetbrains.ide.PooledThreadExecutor;
 
 /** Heuristic to match test targets to source files. */
 public interface TestTargetHeuristic {
@@ -98,23 +92,7 @@ public interface TestTargetHeuristic {
       return null;
     }
     Project project = element.getProject();
-    ListenableFuture<Collection<TargetInfo>> targets =
-        SourceToTargetFinder.findTargetInfoFuture(project, file, Optional.of(RuleType.TEST));
-    if (targets.isDone() && FuturesUtil.getIgnoringErrors(targets) == null) {
-      return null;
-    }
-    Executor executor =
-        ApplicationManager.getApplication().isUnitTestMode()
-            ? MoreExecutors.directExecutor()
-            : PooledThreadExecutor.INSTANCE;
-    return Futures.transform(
-        targets,
-        list ->
-            list == null
-                ? null
-                : TestTargetHeuristic.chooseTestTargetForSourceFile(
-                    project, psiFile, file, list, testSize),
-        executor);
+    return SourceToTargetCache.targetFutureForSourceFile(project, psiFile, file, testSize);
   }
 
   /**
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.run.smrunner;
+
+import com.google.idea.blaze.base.run.smrunner.BlazeXmlSchema.ErrorOrFailureOrSkipped;
+import com.google.idea.blaze.base.run.smrunner.BlazeXmlSchema.TestCase;
+import com.google.idea.blaze.base.run.smrunner.BlazeXmlSchema.TestSuite;
+import com.google.idea.blaze.base.run.smrunner.BlazeXmlSchema.Values;
+import java.io.InputStream;
+import java.util.ArrayList;
+import javax.annotation.Nullable;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * A StAX-based parser for the test.xml generated by the blaze/bazel testing framework.
+ *
+ * <p>Produces the same {@link TestSuite} model as the JAXB-based {@link BlazeXmlSchema#parse}, but
+ * reads the document in a single forward pass, without the reflective overhead or intermediate
+ * DOM nodes of JAXB unmarshalling.
+ */
+final class BlazeXmlStreamParser {
+
+  private static final XMLInputFactory FACTORY = createInputFactory();
+
+  private static XMLInputFactory createInputFactory() {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    return factory;
+  }
+
+  private BlazeXmlStreamParser() {}
+
+  static TestSuite parse(InputStream input) {
+    XMLStreamReader reader = null;
+    try {
+      reader = FACTORY.createXMLStreamReader(input);
+      reader.nextTag();
+      String rootName = reader.getLocalName();
+      if ("testsuite".equals(rootName)) {
+        return readTestSuite(reader);
+      }
+      if (!"testsuites".equals(rootName)) {
+        throw new RuntimeException("Unexpected root element in test XML: " + rootName);
+      }
+      // optional wrapping XML element. Some test runners don't include it.
+      TestSuite outer = new TestSuite();
+      while (nextChildElement(reader)) {
+        if ("testsuite".equals(reader.getLocalName())) {
+          outer.testSuites.add(readTestSuite(reader));
+        } else {
+          skipElement(reader);
+        }
+      }
+      return outer;
+    } catch (XMLStreamException e) {
+      throw new RuntimeException("Failed to parse test XML", e);
+    } finally {
+      closeQuietly(reader);
+    }
+  }
+
+  private static TestSuite readTestSuite(XMLStreamReader reader) throws XMLStreamException {
+    TestSuite suite = new TestSuite();
+    suite.name = reader.getAttributeValue(null, "name");
+    suite.classname = reader.getAttributeValue(null, "classname");
+    suite.tests = parseInt(reader.getAttributeValue(null, "tests"));
+    suite.failures = parseInt(reader.getAttributeValue(null, "failures"));
+    suite.errors = parseInt(reader.getAttributeValue(null, "errors"));
+    suite.skipped = parseInt(reader.getAttributeValue(null, "skipped"));
+    suite.disabled = parseInt(reader.getAttributeValue(null, "disabled"));
+    suite.time = parseDouble(reader.getAttributeValue(null, "time"));
+    while (nextChildElement(reader)) {
+      switch (reader.getLocalName()) {
+        case "system-out":
+          suite.sysOut = reader.getElementText();
+          break;
+        case "system-err":
+          suite.sysErr = reader.getElementText();
+          break;
+        case "error":
+          suite.error = readErrorOrFailureOrSkipped(reader);
+          break;
+        case "failure":
+          suite.failure = readErrorOrFailureOrSkipped(reader);
+          break;
+        case "testsuite":
+          suite.testSuites.add(readTestSuite(reader));
+          break;
+        case "testdecorator":
+          suite.testDecorators.add(readTestSuite(reader));
+          break;
+        case "testcase":
+          suite.testCases.add(readTestCase(reader));
+          break;
+        default:
+          skipElement(reader);
+      }
+    }
+    return suite;
+  }
+
+  private static TestCase readTestCase(XMLStreamReader reader) throws XMLStreamException {
+    TestCase test = new TestCase();
+    test.name = reader.getAttributeValue(null, "name");
+    test.classname = reader.getAttributeValue(null, "classname");
+    test.status = reader.getAttributeValue(null, "status");
+    test.result = reader.getAttributeValue(null, "result");
+    test.time = reader.getAttributeValue(null, "time");
+    while (nextChildElement(reader)) {
+      switch (reader.getLocalName()) {
+        case "system-out":
+          test.sysOut = reader.getElementText();
+          break;
+        case "system-err":
+          test.sysErr = reader.getElementText();
+          break;
+        case "error":
+          test.errors.add(readErrorOrFailureOrSkipped(reader));
+          break;
+        case "failure":
+          test.failures.add(readErrorOrFailureOrSkipped(reader));
+          break;
+        case "skipped":
+          test.skipped = readErrorOrFailureOrSkipped(reader);
+          break;
+        default:
+          skipElement(reader);
+      }
+    }
+    return test;
+  }
+
+  private static ErrorOrFailureOrSkipped readErrorOrFailureOrSkipped(XMLStreamReader reader)
+      throws XMLStreamException {
+    ErrorOrFailureOrSkipped err = new ErrorOrFailureOrSkipped();
+    err.message = reader.getAttributeValue(null, "message");
+    err.type = reader.getAttributeValue(null, "type");
+    while (reader.hasNext()) {
+      int event = reader.next();
+      switch (event) {
+        case XMLStreamConstants.END_ELEMENT:
+          return err;
+        case XMLStreamConstants.CHARACTERS:
+        case XMLStreamConstants.CDATA:
+        case XMLStreamConstants.SPACE:
+          if (err.content == null) {
+            err.content = new ArrayList<>();
+          }
+          err.content.add(reader.getText());
+          break;
+        case XMLStreamConstants.START_ELEMENT:
+          if ("expected".equals(reader.getLocalName())) {
+            err.expected = readValues(reader);
+          } else if ("actual".equals(reader.getLocalName())) {
+            err.actual = readValues(reader);
+          } else {
+            skipElement(reader);
+          }
+          break;
+        default: // fall out
+      }
+    }
+    return err;
+  }
+
+  private static Values readValues(XMLStreamReader reader) throws XMLStreamException {
+    Values values = new Values();
+    while (nextChildElement(reader)) {
+      if ("value".equals(reader.getLocalName())) {
+        values.values.add(reader.getElementText());
+      } else {
+        skipElement(reader);
+      }
+    }
+    return values;
+  }
+
+  /**
+   * Advances to the next child element of the current element. Returns false (with the reader
+   * positioned on the parent's end tag) if there are no more children.
+   */
+  private static boolean nextChildElement(XMLStreamReader reader) throws XMLStreamException {
+    while (reader.hasNext()) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        return true;
+      }
+      if (event == XMLStreamConstants.END_ELEMENT) {
+        return false;
+      }
+    }
+    return false;
+  }
+
+  /** Skips the current element and all its children, leaving the reader on its end tag. */
+  private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+    int depth = 1;
+    while (depth > 0 && reader.hasNext()) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        depth++;
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        depth--;
+      }
+    }
+  }
+
+  private static int parseInt(@Nullable String value) {
+    if (value == null) {
+      return 0;
+    }
+    try {
+      return Integer.parseInt(value.trim());
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  private static double parseDouble(@Nullable String value) {
+    if (value == null) {
+      return 0;
+    }
+    try {
+      return Double.parseDouble(value.trim());
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  private static void closeQuietly(@Nullable XMLStreamReader reader) {
+    if (reader == null) {
+      return;
+    }
+    try {
+      reader.close();
+    } catch (XMLStreamException e) {
+      // ignore
+    }
+  }
+}
@@ -15,6 +15,9 @@
  */
 package com.google.idea.blaze.base.run.smrunner;
 
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static java.util.stream.Collectors.toCollection;
+
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -65,6 +68,8 @@ public class BlazeXmlToTestEventsConverter extends OutputToGeneralTestEventsConv
   private static final ErrorOrFailureOrSkipped NO_ERROR = new ErrorOrFailureOrSkipped();
   private static final BoolExperiment removeZeroRunTimeCheck =
       new BoolExperiment("remove.zero.run.time.check", true);
+  private static final BoolExperiment useStreamingXmlParser =
+      new BoolExperiment("blaze.test.xml.streaming.parser", true);
 
   {
     NO_ERROR.message = "No message"; // cannot be null
@@ -102,16 +107,22 @@ public class BlazeXmlToTestEventsConverter extends OutputToGeneralTestEventsConv
     onStartTesting();
     getProcessor().onTestsReporterAttached();
     try {
+      boolean useStreamingParser = useStreamingXmlParser.getValue();
       List<ListenableFuture<ParsedTargetResults>> futures = new ArrayList<>();
       for (Label label : testResults.perTargetResults.keySet()) {
         futures.add(
-            FetchExecutor.EXECUTOR.submit(
-                () -> parseTestXml(label, testResults.perTargetResults.get(label))));
+            parseTestXml(label, testResults.perTargetResults.get(label), useStreamingParser));
       }
-      List<ParsedTargetResults> parsedResults =
-          FuturesUtil.getIgnoringErrors(Futures.allAsList(futures));
-      if (parsedResults != null) {
-        parsedResults.forEach(this::processParsedTestResults);
+      // report each target as soon as its output is parsed, rather than waiting for all targets
+      for (ListenableFuture<ParsedTargetResults> future : futures) {
+        ParsedTargetResults parsedResults = FuturesUtil.getIgnoringErrors(future);
+        if (Thread.currentThread().isInterrupted()) {
+          futures.forEach(f -> f.cancel(true));
+          return;
+        }
+        if (parsedResults != null) {
+          processParsedTestResults(parsedResults);
+        }
       }
     } finally {
       testResultFinderStrategy.deleteTemporaryOutputXmlFiles();
@@ -137,21 +148,38 @@ public class BlazeXmlToTestEventsConverter extends OutputToGeneralTestEventsConv
     }
   }
 
-  /** Parse all test XML files from a single test target. */
-  private static ParsedTargetResults parseTestXml(
-      Label label, Collection<BlazeTestResult> results) {
+  /**
+   * Parse all test XML files from a single test target. Each output file (e.g. per shard or
+   * attempt) is parsed in parallel.
+   */
+  private static ListenableFuture<ParsedTargetResults> parseTestXml(
+      Label label, Collection<BlazeTestResult> results, boolean useStreamingParser) {
     List<BlazeArtifact> outputFiles = new ArrayList<>();
     results.forEach(result -> outputFiles.addAll(result.getOutputXmlFiles()));
-    List<TestSuite> targetSuites = new ArrayList<>();
+    List<ListenableFuture<TestSuite>> suiteFutures = new ArrayList<>();
     for (BlazeArtifact file : outputFiles) {
-      try (InputStream input = file.getInputStream()) {
-        targetSuites.add(BlazeXmlSchema.parse(input));
-      } catch (Exception e) {
-        // ignore parsing errors -- most common cause is user cancellation, which we can't easily
-        // recognize.
-      }
+      suiteFutures.add(
+          FetchExecutor.EXECUTOR.submit(() -> parseTestXml(file, useStreamingParser)));
+    }
+    return Futures.transform(
+        Futures.allAsList(suiteFutures),
+        suites -> {
+          List<TestSuite> targetSuites =
+              suites.stream().filter(Objects::nonNull).collect(toCollection(ArrayList::new));
+          return new ParsedTargetResults(label, results, outputFiles, targetSuites);
+        },
+        directExecutor());
+  }
+
+  @Nullable
+  private static TestSuite parseTestXml(BlazeArtifact file, boolean useStreamingParser) {
+    try (InputStream input = file.getInputStream()) {
+      return useStreamingParser ? BlazeXmlStreamParser.parse(input) : BlazeXmlSchema.parse(input);
+    } catch (Exception e) {
+      // ignore parsing errors -- most common cause is user cancellation, which we can't easily
+      // recognize.
+      return null;
     }
-    return new ParsedTargetResults(label, results, outputFiles, targetSuites);
   }
 
   /** Process all parsed test XML files from a single test target. */
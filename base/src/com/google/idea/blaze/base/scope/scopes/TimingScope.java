@@ -89,7 +89,8 @@ public class TimingScope implements BlazeScope {
   }
 
   private TimedEvent getTimedEvent() {
-    return new TimedEvent(name, eventType, duration.orElse(Duration.ZERO), children.isEmpty());
+    return new TimedEvent(
+        name, eventType, startTime, duration.orElse(Duration.ZERO), children.isEmpty());
   }
 
   /** Adds a TimingScope listener to its list of listeners. */
@@ -584,7 +584,9 @@ final class SyncPhaseCoordinator {
           .setStartTime(startTime)
           .setBlazeExecTime(totalBlazeTime(stats.getCurrentTimedEvents()))
           .setTotalClockTime(Duration.between(startTime, Instant.now()));
-      EventLoggingService.getInstance().log(stats.build());
+      SyncStats syncStats = stats.build();
+      EventLoggingService.getInstance().log(syncStats);
+      SyncTraceExporter.exportTrace(project, syncStats);
 
       String msg = syncResult == SyncResult.CANCELLED ? "Sync cancelled" : "Sync finished";
       context.output(new StatusOutput(msg));
@@ -0,0 +1,289 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.gson.stream.JsonWriter;
+import com.google.idea.blaze.base.logging.utils.BuildPhaseSyncStats;
+import com.google.idea.blaze.base.logging.utils.ShardStats;
+import com.google.idea.blaze.base.logging.utils.SyncStats;
+import com.google.idea.blaze.base.model.primitives.TargetExpression;
+import com.google.idea.blaze.base.scope.scopes.TimingScopeListener.TimedEvent;
+import com.google.idea.blaze.base.settings.BlazeImportSettings;
+import com.google.idea.blaze.base.settings.BlazeImportSettingsManager;
+import com.google.idea.blaze.base.sync.data.BlazeDataStorage;
+import com.google.idea.common.experiments.BoolExperiment;
+import com.google.idea.common.experiments.IntExperiment;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Writes the timing information of each sync to the project data directory, in the Chrome
+ * trace-event format (viewable in chrome://tracing or Perfetto), so that slow syncs can be compared
+ * phase-by-phase after the fact.
+ *
+ * <p>Only the most recent traces are kept.
+ */
+final class SyncTraceExporter {
+
+  private static final Logger logger = Logger.getInstance(SyncTraceExporter.class);
+
+  private static final BoolExperiment enabled =
+      new BoolExperiment("blaze.sync.trace.export", true);
+
+  private static final IntExperiment maxTraceFiles =
+      new IntExperiment("blaze.sync.trace.export.max.files", 10);
+
+  private static final String TRACE_SUBDIRECTORY = "sync_traces";
+  private static final String TRACE_FILE_PREFIX = "sync-";
+  private static final String TRACE_FILE_SUFFIX = ".json";
+
+  private static final DateTimeFormatter FILE_NAME_FORMATTER =
+      DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS").withZone(ZoneId.systemDefault());
+
+  private SyncTraceExporter() {}
+
+  /** Asynchronously writes a trace for the given sync, then prunes old traces. */
+  static void exportTrace(Project project, SyncStats stats) {
+    if (!enabled.getValue()) {
+      return;
+    }
+    BlazeImportSettings importSettings =
+        BlazeImportSettingsManager.getInstance(project).getImportSettings();
+    if (importSettings == null) {
+      return;
+    }
+    File traceDir =
+        new File(BlazeDataStorage.getProjectDataDir(importSettings), TRACE_SUBDIRECTORY);
+    int maxFiles = maxTraceFiles.getValue();
+    AppExecutorUtil.getAppExecutorService()
+        .execute(() -> writeTraceFile(traceDir, stats, maxFiles));
+  }
+
+  private static void writeTraceFile(File traceDir, SyncStats stats, int maxFiles) {
+    File traceFile =
+        new File(
+            traceDir,
+            TRACE_FILE_PREFIX + FILE_NAME_FORMATTER.format(stats.startTime()) + TRACE_FILE_SUFFIX);
+    try {
+      Files.createDirectories(traceDir.toPath());
+      try (Writer writer =
+          new BufferedWriter(
+              new OutputStreamWriter(Files.newOutputStream(traceFile.toPath()), UTF_8))) {
+        writeTrace(stats, writer);
+      }
+    } catch (IOException e) {
+      logger.warn("Failed to write sync trace to " + traceFile, e);
+      return;
+    }
+    pruneOldTraces(traceDir, maxFiles);
+  }
+
+  /** Deletes all but the newest {@code maxFiles} trace files. */
+  private static void pruneOldTraces(File traceDir, int maxFiles) {
+    File[] traces =
+        traceDir.listFiles(
+            (dir, name) -> name.startsWith(TRACE_FILE_PREFIX) && name.endsWith(TRACE_FILE_SUFFIX));
+    if (traces == null || traces.length <= maxFiles) {
+      return;
+    }
+    // file names are timestamps, so lexicographic order is chronological order
+    Arrays.sort(traces, Comparator.comparing(File::getName).reversed());
+    for (int i = Math.max(maxFiles, 0); i < traces.length; i++) {
+      if (!traces[i].delete()) {
+        logger.warn("Failed to delete old sync trace " + traces[i]);
+      }
+    }
+  }
+
+  /**
+   * Writes the timed events of a sync as Chrome trace 'complete' events, with the sync and build
+   * phase stats attached as arguments.
+   */
+  @VisibleForTesting
+  static void writeTrace(SyncStats stats, Writer out) throws IOException {
+    Instant syncStart = stats.startTime();
+    JsonWriter writer = new JsonWriter(out);
+    writer.beginObject();
+    writer.name("displayTimeUnit").value("ms");
+    writer.name("otherData");
+    writeSyncStats(writer, stats);
+
+    writer.name("traceEvents").beginArray();
+    writer.beginObject();
+    writer.name("name").value("sync");
+    writer.name("cat").value("sync");
+    writer.name("ph").value("X");
+    writer.name("ts").value(0);
+    writer.name("dur").value(toMicros(stats.totalClockTime()));
+    writer.name("pid").value(1);
+    writer.name("tid").value(0);
+    writer.endObject();
+
+    List<TimedEvent> events = stats.timedEvents();
+    int[] lanes = assignLanes(events);
+    for (int i = 0; i < events.size(); i++) {
+      TimedEvent event = events.get(i);
+      writer.beginObject();
+      writer.name("name").value(event.name);
+      writer.name("cat").value(event.type.toString());
+      writer.name("ph").value("X");
+      writer.name("ts").value(toMicros(Duration.between(syncStart, event.startTime)));
+      writer.name("dur").value(toMicros(event.duration));
+      writer.name("pid").value(1);
+      writer.name("tid").value(lanes[i] + 1);
+      writer.endObject();
+    }
+
+    // the build phase events are already part of the sync's timed events; add a summary event per
+    // build phase in a separate process, carrying the build and sharding stats
+    ImmutableList<BuildPhaseSyncStats> buildPhases = stats.buildPhaseStats();
+    for (int i = 0; i < buildPhases.size(); i++) {
+      BuildPhaseSyncStats buildStats = buildPhases.get(i);
+      Instant buildStart =
+          buildStats.timedEvents().stream()
+              .map(e -> e.startTime)
+              .min(Comparator.naturalOrder())
+              .orElse(syncStart);
+      writer.beginObject();
+      writer.name("name").value("Build phase " + (i + 1));
+      writer.name("cat").value("build");
+      writer.name("ph").value("X");
+      writer.name("ts").value(toMicros(Duration.between(syncStart, buildStart)));
+      writer.name("dur").value(toMicros(buildStats.totalTime()));
+      writer.name("pid").value(2);
+      writer.name("tid").value(i);
+      writer.name("args");
+      writeBuildPhaseStats(writer, buildStats);
+      writer.endObject();
+    }
+    writer.endArray();
+    writer.endObject();
+    writer.flush();
+  }
+
+  private static void writeSyncStats(JsonWriter writer, SyncStats stats) throws IOException {
+    writer.beginObject();
+    writer.name("syncMode").value(stats.syncMode().toString());
+    writer.name("syncTitle").value(stats.syncTitle());
+    writer.name("syncOrigin").value(stats.syncOrigin());
+    writer.name("syncResult").value(stats.syncResult().toString());
+    writer.name("syncBinaryType").value(stats.syncBinaryType().toString());
+    writer.name("startTime").value(stats.startTime().toString());
+    writer.name("totalClockTimeMillis").value(stats.totalClockTime().toMillis());
+    writer.name("blazeExecTimeMillis").value(stats.blazeExecTime().toMillis());
+    writer.name("workspaceType").value(stats.workspaceType().getName());
+    writer.name("targetMapSize").value(stats.targetMapSize());
+    writer.name("libraryCount").value(stats.libraryCount());
+    writer.endObject();
+  }
+
+  private static void writeBuildPhaseStats(JsonWriter writer, BuildPhaseSyncStats stats)
+      throws IOException {
+    writer.beginObject();
+    writer.name("buildResult").value(stats.buildResult().status.toString());
+    writer.name("targets").beginArray();
+    for (TargetExpression target : stats.targets()) {
+      writer.value(target.toString());
+    }
+    writer.endArray();
+    writer.name("syncSharded").value(stats.syncSharded());
+    writer.name("shardCount").value(stats.shardCount());
+    writer.name("parallelBuilds").value(stats.parallelBuilds());
+    writer.name("targetsDerivedFromDirectories").value(stats.targetsDerivedFromDirectories());
+    writer.name("buildIds").beginArray();
+    for (String buildId : stats.buildIds()) {
+      writer.value(buildId);
+    }
+    writer.endArray();
+    ShardStats shardStats = stats.shardStats();
+    writer.name("shardingApproach").value(shardStats.shardingApproach().toString());
+    writer.name("suggestedTargetSizePerShard").value(shardStats.suggestedTargetSizePerShard());
+    writer.name("actualTargetSizePerShard").beginArray();
+    for (int size : shardStats.actualTargetSizePerShard()) {
+      writer.value(size);
+    }
+    writer.endArray();
+    writer.endObject();
+  }
+
+  /**
+   * Assigns each event to a lane (trace thread) such that events within a lane are either nested or
+   * disjoint, which the trace viewers require to render them as a flame chart. Events from
+   * concurrent scopes (e.g. parallel sharded builds) end up in separate lanes.
+   */
+  @VisibleForTesting
+  static int[] assignLanes(List<TimedEvent> events) {
+    Integer[] order = new Integer[events.size()];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    // parents start no later than, and last at least as long as, their children
+    Arrays.sort(
+        order,
+        Comparator.<Integer, Instant>comparing(i -> events.get(i).startTime)
+            .thenComparing(i -> events.get(i).duration, Comparator.reverseOrder()));
+
+    int[] lanes = new int[events.size()];
+    // the end times of the currently open events in each lane, innermost last
+    List<Deque<Instant>> openEvents = new ArrayList<>();
+    for (int index : order) {
+      TimedEvent event = events.get(index);
+      Instant start = event.startTime;
+      Instant end = start.plus(event.duration);
+      int lane = 0;
+      for (; lane < openEvents.size(); lane++) {
+        Deque<Instant> open = openEvents.get(lane);
+        while (!open.isEmpty() && !open.peekLast().isAfter(start)) {
+          open.removeLast();
+        }
+        if (open.isEmpty() || !end.isAfter(open.peekLast())) {
+          break;
+        }
+      }
+      if (lane == openEvents.size()) {
+        openEvents.add(new ArrayDeque<>());
+      }
+      openEvents.get(lane).addLast(end);
+      lanes[index] = lane;
+    }
+    return lanes;
+  }
+
+  private static long toMicros(Duration duration) {
+    return duration.toNanos() / 1000;
+  }
+}
@@ -18,10 +18,12 @@ package com.google.idea.blaze.base.sync.aspects;
 import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.collect.ImmutableSet.toImmutableSet;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Ordering;
@@ -96,12 +98,14 @@ import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Ref;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.pom.NavigatableAdapter;
+import com.intellij.util.PathUtil;
 import java.io.File;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -259,6 +263,7 @@ public class BlazeIdeInterfaceAspectsImpl implements BlazeIdeInterface {
             project,
             context,
             prevState,
+            files,
             diff,
             configHandler,
             projectState.getBlazeVersionData(),
@@ -288,6 +293,7 @@ public class BlazeIdeInterfaceAspectsImpl implements BlazeIdeInterface {
       Project project,
       BlazeContext parentContext,
       @Nullable BlazeIdeInterfaceState prevState,
+      Collection<OutputArtifact> files,
       ArtifactsDiff fileState,
       BlazeConfigurationHandler configHandler,
       BlazeVersionData versionData,
@@ -324,6 +330,7 @@ public class BlazeIdeInterfaceAspectsImpl implements BlazeIdeInterface {
               }
 
               // Update removed unless we're merging with the old state
+              Collection<OutputArtifact> filesToRead = fileState.getUpdatedOutputs();
               if (!mergeWithOldState) {
                 for (ArtifactState removed : fileState.getRemovedOutputs()) {
                   TargetKey key = state.ideInfoToTargetKey.remove(removed.getKey());
@@ -331,6 +338,7 @@ public class BlazeIdeInterfaceAspectsImpl implements BlazeIdeInterface {
                     targetMap.remove(key);
                   }
                 }
+                filesToRead = removeStaleBundledTargets(files, fileState, state, targetMap);
               }
 
               AtomicLong totalSizeLoaded = new AtomicLong(0);
@@ -339,22 +347,28 @@ public class BlazeIdeInterfaceAspectsImpl implements BlazeIdeInterface {
               ListeningExecutorService executor = BlazeExecutor.getInstance().getExecutor();
 
               // Read protos from any new files
-              List<ListenableFuture<TargetFilePair>> futures = Lists.newArrayList();
-              for (OutputArtifact file : fileState.getUpdatedOutputs()) {
+              List<ListenableFuture<List<TargetFilePair>>> futures = Lists.newArrayList();
+              for (OutputArtifact file : filesToRead) {
                 futures.add(
                     executor.submit(
                         () -> {
                           totalSizeLoaded.addAndGet(file.getLength());
-                          IntellijIdeInfo.TargetIdeInfo message =
-                              aspectStrategy.readAspectFile(file);
-                          TargetIdeInfo target =
-                              protoToTarget(
-                                  languageSettings,
-                                  importRoots,
-                                  message,
-                                  ignoredLanguages,
-                                  syncTime);
-                          return new TargetFilePair(file, target);
+                          List<IntellijIdeInfo.TargetIdeInfo> messages =
+                              AspectStrategy.isIdeInfoBundle(file.getKey())
+                                  ? aspectStrategy.readAspectBundle(file)
+                                  : ImmutableList.of(aspectStrategy.readAspectFile(file));
+                          List<TargetFilePair> targets = new ArrayList<>(messages.size());
+                          for (IntellijIdeInfo.TargetIdeInfo message : messages) {
+                            TargetIdeInfo target =
+                                protoToTarget(
+                                    languageSettings,
+                                    importRoots,
+                                    message,
+                                    ignoredLanguages,
+                                    syncTime);
+                            targets.add(new TargetFilePair(file, target));
+                          }
+                          return targets;
                         }));
               }
 
@@ -364,15 +378,25 @@ public class BlazeIdeInterfaceAspectsImpl implements BlazeIdeInterface {
 
               // Update state with result from proto files
               int duplicateTargetLabels = 0;
+              Set<String> bundledTargets = new HashSet<>();
               try {
-                for (TargetFilePair targetFilePair : Futures.allAsList(futures).get()) {
+                for (TargetFilePair targetFilePair :
+                    Iterables.concat(Futures.allAsList(futures).get())) {
                   if (targetFilePair.target != null) {
                     OutputArtifact file = targetFilePair.file;
                     String config = file.getConfigurationMnemonic();
                     configurations.add(config);
                     TargetKey key = targetFilePair.target.getKey();
+                    String entryKey = file.getKey();
+                    if (AspectStrategy.isIdeInfoBundle(entryKey)) {
+                      // bundles in the same package can hold the same target
+                      if (!bundledTargets.add(config + "#" + key)) {
+                        continue;
+                      }
+                      entryKey = BlazeIdeInterfaceState.bundleEntryKey(entryKey, key);
+                    }
                     if (targetMap.putIfAbsent(key, targetFilePair.target) == null) {
-                      state.ideInfoToTargetKey.forcePut(file.getKey(), key);
+                      state.ideInfoToTargetKey.forcePut(entryKey, key);
                     } else {
                       if (!newTargets.add(key)) {
                         duplicateTargetLabels++;
@@ -380,7 +404,7 @@ public class BlazeIdeInterfaceAspectsImpl implements BlazeIdeInterface {
                       // prioritize the default configuration over build order
                       if (Objects.equals(config, configHandler.defaultConfigurationPathComponent)) {
                         targetMap.put(key, targetFilePair.target);
-                        state.ideInfoToTargetKey.forcePut(file.getKey(), key);
+                        state.ideInfoToTargetKey.forcePut(entryKey, key);
                       }
                     }
                   }
@@ -396,7 +420,7 @@ public class BlazeIdeInterfaceAspectsImpl implements BlazeIdeInterface {
                   PrintOutput.log(
                       String.format(
                           "Loaded %d aspect files, total size %dkB",
-                          fileState.getUpdatedOutputs().size(), totalSizeLoaded.get() / 1024)));
+                          filesToRead.size(), totalSizeLoaded.get() / 1024)));
               if (duplicateTargetLabels > 0) {
                 context.output(
                     new PerformanceWarning(
@@ -420,9 +444,13 @@ public class BlazeIdeInterfaceAspectsImpl implements BlazeIdeInterface {
               }
 
               // update sync time for unchanged targets
-              for (String artifactKey : fileState.getNewState().keySet()) {
-                TargetKey targetKey = state.ideInfoToTargetKey.get(artifactKey);
-                TargetIdeInfo target = targetKey != null ? targetMap.get(targetKey) : null;
+              for (Map.Entry<String, TargetKey> entry : state.ideInfoToTargetKey.entrySet()) {
+                String artifactKey = BlazeIdeInterfaceState.artifactKey(entry.getKey());
+                if (!fileState.getNewState().containsKey(artifactKey)) {
+                  continue;
+                }
+                TargetKey targetKey = entry.getValue();
+                TargetIdeInfo target = targetMap.get(targetKey);
                 if (target != null) {
                   targetMap.put(targetKey, target.updateSyncTime(syncTime));
                 }
@@ -445,6 +473,59 @@ public class BlazeIdeInterfaceAspectsImpl implements BlazeIdeInterface {
     return result.result;
   }
 
+  /**
+   * Returns the aspect output files to read, given the updated and removed files.
+   *
+   * <p>Ide info bundles in the same package can hold the same targets, each of which is only
+   * recorded against one of them. So when a bundle is updated or removed, the targets read from all
+   * bundles in its package are removed from the target map, and the package's remaining bundles are
+   * read again.
+   */
+  @VisibleForTesting
+  static Collection<OutputArtifact> removeStaleBundledTargets(
+      Collection<OutputArtifact> files,
+      ArtifactsDiff fileState,
+      BlazeIdeInterfaceState.Builder state,
+      Map<TargetKey, TargetIdeInfo> targetMap) {
+    Set<String> stalePackages = new HashSet<>();
+    for (OutputArtifact updated : fileState.getUpdatedOutputs()) {
+      if (AspectStrategy.isIdeInfoBundle(updated.getKey())) {
+        stalePackages.add(PathUtil.getParentPath(updated.getKey()));
+      }
+    }
+    for (ArtifactState removed : fileState.getRemovedOutputs()) {
+      if (AspectStrategy.isIdeInfoBundle(removed.getKey())) {
+        stalePackages.add(PathUtil.getParentPath(removed.getKey()));
+      }
+    }
+    if (stalePackages.isEmpty()) {
+      return fileState.getUpdatedOutputs();
+    }
+    Set<String> staleEntries =
+        state.ideInfoToTargetKey.keySet().stream()
+            .filter(
+                k ->
+                    AspectStrategy.isIdeInfoBundle(BlazeIdeInterfaceState.artifactKey(k))
+                        && stalePackages.contains(
+                            PathUtil.getParentPath(BlazeIdeInterfaceState.artifactKey(k))))
+            .collect(toImmutableSet());
+    for (String entryKey : staleEntries) {
+      TargetKey key = state.ideInfoToTargetKey.remove(entryKey);
+      if (key != null) {
+        targetMap.remove(key);
+      }
+    }
+    Map<String, OutputArtifact> filesToRead = new LinkedHashMap<>();
+    fileState.getUpdatedOutputs().forEach(f -> filesToRead.put(f.getKey(), f));
+    for (OutputArtifact file : files) {
+      if (AspectStrategy.isIdeInfoBundle(file.getKey())
+          && stalePackages.contains(PathUtil.getParentPath(file.getKey()))) {
+        filesToRead.putIfAbsent(file.getKey(), file);
+      }
+    }
+    return filesToRead.values();
+  }
+
   private static boolean shouldIgnoreTarget(
       WorkspaceLanguageSettings languageSettings,
       ImportRoots importRoots,
@@ -15,6 +15,8 @@
  */
 package com.google.idea.blaze.base.sync.aspects;
 
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+
 import com.google.common.base.Functions;
 import com.google.common.collect.BiMap;
 import com.google.common.collect.HashBiMap;
@@ -27,8 +29,10 @@ import com.google.idea.blaze.base.filecache.ArtifactState;
 import com.google.idea.blaze.base.filecache.ArtifactStateProtoConverter;
 import com.google.idea.blaze.base.ideinfo.ProtoWrapper;
 import com.google.idea.blaze.base.ideinfo.TargetKey;
+import com.google.idea.blaze.base.sync.aspects.strategy.AspectStrategy;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.function.Predicate;
 
 /** Sync state for aspect output files, and their mapping to targets. */
@@ -43,7 +47,8 @@ public final class BlazeIdeInterfaceState
    * target map.
    *
    * <p>This excludes targets for unsupported languages, and duplicates (targets built against
-   * multiple configurations).
+   * multiple configurations). Targets read from an ide info bundle are keyed by {@link
+   * #bundleEntryKey}.
    */
   final ImmutableBiMap<String, TargetKey> ideInfoFileToTargetKey;
 
@@ -81,11 +86,32 @@ public final class BlazeIdeInterfaceState
     return proto.build();
   }
 
+  /** The key of a target read from an ide info bundle, which may hold several targets. */
+  static String bundleEntryKey(String bundleKey, TargetKey target) {
+    return bundleKey + "#" + target;
+  }
+
+  /**
+   * Returns the key of the artifact a target was read from.
+   *
+   * <p>Bundle file names always end with {@link AspectStrategy#IDE_INFO_BUNDLE_SUFFIX}, so artifact
+   * keys can't otherwise contain it followed by a '#'.
+   */
+  static String artifactKey(String entryKey) {
+    String suffix = AspectStrategy.IDE_INFO_BUNDLE_SUFFIX;
+    int index = entryKey.indexOf(suffix + "#");
+    return index == -1 ? entryKey : entryKey.substring(0, index + suffix.length());
+  }
+
   public BlazeIdeInterfaceState filter(Predicate<TargetKey> targetsToKeep) {
     BiMap<String, TargetKey> filteredBiMap =
         Maps.filterValues(ideInfoFileToTargetKey, targetsToKeep::test);
+    Set<String> artifactKeys =
+        filteredBiMap.keySet().stream()
+            .map(BlazeIdeInterfaceState::artifactKey)
+            .collect(toImmutableSet());
     return new BlazeIdeInterfaceState(
-        Maps.filterKeys(ideInfoFileState, filteredBiMap::containsKey), filteredBiMap);
+        Maps.filterKeys(ideInfoFileState, artifactKeys::contains), filteredBiMap);
   }
 
   @Override
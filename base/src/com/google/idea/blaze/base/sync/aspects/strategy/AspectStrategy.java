@@ -44,8 +44,11 @@ import javax.annotation.Nullable;
 /** Aspect strategy for Skylark. */
 public abstract class AspectStrategy {
 
+  /** The suffix of aspect output files holding the ide info of several targets. */
+  public static final String IDE_INFO_BUNDLE_SUFFIX = ".intellij-info-bundle.txt";
+
   public static final Predicate<String> ASPECT_OUTPUT_FILE_PREDICATE =
-      str -> str.endsWith(".intellij-info.txt");
+      str -> str.endsWith(".intellij-info.txt") || isIdeInfoBundle(str);
 
   /** A Blaze output group created by the aspect. */
   public enum OutputGroup {
@@ -79,6 +82,13 @@ public abstract class AspectStrategy {
   private static final BoolExperiment directDepsTrimmingEnabled =
       new BoolExperiment("sync.allow.requesting.direct.deps", true);
 
+  /**
+   * Whether the ide info of targets in the same package should be requested as a single bundle
+   * file, rather than one file per target, when supported by the aspect.
+   */
+  private static final BoolExperiment ideInfoBundlesEnabled =
+      new BoolExperiment("sync.request.ide.info.bundles", false);
+
   /** True if the aspect available to the plugin supports direct deps trimming. */
   private final boolean aspectSupportsDirectDepsTrimming;
 
@@ -88,6 +98,11 @@ public abstract class AspectStrategy {
 
   public abstract String getName();
 
+  /** True if the aspect available to the plugin can bundle the ide info of each package. */
+  protected boolean aspectSupportsIdeInfoBundles() {
+    return false;
+  }
+
   protected abstract List<String> getAspectFlags();
 
   /**
@@ -137,7 +152,8 @@ public abstract class AspectStrategy {
       OutputGroup outputGroup, Set<LanguageClass> activeLanguages, boolean directDepsOnly) {
     ImmutableList.Builder<String> outputGroupsBuilder = ImmutableList.builder();
     if (outputGroup.equals(OutputGroup.INFO)) {
-      outputGroupsBuilder.add(outputGroup.prefix + "generic");
+      outputGroupsBuilder.add(
+          outputGroup.prefix + (useIdeInfoBundles() ? "generic-bundle" : "generic"));
     }
     activeLanguages.stream()
         .map(l -> getOutputGroupForLanguage(outputGroup, l, directDepsOnly))
@@ -169,6 +185,23 @@ public abstract class AspectStrategy {
     }
   }
 
+  /** Returns true if the file holds the ide info of several targets. */
+  public static boolean isIdeInfoBundle(String path) {
+    return path.endsWith(IDE_INFO_BUNDLE_SUFFIX);
+  }
+
+  /** Reads an ide info bundle file, which holds the ide info of several targets. */
+  public final ImmutableList<IntellijIdeInfo.TargetIdeInfo> readAspectBundle(BlazeArtifact file)
+      throws IOException {
+    try (InputStream inputStream = file.getInputStream()) {
+      IntellijIdeInfo.TargetIdeInfoBundle.Builder builder =
+          IntellijIdeInfo.TargetIdeInfoBundle.newBuilder();
+      TextFormat.Parser parser = TextFormat.Parser.newBuilder().setAllowUnknownFields(true).build();
+      parser.merge(new InputStreamReader(inputStream, UTF_8), builder);
+      return ImmutableList.copyOf(builder.getTargetsList());
+    }
+  }
+
   @Nullable
   private String getOutputGroupForLanguage(
       OutputGroup group, LanguageClass language, boolean directDepsOnly) {
@@ -178,7 +211,9 @@ public abstract class AspectStrategy {
     }
     directDepsOnly = directDepsOnly && allowDirectDepsTrimming(language);
     if (!directDepsOnly) {
-      return group.prefix + langSuffix;
+      return group == OutputGroup.INFO && useIdeInfoBundles()
+          ? group.prefix + langSuffix + "-bundle"
+          : group.prefix + langSuffix;
     }
     return group.prefix + langSuffix + "-direct-deps";
   }
@@ -189,6 +224,10 @@ public abstract class AspectStrategy {
     return group != null ? group.suffix : null;
   }
 
+  private boolean useIdeInfoBundles() {
+    return aspectSupportsIdeInfoBundles() && ideInfoBundlesEnabled.getValue();
+  }
+
   private boolean allowDirectDepsTrimming(LanguageClass language) {
     return aspectSupportsDirectDepsTrimming
         && directDepsTrimmingEnabled.getValue()
@@ -53,6 +53,11 @@ public class AspectStrategyBazel extends AspectStrategy {
     return "AspectStrategySkylarkBazel";
   }
 
+  @Override
+  protected boolean aspectSupportsIdeInfoBundles() {
+    return true;
+  }
+
   @Override
   protected List<String> getAspectFlags() {
     return ImmutableList.of(ASPECT_FLAG, getAspectRepositoryOverrideFlag());
@@ -19,6 +19,7 @@ import static com.google.common.collect.ImmutableSet.toImmutableSet;
 
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableSet;
+import com.google.idea.blaze.base.build.BlazeBuildListener;
 import com.google.idea.blaze.base.logging.EventLoggingService;
 import com.google.idea.blaze.base.model.primitives.TargetExpression;
 import com.google.idea.blaze.base.scope.BlazeContext;
@@ -29,6 +30,7 @@ import com.google.idea.blaze.base.sync.BlazeSyncManager;
 import com.google.idea.blaze.base.sync.BlazeSyncParams;
 import com.google.idea.blaze.base.sync.SyncListener;
 import com.google.idea.blaze.base.sync.SyncMode;
+import com.google.idea.blaze.base.sync.aspects.BlazeBuildOutputs;
 import com.google.idea.blaze.base.sync.status.BlazeSyncStatus;
 import com.google.idea.common.experiments.BoolExperiment;
 import com.intellij.openapi.components.ProjectComponent;
@@ -46,6 +48,7 @@ import com.intellij.openapi.vfs.VirtualFileManager;
 import com.intellij.openapi.vfs.VirtualFileMoveEvent;
 import com.intellij.openapi.vfs.VirtualFilePropertyEvent;
 import java.time.Duration;
+import java.time.Instant;
 import java.util.HashMap;
 import java.util.Map;
 import javax.annotation.Nullable;
@@ -60,9 +63,24 @@ public class AutoSyncHandler implements ProjectComponent {
   private static final BoolExperiment autoSyncEnabled =
       new BoolExperiment("blaze.auto.sync.enabled", true);
 
+  private static final BoolExperiment deferDuringBuilds =
+      new BoolExperiment("blaze.auto.sync.defer.during.builds", true);
+
   /** Auto-syncs will only be run when there are no relevant file events for this length of time. */
   private static final Duration AUTO_SYNC_DELAY = Duration.ofSeconds(5);
 
+  /**
+   * The longest the auto-sync delay grows to when auto-syncs are repeatedly triggered in quick
+   * succession, coalescing a long series of edits into fewer syncs.
+   */
+  private static final Duration MAX_AUTO_SYNC_DELAY = Duration.ofSeconds(60);
+
+  /**
+   * Auto-syncs are postponed while a build is running, for at most this long (in case we miss the
+   * end of the build).
+   */
+  private static final Duration MAX_DEFERRAL_DURING_BUILD = Duration.ofMinutes(10);
+
   /** We ignore all events for this duration after starting a project-wide sync. */
   private static final Duration THROTTLE_AFTER_FULL_SYNC = Duration.ofSeconds(5);
 
@@ -71,13 +89,18 @@ public class AutoSyncHandler implements ProjectComponent {
   }
 
   private final PendingChangesHandler<VirtualFile> pendingChangesHandler =
-      new PendingChangesHandler<VirtualFile>(AUTO_SYNC_DELAY) {
+      new PendingChangesHandler<VirtualFile>(AUTO_SYNC_DELAY, MAX_AUTO_SYNC_DELAY) {
         @Override
         boolean runTask(ImmutableSet<VirtualFile> changes) {
           if (!Blaze.getBuildSystemProvider(project).syncingRemotely()
               && BlazeSyncStatus.getInstance(project).syncInProgress()) {
             return false;
           }
+          if (buildInProgress()) {
+            // don't compete with the user's build; the changes are retried (and batched with any
+            // later changes) once it's done
+            return false;
+          }
           queueAutomaticSync(changes);
           return true;
         }
@@ -85,6 +108,9 @@ public class AutoSyncHandler implements ProjectComponent {
 
   private final Project project;
 
+  /** The time the currently running build started, or null if no build is running. */
+  @Nullable private volatile Instant buildStartTime;
+
   protected AutoSyncHandler(Project project) {
     this.project = project;
     if (!Blaze.isBlazeProject(project)) {
@@ -121,6 +147,13 @@ public class AutoSyncHandler implements ProjectComponent {
     queueSync(params);
   }
 
+  private boolean buildInProgress() {
+    Instant startTime = buildStartTime;
+    return deferDuringBuilds.getValue()
+        && startTime != null
+        && Duration.between(startTime, Instant.now()).compareTo(MAX_DEFERRAL_DURING_BUILD) < 0;
+  }
+
   private void handleFileChange(VirtualFile file) {
     boolean setDirty = false;
     for (AutoSyncProvider provider : AutoSyncProvider.EP_NAME.getExtensions()) {
@@ -256,6 +289,18 @@ public class AutoSyncHandler implements ProjectComponent {
     }
   }
 
+  static class BuildListener implements BlazeBuildListener {
+    @Override
+    public void buildStarting(Project project) {
+      AutoSyncHandler.getInstance(project).buildStartTime = Instant.now();
+    }
+
+    @Override
+    public void buildCompleted(Project project, BlazeBuildOutputs buildOutputs) {
+      AutoSyncHandler.getInstance(project).buildStartTime = null;
+    }
+  }
+
   private class FileListener extends VirtualFileAdapter {
     @Override
     public void propertyChanged(VirtualFilePropertyEvent event) {
@@ -15,6 +15,7 @@
  */
 package com.google.idea.blaze.base.sync.autosync;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableSet;
 import java.time.Duration;
 import java.time.Instant;
@@ -24,6 +25,7 @@ import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.Nullable;
 
 /**
  * Tracks pending changes, and kicks off a task when no new changes have arrived in a given period
@@ -40,17 +42,27 @@ abstract class PendingChangesHandler<V> {
 
   private final Timer timer = new Timer("pendingChangesTimer", /* isDaemon= */ true);
   private final Duration delayDuration;
+  private final Duration maxDelayDuration;
   private final AtomicBoolean isTaskPending = new AtomicBoolean(false);
 
   private volatile Instant lastChangeTime;
   private volatile boolean ignoreChanges;
 
+  /** The current batching window, growing while tasks are run in quick succession. */
+  private volatile Duration currentDelay;
+
+  @Nullable private volatile Instant lastTaskTime;
+
   /**
    * @param delayDuration when no new changes have arrived for approximately this period of time the
    *     batched task is executed
+   * @param maxDelayDuration the longest the batching window grows to, when tasks are repeatedly
+   *     triggered in quick succession
    */
-  PendingChangesHandler(Duration delayDuration) {
+  PendingChangesHandler(Duration delayDuration, Duration maxDelayDuration) {
     this.delayDuration = delayDuration;
+    this.maxDelayDuration = maxDelayDuration;
+    this.currentDelay = delayDuration;
   }
 
   /**
@@ -64,11 +76,13 @@ abstract class PendingChangesHandler<V> {
       return;
     }
     pendingItems.add(item);
-    lastChangeTime = Instant.now();
+    Instant now = Instant.now();
+    lastChangeTime = now;
     // to minimize synchronization overhead, we don't explicitly cancel any existing task on each
     // change, but delay this until the pending task would otherwise run.
     if (isTaskPending.compareAndSet(false, true)) {
-      queueTask(delayDuration);
+      currentDelay = nextDelay(currentDelay, lastTaskTime, now, delayDuration, maxDelayDuration);
+      queueTask(currentDelay);
     }
   }
 
@@ -109,7 +123,7 @@ abstract class PendingChangesHandler<V> {
    */
   private void timerComplete() {
     Duration timeSinceLastEvent = Duration.between(lastChangeTime, Instant.now());
-    Duration timeToWait = delayDuration.minus(timeSinceLastEvent);
+    Duration timeToWait = currentDelay.minus(timeSinceLastEvent);
     if (!timeToWait.isNegative()) {
       // kick off another task and abort this one
       queueTask(timeToWait);
@@ -120,6 +134,7 @@ abstract class PendingChangesHandler<V> {
       return;
     }
     if (runTask(items)) {
+      lastTaskTime = Instant.now();
       isTaskPending.set(false);
     } else {
       pendingItems.addAll(items);
@@ -127,6 +142,28 @@ abstract class PendingChangesHandler<V> {
     }
   }
 
+  /**
+   * Chooses the batching window for a newly queued task, based on how long it's been since the
+   * previous task ran.
+   *
+   * <p>Backs off while changes keep arriving soon after each task (e.g. while editing many files),
+   * so that they're batched into fewer tasks. Resets once changes have stopped for at least {@code
+   * maxDelay}.
+   */
+  @VisibleForTesting
+  static Duration nextDelay(
+      Duration currentDelay,
+      @Nullable Instant lastTaskTime,
+      Instant now,
+      Duration minDelay,
+      Duration maxDelay) {
+    if (lastTaskTime == null || Duration.between(lastTaskTime, now).compareTo(maxDelay) >= 0) {
+      return minDelay;
+    }
+    Duration doubled = currentDelay.multipliedBy(2);
+    return doubled.compareTo(maxDelay) < 0 ? doubled : maxDelay;
+  }
+
   private ImmutableSet<V> retrieveAndClearPendingItems() {
     synchronized (pendingItems) {
       ImmutableSet<V> copy = ImmutableSet.copyOf(pendingItems);
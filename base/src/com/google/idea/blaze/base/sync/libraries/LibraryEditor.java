@@ -15,7 +15,9 @@
  */
 package com.google.idea.blaze.base.sync.libraries;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.google.idea.blaze.base.model.BlazeLibrary;
@@ -26,6 +28,7 @@ import com.google.idea.blaze.base.scope.BlazeContext;
 import com.google.idea.blaze.base.scope.output.PrintOutput;
 import com.google.idea.blaze.base.sync.BlazeSyncPlugin;
 import com.google.idea.blaze.base.sync.workspace.ArtifactLocationDecoder;
+import com.google.idea.common.experiments.BoolExperiment;
 import com.google.idea.sdkcompat.general.BaseSdkCompat;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.externalSystem.service.project.IdeModifiableModelsProvider;
@@ -35,17 +38,31 @@ import com.intellij.openapi.roots.OrderRootType;
 import com.intellij.openapi.roots.libraries.Library;
 import com.intellij.openapi.roots.libraries.LibraryTable;
 import com.intellij.openapi.roots.libraries.LibraryTablesRegistrar;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import javax.annotation.Nullable;
 
 /** Edits IntelliJ libraries */
 public class LibraryEditor {
   private static final Logger logger = Logger.getInstance(LibraryEditor.class);
 
+  /** Only modify the libraries whose roots changed during sync. */
+  private static final BoolExperiment diffLibraryUpdates =
+      new BoolExperiment("blaze.sync.library.diff.update", true);
+
+  private static final ImmutableList<OrderRootType> UPDATED_ROOT_TYPES =
+      ImmutableList.of(OrderRootType.CLASSES, OrderRootType.SOURCES);
+
   public static void updateProjectLibraries(
       Project project,
       BlazeContext context,
@@ -64,9 +81,19 @@ public class LibraryEditor {
     context.output(PrintOutput.log(String.format("Workspace has %d libraries", libraries.size())));
 
     try {
-      for (BlazeLibrary library : libraries) {
-        updateLibrary(
-            project, blazeProjectData.getArtifactLocationDecoder(), modelsProvider, library);
+      ArtifactLocationDecoder decoder = blazeProjectData.getArtifactLocationDecoder();
+      if (diffLibraryUpdates.getValue()) {
+        int updated = 0;
+        for (BlazeLibrary library : libraries) {
+          if (updateLibraryIfChanged(project, decoder, modelsProvider, library)) {
+            updated++;
+          }
+        }
+        context.output(PrintOutput.log(String.format("Updated %d changed libraries", updated)));
+      } else {
+        for (BlazeLibrary library : libraries) {
+          updateLibrary(project, decoder, modelsProvider, library);
+        }
       }
 
       // Garbage collect unused libraries
@@ -120,23 +147,133 @@ public class LibraryEditor {
       ArtifactLocationDecoder artifactLocationDecoder,
       IdeModifiableModelsProvider modelsProvider,
       BlazeLibrary blazeLibrary) {
+    Library.ModifiableModel libraryModel =
+        getClearedLibraryModel(modelsProvider, blazeLibrary.key.getIntelliJLibraryName());
+    blazeLibrary.modifyLibraryModel(project, artifactLocationDecoder, libraryModel);
+  }
+
+  /**
+   * Updates the library in IntelliJ's project model, unless its roots are already up to date.
+   * Returns true if the library was modified.
+   *
+   * <p>Unchanged libraries aren't touched at all, so they don't add to the cost of committing the
+   * project model. The library's {@link BlazeLibrary#modifyLibraryModel} is run exactly once.
+   */
+  @VisibleForTesting
+  static boolean updateLibraryIfChanged(
+      Project project,
+      ArtifactLocationDecoder artifactLocationDecoder,
+      IdeModifiableModelsProvider modelsProvider,
+      BlazeLibrary blazeLibrary) {
     String libraryName = blazeLibrary.key.getIntelliJLibraryName();
+    RootRecorder recorder =
+        new RootRecorder(() -> getClearedLibraryModel(modelsProvider, libraryName));
+    blazeLibrary.modifyLibraryModel(project, artifactLocationDecoder, recorder.createModel());
+    if (recorder.isForwarding()) {
+      // the library does more than add roots, so its changes went straight to the library model
+      return true;
+    }
+    ImmutableListMultimap<OrderRootType, String> roots = recorder.roots.build();
+    Library library = modelsProvider.getLibraryByName(libraryName);
+    if (library != null && hasRoots(library, roots)) {
+      return false;
+    }
+    Library.ModifiableModel libraryModel = getClearedLibraryModel(modelsProvider, libraryName);
+    roots.forEach((type, url) -> libraryModel.addRoot(url, type));
+    return true;
+  }
 
+  /**
+   * Returns the modifiable model of the given library, creating the library if it doesn't exist,
+   * with its class and source roots removed.
+   */
+  private static Library.ModifiableModel getClearedLibraryModel(
+      IdeModifiableModelsProvider modelsProvider, String libraryName) {
     Library library = modelsProvider.getLibraryByName(libraryName);
-    boolean libraryExists = library != null;
-    if (!libraryExists) {
+    if (library == null) {
       library = modelsProvider.createLibrary(libraryName);
     }
     Library.ModifiableModel libraryModel = modelsProvider.getModifiableLibraryModel(library);
-    if (libraryExists) {
-      for (String url : libraryModel.getUrls(OrderRootType.CLASSES)) {
-        libraryModel.removeRoot(url, OrderRootType.CLASSES);
+    for (OrderRootType type : UPDATED_ROOT_TYPES) {
+      for (String url : libraryModel.getUrls(type)) {
+        libraryModel.removeRoot(url, type);
       }
-      for (String url : libraryModel.getUrls(OrderRootType.SOURCES)) {
-        libraryModel.removeRoot(url, OrderRootType.SOURCES);
+    }
+    return libraryModel;
+  }
+
+  private static boolean hasRoots(
+      Library library, ImmutableListMultimap<OrderRootType, String> roots) {
+    for (OrderRootType type : UPDATED_ROOT_TYPES) {
+      if (!Arrays.asList(library.getUrls(type)).equals(roots.get(type))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Records the class and source roots a {@link BlazeLibrary} adds to its library model, without
+   * modifying the project model.
+   *
+   * <p>On the first call which does anything else, the real library model is fetched, the roots
+   * recorded so far are added to it, and that and all later calls are forwarded to it.
+   */
+  private static class RootRecorder implements InvocationHandler {
+    private final Supplier<Library.ModifiableModel> libraryModelSupplier;
+    private final ImmutableListMultimap.Builder<OrderRootType, String> roots =
+        ImmutableListMultimap.builder();
+    @Nullable private Library.ModifiableModel delegate;
+
+    RootRecorder(Supplier<Library.ModifiableModel> libraryModelSupplier) {
+      this.libraryModelSupplier = libraryModelSupplier;
+    }
+
+    Library.ModifiableModel createModel() {
+      return (Library.ModifiableModel)
+          Proxy.newProxyInstance(
+              Library.ModifiableModel.class.getClassLoader(),
+              new Class<?>[] {Library.ModifiableModel.class},
+              this);
+    }
+
+    /** Whether calls are being forwarded to the real library model. */
+    boolean isForwarding() {
+      return delegate != null;
+    }
+
+    @Override
+    @Nullable
+    public Object invoke(Object proxy, Method method, @Nullable Object[] args) throws Throwable {
+      if (method.getDeclaringClass() == Object.class) {
+        switch (method.getName()) {
+          case "equals":
+            return proxy == args[0];
+          case "hashCode":
+            return System.identityHashCode(proxy);
+          default:
+            return RootRecorder.class.getSimpleName();
+        }
+      }
+      if (delegate == null) {
+        if (method.getName().equals("addRoot")
+            && args != null
+            && args.length == 2
+            && args[0] instanceof String
+            && UPDATED_ROOT_TYPES.contains(args[1])) {
+          roots.put((OrderRootType) args[1], (String) args[0]);
+          return null;
+        }
+        Library.ModifiableModel libraryModel = libraryModelSupplier.get();
+        roots.build().forEach((type, url) -> libraryModel.addRoot(url, type));
+        delegate = libraryModel;
+      }
+      try {
+        return method.invoke(delegate, args);
+      } catch (InvocationTargetException e) {
+        throw e.getCause();
       }
     }
-    blazeLibrary.modifyLibraryModel(project, artifactLocationDecoder, libraryModel);
   }
 
   /**
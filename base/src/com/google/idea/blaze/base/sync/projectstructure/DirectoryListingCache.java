@@ -0,0 +1,115 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync.projectstructure;
+
+import com.google.common.collect.ImmutableList;
+import com.google.idea.blaze.base.io.FileOperationProvider;
+import com.google.idea.common.experiments.BoolExperiment;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.project.Project;
+import java.io.File;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nullable;
+
+/**
+ * Caches the subdirectories of each directory walked by {@link DirectoryStructure} between syncs.
+ *
+ * <p>A directory's modification time changes whenever an entry is added to, removed from or renamed
+ * within it, so an unchanged modification time means the cached subdirectories are still valid.
+ * Unchanged directories then cost a single stat, rather than a listing plus a stat per child.
+ */
+final class DirectoryListingCache {
+
+  private static final BoolExperiment enabled =
+      new BoolExperiment("blaze.sync.directory.listing.cache", true);
+
+  /**
+   * Listings of directories modified more recently than this before being listed aren't cached, as
+   * later changes may not update the modification time on file systems with coarse timestamps.
+   */
+  private static final long MIN_CACHEABLE_AGE_MILLIS = 2000;
+
+  private final Map<File, Listing> listings = new ConcurrentHashMap<>();
+
+  @Nullable
+  static DirectoryListingCache getInstance(Project project) {
+    return enabled.getValue()
+        ? ServiceManager.getService(project, DirectoryListingCache.class)
+        : null;
+  }
+
+  /**
+   * Returns the subdirectories of the given directory, or null if it isn't a directory or can't be
+   * read.
+   */
+  @Nullable
+  ImmutableList<File> getSubdirectories(FileOperationProvider ops, File directory) {
+    long modifiedTime = ops.getFileModifiedTime(directory);
+    Listing cached = listings.get(directory);
+    if (cached != null && modifiedTime != 0 && cached.modifiedTime == modifiedTime) {
+      return cached.subdirectories;
+    }
+    long listingTime = System.currentTimeMillis();
+    ImmutableList<File> subdirectories = listSubdirectories(ops, directory);
+    if (subdirectories != null
+        && modifiedTime != 0
+        && listingTime - modifiedTime >= MIN_CACHEABLE_AGE_MILLIS) {
+      listings.put(directory, new Listing(modifiedTime, subdirectories));
+    } else {
+      listings.remove(directory);
+    }
+    return subdirectories;
+  }
+
+  /** Drops the listings of all directories not in the given collection. */
+  void retainAll(Collection<File> directories) {
+    listings.keySet().retainAll(directories);
+  }
+
+  /**
+   * Lists the subdirectories of the given directory, or returns null if it isn't a directory or
+   * can't be read.
+   */
+  @Nullable
+  static ImmutableList<File> listSubdirectories(FileOperationProvider ops, File directory) {
+    if (!ops.isDirectory(directory)) {
+      return null;
+    }
+    File[] children = ops.listFiles(directory);
+    if (children == null) {
+      return null;
+    }
+    ImmutableList.Builder<File> subdirectories = ImmutableList.builder();
+    for (File child : children) {
+      if (ops.isDirectory(child)) {
+        subdirectories.add(child);
+      }
+    }
+    return subdirectories.build();
+  }
+
+  private static final class Listing {
+    final long modifiedTime;
+    final ImmutableList<File> subdirectories;
+
+    Listing(long modifiedTime, ImmutableList<File> subdirectories) {
+      this.modifiedTime = modifiedTime;
+      this.subdirectories = subdirectories;
+    }
+  }
+}
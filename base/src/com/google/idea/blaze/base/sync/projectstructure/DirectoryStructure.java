@@ -35,8 +35,10 @@ import java.io.File;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.Nullable;
 
 /**
  * Directory structure representation used by {@link ContentEntryEditor}.
@@ -76,6 +78,12 @@ public class DirectoryStructure {
       AtomicBoolean cancelled)
       throws ExecutionException, InterruptedException {
     FileOperationProvider fileOperationProvider = FileOperationProvider.getInstance();
+    DirectoryListingCache listingCache = DirectoryListingCache.getInstance(project);
+    DirectoryLister lister =
+        listingCache != null
+            ? dir -> listingCache.getSubdirectories(fileOperationProvider, dir)
+            : dir -> DirectoryListingCache.listSubdirectories(fileOperationProvider, dir);
+    Set<File> visitedDirectories = ConcurrentHashMap.newKeySet();
     ImportRoots importRoots =
         ImportRoots.builder(workspaceRoot, Blaze.getBuildSystem(project))
             .add(projectViewSet)
@@ -89,9 +97,10 @@ public class DirectoryStructure {
           walkDirectoryStructure(
               workspaceRoot,
               excludeDirectories,
-              fileOperationProvider,
+              lister,
               FetchExecutor.EXECUTOR,
               rootDirectory,
+              visitedDirectories,
               cancelled));
     }
     ImmutableMap.Builder<WorkspacePath, DirectoryStructure> result = ImmutableMap.builder();
@@ -100,25 +109,33 @@ public class DirectoryStructure {
         result.put(pair.path, pair.directoryStructure);
       }
     }
+    if (listingCache != null && !cancelled.get()) {
+      listingCache.retainAll(visitedDirectories);
+    }
     return new DirectoryStructure(result.build());
   }
 
+  /** Returns the subdirectories of a directory, or null if it isn't a readable directory. */
+  private interface DirectoryLister {
+    @Nullable
+    List<File> listSubdirectories(File directory);
+  }
+
   private static ListenableFuture<PathStructurePair> walkDirectoryStructure(
       WorkspaceRoot workspaceRoot,
       Set<WorkspacePath> excludeDirectories,
-      FileOperationProvider fileOperationProvider,
+      DirectoryLister lister,
       ListeningExecutorService executorService,
       WorkspacePath workspacePath,
+      Set<File> visitedDirectories,
       AtomicBoolean cancelled) {
     if (cancelled.get() || excludeDirectories.contains(workspacePath)) {
       return Futures.immediateFuture(null);
     }
     File file = workspaceRoot.fileForPath(workspacePath);
-    if (!fileOperationProvider.isDirectory(file)) {
-      return Futures.immediateFuture(null);
-    }
-    ListenableFuture<File[]> childrenFuture =
-        executorService.submit(() -> fileOperationProvider.listFiles(file));
+    visitedDirectories.add(file);
+    ListenableFuture<List<File>> childrenFuture =
+        executorService.submit(() -> lister.listSubdirectories(file));
     return Futures.transformAsync(
         childrenFuture,
         children -> {
@@ -126,7 +143,7 @@ public class DirectoryStructure {
             return Futures.immediateFuture(null);
           }
           List<ListenableFuture<PathStructurePair>> futures =
-              Lists.newArrayListWithExpectedSize(children.length);
+              Lists.newArrayListWithExpectedSize(children.size());
           for (File child : children) {
             WorkspacePath childWorkspacePath;
             try {
@@ -139,9 +156,10 @@ public class DirectoryStructure {
                 walkDirectoryStructure(
                     workspaceRoot,
                     excludeDirectories,
-                    fileOperationProvider,
+                    lister,
                     executorService,
                     childWorkspacePath,
+                    visitedDirectories,
                     cancelled));
           }
           return Futures.transform(
@@ -0,0 +1,321 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.vcs.git;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.idea.blaze.base.io.FileOperationProvider;
+import com.google.idea.blaze.base.model.primitives.WorkspacePath;
+import com.google.idea.blaze.base.model.primitives.WorkspaceRoot;
+import com.google.idea.blaze.base.scope.BlazeContext;
+import com.google.idea.blaze.base.sync.workspace.WorkingSet;
+import com.google.idea.common.experiments.BoolExperiment;
+import com.google.idea.common.experiments.IntExperiment;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileMoveEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * Caches the most recently calculated git {@link WorkingSet}.
+ *
+ * <p>While HEAD, the upstream commit and the git index are unchanged, subsequent requests only
+ * re-diff the paths which the VFS reported as changed since the last calculation. Otherwise, falls
+ * back to a full diff against upstream.
+ *
+ * <p>The workspace is synchronously refreshed before each request, so that external changes to
+ * files the VFS knows about are reported. The VFS doesn't report files created in directories whose
+ * children it has never loaded, however, so such files can be missing from the working set until
+ * the next full diff. The cache is therefore disabled by default.
+ */
+public final class GitWorkingSetCache {
+
+  private static final BoolExperiment enabled =
+      new BoolExperiment("blaze.git.working.set.cache", false);
+
+  /** Above this many changed paths, a full diff is cheaper than a long pathspec list. */
+  private static final IntExperiment maxIncrementalPaths =
+      new IntExperiment("blaze.git.working.set.cache.max.incremental.paths", 500);
+
+  /** Stop tracking individual changed paths beyond this, and just run a full diff next time. */
+  private static final int MAX_TRACKED_PATHS = 10000;
+
+  public static GitWorkingSetCache getInstance(Project project) {
+    return ServiceManager.getService(project, GitWorkingSetCache.class);
+  }
+
+  /** Absolute paths of all files changed since the working set was last calculated. */
+  private final Set<String> changedPaths = ConcurrentHashMap.newKeySet();
+
+  /** Changes are only tracked once the working set has been requested at least once. */
+  private volatile boolean trackingChanges = false;
+
+  private volatile boolean tooManyChangedPaths = false;
+
+  @GuardedBy("this")
+  @Nullable
+  private CachedWorkingSet cached;
+
+  /** Refreshes the workspace in the VFS, returning false if it couldn't be refreshed. */
+  private final Predicate<WorkspaceRoot> workspaceRefresher;
+
+  public GitWorkingSetCache(Project project) {
+    this(project, GitWorkingSetCache::refreshWorkspace);
+  }
+
+  @VisibleForTesting
+  GitWorkingSetCache(Project project, Predicate<WorkspaceRoot> workspaceRefresher) {
+    this.workspaceRefresher = workspaceRefresher;
+    project
+        .getMessageBus()
+        .connect(project)
+        .subscribe(VirtualFileManager.VFS_CHANGES, new ChangedPathsListener());
+  }
+
+  /**
+   * Returns the changes between the working tree and the given upstream commit, or null if an error
+   * occurred.
+   */
+  @Nullable
+  WorkingSet getWorkingSet(WorkspaceRoot workspaceRoot, String upstreamSha, BlazeContext context) {
+    if (!enabled.getValue()) {
+      return GitWorkingSetProvider.calculateWorkingSet(workspaceRoot, upstreamSha, context);
+    }
+    RepositoryState state = RepositoryState.read(workspaceRoot, upstreamSha);
+    if (state == null) {
+      return null;
+    }
+    synchronized (this) {
+      trackingChanges = true;
+      // changes the VFS hasn't yet picked up would otherwise be missed
+      boolean refreshed = workspaceRefresher.test(workspaceRoot);
+      // drain the changed paths before running git, so any later changes are picked up next time
+      ImmutableSet<String> changed = ImmutableSet.copyOf(changedPaths);
+      changedPaths.removeAll(changed);
+      boolean requiresFullDiff = tooManyChangedPaths || !refreshed;
+      tooManyChangedPaths = false;
+
+      ImmutableList<WorkspacePath> changedWorkspacePaths =
+          requiresFullDiff ? null : toWorkspacePaths(workspaceRoot, changed);
+      WorkingSet workingSet;
+      if (cached == null
+          || !cached.state.equals(state)
+          || changedWorkspacePaths == null
+          || changedWorkspacePaths.size() > maxIncrementalPaths.getValue()) {
+        workingSet =
+            GitWorkingSetProvider.calculateWorkingSet(
+                workspaceRoot, state.gitRoot, upstreamSha, ImmutableList.of(), context);
+      } else if (changedWorkspacePaths.isEmpty()) {
+        workingSet = cached.workingSet;
+      } else {
+        WorkingSet delta =
+            GitWorkingSetProvider.calculateWorkingSet(
+                workspaceRoot, state.gitRoot, upstreamSha, changedWorkspacePaths, context);
+        workingSet = delta != null ? merge(cached.workingSet, changedWorkspacePaths, delta) : null;
+      }
+      cached = workingSet != null ? new CachedWorkingSet(state, workingSet) : null;
+      return workingSet;
+    }
+  }
+
+  private static boolean refreshWorkspace(WorkspaceRoot workspaceRoot) {
+    if (ApplicationManager.getApplication().isReadAccessAllowed()) {
+      // a synchronous refresh can't be run while holding the read lock
+      return false;
+    }
+    VirtualFile root = VfsUtil.findFileByIoFile(workspaceRoot.directory(), /* refresh= */ true);
+    if (root == null) {
+      return false;
+    }
+    VfsUtil.markDirtyAndRefresh(
+        /* async= */ false, /* recursive= */ true, /* reloadChildren= */ true, root);
+    return true;
+  }
+
+  /**
+   * Converts the changed absolute paths to workspace paths, ignoring anything outside the workspace
+   * or inside the git directory. Returns null if a full diff is required.
+   */
+  @Nullable
+  private static ImmutableList<WorkspacePath> toWorkspacePaths(
+      WorkspaceRoot workspaceRoot, Collection<String> paths) {
+    List<WorkspacePath> workspacePaths = new ArrayList<>();
+    for (String path : paths) {
+      File file = new File(path);
+      if (!workspaceRoot.isInWorkspace(file)) {
+        continue;
+      }
+      WorkspacePath workspacePath = workspaceRoot.workspacePathForSafe(file);
+      if (workspacePath == null || workspacePath.isWorkspaceRoot()) {
+        return null;
+      }
+      String relativePath = workspacePath.relativePath();
+      if (relativePath.equals(".git") || relativePath.startsWith(".git/")) {
+        // changes to the git metadata are covered by RepositoryState
+        continue;
+      }
+      workspacePaths.add(workspacePath);
+    }
+    return ImmutableList.copyOf(workspacePaths);
+  }
+
+  /**
+   * Replaces all entries under the given (file or directory) paths in the previous working set with
+   * the newly calculated entries for those paths.
+   */
+  @VisibleForTesting
+  static WorkingSet merge(
+      WorkingSet previous, Collection<WorkspacePath> changedPaths, WorkingSet delta) {
+    return new WorkingSet(
+        merge(previous.addedFiles, changedPaths, delta.addedFiles),
+        merge(previous.modifiedFiles, changedPaths, delta.modifiedFiles),
+        merge(previous.deletedFiles, changedPaths, delta.deletedFiles));
+  }
+
+  private static ImmutableList<WorkspacePath> merge(
+      ImmutableList<WorkspacePath> previous,
+      Collection<WorkspacePath> changedPaths,
+      ImmutableList<WorkspacePath> delta) {
+    ImmutableSet<WorkspacePath> updated =
+        ImmutableSet.<WorkspacePath>builder()
+            .addAll(
+                previous.stream()
+                    .filter(path -> !isUnderAny(path, changedPaths))
+                    .collect(toImmutableList()))
+            .addAll(delta)
+            .build();
+    return updated.asList();
+  }
+
+  private static boolean isUnderAny(WorkspacePath path, Collection<WorkspacePath> roots) {
+    String relativePath = path.relativePath();
+    for (WorkspacePath root : roots) {
+      String rootPath = root.relativePath();
+      if (relativePath.equals(rootPath) || relativePath.startsWith(rootPath + "/")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static class CachedWorkingSet {
+    final RepositoryState state;
+    final WorkingSet workingSet;
+
+    CachedWorkingSet(RepositoryState state, WorkingSet workingSet) {
+      this.state = state;
+      this.workingSet = workingSet;
+    }
+  }
+
+  /**
+   * The git state which, if changed, invalidates the cached working set: the git root, HEAD and
+   * upstream commits, and the index modification time (covering staging, stashes and checkouts).
+   */
+  private static class RepositoryState {
+    final String gitRoot;
+    final String headSha;
+    final String upstreamSha;
+    final long indexModifiedTime;
+
+    private RepositoryState(
+        String gitRoot, String headSha, String upstreamSha, long indexModifiedTime) {
+      this.gitRoot = gitRoot;
+      this.headSha = headSha;
+      this.upstreamSha = upstreamSha;
+      this.indexModifiedTime = indexModifiedTime;
+    }
+
+    @Nullable
+    static RepositoryState read(WorkspaceRoot workspaceRoot, String upstreamSha) {
+      String output =
+          GitWorkingSetProvider.getConsoleOutput(
+              workspaceRoot, "git", "rev-parse", "--show-toplevel", "--absolute-git-dir", "HEAD");
+      if (output == null) {
+        return null;
+      }
+      String[] lines = output.split("\n");
+      if (lines.length != 3) {
+        return null;
+      }
+      long indexModifiedTime =
+          FileOperationProvider.getInstance().getFileModifiedTime(new File(lines[1], "index"));
+      return new RepositoryState(lines[0], lines[2], upstreamSha, indexModifiedTime);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof RepositoryState)) {
+        return false;
+      }
+      RepositoryState other = (RepositoryState) o;
+      return gitRoot.equals(other.gitRoot)
+          && headSha.equals(other.headSha)
+          && upstreamSha.equals(other.upstreamSha)
+          && indexModifiedTime == other.indexModifiedTime;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(gitRoot, headSha, upstreamSha, indexModifiedTime);
+    }
+  }
+
+  private class ChangedPathsListener implements BulkFileListener {
+    @Override
+    public void after(List<? extends VFileEvent> events) {
+      if (!trackingChanges || tooManyChangedPaths) {
+        // the next request runs a full diff anyway
+        return;
+      }
+      if (changedPaths.size() + events.size() > MAX_TRACKED_PATHS) {
+        tooManyChangedPaths = true;
+        changedPaths.clear();
+        return;
+      }
+      for (VFileEvent event : events) {
+        changedPaths.add(event.getPath());
+        if (event instanceof VFileMoveEvent) {
+          changedPaths.add(((VFileMoveEvent) event).getOldPath());
+        } else if (event instanceof VFilePropertyChangeEvent) {
+          changedPaths.add(((VFilePropertyChangeEvent) event).getOldPath());
+        }
+      }
+    }
+  }
+}
@@ -29,6 +29,7 @@ import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.text.StringUtil;
 import java.io.ByteArrayOutputStream;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
@@ -50,6 +51,22 @@ public class GitWorkingSetProvider {
     if (gitRoot == null) {
       return null;
     }
+    return calculateWorkingSet(workspaceRoot, gitRoot, upstreamSha, ImmutableList.of(), context);
+  }
+
+  /**
+   * Finds all changes between HEAD and the git commit specified by the provided SHA, restricted to
+   * the given workspace paths (files or directories). If no paths are provided, all changes are
+   * returned.<br>
+   * Returns null if an error occurred.
+   */
+  @Nullable
+  static WorkingSet calculateWorkingSet(
+      WorkspaceRoot workspaceRoot,
+      String gitRoot,
+      String upstreamSha,
+      Collection<WorkspacePath> paths,
+      BlazeContext context) {
     GitStatusLineProcessor processor = new GitStatusLineProcessor(workspaceRoot, gitRoot);
     ByteArrayOutputStream stderr = new ByteArrayOutputStream();
 
@@ -57,6 +74,7 @@ public class GitWorkingSetProvider {
     int retVal =
         ExternalTask.builder(workspaceRoot)
             .args("git", "diff", "--name-status", "--no-renames", upstreamSha)
+            .args(pathspecArgs(paths))
             .context(context)
             .stdout(LineProcessingOutputStream.of(processor))
             .stderr(stderr)
@@ -69,7 +87,12 @@ public class GitWorkingSetProvider {
 
     // Finally list all untracked files, as they're not caught by the git diff step above
     String untrackedFilesOutput =
-        getConsoleOutput(workspaceRoot, "git", "ls-files", "--others", "--exclude-standard");
+        getConsoleOutput(
+            workspaceRoot,
+            ImmutableList.<String>builder()
+                .add("git", "ls-files", "--others", "--exclude-standard")
+                .addAll(pathspecArgs(paths))
+                .build());
     if (untrackedFilesOutput == null) {
       return null;
     }
@@ -91,9 +114,25 @@ public class GitWorkingSetProvider {
         ImmutableList.copyOf(processor.deletedFiles));
   }
 
+  private static ImmutableList<String> pathspecArgs(Collection<WorkspacePath> paths) {
+    if (paths.isEmpty()) {
+      return ImmutableList.of();
+    }
+    return ImmutableList.<String>builder()
+        .add("--")
+        .addAll(paths.stream().map(WorkspacePath::relativePath).iterator())
+        .build();
+  }
+
+  /** @return the console output, in string form, or null if there was a non-zero exit code. */
+  @Nullable
+  static String getConsoleOutput(WorkspaceRoot workspaceRoot, String... commands) {
+    return getConsoleOutput(workspaceRoot, Arrays.asList(commands));
+  }
+
   /** @return the console output, in string form, or null if there was a non-zero exit code. */
   @Nullable
-  private static String getConsoleOutput(WorkspaceRoot workspaceRoot, String... commands) {
+  private static String getConsoleOutput(WorkspaceRoot workspaceRoot, List<String> commands) {
     ByteArrayOutputStream stdout = new ByteArrayOutputStream();
     ByteArrayOutputStream stderr = new ByteArrayOutputStream();
 
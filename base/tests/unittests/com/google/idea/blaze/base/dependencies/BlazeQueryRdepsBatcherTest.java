@@ -0,0 +1,247 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.dependencies;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.idea.blaze.base.BlazeTestCase;
+import com.google.idea.blaze.base.model.primitives.Label;
+import com.google.idea.common.experiments.ExperimentService;
+import com.google.idea.common.experiments.MockExperimentService;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link BlazeQueryRdepsBatcher}. */
+@RunWith(JUnit4.class)
+public class BlazeQueryRdepsBatcherTest extends BlazeTestCase {
+
+  /** Scheduled batches, run explicitly by the tests. */
+  private final List<Runnable> scheduled = new ArrayList<>();
+
+  private final List<ImmutableList<Label>> queries = new ArrayList<>();
+
+  @Override
+  protected void initTest(
+      @NotNull Container applicationServices, @NotNull Container projectServices) {
+    applicationServices.register(ExperimentService.class, new MockExperimentService());
+  }
+
+  @Test
+  public void getTargetsBuildingSource_batchesLookupsAndAttributesResultsByPackage()
+      throws Exception {
+    BlazeQueryRdepsBatcher batcher =
+        createBatcher(
+            sources ->
+                ImmutableList.of(target("//foo:foo"), target("//foo:foo_test"), target("//bar")));
+
+    ListenableFuture<List<TargetInfo>> foo =
+        batcher.getTargetsBuildingSource(Label.create("//foo:Foo.java"));
+    ListenableFuture<List<TargetInfo>> bar =
+        batcher.getTargetsBuildingSource(Label.create("//bar:Bar.java"));
+    runScheduledBatches();
+
+    assertThat(queries)
+        .containsExactly(
+            ImmutableList.of(Label.create("//foo:Foo.java"), Label.create("//bar:Bar.java")));
+    assertThat(labels(foo.get())).containsExactly("//foo:foo", "//foo:foo_test");
+    assertThat(labels(bar.get())).containsExactly("//bar:bar");
+  }
+
+  @Test
+  public void getTargetsBuildingSource_sharesRunningLookup() throws Exception {
+    CountDownLatch queryStarted = new CountDownLatch(1);
+    CountDownLatch finishQuery = new CountDownLatch(1);
+    BlazeQueryRdepsBatcher batcher =
+        createBatcher(
+            sources -> {
+              queryStarted.countDown();
+              awaitUninterruptibly(finishQuery);
+              return ImmutableList.of(target("//foo"));
+            });
+    Label source = Label.create("//foo:Foo.java");
+
+    ListenableFuture<List<TargetInfo>> first = batcher.getTargetsBuildingSource(source);
+    Thread batchThread = new Thread(this::runScheduledBatches);
+    batchThread.start();
+    queryStarted.await();
+    ListenableFuture<List<TargetInfo>> second = batcher.getTargetsBuildingSource(source);
+    finishQuery.countDown();
+    batchThread.join();
+
+    assertThat(second).isSameAs(first);
+    assertThat(queries).hasSize(1);
+    assertThat(labels(first.get())).containsExactly("//foo:foo");
+  }
+
+  @Test
+  public void getTargetsBuildingSource_failedQueryReturnsNull() throws Exception {
+    BlazeQueryRdepsBatcher batcher = createBatcher(sources -> null);
+
+    ListenableFuture<List<TargetInfo>> future =
+        batcher.getTargetsBuildingSource(Label.create("//foo:Foo.java"));
+    runScheduledBatches();
+
+    assertThat(future.get()).isNull();
+  }
+
+  @Test
+  public void getTargetsBuildingSource_recoversFromErrorInQuery() throws Exception {
+    AtomicBoolean shouldFail = new AtomicBoolean(true);
+    BlazeQueryRdepsBatcher batcher =
+        createBatcher(
+            sources -> {
+              if (shouldFail.getAndSet(false)) {
+                throw new AssertionError("query failed");
+              }
+              return ImmutableList.of(target("//foo"));
+            });
+    Label source = Label.create("//foo:Foo.java");
+
+    ListenableFuture<List<TargetInfo>> failed = batcher.getTargetsBuildingSource(source);
+    runScheduledBatches();
+    try {
+      failed.get();
+      fail("Expected the lookup to fail");
+    } catch (ExecutionException e) {
+      assertThat(e).hasCauseThat().hasMessageThat().isEqualTo("query failed");
+    }
+
+    // later lookups are still scheduled and run
+    ListenableFuture<List<TargetInfo>> retried = batcher.getTargetsBuildingSource(source);
+    assertThat(retried).isNotSameAs(failed);
+    assertThat(scheduled).hasSize(1);
+    runScheduledBatches();
+    assertThat(labels(retried.get())).containsExactly("//foo:foo");
+  }
+
+  @Test
+  public void getTargetsBuildingSource_schedulesOneBatchAtATime() {
+    BlazeQueryRdepsBatcher batcher = createBatcher(sources -> ImmutableList.of());
+
+    batcher.getTargetsBuildingSource(Label.create("//foo:Foo.java"));
+    batcher.getTargetsBuildingSource(Label.create("//foo:Bar.java"));
+    batcher.getTargetsBuildingSource(Label.create("//bar:Baz.java"));
+    assertThat(scheduled).hasSize(1);
+    runScheduledBatches();
+
+    // sources in the same package are split between batches
+    assertThat(queries)
+        .containsExactly(
+            ImmutableList.of(Label.create("//foo:Foo.java"), Label.create("//bar:Baz.java")),
+            ImmutableList.of(Label.create("//foo:Bar.java")))
+        .inOrder();
+  }
+
+  private BlazeQueryRdepsBatcher createBatcher(BlazeQueryRdepsBatcher.RdepsQuery query) {
+    return new BlazeQueryRdepsBatcher(
+        sources -> {
+          synchronized (queries) {
+            queries.add(ImmutableList.copyOf(sources));
+          }
+          return query.run(sources);
+        },
+        task -> {
+          synchronized (scheduled) {
+            scheduled.add(task);
+          }
+        });
+  }
+
+  private void runScheduledBatches() {
+    while (true) {
+      Runnable task;
+      synchronized (scheduled) {
+        if (scheduled.isEmpty()) {
+          return;
+        }
+        task = scheduled.remove(0);
+      }
+      task.run();
+    }
+  }
+
+  private static void awaitUninterruptibly(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static TargetInfo target(String label) {
+    return TargetInfo.builder(Label.create(label), "java_library").build();
+  }
+
+  private static ImmutableList<String> labels(Collection<TargetInfo> targets) {
+    return targets.stream().map(t -> t.label.toString()).collect(ImmutableList.toImmutableList());
+  }
+
+  @Test
+  public void takeBatch_takesOneSourcePerPackage() {
+    Map<Label, SettableFuture<String>> pending = new LinkedHashMap<>();
+    pending.put(Label.create("//foo:A.java"), SettableFuture.create());
+    pending.put(Label.create("//foo:sub/B.java"), SettableFuture.create());
+    pending.put(Label.create("//bar:C.java"), SettableFuture.create());
+
+    Map<Label, SettableFuture<String>> batch = BlazeQueryRdepsBatcher.takeBatch(pending, 10);
+
+    assertThat(batch.keySet())
+        .containsExactly(Label.create("//foo:A.java"), Label.create("//bar:C.java"));
+    assertThat(pending.keySet()).containsExactly(Label.create("//foo:sub/B.java"));
+  }
+
+  @Test
+  public void takeBatch_dropsCancelledLookups() {
+    Map<Label, SettableFuture<String>> pending = new LinkedHashMap<>();
+    SettableFuture<String> cancelled = SettableFuture.create();
+    cancelled.cancel(false);
+    pending.put(Label.create("//foo:A.java"), cancelled);
+    pending.put(Label.create("//bar:B.java"), SettableFuture.create());
+
+    Map<Label, SettableFuture<String>> batch = BlazeQueryRdepsBatcher.takeBatch(pending, 10);
+
+    assertThat(batch.keySet()).containsExactly(Label.create("//bar:B.java"));
+    assertThat(pending).isEmpty();
+  }
+
+  @Test
+  public void takeBatch_respectsMaxSize() {
+    Map<Label, SettableFuture<String>> pending = new LinkedHashMap<>();
+    pending.put(Label.create("//a:A.java"), SettableFuture.create());
+    pending.put(Label.create("//b:B.java"), SettableFuture.create());
+    pending.put(Label.create("//c:C.java"), SettableFuture.create());
+
+    Map<Label, SettableFuture<String>> batch = BlazeQueryRdepsBatcher.takeBatch(pending, 2);
+
+    assertThat(batch.keySet())
+        .containsExactly(Label.create("//a:A.java"), Label.create("//b:B.java"));
+    assertThat(pending.keySet()).containsExactly(Label.create("//c:C.java"));
+  }
+}
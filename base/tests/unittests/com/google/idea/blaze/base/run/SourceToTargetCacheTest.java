@@ -0,0 +1,226 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.run;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.idea.blaze.base.BlazeTestCase;
+import com.google.idea.blaze.base.bazel.BazelBuildSystemProvider;
+import com.google.idea.blaze.base.bazel.BuildSystemProvider;
+import com.google.idea.blaze.base.dependencies.TargetInfo;
+import com.google.idea.blaze.base.dependencies.TestSize;
+import com.google.idea.blaze.base.model.BlazeProjectData;
+import com.google.idea.blaze.base.model.MockBlazeProjectDataBuilder;
+import com.google.idea.blaze.base.model.primitives.RuleType;
+import com.google.idea.blaze.base.settings.BlazeImportSettings;
+import com.google.idea.blaze.base.settings.BlazeImportSettingsManager;
+import com.google.idea.blaze.base.settings.BuildSystem;
+import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
+import com.google.idea.common.experiments.ExperimentService;
+import com.google.idea.common.experiments.IntExperiment;
+import com.google.idea.common.experiments.MockExperimentService;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.events.VFileContentChangeEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent;
+import com.intellij.testFramework.LightVirtualFile;
+import java.io.File;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link SourceToTargetCache}. */
+@RunWith(JUnit4.class)
+public class SourceToTargetCacheTest extends BlazeTestCase {
+
+  private static final File FOO = new File("/workspace/foo/Foo.java");
+  private static final File BAR = new File("/workspace/foo/Bar.java");
+  private static final File BAZ = new File("/workspace/foo/Baz.java");
+
+  private final MockExperimentService experimentService = new MockExperimentService();
+  private final TestBlazeProjectDataManager projectDataManager = new TestBlazeProjectDataManager();
+  private final CountingLoader<Collection<TargetInfo>> targetsLoader =
+      new CountingLoader<>(ImmutableList.of());
+  private final CountingLoader<TargetInfo> testTargetLoader = new CountingLoader<>(null);
+
+  private SourceToTargetCache cache;
+
+  @Override
+  protected void initTest(Container applicationServices, Container projectServices) {
+    super.initTest(applicationServices, projectServices);
+    applicationServices.register(ExperimentService.class, experimentService);
+    experimentService.setExperimentInt(
+        new IntExperiment("blaze.source.to.target.cache.size", 1000), 2);
+
+    projectServices.register(BlazeProjectDataManager.class, projectDataManager);
+    projectServices.register(
+        BlazeImportSettingsManager.class, new BlazeImportSettingsManager(project));
+    BlazeImportSettingsManager.getInstance(project)
+        .setImportSettings(new BlazeImportSettings("", "", "", "", BuildSystem.Bazel));
+    registerExtensionPoint(BuildSystemProvider.EP_NAME, BuildSystemProvider.class)
+        .registerExtension(new BazelBuildSystemProvider(), testDisposable);
+
+    projectDataManager.projectData = MockBlazeProjectDataBuilder.builder().build();
+    cache = new SourceToTargetCache(project);
+  }
+
+  @Test
+  public void testRepeatedLookupsAreCached() {
+    getTargets(FOO);
+    getTargets(FOO);
+    getTestTarget(FOO, /* psiModificationStamp= */ 1);
+    getTestTarget(FOO, /* psiModificationStamp= */ 1);
+
+    assertThat(targetsLoader.calls).isEqualTo(1);
+    assertThat(testTargetLoader.calls).isEqualTo(1);
+  }
+
+  @Test
+  public void testTestTargetRecomputedWhenPsiChanges() {
+    getTestTarget(FOO, /* psiModificationStamp= */ 1);
+    getTestTarget(FOO, /* psiModificationStamp= */ 2);
+
+    assertThat(testTargetLoader.calls).isEqualTo(2);
+  }
+
+  @Test
+  public void testNewProjectDataInvalidatesCache() {
+    getTargets(FOO);
+    getTestTarget(FOO, /* psiModificationStamp= */ 1);
+
+    projectDataManager.projectData = MockBlazeProjectDataBuilder.builder().build();
+    getTargets(FOO);
+    getTestTarget(FOO, /* psiModificationStamp= */ 1);
+
+    assertThat(targetsLoader.calls).isEqualTo(2);
+    assertThat(testTargetLoader.calls).isEqualTo(2);
+  }
+
+  @Test
+  public void testBuildFileChangeInvalidatesCache() {
+    getTargets(FOO);
+    getTestTarget(FOO, /* psiModificationStamp= */ 1);
+
+    fireVfsEvent(contentChange(new LightVirtualFile("BUILD")));
+    getTargets(FOO);
+    getTestTarget(FOO, /* psiModificationStamp= */ 1);
+
+    assertThat(targetsLoader.calls).isEqualTo(2);
+    assertThat(testTargetLoader.calls).isEqualTo(2);
+  }
+
+  @Test
+  public void testRenameToBuildFileInvalidatesCache() {
+    getTargets(FOO);
+
+    VirtualFile file = new LightVirtualFile("BUILD.tmp");
+    fireVfsEvent(
+        new VFilePropertyChangeEvent(
+            this, file, VirtualFile.PROP_NAME, "BUILD.tmp", "BUILD.bazel", false));
+    getTargets(FOO);
+
+    assertThat(targetsLoader.calls).isEqualTo(2);
+  }
+
+  @Test
+  public void testOtherFileChangesDoNotInvalidateCache() {
+    getTargets(FOO);
+
+    fireVfsEvent(contentChange(new LightVirtualFile("Foo.java")));
+    getTargets(FOO);
+
+    assertThat(targetsLoader.calls).isEqualTo(1);
+  }
+
+  @Test
+  public void testLeastRecentlyUsedLookupEvicted() {
+    getTargets(FOO);
+    getTargets(BAR);
+    getTargets(FOO);
+    getTargets(BAZ);
+    assertThat(targetsLoader.calls).isEqualTo(3);
+
+    // the cache holds two lookups, so BAR was evicted while FOO was kept
+    getTargets(FOO);
+    assertThat(targetsLoader.calls).isEqualTo(3);
+    getTargets(BAR);
+    assertThat(targetsLoader.calls).isEqualTo(4);
+  }
+
+  @Test
+  public void testFailedLookupsAreRecomputed() {
+    Supplier<ListenableFuture<Collection<TargetInfo>>> failingLoader =
+        () -> Futures.immediateFailedFuture(new RuntimeException("query failed"));
+    cache.getTargets(ImmutableSet.of(FOO), Optional.of(RuleType.TEST), failingLoader);
+
+    getTargets(FOO);
+
+    assertThat(targetsLoader.calls).isEqualTo(1);
+  }
+
+  private void getTargets(File source) {
+    cache.getTargets(ImmutableSet.of(source), Optional.of(RuleType.TEST), targetsLoader);
+  }
+
+  private void getTestTarget(File source, long psiModificationStamp) {
+    cache.getTestTarget(source, psiModificationStamp, TestSize.SMALL, testTargetLoader);
+  }
+
+  private VFileEvent contentChange(VirtualFile file) {
+    return new VFileContentChangeEvent(this, file, 0, 1, false);
+  }
+
+  private void fireVfsEvent(VFileEvent event) {
+    project
+        .getMessageBus()
+        .syncPublisher(VirtualFileManager.VFS_CHANGES)
+        .after(ImmutableList.of(event));
+  }
+
+  private static class CountingLoader<T> implements Supplier<ListenableFuture<T>> {
+    @Nullable private final T result;
+    private int calls = 0;
+
+    CountingLoader(@Nullable T result) {
+      this.result = result;
+    }
+
+    @Override
+    public ListenableFuture<T> get() {
+      calls++;
+      return Futures.immediateFuture(result);
+    }
+  }
+
+  private static class TestBlazeProjectDataManager implements BlazeProjectDataManager {
+    @Nullable private BlazeProjectData projectData;
+
+    @Nullable
+    @Override
+    public BlazeProjectData getBlazeProjectData() {
+      return projectData;
+    }
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.run.smrunner;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Iterables;
+import com.google.idea.blaze.base.run.smrunner.BlazeXmlSchema.ErrorOrFailureOrSkipped;
+import com.google.idea.blaze.base.run.smrunner.BlazeXmlSchema.TestCase;
+import com.google.idea.blaze.base.run.smrunner.BlazeXmlSchema.TestSuite;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link BlazeXmlStreamParser}. */
+@RunWith(JUnit4.class)
+public class BlazeXmlStreamParserTest {
+
+  @Test
+  public void testNoTestSuitesOuterElement() {
+    TestSuite parsed =
+        parseXml(
+            "  <testsuite name=\"foo/bar\" tests=\"1\" time=\"19.268\">",
+            "      <testcase name=\"TestName\" result=\"completed\" status=\"run\" time=\"19.2\">",
+            "          <system-out>PASS&#xA;&#xA;</system-out>",
+            "      </testcase>",
+            "  </testsuite>");
+    assertThat(parsed.name).isEqualTo("foo/bar");
+    assertThat(parsed.tests).isEqualTo(1);
+    assertThat(parsed.time).isEqualTo(19.268d);
+    TestCase testCase = Iterables.getOnlyElement(parsed.testCases);
+    assertThat(testCase.name).isEqualTo("TestName");
+    assertThat(testCase.status).isEqualTo("run");
+    assertThat(testCase.time).isEqualTo("19.2");
+    assertThat(testCase.sysOut).isEqualTo("PASS\n\n");
+  }
+
+  @Test
+  public void testOuterTestSuitesElementWithUnknownChildren() {
+    TestSuite parsed =
+        parseXml(
+            "<?xml version='1.0' encoding='UTF-8'?>",
+            "<testsuites>",
+            "  <testsuite name='foo' hostname='localhost' tests='331' failures='0' id='0'>",
+            "    <properties><property name='a' value='b'/></properties>",
+            "    <system-out />",
+            "    <system-err />",
+            "  </testsuite>",
+            "  <testsuite name='bar'>",
+            "    <testcase name='bar_test_1' time='12.2' />",
+            "    <system-out />",
+            "  </testsuite>",
+            "</testsuites>");
+    assertThat(parsed.name).isNull();
+    assertThat(parsed.testSuites).hasSize(2);
+    assertThat(parsed.testSuites.get(0).tests).isEqualTo(331);
+    assertThat(parsed.testSuites.get(0).sysOut).isEmpty();
+    assertThat(Iterables.getOnlyElement(parsed.testSuites.get(1).testCases).name)
+        .isEqualTo("bar_test_1");
+  }
+
+  @Test
+  public void testTestCaseWithMultipleFailures() {
+    TestSuite parsed =
+        parseXml(
+            "<?xml version='1.0' encoding='UTF-8'?>",
+            "<testsuites>",
+            "  <testsuite name='com.google.ConfigTest' time='10' tests='2' failures='1'>",
+            "    <testcase name='testCase1' time='7.9' status='run' result='completed'>",
+            "      <failure message='failed' type='AssertionError'>Error message</failure>",
+            "      <failure message='failed2' type='AssertionError'>Another Error</failure>",
+            "    </testcase>",
+            "  </testsuite>",
+            "</testsuites>");
+
+    TestCase testCase = Iterables.getOnlyElement(parsed.testSuites.get(0).testCases);
+    assertThat(testCase.failures).hasSize(2);
+    assertThat(testCase.failures.get(0).message).isEqualTo("failed");
+    assertThat(testCase.failures.get(0).type).isEqualTo("AssertionError");
+    assertThat(BlazeXmlSchema.getErrorContent(testCase.failures.get(0))).isEqualTo("Error message");
+    assertThat(testCase.failures.get(1).message).isEqualTo("failed2");
+    assertThat(BlazeXmlSchema.getErrorContent(testCase.failures.get(1))).isEqualTo("Another Error");
+  }
+
+  @Test
+  public void testTestCaseFailureWithExpectedActualData() {
+    TestSuite parsed =
+        parseXml(
+            "<?xml version='1.0' encoding='UTF-8'?>",
+            "<testsuites>",
+            "  <testsuite name='com.google.ConfigTest' time='10' tests='1' failures='1'>",
+            "    <testcase name='testCase1' time='7.9' status='run' result='completed'>",
+            "      <failure message='failed' type='AssertionError'>Error message",
+            "        <expected><value><![CDATA[abc]]></value></expected>",
+            "        <actual><value><![CDATA[xyz]]></value></actual>",
+            "      </failure>",
+            "    </testcase>",
+            "  </testsuite>",
+            "</testsuites>");
+
+    ErrorOrFailureOrSkipped failure =
+        Iterables.getOnlyElement(parsed.testSuites.get(0).testCases.get(0).failures);
+    assertThat(failure.expected.values).containsExactly("abc");
+    assertThat(failure.actual.values).containsExactly("xyz");
+    assertThat(BlazeXmlSchema.getErrorContent(failure)).isEqualTo("Error message");
+  }
+
+  @Test
+  public void testSkippedTestCase() {
+    TestSuite parsed =
+        parseXml(
+            "<testsuite name='com.google.ConfigTest'>",
+            "  <testcase name='testCase1' status='run'><skipped message='ignored'/></testcase>",
+            "</testsuite>");
+
+    TestCase testCase = Iterables.getOnlyElement(parsed.testCases);
+    assertThat(testCase.skipped.message).isEqualTo("ignored");
+    assertThat(BlazeXmlToTestEventsConverter.isIgnored(testCase)).isTrue();
+  }
+
+  @Test
+  public void testNestedSuitesAndDecorators() {
+    TestSuite parsed =
+        parseXml(
+            "<testsuite name='outer'>",
+            "  <testsuite name='inner'><testcase name='a'/></testsuite>",
+            "  <testdecorator name='decorator'><testcase name='b'/></testdecorator>",
+            "</testsuite>");
+
+    assertThat(Iterables.getOnlyElement(parsed.testSuites).name).isEqualTo("inner");
+    assertThat(Iterables.getOnlyElement(parsed.testDecorators).name).isEqualTo("decorator");
+  }
+
+  @Test
+  public void testErrorWithoutErrorContent() {
+    TestSuite parsed =
+        parseXml(
+            "<?xml version='1.0' encoding='UTF-8'?>",
+            "<testsuites>",
+            "  <testsuite name='com.google.ConfigTest' tests='1' failures='0' errors='1'>",
+            "    <testcase name='testCase1' status='run' duration='55' time='55'>",
+            "<error message='exited with error code 1'></error>",
+            "    </testcase>",
+            "  </testsuite>",
+            "</testsuites>");
+
+    TestCase testCase = parsed.testSuites.get(0).testCases.get(0);
+    assertThat(BlazeXmlSchema.getErrorContent(testCase.errors.get(0))).isNull();
+  }
+
+  private static TestSuite parseXml(String... lines) {
+    InputStream stream =
+        new ByteArrayInputStream(Joiner.on('\n').join(lines).getBytes(StandardCharsets.UTF_8));
+    return BlazeXmlStreamParser.parse(stream);
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.idea.blaze.base.logging.utils.BuildPhaseSyncStats;
+import com.google.idea.blaze.base.logging.utils.ShardStats;
+import com.google.idea.blaze.base.logging.utils.ShardStats.ShardingApproach;
+import com.google.idea.blaze.base.logging.utils.SyncStats;
+import com.google.idea.blaze.base.scope.scopes.TimingScope.EventType;
+import com.google.idea.blaze.base.scope.scopes.TimingScopeListener.TimedEvent;
+import com.google.idea.blaze.base.settings.BuildBinaryType;
+import java.io.StringWriter;
+import java.time.Duration;
+import java.time.Instant;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link SyncTraceExporter}. */
+@RunWith(JUnit4.class)
+public class SyncTraceExporterTest {
+
+  private static final Instant START = Instant.ofEpochMilli(1_000_000);
+
+  @Test
+  public void assignLanes_nestedEventsShareLane() {
+    ImmutableList<TimedEvent> events =
+        ImmutableList.of(
+            event("parent", 0, 100),
+            event("child1", 10, 20),
+            event("grandchild", 12, 5),
+            event("child2", 50, 40));
+
+    assertThat(SyncTraceExporter.assignLanes(events)).asList().containsExactly(0, 0, 0, 0);
+  }
+
+  @Test
+  public void assignLanes_overlappingEventsGetSeparateLanes() {
+    ImmutableList<TimedEvent> events =
+        ImmutableList.of(
+            event("parent", 0, 100),
+            event("shard1", 10, 50),
+            event("shard2", 20, 50),
+            event("after", 80, 10));
+
+    assertThat(SyncTraceExporter.assignLanes(events)).asList().containsExactly(0, 0, 1, 0);
+  }
+
+  @Test
+  public void writeTrace_producesChromeTraceEvents() throws Exception {
+    BuildPhaseSyncStats buildStats =
+        BuildPhaseSyncStats.builder()
+            .setTimedEvents(ImmutableList.of(event("build", 5, 30)))
+            .setTotalTime(Duration.ofMillis(30))
+            .setShardCount(2)
+            .setShardStats(
+                ShardStats.builder()
+                    .setSuggestedTargetSizePerShard(100)
+                    .setActualTargetSizePerShard(ImmutableList.of(100, 42))
+                    .setShardingApproach(ShardingApproach.LEXICOGRAPHIC_TARGET_SHARDER)
+                    .build())
+            .build();
+    SyncStats stats =
+        SyncStats.builder()
+            .setSyncMode(SyncMode.INCREMENTAL)
+            .setSyncTitle("Sync \"project\"")
+            .setSyncOrigin("test")
+            .setSyncBinaryType(BuildBinaryType.BAZEL)
+            .setSyncResult(SyncResult.SUCCESS)
+            .setStartTime(START)
+            .setTotalClockTime(Duration.ofMillis(100))
+            .addTimedEvents(ImmutableList.of(event("build", 5, 30), event("update", 40, 50)))
+            .addBuildPhaseStats(buildStats)
+            .build();
+
+    StringWriter out = new StringWriter();
+    SyncTraceExporter.writeTrace(stats, out);
+
+    JsonObject trace = new JsonParser().parse(out.toString()).getAsJsonObject();
+    assertThat(trace.getAsJsonObject("otherData").get("syncTitle").getAsString())
+        .isEqualTo("Sync \"project\"");
+    JsonArray events = trace.getAsJsonArray("traceEvents");
+    assertThat(events.size()).isEqualTo(4);
+
+    JsonObject update = events.get(2).getAsJsonObject();
+    assertThat(update.get("name").getAsString()).isEqualTo("update");
+    assertThat(update.get("ph").getAsString()).isEqualTo("X");
+    assertThat(update.get("ts").getAsLong()).isEqualTo(40_000);
+    assertThat(update.get("dur").getAsLong()).isEqualTo(50_000);
+
+    JsonObject buildPhase = events.get(3).getAsJsonObject();
+    assertThat(buildPhase.get("ts").getAsLong()).isEqualTo(5_000);
+    JsonObject args = buildPhase.getAsJsonObject("args");
+    assertThat(args.get("shardCount").getAsInt()).isEqualTo(2);
+    assertThat(args.get("shardingApproach").getAsString())
+        .isEqualTo("LEXICOGRAPHIC_TARGET_SHARDER");
+    assertThat(args.getAsJsonArray("actualTargetSizePerShard").size()).isEqualTo(2);
+  }
+
+  private static TimedEvent event(String name, long startMillis, long durationMillis) {
+    return new TimedEvent(
+        name,
+        EventType.Other,
+        START.plusMillis(startMillis),
+        Duration.ofMillis(durationMillis),
+        /* isLeafEvent= */ false);
+  }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync.aspects;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.idea.blaze.base.BlazeTestCase;
+import com.google.idea.blaze.base.command.buildresult.OutputArtifact;
+import com.google.idea.blaze.base.filecache.ArtifactState;
+import com.google.idea.blaze.base.filecache.ArtifactState.LocalFileState;
+import com.google.idea.blaze.base.filecache.ArtifactsDiff;
+import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
+import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
+import com.google.idea.blaze.base.ideinfo.TargetKey;
+import com.google.idea.blaze.base.model.primitives.GenericBlazeRules;
+import com.google.idea.blaze.base.model.primitives.Kind;
+import com.google.idea.blaze.base.model.primitives.Label;
+import java.io.BufferedInputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link BlazeIdeInterfaceAspectsImpl}. */
+@RunWith(JUnit4.class)
+public class BlazeIdeInterfaceAspectsImplTest extends BlazeTestCase {
+
+  private static final String FOO_JAVA_BUNDLE =
+      "k8-fastbuild/bin/foo/foo-java-bundle.intellij-info-bundle.txt";
+  private static final String FOO_PY_BUNDLE =
+      "k8-fastbuild/bin/foo/foo-py-bundle.intellij-info-bundle.txt";
+  private static final String BAR_BUNDLE =
+      "k8-fastbuild/bin/bar/bar-java-bundle.intellij-info-bundle.txt";
+  private static final String BAZ_INFO_FILE =
+      "k8-fastbuild/bin/baz/baz.java-manifest.intellij-info.txt";
+
+  @Override
+  protected void initTest(Container applicationServices, Container projectServices) {
+    super.initTest(applicationServices, projectServices);
+    registerExtensionPoint(Kind.Provider.EP_NAME, Kind.Provider.class)
+        .registerExtension(new GenericBlazeRules(), testDisposable);
+    applicationServices.register(Kind.ApplicationState.class, new Kind.ApplicationState());
+  }
+
+  @Test
+  public void removeStaleBundledTargets_noBundleChanged_readsUpdatedFilesOnly() throws Exception {
+    SyncedState synced = new SyncedState();
+    synced.addBundledTarget(FOO_JAVA_BUNDLE, "//foo:foo");
+    synced.addBundledTarget(BAR_BUNDLE, "//bar:bar");
+    synced.addTarget(BAZ_INFO_FILE, "//baz:baz");
+
+    Collection<OutputArtifact> filesToRead =
+        synced.removeStaleBundledTargets(
+            artifact(FOO_JAVA_BUNDLE, 1), artifact(BAR_BUNDLE, 1), artifact(BAZ_INFO_FILE, 2));
+
+    assertThat(keys(filesToRead)).containsExactly(BAZ_INFO_FILE);
+    assertThat(synced.targetMap.keySet())
+        .containsExactly(key("//foo:foo"), key("//bar:bar"), key("//baz:baz"));
+  }
+
+  @Test
+  public void removeStaleBundledTargets_updatedBundle_rereadsOtherBundlesInPackage()
+      throws Exception {
+    SyncedState synced = new SyncedState();
+    synced.addBundledTarget(FOO_JAVA_BUNDLE, "//foo:foo");
+    synced.addBundledTarget(FOO_PY_BUNDLE, "//foo:py");
+    synced.addBundledTarget(BAR_BUNDLE, "//bar:bar");
+
+    Collection<OutputArtifact> filesToRead =
+        synced.removeStaleBundledTargets(
+            artifact(FOO_JAVA_BUNDLE, 2), artifact(FOO_PY_BUNDLE, 1), artifact(BAR_BUNDLE, 1));
+
+    assertThat(keys(filesToRead)).containsExactly(FOO_JAVA_BUNDLE, FOO_PY_BUNDLE).inOrder();
+    assertThat(synced.targetMap.keySet()).containsExactly(key("//bar:bar"));
+    assertThat(synced.state.ideInfoToTargetKey.values()).containsExactly(key("//bar:bar"));
+  }
+
+  @Test
+  public void removeStaleBundledTargets_removedBundle_removesItsTargets() throws Exception {
+    SyncedState synced = new SyncedState();
+    synced.addBundledTarget(FOO_JAVA_BUNDLE, "//foo:foo");
+    synced.addBundledTarget(BAR_BUNDLE, "//bar:bar");
+    synced.addBundledTarget(BAR_BUNDLE, "//bar:test");
+
+    Collection<OutputArtifact> filesToRead =
+        synced.removeStaleBundledTargets(artifact(FOO_JAVA_BUNDLE, 1));
+
+    assertThat(filesToRead).isEmpty();
+    assertThat(synced.targetMap.keySet()).containsExactly(key("//foo:foo"));
+    assertThat(synced.state.ideInfoToTargetKey.values()).containsExactly(key("//foo:foo"));
+  }
+
+  @Test
+  public void removeStaleBundledTargets_targetInTwoBundles_rereadsRemainingBundle()
+      throws Exception {
+    // //foo:foo is in both bundles, but is only recorded against the java bundle
+    SyncedState synced = new SyncedState();
+    synced.addBundledTarget(FOO_JAVA_BUNDLE, "//foo:foo");
+    synced.addBundledTarget(FOO_PY_BUNDLE, "//foo:py");
+
+    Collection<OutputArtifact> filesToRead =
+        synced.removeStaleBundledTargets(artifact(FOO_PY_BUNDLE, 1));
+
+    // the py bundle is read again, so //foo:foo is added back rather than lost
+    assertThat(keys(filesToRead)).containsExactly(FOO_PY_BUNDLE);
+    assertThat(synced.targetMap).isEmpty();
+    assertThat(synced.state.ideInfoToTargetKey).isEmpty();
+  }
+
+  private static TargetKey key(String label) {
+    return TargetKey.forPlainTarget(Label.create(label));
+  }
+
+  private static List<String> keys(Collection<OutputArtifact> artifacts) {
+    return artifacts.stream().map(OutputArtifact::getKey).collect(toImmutableList());
+  }
+
+  /** The state and target map after a previous sync, with all artifacts at timestamp 1. */
+  private static class SyncedState {
+    final BlazeIdeInterfaceState.Builder state = BlazeIdeInterfaceState.builder();
+    final Map<TargetKey, TargetIdeInfo> targetMap = new HashMap<>();
+    final Map<String, ArtifactState> fileState = new HashMap<>();
+
+    void addBundledTarget(String bundle, String label) {
+      TargetIdeInfo target = target(label);
+      state.ideInfoToTargetKey.put(
+          BlazeIdeInterfaceState.bundleEntryKey(bundle, target.getKey()), target.getKey());
+      targetMap.put(target.getKey(), target);
+      fileState.put(bundle, new LocalFileState(bundle, 1));
+    }
+
+    void addTarget(String infoFile, String label) {
+      TargetIdeInfo target = target(label);
+      state.ideInfoToTargetKey.put(infoFile, target.getKey());
+      targetMap.put(target.getKey(), target);
+      fileState.put(infoFile, new LocalFileState(infoFile, 1));
+    }
+
+    Collection<OutputArtifact> removeStaleBundledTargets(OutputArtifact... files)
+        throws Exception {
+      ImmutableList<OutputArtifact> newFiles = ImmutableList.copyOf(files);
+      ArtifactsDiff diff = ArtifactsDiff.diffArtifacts(ImmutableMap.copyOf(fileState), newFiles);
+      return BlazeIdeInterfaceAspectsImpl.removeStaleBundledTargets(
+          newFiles, diff, state, targetMap);
+    }
+
+    private static TargetIdeInfo target(String label) {
+      return TargetIdeInfo.builder()
+          .setLabel(label)
+          .setKind("proto_library")
+          .setBuildFile(ArtifactLocation.builder().setRelativePath("BUILD").build())
+          .build();
+    }
+  }
+
+  private static OutputArtifact artifact(String key, long timestamp) {
+    return new OutputArtifact() {
+      @Override
+      public String getConfigurationMnemonic() {
+        return "k8-fastbuild";
+      }
+
+      @Override
+      public String getRelativePath() {
+        return key;
+      }
+
+      @Nullable
+      @Override
+      public ArtifactState toArtifactState() {
+        return new LocalFileState(key, timestamp);
+      }
+
+      @Override
+      public long getLength() {
+        return 0;
+      }
+
+      @Override
+      public BufferedInputStream getInputStream() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+}
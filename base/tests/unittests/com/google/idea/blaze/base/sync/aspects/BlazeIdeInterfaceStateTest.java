@@ -0,0 +1,109 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync.aspects;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.idea.blaze.base.filecache.ArtifactState;
+import com.google.idea.blaze.base.filecache.ArtifactState.LocalFileState;
+import com.google.idea.blaze.base.ideinfo.TargetKey;
+import com.google.idea.blaze.base.model.primitives.Label;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link BlazeIdeInterfaceState}. */
+@RunWith(JUnit4.class)
+public class BlazeIdeInterfaceStateTest {
+
+  private static final String BUNDLE =
+      "k8-fastbuild/bin/foo/foo-java-bundle.intellij-info-bundle.txt";
+  private static final String OTHER_BUNDLE =
+      "k8-fastbuild/bin/foo/foo-py-bundle.intellij-info-bundle.txt";
+  private static final String INFO_FILE =
+      "k8-fastbuild/bin/bar/bar.java-manifest.intellij-info.txt";
+
+  private static final TargetKey FOO = TargetKey.forPlainTarget(Label.create("//foo:foo"));
+  private static final TargetKey FOO_TEST = TargetKey.forPlainTarget(Label.create("//foo:test"));
+  private static final TargetKey BAR = TargetKey.forPlainTarget(Label.create("//bar:bar"));
+
+  @Test
+  public void artifactKey_ofBundleEntryKey_returnsBundleKey() {
+    assertThat(
+            BlazeIdeInterfaceState.artifactKey(BlazeIdeInterfaceState.bundleEntryKey(BUNDLE, FOO)))
+        .isEqualTo(BUNDLE);
+    TargetKey aspectTarget =
+        TargetKey.forGeneralTarget(Label.create("//foo:foo"), ImmutableList.of("aspect#1"));
+    assertThat(
+            BlazeIdeInterfaceState.artifactKey(
+                BlazeIdeInterfaceState.bundleEntryKey(BUNDLE, aspectTarget)))
+        .isEqualTo(BUNDLE);
+  }
+
+  @Test
+  public void artifactKey_ofInfoFileKey_returnsKey() {
+    assertThat(BlazeIdeInterfaceState.artifactKey(INFO_FILE)).isEqualTo(INFO_FILE);
+    assertThat(BlazeIdeInterfaceState.artifactKey(BUNDLE)).isEqualTo(BUNDLE);
+  }
+
+  @Test
+  public void bundleEntryKey_sameTargetInTwoBundles_keysDiffer() {
+    assertThat(BlazeIdeInterfaceState.bundleEntryKey(BUNDLE, FOO))
+        .isNotEqualTo(BlazeIdeInterfaceState.bundleEntryKey(OTHER_BUNDLE, FOO));
+  }
+
+  @Test
+  public void filter_keepsFileStateOfBundlesWithRemainingTargets() {
+    BlazeIdeInterfaceState.Builder builder = BlazeIdeInterfaceState.builder();
+    builder.ideInfoFileState =
+        ImmutableMap.of(
+            BUNDLE, fileState(BUNDLE),
+            OTHER_BUNDLE, fileState(OTHER_BUNDLE),
+            INFO_FILE, fileState(INFO_FILE));
+    builder.ideInfoToTargetKey.put(BlazeIdeInterfaceState.bundleEntryKey(BUNDLE, FOO), FOO);
+    builder.ideInfoToTargetKey.put(
+        BlazeIdeInterfaceState.bundleEntryKey(BUNDLE, FOO_TEST), FOO_TEST);
+    builder.ideInfoToTargetKey.put(INFO_FILE, BAR);
+    BlazeIdeInterfaceState state = builder.build();
+
+    BlazeIdeInterfaceState filtered = state.filter(FOO::equals);
+
+    assertThat(filtered.ideInfoFileState.keySet()).containsExactly(BUNDLE);
+    assertThat(filtered.ideInfoFileToTargetKey)
+        .containsExactly(BlazeIdeInterfaceState.bundleEntryKey(BUNDLE, FOO), FOO);
+  }
+
+  @Test
+  public void filter_dropsFileStateOfBundlesWithoutRemainingTargets() {
+    BlazeIdeInterfaceState.Builder builder = BlazeIdeInterfaceState.builder();
+    builder.ideInfoFileState =
+        ImmutableMap.of(BUNDLE, fileState(BUNDLE), INFO_FILE, fileState(INFO_FILE));
+    builder.ideInfoToTargetKey.put(BlazeIdeInterfaceState.bundleEntryKey(BUNDLE, FOO), FOO);
+    builder.ideInfoToTargetKey.put(INFO_FILE, BAR);
+    BlazeIdeInterfaceState state = builder.build();
+
+    BlazeIdeInterfaceState filtered = state.filter(BAR::equals);
+
+    assertThat(filtered.ideInfoFileState.keySet()).containsExactly(INFO_FILE);
+    assertThat(filtered.ideInfoFileToTargetKey).containsExactly(INFO_FILE, BAR);
+  }
+
+  private static ArtifactState fileState(String key) {
+    return new LocalFileState(key, 1);
+  }
+}
@@ -39,6 +39,8 @@ import org.junit.runners.JUnit4;
 public class AspectStrategyTest extends BlazeTestCase {
 
   private static final MockAspectStrategy strategy = new MockAspectStrategy();
+  private static final MockAspectStrategy bundlingStrategy =
+      new MockAspectStrategy(/* supportsIdeInfoBundles= */ true);
   private MockExperimentService experiments;
 
   @Override
@@ -185,6 +187,55 @@ public class AspectStrategyTest extends BlazeTestCase {
         .containsExactly("intellij-info-generic", "intellij-info-java", "intellij-resolve-java");
   }
 
+  @Test
+  public void testIdeInfoBundlesRequestedWhenEnabled() {
+    experiments.setExperimentRaw("sync.request.ide.info.bundles", true);
+
+    BlazeCommand.Builder builder = emptyBuilder();
+    bundlingStrategy.addAspectAndOutputGroups(
+        builder,
+        ImmutableList.of(OutputGroup.INFO, OutputGroup.RESOLVE),
+        ImmutableSet.of(LanguageClass.JAVA, LanguageClass.C),
+        /* directDepsOnly= */ true);
+
+    assertThat(getOutputGroups(builder))
+        .containsExactly(
+            "intellij-info-generic-bundle",
+            "intellij-info-java-direct-deps",
+            "intellij-info-cpp-bundle",
+            "intellij-resolve-java-direct-deps",
+            "intellij-resolve-cpp");
+  }
+
+  @Test
+  public void testIdeInfoBundlesNotRequestedIfUnsupported() {
+    experiments.setExperimentRaw("sync.request.ide.info.bundles", true);
+
+    BlazeCommand.Builder builder = emptyBuilder();
+    strategy.addAspectAndOutputGroups(
+        builder,
+        ImmutableList.of(OutputGroup.INFO),
+        ImmutableSet.of(LanguageClass.JAVA),
+        /* directDepsOnly= */ false);
+
+    assertThat(getOutputGroups(builder))
+        .containsExactly("intellij-info-generic", "intellij-info-java");
+  }
+
+  @Test
+  public void testIsIdeInfoBundle() {
+    assertThat(
+            AspectStrategy.isIdeInfoBundle(
+                "k8-fastbuild/bin/foo/lib-1-java.intellij-info-bundle.txt"))
+        .isTrue();
+    assertThat(AspectStrategy.isIdeInfoBundle("k8-fastbuild/bin/foo/lib-1.intellij-info.txt"))
+        .isFalse();
+    assertThat(
+            AspectStrategy.ASPECT_OUTPUT_FILE_PREDICATE.test(
+                "k8-fastbuild/bin/foo/lib-1-java.intellij-info-bundle.txt"))
+        .isTrue();
+  }
+
   private static BlazeCommand.Builder emptyBuilder() {
     return BlazeCommand.builder("/usr/bin/blaze", BlazeCommandName.BUILD);
   }
@@ -202,8 +253,20 @@ public class AspectStrategyTest extends BlazeTestCase {
   }
 
   private static class MockAspectStrategy extends AspectStrategy {
+    private final boolean supportsIdeInfoBundles;
+
     private MockAspectStrategy() {
+      this(/* supportsIdeInfoBundles= */ false);
+    }
+
+    private MockAspectStrategy(boolean supportsIdeInfoBundles) {
       super(/* aspectSupportsDirectDepsTrimming= */ true);
+      this.supportsIdeInfoBundles = supportsIdeInfoBundles;
+    }
+
+    @Override
+    protected boolean aspectSupportsIdeInfoBundles() {
+      return supportsIdeInfoBundles;
     }
 
     @Override
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync.autosync;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableSet;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link PendingChangesHandler}. */
+@RunWith(JUnit4.class)
+public class PendingChangesHandlerTest {
+
+  private static final Duration MIN_DELAY = Duration.ofSeconds(5);
+  private static final Duration MAX_DELAY = Duration.ofSeconds(60);
+  private static final Instant NOW = Instant.ofEpochSecond(1_000_000);
+
+  @Test
+  public void testFirstChangeUsesMinimumDelay() {
+    assertThat(nextDelay(MIN_DELAY, null)).isEqualTo(MIN_DELAY);
+  }
+
+  @Test
+  public void testDelayGrowsWhileChangesFollowTasksClosely() {
+    Duration lastTask = Duration.ofSeconds(2);
+    assertThat(nextDelay(Duration.ofSeconds(5), lastTask)).isEqualTo(Duration.ofSeconds(10));
+    assertThat(nextDelay(Duration.ofSeconds(10), lastTask)).isEqualTo(Duration.ofSeconds(20));
+    assertThat(nextDelay(Duration.ofSeconds(40), lastTask)).isEqualTo(MAX_DELAY);
+  }
+
+  @Test
+  public void testMaximumDelayIsKeptWhileChangesFollowTasksClosely() {
+    assertThat(nextDelay(MAX_DELAY, Duration.ofSeconds(1))).isEqualTo(MAX_DELAY);
+    assertThat(nextDelay(MAX_DELAY, Duration.ofSeconds(59))).isEqualTo(MAX_DELAY);
+  }
+
+  @Test
+  public void testDelayResetsForFirstChangeAfterIdlePeriod() {
+    assertThat(nextDelay(MAX_DELAY, MAX_DELAY)).isEqualTo(MIN_DELAY);
+    assertThat(nextDelay(MAX_DELAY, Duration.ofHours(1))).isEqualTo(MIN_DELAY);
+  }
+
+  @Test
+  public void testChangesArrivingTogetherAreBatched() throws Exception {
+    BlockingQueue<ImmutableSet<String>> tasks = new LinkedBlockingQueue<>();
+    PendingChangesHandler<String> handler =
+        new PendingChangesHandler<String>(Duration.ofMillis(50), Duration.ofSeconds(10)) {
+          @Override
+          boolean runTask(ImmutableSet<String> changes) {
+            tasks.add(changes);
+            return true;
+          }
+        };
+    handler.queueChange("a");
+    handler.queueChange("b");
+    handler.queueChange("a");
+
+    assertThat(tasks.poll(5, TimeUnit.SECONDS)).containsExactly("a", "b");
+    assertThat(tasks.poll(200, TimeUnit.MILLISECONDS)).isNull();
+  }
+
+  private static Duration nextDelay(Duration currentDelay, @Nullable Duration timeSinceLastTask) {
+    Instant lastTaskTime = timeSinceLastTask != null ? NOW.minus(timeSinceLastTask) : null;
+    return PendingChangesHandler.nextDelay(currentDelay, lastTaskTime, NOW, MIN_DELAY, MAX_DELAY);
+  }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync.libraries;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.idea.blaze.base.model.BlazeLibrary;
+import com.google.idea.blaze.base.model.LibraryKey;
+import com.google.idea.blaze.base.sync.workspace.ArtifactLocationDecoder;
+import com.intellij.openapi.externalSystem.service.project.IdeModifiableModelsProvider;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.OrderRootType;
+import com.intellij.openapi.roots.libraries.Library;
+import java.util.function.Consumer;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.InOrder;
+
+/** Unit tests for {@link LibraryEditor}. */
+@RunWith(JUnit4.class)
+public class LibraryEditorTest {
+
+  private static final String LIBRARY_NAME = "lib";
+  private static final String CLASS_JAR = "jar:///out/lib.jar!/";
+  private static final String OLD_CLASS_JAR = "jar:///out/old_lib.jar!/";
+  private static final String SOURCE_JAR = "jar:///out/lib-src.jar!/";
+
+  private final Project project = mock(Project.class);
+  private final ArtifactLocationDecoder decoder = mock(ArtifactLocationDecoder.class);
+  private final IdeModifiableModelsProvider modelsProvider =
+      mock(IdeModifiableModelsProvider.class);
+  private final Library library = mock(Library.class);
+  private final Library.ModifiableModel libraryModel = mock(Library.ModifiableModel.class);
+
+  @Before
+  public void setUp() {
+    when(modelsProvider.createLibrary(LIBRARY_NAME)).thenReturn(library);
+    when(modelsProvider.getModifiableLibraryModel(library)).thenReturn(libraryModel);
+    setExistingRoots(new String[0], new String[0]);
+  }
+
+  private void setExistingRoots(String[] classRoots, String[] sourceRoots) {
+    when(library.getUrls(OrderRootType.CLASSES)).thenReturn(classRoots);
+    when(library.getUrls(OrderRootType.SOURCES)).thenReturn(sourceRoots);
+    when(libraryModel.getUrls(OrderRootType.CLASSES)).thenReturn(classRoots);
+    when(libraryModel.getUrls(OrderRootType.SOURCES)).thenReturn(sourceRoots);
+  }
+
+  @Test
+  public void testUnchangedLibraryNotModified() {
+    when(modelsProvider.getLibraryByName(LIBRARY_NAME)).thenReturn(library);
+    setExistingRoots(new String[] {CLASS_JAR}, new String[] {SOURCE_JAR});
+    TestLibrary blazeLibrary = new TestLibrary(TestLibrary::addRoots);
+
+    assertThat(updateLibraryIfChanged(blazeLibrary)).isFalse();
+
+    assertThat(blazeLibrary.runCount).isEqualTo(1);
+    verify(modelsProvider, never()).getModifiableLibraryModel(any());
+    verify(modelsProvider, never()).createLibrary(anyString());
+  }
+
+  @Test
+  public void testChangedLibraryRootsReplaced() {
+    when(modelsProvider.getLibraryByName(LIBRARY_NAME)).thenReturn(library);
+    setExistingRoots(new String[] {OLD_CLASS_JAR}, new String[0]);
+    TestLibrary blazeLibrary = new TestLibrary(TestLibrary::addRoots);
+
+    assertThat(updateLibraryIfChanged(blazeLibrary)).isTrue();
+
+    assertThat(blazeLibrary.runCount).isEqualTo(1);
+    verify(libraryModel).removeRoot(OLD_CLASS_JAR, OrderRootType.CLASSES);
+    verify(libraryModel).addRoot(CLASS_JAR, OrderRootType.CLASSES);
+    verify(libraryModel).addRoot(SOURCE_JAR, OrderRootType.SOURCES);
+  }
+
+  @Test
+  public void testMissingLibraryCreated() {
+    TestLibrary blazeLibrary = new TestLibrary(TestLibrary::addRoots);
+
+    assertThat(updateLibraryIfChanged(blazeLibrary)).isTrue();
+
+    verify(modelsProvider).createLibrary(LIBRARY_NAME);
+    verify(libraryModel).addRoot(CLASS_JAR, OrderRootType.CLASSES);
+    verify(libraryModel).addRoot(SOURCE_JAR, OrderRootType.SOURCES);
+  }
+
+  @Test
+  public void testOtherModificationsForwardedToLibraryModel() {
+    when(modelsProvider.getLibraryByName(LIBRARY_NAME)).thenReturn(library);
+    setExistingRoots(new String[] {CLASS_JAR}, new String[] {SOURCE_JAR});
+    TestLibrary blazeLibrary =
+        new TestLibrary(
+            model -> {
+              model.addRoot(CLASS_JAR, OrderRootType.CLASSES);
+              model.addJarDirectory("file:///out/jars", /* recursive= */ false);
+              model.addRoot(SOURCE_JAR, OrderRootType.SOURCES);
+            });
+
+    assertThat(updateLibraryIfChanged(blazeLibrary)).isTrue();
+
+    // the library is only run once, with the roots recorded before the unsupported call replayed
+    assertThat(blazeLibrary.runCount).isEqualTo(1);
+    InOrder inOrder = inOrder(libraryModel);
+    inOrder.verify(libraryModel).removeRoot(CLASS_JAR, OrderRootType.CLASSES);
+    inOrder.verify(libraryModel).removeRoot(SOURCE_JAR, OrderRootType.SOURCES);
+    inOrder.verify(libraryModel).addRoot(CLASS_JAR, OrderRootType.CLASSES);
+    inOrder.verify(libraryModel).addJarDirectory("file:///out/jars", false);
+    inOrder.verify(libraryModel).addRoot(SOURCE_JAR, OrderRootType.SOURCES);
+  }
+
+  @Test
+  public void testOtherRootTypesForwardedToLibraryModel() {
+    TestLibrary blazeLibrary =
+        new TestLibrary(model -> model.addRoot("file:///out/docs", OrderRootType.DOCUMENTATION));
+
+    assertThat(updateLibraryIfChanged(blazeLibrary)).isTrue();
+
+    assertThat(blazeLibrary.runCount).isEqualTo(1);
+    verify(libraryModel).addRoot("file:///out/docs", OrderRootType.DOCUMENTATION);
+  }
+
+  private boolean updateLibraryIfChanged(BlazeLibrary blazeLibrary) {
+    return LibraryEditor.updateLibraryIfChanged(project, decoder, modelsProvider, blazeLibrary);
+  }
+
+  private static class TestLibrary extends BlazeLibrary {
+    private final Consumer<Library.ModifiableModel> modification;
+    private int runCount = 0;
+
+    TestLibrary(Consumer<Library.ModifiableModel> modification) {
+      super(LibraryKey.fromIntelliJLibraryName(LIBRARY_NAME));
+      this.modification = modification;
+    }
+
+    static void addRoots(Library.ModifiableModel model) {
+      model.addRoot(CLASS_JAR, OrderRootType.CLASSES);
+      model.addRoot(SOURCE_JAR, OrderRootType.SOURCES);
+    }
+
+    @Override
+    public void modifyLibraryModel(
+        Project project,
+        ArtifactLocationDecoder artifactLocationDecoder,
+        Library.ModifiableModel libraryModel) {
+      runCount++;
+      modification.accept(libraryModel);
+    }
+  }
+}
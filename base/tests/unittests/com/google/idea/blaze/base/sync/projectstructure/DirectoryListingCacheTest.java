@@ -0,0 +1,100 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync.projectstructure;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.idea.blaze.base.io.FileOperationProvider;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link DirectoryListingCache}. */
+@RunWith(JUnit4.class)
+public class DirectoryListingCacheTest {
+
+  @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+  private final CountingFileOperationProvider ops = new CountingFileOperationProvider();
+  private final DirectoryListingCache cache = new DirectoryListingCache();
+  private File root;
+
+  @Before
+  public void setUp() throws Exception {
+    root = folder.newFolder("root");
+    new File(root, "a").mkdir();
+    new File(root, "b").mkdir();
+    new File(root, "file.txt").createNewFile();
+  }
+
+  @Test
+  public void unchangedDirectory_isOnlyListedOnce() {
+    setOld(root);
+
+    ImmutableList<File> first = cache.getSubdirectories(ops, root);
+    ImmutableList<File> second = cache.getSubdirectories(ops, root);
+
+    assertThat(first).containsExactly(new File(root, "a"), new File(root, "b"));
+    assertThat(second).isEqualTo(first);
+    assertThat(ops.listCount).isEqualTo(1);
+  }
+
+  @Test
+  public void modifiedDirectory_isListedAgain() {
+    setOld(root);
+    cache.getSubdirectories(ops, root);
+
+    new File(root, "c").mkdir();
+    root.setLastModified(root.lastModified() + TimeUnit.MINUTES.toMillis(1));
+
+    assertThat(cache.getSubdirectories(ops, root))
+        .containsExactly(new File(root, "a"), new File(root, "b"), new File(root, "c"));
+    assertThat(ops.listCount).isEqualTo(2);
+  }
+
+  @Test
+  public void recentlyModifiedDirectory_isNotCached() {
+    cache.getSubdirectories(ops, root);
+    cache.getSubdirectories(ops, root);
+
+    assertThat(ops.listCount).isEqualTo(2);
+  }
+
+  @Test
+  public void missingDirectory_returnsNull() {
+    assertThat(cache.getSubdirectories(ops, new File(root, "missing"))).isNull();
+  }
+
+  private static void setOld(File file) {
+    file.setLastModified(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1));
+  }
+
+  private static class CountingFileOperationProvider extends FileOperationProvider {
+    int listCount = 0;
+
+    @Override
+    public File[] listFiles(File file) {
+      listCount++;
+      return super.listFiles(file);
+    }
+  }
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.vcs.git;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableList;
+import com.google.idea.blaze.base.BlazeTestCase;
+import com.google.idea.blaze.base.async.process.ExternalTask;
+import com.google.idea.blaze.base.async.process.ExternalTaskProvider;
+import com.google.idea.blaze.base.io.FileOperationProvider;
+import com.google.idea.blaze.base.model.primitives.WorkspacePath;
+import com.google.idea.blaze.base.model.primitives.WorkspaceRoot;
+import com.google.idea.blaze.base.scope.BlazeContext;
+import com.google.idea.blaze.base.scope.BlazeScope;
+import com.google.idea.blaze.base.sync.workspace.WorkingSet;
+import com.google.idea.common.experiments.BoolExperiment;
+import com.google.idea.common.experiments.ExperimentService;
+import com.google.idea.common.experiments.MockExperimentService;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.events.VFileContentChangeEvent;
+import com.intellij.testFramework.LightVirtualFile;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link GitWorkingSetCache} */
+@RunWith(JUnit4.class)
+public class GitWorkingSetCacheTest extends BlazeTestCase {
+
+  private static final WorkspaceRoot WORKSPACE_ROOT = new WorkspaceRoot(new File("/workspace"));
+  private static final String UPSTREAM_SHA = "upstream";
+
+  private final FakeGitTaskProvider git = new FakeGitTaskProvider();
+  private final FakeFileOperationProvider fileOperationProvider = new FakeFileOperationProvider();
+  private final BlazeContext context = new BlazeContext();
+  private boolean refreshSucceeds = true;
+  private GitWorkingSetCache cache;
+
+  @Override
+  protected void initTest(Container applicationServices, Container projectServices) {
+    super.initTest(applicationServices, projectServices);
+    MockExperimentService experimentService = new MockExperimentService();
+    experimentService.setExperiment(new BoolExperiment("blaze.git.working.set.cache", false), true);
+    applicationServices.register(ExperimentService.class, experimentService);
+    applicationServices.register(ExternalTaskProvider.class, git);
+    applicationServices.register(FileOperationProvider.class, fileOperationProvider);
+
+    cache = new GitWorkingSetCache(project, root -> refreshSucceeds);
+    git.setOutput("rev-parse", "/workspace", "/workspace/.git", "head");
+    git.setOutput("diff", "M\tjava/Modified.java");
+    git.setOutput("ls-files", "java/Untracked.java");
+  }
+
+  @Test
+  public void testFirstRequestRunsFullDiff() {
+    WorkingSet workingSet = getWorkingSet();
+
+    assertThat(workingSet.modifiedFiles).containsExactly(path("java/Modified.java"));
+    assertThat(workingSet.addedFiles).containsExactly(path("java/Untracked.java"));
+    assertThat(git.diffPathspecs).containsExactly(ImmutableList.of());
+  }
+
+  @Test
+  public void testUnchangedWorkspaceReturnsCachedWorkingSet() {
+    WorkingSet workingSet = getWorkingSet();
+
+    assertThat(getWorkingSet()).isSameInstanceAs(workingSet);
+    assertThat(git.diffPathspecs).hasSize(1);
+  }
+
+  @Test
+  public void testChangedFilesArePartiallyDiffed() {
+    getWorkingSet();
+    fileChanged("/workspace/java/Modified.java");
+    fileChanged("/workspace/java/Other.java");
+    git.setOutput("diff", "M\tjava/Other.java");
+    git.setOutput("ls-files");
+
+    WorkingSet workingSet = getWorkingSet();
+
+    assertThat(git.diffPathspecs.get(1))
+        .containsExactly("java/Modified.java", "java/Other.java");
+    assertThat(workingSet.modifiedFiles).containsExactly(path("java/Other.java"));
+    assertThat(workingSet.addedFiles).containsExactly(path("java/Untracked.java"));
+  }
+
+  @Test
+  public void testChangesOutsideWorkspaceAreIgnored() {
+    WorkingSet workingSet = getWorkingSet();
+    fileChanged("/elsewhere/java/Foo.java");
+
+    assertThat(getWorkingSet()).isSameInstanceAs(workingSet);
+    assertThat(git.diffPathspecs).hasSize(1);
+  }
+
+  @Test
+  public void testChangedRepositoryStateRunsFullDiff() {
+    getWorkingSet();
+    fileChanged("/workspace/java/Modified.java");
+    git.setOutput("rev-parse", "/workspace", "/workspace/.git", "new-head");
+
+    getWorkingSet();
+
+    assertThat(git.diffPathspecs).containsExactly(ImmutableList.of(), ImmutableList.of());
+  }
+
+  @Test
+  public void testChangedIndexRunsFullDiff() {
+    getWorkingSet();
+    fileOperationProvider.indexModifiedTime = 2;
+
+    getWorkingSet();
+
+    assertThat(git.diffPathspecs).containsExactly(ImmutableList.of(), ImmutableList.of());
+  }
+
+  @Test
+  public void testFailedRefreshRunsFullDiff() {
+    getWorkingSet();
+    refreshSucceeds = false;
+
+    getWorkingSet();
+
+    assertThat(git.diffPathspecs).containsExactly(ImmutableList.of(), ImmutableList.of());
+  }
+
+  @Test
+  public void testMergeReplacesChangedFiles() {
+    WorkingSet previous =
+        new WorkingSet(
+            ImmutableList.of(path("java/com/google/Added.java")),
+            ImmutableList.of(path("java/com/google/Modified.java"), path("README")),
+            ImmutableList.of(path("java/com/google/Deleted.java")));
+    WorkingSet delta =
+        new WorkingSet(
+            ImmutableList.of(),
+            ImmutableList.of(path("java/com/google/Added.java")),
+            ImmutableList.of());
+
+    WorkingSet merged =
+        GitWorkingSetCache.merge(
+            previous,
+            ImmutableList.of(
+                path("java/com/google/Added.java"), path("java/com/google/Modified.java")),
+            delta);
+
+    assertThat(merged.addedFiles).isEmpty();
+    assertThat(merged.modifiedFiles)
+        .containsExactly(path("README"), path("java/com/google/Added.java"));
+    assertThat(merged.deletedFiles).containsExactly(path("java/com/google/Deleted.java"));
+  }
+
+  @Test
+  public void testMergeReplacesFilesUnderChangedDirectory() {
+    WorkingSet previous =
+        new WorkingSet(
+            ImmutableList.of(
+                path("java/com/google/foo/A.java"), path("java/com/google/foo2/B.java")),
+            ImmutableList.of(path("java/com/google/foo/C.java")),
+            ImmutableList.of());
+    WorkingSet delta =
+        new WorkingSet(
+            ImmutableList.of(),
+            ImmutableList.of(),
+            ImmutableList.of(path("java/com/google/foo/C.java")));
+
+    WorkingSet merged =
+        GitWorkingSetCache.merge(previous, ImmutableList.of(path("java/com/google/foo")), delta);
+
+    assertThat(merged.addedFiles).containsExactly(path("java/com/google/foo2/B.java"));
+    assertThat(merged.modifiedFiles).isEmpty();
+    assertThat(merged.deletedFiles).containsExactly(path("java/com/google/foo/C.java"));
+  }
+
+  @Test
+  public void testMergeWithNoChangesKeepsPreviousWorkingSet() {
+    WorkingSet previous =
+        new WorkingSet(
+            ImmutableList.of(path("a/Added.java")),
+            ImmutableList.of(path("b/Modified.java")),
+            ImmutableList.of(path("c/Deleted.java")));
+    WorkingSet emptyDelta =
+        new WorkingSet(ImmutableList.of(), ImmutableList.of(), ImmutableList.of());
+
+    WorkingSet merged = GitWorkingSetCache.merge(previous, ImmutableList.of(), emptyDelta);
+
+    assertThat(merged.addedFiles).isEqualTo(previous.addedFiles);
+    assertThat(merged.modifiedFiles).isEqualTo(previous.modifiedFiles);
+    assertThat(merged.deletedFiles).isEqualTo(previous.deletedFiles);
+  }
+
+  @Nullable
+  private WorkingSet getWorkingSet() {
+    return cache.getWorkingSet(WORKSPACE_ROOT, UPSTREAM_SHA, context);
+  }
+
+  private void fileChanged(String path) {
+    LightVirtualFile file =
+        new LightVirtualFile(new File(path).getName()) {
+          @Override
+          public String getPath() {
+            return path;
+          }
+        };
+    project
+        .getMessageBus()
+        .syncPublisher(VirtualFileManager.VFS_CHANGES)
+        .after(ImmutableList.of(new VFileContentChangeEvent(this, file, 0, 1, false)));
+  }
+
+  private static WorkspacePath path(String relativePath) {
+    return new WorkspacePath(relativePath);
+  }
+
+  /** Runs fake git commands, recording the pathspecs passed to 'git diff'. */
+  private static class FakeGitTaskProvider implements ExternalTaskProvider {
+    private final Map<String, String[]> outputs = new HashMap<>();
+    final List<List<String>> diffPathspecs = new ArrayList<>();
+
+    void setOutput(String gitCommand, String... lines) {
+      outputs.put(gitCommand, lines);
+    }
+
+    @Override
+    public ExternalTask build(ExternalTask.Builder builder) {
+      List<String> command = builder.command.build();
+      String gitCommand = command.get(1);
+      if (gitCommand.equals("diff")) {
+        int separator = command.indexOf("--");
+        diffPathspecs.add(
+            separator >= 0
+                ? ImmutableList.copyOf(command.subList(separator + 1, command.size()))
+                : ImmutableList.of());
+      }
+      return new FakeExternalTask(builder.stdout, outputs.get(gitCommand));
+    }
+  }
+
+  private static class FakeExternalTask implements ExternalTask {
+    @Nullable private final OutputStream stdout;
+    @Nullable private final String[] lines;
+
+    FakeExternalTask(@Nullable OutputStream stdout, @Nullable String[] lines) {
+      this.stdout = stdout;
+      this.lines = lines;
+    }
+
+    @Override
+    public int run(BlazeScope... scopes) {
+      if (stdout != null && lines != null) {
+        try {
+          for (String line : lines) {
+            stdout.write((line + "\n").getBytes(UTF_8));
+          }
+          stdout.flush();
+        } catch (IOException e) {
+          throw new AssertionError(e);
+        }
+      }
+      return 0;
+    }
+  }
+
+  private static class FakeFileOperationProvider extends FileOperationProvider {
+    long indexModifiedTime = 1;
+
+    @Override
+    public long getFileModifiedTime(File file) {
+      return file.getPath().equals("/workspace/.git/index") ? indexModifiedTime : 0;
+    }
+  }
+}
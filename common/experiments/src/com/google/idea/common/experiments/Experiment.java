@@ -15,10 +15,15 @@
  */
 package com.google.idea.common.experiments;
 
+import javax.annotation.Nullable;
+
 /** Experiment class. */
 public abstract class Experiment {
   private final String key;
 
+  /** The value last resolved by an {@link ExperimentService}, to avoid repeated lookups. */
+  @Nullable volatile ResolvedValue resolvedValue;
+
   Experiment(String key) {
     this.key = key;
   }
@@ -29,4 +34,15 @@ public abstract class Experiment {
 
   /** Returns a string representation of the experiment value for logging. */
   public abstract String getLogValue();
+
+  /** An experiment's value, valid for as long as its experiments snapshot is current. */
+  static final class ResolvedValue {
+    final Object snapshot;
+    @Nullable final String value;
+
+    ResolvedValue(Object snapshot, @Nullable String value) {
+      this.snapshot = snapshot;
+      this.value = value;
+    }
+  }
 }
@@ -28,7 +28,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 
 /**
@@ -48,7 +47,12 @@ public class ExperimentServiceImpl implements ApplicationComponent, ExperimentSe
   private final List<ExperimentLoader> services;
   private final AtomicInteger experimentScopeCounter = new AtomicInteger(0);
 
-  private volatile Map<String, String> experiments = ImmutableMap.of();
+  /**
+   * The current experiment values, keyed by hashed experiment name. Only replaced when the values
+   * change, so that values resolved against it (see {@link Experiment#resolvedValue}) remain valid
+   * until then.
+   */
+  private volatile ImmutableMap<String, String> experiments = ImmutableMap.of();
   private final Map<String, Experiment> queriedExperiments = new ConcurrentHashMap<>();
 
   ExperimentServiceImpl() {
@@ -75,9 +79,17 @@ public class ExperimentServiceImpl implements ApplicationComponent, ExperimentSe
     scheduleRefresh(REFRESH_FREQUENCY);
   }
 
+  @Nullable
   private String getExperiment(Experiment experiment) {
+    ImmutableMap<String, String> snapshot = experiments;
+    Experiment.ResolvedValue resolved = experiment.resolvedValue;
+    if (resolved != null && resolved.snapshot == snapshot) {
+      return resolved.value;
+    }
     queriedExperiments.putIfAbsent(experiment.getKey(), experiment);
-    return experiments.get(ExperimentNameHashes.hashExperimentName(experiment.getKey()));
+    String value = snapshot.get(ExperimentNameHashes.hashExperimentName(experiment.getKey()));
+    experiment.resolvedValue = new Experiment.ResolvedValue(snapshot, value);
+    return value;
   }
 
   @Override
@@ -146,11 +158,15 @@ public class ExperimentServiceImpl implements ApplicationComponent, ExperimentSe
   }
 
   private void refreshExperiments() {
-    experiments =
+    ImmutableMap<String, String> updated =
         services.stream()
             .flatMap(service -> service.getExperiments().entrySet().stream())
             .collect(
-                Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (first, second) -> first));
+                ImmutableMap.toImmutableMap(
+                    Map.Entry::getKey, Map.Entry::getValue, (first, second) -> first));
+    if (!updated.equals(experiments)) {
+      experiments = updated;
+    }
   }
 
   @Override
@@ -185,6 +185,30 @@ public class ExperimentServiceImplTest {
         .isEqualTo("two");
   }
 
+  @Test
+  public void testResolvedValueNotSharedBetweenServices() {
+    ExperimentService first =
+        new ExperimentServiceImpl(new MapExperimentLoader(BOOL_EXPERIMENT.getKey(), "1"));
+    ExperimentService second =
+        new ExperimentServiceImpl(new MapExperimentLoader(BOOL_EXPERIMENT.getKey(), "0"));
+    assertThat(first.getExperiment(BOOL_EXPERIMENT, false)).isTrue();
+    assertThat(second.getExperiment(BOOL_EXPERIMENT, true)).isFalse();
+    assertThat(first.getExperiment(BOOL_EXPERIMENT, false)).isTrue();
+  }
+
+  @Test
+  public void testResolvedValueKeptUntilValuesChange() {
+    MapExperimentLoader experimentLoader = new MapExperimentLoader(INT_EXPERIMENT.getKey(), "1");
+    ExperimentService experimentService = new ExperimentServiceImpl(experimentLoader);
+    assertThat(experimentService.getExperimentInt(INT_EXPERIMENT, 0)).isEqualTo(1);
+    experimentLoader.map.put(INT_EXPERIMENT.getKey(), "2");
+    assertThat(experimentService.getExperimentInt(INT_EXPERIMENT, 0)).isEqualTo(1);
+    experimentService.startExperimentScope();
+    assertThat(experimentService.getExperimentInt(INT_EXPERIMENT, 0)).isEqualTo(2);
+    experimentService.endExperimentScope();
+    assertThat(experimentService.getExperimentInt(INT_EXPERIMENT, 0)).isEqualTo(2);
+  }
+
   private static class MapExperimentLoader extends HashingExperimentLoader {
 
     private final Map<String, String> map;
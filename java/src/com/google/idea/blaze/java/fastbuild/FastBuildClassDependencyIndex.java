@@ -0,0 +1,480 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.java.fastbuild;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.SetMultimap;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import javax.annotation.Nullable;
+
+/**
+ * A class-level dependency index over the class files in a jar.
+ *
+ * <p>Classes are grouped by the source file they were compiled from (as a package-relative path,
+ * e.g. 'com/google/Foo.java'), and each class records the other classes it references via its
+ * constant pool, including the types in its member descriptors and generic signatures. This lets
+ * fast build recompile the sources which depend on a modified source, so that ABI-changing edits
+ * don't leave dependents stale.
+ *
+ * <p>Compile-time constants are inlined by javac and so don't appear as references; edits to
+ * constant values won't be propagated.
+ */
+final class FastBuildClassDependencyIndex {
+
+  /** Package-relative source path to the internal names of the classes compiled from it. */
+  private final SetMultimap<String, String> classesBySource = HashMultimap.create();
+
+  /** Package-relative source path to the internal names of the classes it references. */
+  private final SetMultimap<String, String> referencedClassesBySource = HashMultimap.create();
+
+  /** Internal class name to the package-relative source paths of classes referencing it. */
+  private final SetMultimap<String, String> referencingSources = HashMultimap.create();
+
+  private FastBuildClassDependencyIndex() {}
+
+  static FastBuildClassDependencyIndex create(File jar) throws IOException {
+    Builder builder = new Builder();
+    try (ZipFile zipFile = new ZipFile(jar)) {
+      Enumeration<? extends ZipEntry> entries = zipFile.entries();
+      while (entries.hasMoreElements()) {
+        ZipEntry entry = entries.nextElement();
+        if (entry.isDirectory() || !entry.getName().endsWith(".class")) {
+          continue;
+        }
+        try (InputStream in = new BufferedInputStream(zipFile.getInputStream(entry))) {
+          builder.addClass(ClassFileInfo.read(in));
+        }
+      }
+    }
+    return builder.build();
+  }
+
+  /**
+   * Replaces the indexed classes of each source with those compiled into the given directory since
+   * the given time, e.g. by a fast build compile.
+   */
+  void update(File classDirectory, long modifiedSinceMillis) throws IOException {
+    List<ClassFileInfo> classes = new ArrayList<>();
+    try (Stream<Path> paths = Files.walk(classDirectory.toPath())) {
+      for (Path path : (Iterable<Path>) paths::iterator) {
+        if (path.toString().endsWith(".class")
+            && Files.getLastModifiedTime(path).toMillis() >= modifiedSinceMillis) {
+          try (InputStream in = new BufferedInputStream(Files.newInputStream(path))) {
+            classes.add(ClassFileInfo.read(in));
+          }
+        }
+      }
+    }
+    update(classes);
+  }
+
+  /** Replaces the indexed classes of each source with the given classes. */
+  @VisibleForTesting
+  synchronized void update(Collection<ClassFileInfo> classes) {
+    Set<String> updatedSources = new HashSet<>();
+    for (ClassFileInfo classInfo : classes) {
+      String sourcePath = classInfo.sourcePath();
+      if (sourcePath != null && updatedSources.add(sourcePath)) {
+        removeSource(sourcePath);
+      }
+    }
+    classes.forEach(this::addClass);
+  }
+
+  /** Returns true if the index contains classes compiled from the given source path. */
+  synchronized boolean containsSource(String sourcePath) {
+    return classesBySource.containsKey(sourcePath);
+  }
+
+  /**
+   * Returns the package-relative paths of all sources with a class directly referencing a class
+   * compiled from the given source path, excluding the source itself.
+   */
+  synchronized ImmutableSet<String> getDependentSources(String sourcePath) {
+    ImmutableSet.Builder<String> dependents = ImmutableSet.builder();
+    for (String className : classesBySource.get(sourcePath)) {
+      for (String dependent : referencingSources.get(className)) {
+        if (!dependent.equals(sourcePath)) {
+          dependents.add(dependent);
+        }
+      }
+    }
+    return dependents.build();
+  }
+
+  private void addClass(ClassFileInfo classInfo) {
+    String sourcePath = classInfo.sourcePath();
+    if (sourcePath == null) {
+      return;
+    }
+    classesBySource.put(sourcePath, classInfo.className);
+    for (String referenced : classInfo.referencedClasses) {
+      if (!referenced.equals(classInfo.className)) {
+        referencedClassesBySource.put(sourcePath, referenced);
+        referencingSources.put(referenced, sourcePath);
+      }
+    }
+  }
+
+  private void removeSource(String sourcePath) {
+    classesBySource.removeAll(sourcePath);
+    for (String referenced : referencedClassesBySource.removeAll(sourcePath)) {
+      referencingSources.remove(referenced, sourcePath);
+    }
+  }
+
+  @VisibleForTesting
+  static class Builder {
+    private final FastBuildClassDependencyIndex index = new FastBuildClassDependencyIndex();
+
+    @VisibleForTesting
+    Builder addClass(ClassFileInfo classInfo) {
+      index.addClass(classInfo);
+      return this;
+    }
+
+    @VisibleForTesting
+    FastBuildClassDependencyIndex build() {
+      return index;
+    }
+  }
+
+  /** The subset of a class file needed for the dependency index. */
+  @VisibleForTesting
+  static final class ClassFileInfo {
+    private static final int MAGIC = 0xCAFEBABE;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    /** Internal name, e.g. 'com/google/Foo$Inner'. */
+    final String className;
+    /** The SourceFile attribute, e.g. 'Foo.java', if present. */
+    @Nullable final String sourceFile;
+    /** Internal names of the classes referenced by the constant pool and type descriptors. */
+    final ImmutableSet<String> referencedClasses;
+
+    @VisibleForTesting
+    ClassFileInfo(
+        String className, @Nullable String sourceFile, ImmutableSet<String> referencedClasses) {
+      this.className = className;
+      this.sourceFile = sourceFile;
+      this.referencedClasses = referencedClasses;
+    }
+
+    /** The package-relative path of the source file, or null if unknown. */
+    @Nullable
+    String sourcePath() {
+      if (sourceFile == null) {
+        return null;
+      }
+      int lastSlash = className.lastIndexOf('/');
+      return lastSlash == -1 ? sourceFile : className.substring(0, lastSlash + 1) + sourceFile;
+    }
+
+    static ClassFileInfo read(InputStream stream) throws IOException {
+      DataInputStream in = new DataInputStream(stream);
+      if (in.readInt() != MAGIC) {
+        throw new IOException("Not a class file");
+      }
+      in.readUnsignedShort(); // minor version
+      in.readUnsignedShort(); // major version
+
+      int constantPoolCount = in.readUnsignedShort();
+      String[] utf8 = new String[constantPoolCount];
+      int[] classNameIndices = new int[constantPoolCount];
+      int classCount = 0;
+      int[] classIndexToNameIndex = new int[constantPoolCount];
+      // Utf8 entries holding descriptors or signatures, which may reference other classes
+      boolean[] isTypeDescriptor = new boolean[constantPoolCount];
+      for (int i = 1; i < constantPoolCount; i++) {
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+          case CONSTANT_UTF8:
+            utf8[i] = in.readUTF();
+            break;
+          case CONSTANT_CLASS:
+            int nameIndex = in.readUnsignedShort();
+            classNameIndices[classCount++] = nameIndex;
+            classIndexToNameIndex[i] = nameIndex;
+            break;
+          case CONSTANT_METHOD_TYPE:
+            isTypeDescriptor[in.readUnsignedShort()] = true;
+            break;
+          case CONSTANT_NAME_AND_TYPE:
+            skip(in, 2); // name
+            isTypeDescriptor[in.readUnsignedShort()] = true;
+            break;
+          case CONSTANT_STRING:
+          case CONSTANT_MODULE:
+          case CONSTANT_PACKAGE:
+            skip(in, 2);
+            break;
+          case CONSTANT_METHOD_HANDLE:
+            skip(in, 3);
+            break;
+          case CONSTANT_INTEGER:
+          case CONSTANT_FLOAT:
+          case CONSTANT_FIELDREF:
+          case CONSTANT_METHODREF:
+          case CONSTANT_INTERFACE_METHODREF:
+          case CONSTANT_DYNAMIC:
+          case CONSTANT_INVOKE_DYNAMIC:
+            skip(in, 4);
+            break;
+          case CONSTANT_LONG:
+          case CONSTANT_DOUBLE:
+            skip(in, 8);
+            i++; // these take up two constant pool entries
+            break;
+          default:
+            throw new IOException("Unknown constant pool tag " + tag);
+        }
+      }
+
+      in.readUnsignedShort(); // access flags
+      String className = utf8[classIndexToNameIndex[in.readUnsignedShort()]];
+      in.readUnsignedShort(); // super class
+      skip(in, 2 * in.readUnsignedShort()); // interfaces
+      readMembers(in, utf8, isTypeDescriptor); // fields
+      readMembers(in, utf8, isTypeDescriptor); // methods
+
+      String sourceFile = null;
+      int attributeCount = in.readUnsignedShort();
+      for (int i = 0; i < attributeCount; i++) {
+        String name = utf8[in.readUnsignedShort()];
+        int length = in.readInt();
+        if ("SourceFile".equals(name)) {
+          sourceFile = utf8[in.readUnsignedShort()];
+          skip(in, length - 2);
+        } else if ("Signature".equals(name)) {
+          isTypeDescriptor[in.readUnsignedShort()] = true;
+          skip(in, length - 2);
+        } else {
+          skip(in, length);
+        }
+      }
+
+      Set<String> referenced = new HashSet<>();
+      for (int i = 0; i < classCount; i++) {
+        String name = toClassName(utf8[classNameIndices[i]]);
+        if (name != null) {
+          referenced.add(name);
+        }
+      }
+      for (int i = 1; i < constantPoolCount; i++) {
+        if (isTypeDescriptor[i] && utf8[i] != null) {
+          addDescriptorTypes(utf8[i], referenced);
+        }
+      }
+      return new ClassFileInfo(className, sourceFile, ImmutableSet.copyOf(referenced));
+    }
+
+    /** Skips over fields or methods, recording their descriptors and signatures. */
+    private static void readMembers(DataInputStream in, String[] utf8, boolean[] isTypeDescriptor)
+        throws IOException {
+      int count = in.readUnsignedShort();
+      for (int i = 0; i < count; i++) {
+        skip(in, 4); // access flags, name
+        isTypeDescriptor[in.readUnsignedShort()] = true;
+        int attributeCount = in.readUnsignedShort();
+        for (int j = 0; j < attributeCount; j++) {
+          String name = utf8[in.readUnsignedShort()];
+          int length = in.readInt();
+          if ("Signature".equals(name)) {
+            isTypeDescriptor[in.readUnsignedShort()] = true;
+            skip(in, length - 2);
+          } else {
+            skip(in, length);
+          }
+        }
+      }
+    }
+
+    private static void skip(DataInputStream in, int bytes) throws IOException {
+      while (bytes > 0) {
+        int skipped = in.skipBytes(bytes);
+        if (skipped <= 0) {
+          throw new EOFException();
+        }
+        bytes -= skipped;
+      }
+    }
+
+    /**
+     * Adds the classes named by 'L...;' types in a field or method descriptor, or in a generic
+     * signature. Type variables, primitives and formal type parameter names are ignored.
+     */
+    @VisibleForTesting
+    static void addDescriptorTypes(String descriptor, Set<String> referenced) {
+      try {
+        new DescriptorReader(descriptor, referenced).readAll();
+      } catch (IndexOutOfBoundsException e) {
+        // malformed descriptor; keep whatever was read before the error
+      }
+    }
+
+    private static final class DescriptorReader {
+      private final String descriptor;
+      private final Set<String> referenced;
+      private int pos;
+
+      DescriptorReader(String descriptor, Set<String> referenced) {
+        this.descriptor = descriptor;
+        this.referenced = referenced;
+      }
+
+      void readAll() {
+        if (peek() == '<') {
+          readFormalTypeParameters();
+        }
+        while (pos < descriptor.length()) {
+          char c = peek();
+          if (c == 'L' || c == 'T' || c == '[') {
+            readType();
+          } else {
+            pos++; // primitives, and the '(', ')' and '^' of method descriptors
+          }
+        }
+      }
+
+      /** Reads '<T:bound;U::bound;>', where each identifier is followed by one or more bounds. */
+      private void readFormalTypeParameters() {
+        pos++;
+        while (peek() != '>') {
+          pos = descriptor.indexOf(':', pos);
+          while (peek() == ':') {
+            pos++;
+            char c = peek();
+            if (c == 'L' || c == 'T' || c == '[') {
+              readType();
+            }
+          }
+        }
+        pos++;
+      }
+
+      private void readType() {
+        switch (peek()) {
+          case 'L':
+            readClassType();
+            break;
+          case 'T':
+            int end = descriptor.indexOf(';', pos);
+            pos = end == -1 ? descriptor.length() : end + 1;
+            break;
+          case '[':
+            pos++;
+            readType();
+            break;
+          default:
+            pos++;
+        }
+      }
+
+      /** Reads 'Lcom/Outer<...>.Inner<...>;', adding both the outer and inner class names. */
+      private void readClassType() {
+        pos++;
+        StringBuilder name = new StringBuilder();
+        while (true) {
+          int start = pos;
+          while (";<.".indexOf(peek()) == -1) {
+            pos++;
+          }
+          name.append(descriptor, start, pos);
+          if (peek() == '<') {
+            readTypeArguments();
+          }
+          if (peek() == '.') {
+            referenced.add(name.toString());
+            name.append('$');
+            pos++;
+          } else {
+            pos++; // ';'
+            referenced.add(name.toString());
+            return;
+          }
+        }
+      }
+
+      private void readTypeArguments() {
+        pos++;
+        while (peek() != '>') {
+          char c = peek();
+          if (c == '*') {
+            pos++;
+          } else {
+            if (c == '+' || c == '-') {
+              pos++;
+            }
+            readType();
+          }
+        }
+        pos++;
+      }
+
+      private char peek() {
+        return descriptor.charAt(pos);
+      }
+    }
+
+    /** Strips array descriptors, returning null for arrays of primitives. */
+    @Nullable
+    private static String toClassName(@Nullable String name) {
+      if (name == null || !name.startsWith("[")) {
+        return name;
+      }
+      int start = name.lastIndexOf('[') + 1;
+      if (start < name.length() && name.charAt(start) == 'L' && name.endsWith(";")) {
+        return name.substring(start + 1, name.length() - 1);
+      }
+      return null;
+    }
+  }
+}
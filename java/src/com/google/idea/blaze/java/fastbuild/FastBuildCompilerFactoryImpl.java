@@ -17,12 +17,17 @@ package com.google.idea.blaze.java.fastbuild;
 
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
 import static java.util.stream.Collectors.joining;
 import static java.util.stream.Collectors.toList;
 
 import com.google.common.base.Stopwatch;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.reflect.Reflection;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.google.idea.blaze.base.logging.EventLoggingService;
 import com.google.idea.blaze.base.logging.EventLoggingService.Command;
 import com.google.idea.blaze.base.logging.NoopEventLoggingService;
@@ -60,6 +65,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
 import java.util.function.Supplier;
 import javax.tools.Diagnostic;
 import javax.tools.Diagnostic.Kind;
@@ -71,11 +77,19 @@ final class FastBuildCompilerFactoryImpl implements FastBuildCompilerFactory {
   private static final String FAST_BUILD_JAVAC_CLASS =
       "com.google.idea.blaze.java.fastbuild.FastBuildJavacImpl";
   private static final Path FAST_BUILD_JAVAC_JAR = Paths.get("lib", "libfast_build_javac.jar");
+  private static final int MAX_CACHED_COMPILERS = 4;
 
   private final BlazeProjectDataManager projectDataManager;
   private final Supplier<EventLoggingService> eventLoggerSupplier;
   private final Supplier<File> fastBuildJavacJarSupplier;
 
+  /**
+   * Loaded javac instances, keyed by their jars and those jars' modification times. Keeping them
+   * around avoids a fresh classloader (and a cold JIT) for every compile.
+   */
+  private final Cache<ImmutableMap<File, Long>, FastBuildJavac> javacCache =
+      CacheBuilder.newBuilder().maximumSize(MAX_CACHED_COMPILERS).build();
+
   @NonInjectable
   private FastBuildCompilerFactoryImpl(
       BlazeProjectDataManager projectDataManager,
@@ -148,43 +162,50 @@ final class FastBuildCompilerFactoryImpl implements FastBuildCompilerFactory {
   }
 
   private Javac createCompiler(List<File> javacJars) throws FastBuildException {
+    FastBuildJavac javaCompiler = getOrLoadJavac(javacJars);
+    return (context, javacArgs, files, writer) -> {
+      Stopwatch timer = Stopwatch.createStarted();
+      Object[] rawOutput = javaCompiler.compile(javacArgs, files);
+      CompilerOutput output = CompilerOutput.decode(rawOutput);
+      processDiagnostics(context, output);
+      boolean result = output.result;
+      Command command =
+          Command.builder()
+              .setExecutable("javac")
+              .setArguments(javacArgs)
+              .setExitCode(result ? 0 : 1)
+              .setSubcommandName("javac")
+              .setDuration(timer.elapsed())
+              .build();
+      eventLoggerSupplier.get().logCommand(getClass(), command);
+      return result;
+    };
+  }
+
+  private FastBuildJavac getOrLoadJavac(List<File> javacJars) throws FastBuildException {
+    ImmutableList<File> jars =
+        ImmutableList.<File>builder()
+            .addAll(javacJars)
+            .add(fastBuildJavacJarSupplier.get())
+            .build();
+    ImmutableMap<File, Long> key =
+        jars.stream().distinct().collect(toImmutableMap(jar -> jar, File::lastModified));
     try {
-      Class<?> javacClass =
-          loadJavacClass(
-              FAST_BUILD_JAVAC_CLASS,
-              ImmutableList.<File>builder()
-                  .addAll(javacJars)
-                  .add(fastBuildJavacJarSupplier.get())
-                  .build());
-
-      Constructor<?> createMethod = javacClass.getConstructor();
-      Object javacInstance = createMethod.newInstance();
-
-      FastBuildJavac javaCompiler =
-          Reflection.newProxy(
-              FastBuildJavac.class, new MatchingMethodInvocationHandler(javacClass, javacInstance));
-      return (context, javacArgs, files, writer) -> {
-        Stopwatch timer = Stopwatch.createStarted();
-        Object[] rawOutput = javaCompiler.compile(javacArgs, files);
-        CompilerOutput output = CompilerOutput.decode(rawOutput);
-        processDiagnostics(context, output);
-        boolean result = output.result;
-        Command command =
-            Command.builder()
-                .setExecutable("javac")
-                .setArguments(javacArgs)
-                .setExitCode(result ? 0 : 1)
-                .setSubcommandName("javac")
-                .setDuration(timer.elapsed())
-                .build();
-        eventLoggerSupplier.get().logCommand(getClass(), command);
-        return result;
-      };
-    } catch (MalformedURLException | ReflectiveOperationException e) {
-      throw new FastBuildIncrementalCompileException(e);
+      return javacCache.get(key, () -> loadJavac(jars));
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      throw new FastBuildIncrementalCompileException(e.getCause());
     }
   }
 
+  private FastBuildJavac loadJavac(List<File> jars)
+      throws MalformedURLException, ReflectiveOperationException {
+    Class<?> javacClass = loadJavacClass(FAST_BUILD_JAVAC_CLASS, jars);
+    Constructor<?> createMethod = javacClass.getConstructor();
+    Object javacInstance = createMethod.newInstance();
+    return Reflection.newProxy(
+        FastBuildJavac.class, new MatchingMethodInvocationHandler(javacClass, javacInstance));
+  }
+
   private static File findFastBuildJavacJar() {
     IdeaPluginDescriptor blazePlugin =
         PluginManager.getPlugin(
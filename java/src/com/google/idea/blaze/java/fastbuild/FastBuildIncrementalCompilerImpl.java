@@ -16,10 +16,14 @@
 package com.google.idea.blaze.java.fastbuild;
 
 import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.ImmutableList.toImmutableList;
 
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Multimaps;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.idea.blaze.base.console.BlazeConsoleService;
 import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
@@ -34,22 +38,41 @@ import com.google.idea.blaze.java.fastbuild.FastBuildBlazeData.JavaInfo;
 import com.google.idea.blaze.java.fastbuild.FastBuildCompiler.CompileInstructions;
 import com.google.idea.blaze.java.fastbuild.FastBuildLogDataScope.FastBuildLogOutput;
 import com.google.idea.blaze.java.fastbuild.FastBuildState.BuildOutput;
+import com.google.idea.common.experiments.BoolExperiment;
+import com.google.idea.common.experiments.IntExperiment;
 import com.google.idea.common.util.ConcurrencyUtil;
 import com.intellij.execution.ui.ConsoleViewContentType;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import java.io.File;
+import java.io.IOException;
 import java.io.Writer;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nullable;
 
 final class FastBuildIncrementalCompilerImpl implements FastBuildIncrementalCompiler {
 
+  private static final Logger logger = Logger.getInstance(FastBuildIncrementalCompilerImpl.class);
+
+  /** Whether to also recompile sources which reference classes in the modified sources. */
+  private static final BoolExperiment recompileDependents =
+      new BoolExperiment("fast.build.recompile.dependents", true);
+
+  /** Above this, recompiling dependents is likely slower than just rebuilding with blaze. */
+  private static final IntExperiment maxDependentSources =
+      new IntExperiment("fast.build.max.dependent.sources", 500);
+
   private final BlazeProjectDataManager projectDataManager;
   private final FastBuildCompilerFactory compilerFactory;
   private final BlazeConsoleService blazeConsoleService;
 
+  @Nullable private CompilationCache compilationCache;
+
   FastBuildIncrementalCompilerImpl(Project project) {
     this.projectDataManager = BlazeProjectDataManager.getInstance(project);
     this.compilerFactory = FastBuildCompilerFactory.getInstance(project);
@@ -69,7 +92,7 @@ final class FastBuildIncrementalCompilerImpl implements FastBuildIncrementalComp
               BlazeConsoleWriter writer = new BlazeConsoleWriter(blazeConsoleService);
 
               ChangedSourceInfo changedSourceInfo =
-                  getPathsToCompile(context, label, buildOutput.blazeData(), modifiedFiles);
+                  getPathsToCompile(context, label, buildOutput, modifiedFiles);
 
               if (!changedSourceInfo.pathsToCompile.isEmpty()) {
                 CompileInstructions instructions =
@@ -89,9 +112,13 @@ final class FastBuildIncrementalCompilerImpl implements FastBuildIncrementalComp
                   instructions = modification.modifyInstructions(instructions);
                 }
 
+                // file modification times may only have a granularity of one second
+                long compileStartMillis = System.currentTimeMillis() / 1000 * 1000;
                 compilerFactory
                     .getCompilerFor(label, buildOutput.blazeData())
                     .compile(context, instructions);
+                updateDependencyIndex(
+                    buildOutput, buildState.compilerOutputDirectory(), compileStartMillis);
               } else {
                 context.output(new PrintOutput("No modified files to compile."));
               }
@@ -100,95 +127,242 @@ final class FastBuildIncrementalCompilerImpl implements FastBuildIncrementalComp
   }
 
   private ChangedSourceInfo getPathsToCompile(
-      BlazeContext context,
-      Label label,
-      Map<Label, FastBuildBlazeData> blazeData,
-      Set<File> modifiedSinceBuild) {
+      BlazeContext context, Label label, BuildOutput buildOutput, Set<File> modifiedSinceBuild) {
 
     Stopwatch timer = Stopwatch.createStarted();
 
     BlazeProjectData projectData = projectDataManager.getBlazeProjectData();
-    Set<File> sourceFiles = new HashSet<>();
+    TargetSources targetSources =
+        getCompilationCache(buildOutput)
+            .targetSources
+            .computeIfAbsent(
+                label,
+                l ->
+                    TargetSources.create(
+                        projectData.getArtifactLocationDecoder(), buildOutput.blazeData(), l));
+
+    Set<File> sourceFiles = new LinkedHashSet<>();
+    for (File file : modifiedSinceBuild) {
+      if (file.getName().endsWith(".java")
+          && targetSources.sourceToTarget.containsKey(file)
+          && file.exists()) {
+        sourceFiles.add(file);
+      }
+    }
+    if (!sourceFiles.isEmpty() && recompileDependents.getValue()) {
+      sourceFiles.addAll(findDependentSources(context, buildOutput, targetSources, sourceFiles));
+    }
+
     Set<String> annotationProcessorClassNames = new HashSet<>();
     // Use ImmutableSet.Builder because it will preserve the classpath order.
     ImmutableSet.Builder<File> annotationProcessorsClasspath = ImmutableSet.builder();
-    Set<Label> seenTargets = new HashSet<>();
-    AtomicInteger affectedTargets = new AtomicInteger(0);
-    recursivelyAddModifiedJavaSources(
-        projectData.getArtifactLocationDecoder(),
-        blazeData,
-        label,
-        seenTargets,
-        sourceFiles,
-        annotationProcessorClassNames,
-        annotationProcessorsClasspath,
-        modifiedSinceBuild,
-        affectedTargets);
+    Set<Label> affectedTargets = new HashSet<>();
+    for (File sourceFile : sourceFiles) {
+      Label target = targetSources.sourceToTarget.get(sourceFile);
+      if (!affectedTargets.add(target)) {
+        continue;
+      }
+      JavaInfo javaInfo = buildOutput.blazeData().get(target).javaInfo().get();
+      annotationProcessorClassNames.addAll(javaInfo.annotationProcessorClassNames());
+      for (ArtifactLocation artifactLocation : javaInfo.annotationProcessorClasspath()) {
+        annotationProcessorsClasspath.add(
+            projectData.getArtifactLocationDecoder().decode(artifactLocation));
+      }
+    }
 
     context.output(new StatusOutput("Calculated compilation paths in " + timer));
     context.output(FastBuildLogOutput.milliseconds("calculate_changed_sources_time_ms", timer));
-    context.output(FastBuildLogOutput.keyValue("affected_targets", affectedTargets.toString()));
+    context.output(
+        FastBuildLogOutput.keyValue("affected_targets", Integer.toString(affectedTargets.size())));
 
     return new ChangedSourceInfo(
         sourceFiles, annotationProcessorClassNames, annotationProcessorsClasspath.build());
   }
 
-  private void recursivelyAddModifiedJavaSources(
-      ArtifactLocationDecoder artifactLocationDecoder,
-      Map<Label, FastBuildBlazeData> blazeData,
-      Label label,
-      Set<Label> seenTargets,
-      Set<File> sourceFiles,
-      Set<String> annotationProcessorClassNames,
-      ImmutableSet.Builder<File> annotationProcessorsClasspath,
-      Set<File> modifiedSinceBuild,
-      AtomicInteger affectedTargets) {
-    if (seenTargets.contains(label)) {
-      return;
+  /**
+   * Finds the sources which directly reference classes compiled from the modified sources, so that
+   * ABI-changing edits are propagated to them.
+   */
+  private ImmutableSet<File> findDependentSources(
+      BlazeContext context,
+      BuildOutput buildOutput,
+      TargetSources targetSources,
+      Set<File> modifiedSources) {
+    FastBuildClassDependencyIndex dependencyIndex = getDependencyIndex(context, buildOutput);
+    if (dependencyIndex == null) {
+      return ImmutableSet.of();
+    }
+    ImmutableSet.Builder<File> dependents = ImmutableSet.builder();
+    for (File modified : modifiedSources) {
+      String sourcePath = findIndexedSourcePath(dependencyIndex, modified);
+      if (sourcePath == null) {
+        continue;
+      }
+      for (String dependentPath : dependencyIndex.getDependentSources(sourcePath)) {
+        for (File dependent : targetSources.findSources(dependentPath)) {
+          if (!modifiedSources.contains(dependent) && dependent.exists()) {
+            dependents.add(dependent);
+          }
+        }
+      }
+    }
+    ImmutableSet<File> result = dependents.build();
+    context.output(
+        FastBuildLogOutput.keyValue("dependent_source_count", Integer.toString(result.size())));
+    if (result.size() > maxDependentSources.getValue()) {
+      context.output(
+          new StatusOutput(
+              String.format(
+                  "Not recompiling %s dependent sources (more than %s)",
+                  result.size(), maxDependentSources.getValue())));
+      return ImmutableSet.of();
     }
+    if (!result.isEmpty()) {
+      context.output(
+          new StatusOutput(String.format("Also recompiling %s dependent sources", result.size())));
+    }
+    return result;
+  }
+
+  /**
+   * Returns the package-relative path of the given source, as known to the dependency index, or
+   * null if it doesn't contain any classes compiled from this source.
+   */
+  @Nullable
+  private static String findIndexedSourcePath(
+      FastBuildClassDependencyIndex dependencyIndex, File source) {
+    // try the longest suffix first, since the package root isn't known
+    String path = source.getPath();
+    for (int i = path.indexOf(File.separatorChar);
+        i != -1 && i < path.length() - 1;
+        i = path.indexOf(File.separatorChar, i + 1)) {
+      String suffix = path.substring(i + 1).replace(File.separatorChar, '/');
+      if (dependencyIndex.containsSource(suffix)) {
+        return suffix;
+      }
+    }
+    return dependencyIndex.containsSource(source.getName()) ? source.getName() : null;
+  }
 
-    seenTargets.add(label);
+  @Nullable
+  private FastBuildClassDependencyIndex getDependencyIndex(
+      BlazeContext context, BuildOutput buildOutput) {
+    CompilationCache cache = getCompilationCache(buildOutput);
+    synchronized (cache) {
+      if (cache.dependencyIndex == null) {
+        Stopwatch timer = Stopwatch.createStarted();
+        try {
+          cache.dependencyIndex = FastBuildClassDependencyIndex.create(buildOutput.deployJar());
+        } catch (IOException e) {
+          logger.warn("Couldn't index classes in " + buildOutput.deployJar(), e);
+          return null;
+        }
+        context.output(FastBuildLogOutput.milliseconds("dependency_index_time_ms", timer));
+      }
+      return cache.dependencyIndex;
+    }
+  }
 
-    FastBuildBlazeData targetIdeInfo = blazeData.get(label);
-    if (targetIdeInfo == null || !targetIdeInfo.javaInfo().isPresent()) {
+  /**
+   * Updates the dependency index with the classes just compiled, so that references added or
+   * removed since the last blaze build are taken into account by the next compile.
+   */
+  private void updateDependencyIndex(
+      BuildOutput buildOutput, File compilerOutputDirectory, long compileStartMillis) {
+    FastBuildClassDependencyIndex dependencyIndex;
+    CompilationCache cache = getCompilationCache(buildOutput);
+    synchronized (cache) {
+      dependencyIndex = cache.dependencyIndex;
+    }
+    if (dependencyIndex == null) {
       return;
     }
+    try {
+      dependencyIndex.update(compilerOutputDirectory, compileStartMillis);
+    } catch (IOException e) {
+      logger.warn("Couldn't index classes in " + compilerOutputDirectory, e);
+    }
+  }
+
+  private synchronized CompilationCache getCompilationCache(BuildOutput buildOutput) {
+    if (compilationCache == null || compilationCache.buildOutput != buildOutput) {
+      compilationCache = new CompilationCache(buildOutput);
+    }
+    return compilationCache;
+  }
 
-    JavaInfo javaInfo = targetIdeInfo.javaInfo().get();
+  /**
+   * State derived from a completed build, reused between compiles until the next build completes.
+   */
+  private static class CompilationCache {
+    final BuildOutput buildOutput;
+    final Map<Label, TargetSources> targetSources = new ConcurrentHashMap<>();
 
-    boolean addedSources = false;
-    for (ArtifactLocation sourceArtifact : javaInfo.sources()) {
-      File sourceFile = artifactLocationDecoder.decode(sourceArtifact);
-      if (sourceFile.getName().endsWith(".java")
-          && modifiedSinceBuild.contains(sourceFile)
-          && sourceFile.exists()) {
-        sourceFiles.add(sourceFile);
-        addedSources = true;
-      }
+    @Nullable FastBuildClassDependencyIndex dependencyIndex;
+
+    CompilationCache(BuildOutput buildOutput) {
+      this.buildOutput = buildOutput;
     }
+  }
 
-    if (addedSources) {
-      affectedTargets.incrementAndGet();
-      annotationProcessorClassNames.addAll(javaInfo.annotationProcessorClassNames());
-      for (ArtifactLocation artifactLocation : javaInfo.annotationProcessorClasspath()) {
-        annotationProcessorsClasspath.add(artifactLocationDecoder.decode(artifactLocation));
-      }
+  /** The java sources in the transitive closure of a target, and the targets they belong to. */
+  private static class TargetSources {
+    final ImmutableMap<File, Label> sourceToTarget;
+    final ImmutableListMultimap<String, File> sourcesByName;
+
+    private TargetSources(Map<File, Label> sourceToTarget) {
+      this.sourceToTarget = ImmutableMap.copyOf(sourceToTarget);
+      this.sourcesByName = Multimaps.index(sourceToTarget.keySet(), File::getName);
+    }
+
+    /** Finds all sources matching the given package-relative path. */
+    ImmutableList<File> findSources(String sourcePath) {
+      String name = sourcePath.substring(sourcePath.lastIndexOf('/') + 1);
+      String suffix = File.separatorChar + sourcePath.replace('/', File.separatorChar);
+      return sourcesByName.get(name).stream()
+          .filter(file -> file.getPath().endsWith(suffix))
+          .collect(toImmutableList());
     }
 
-    targetIdeInfo
-        .dependencies()
-        .forEach(
-            dep ->
-                recursivelyAddModifiedJavaSources(
-                    artifactLocationDecoder,
-                    blazeData,
-                    dep,
-                    seenTargets,
-                    sourceFiles,
-                    annotationProcessorClassNames,
-                    annotationProcessorsClasspath,
-                    modifiedSinceBuild,
-                    affectedTargets));
+    static TargetSources create(
+        ArtifactLocationDecoder artifactLocationDecoder,
+        Map<Label, FastBuildBlazeData> blazeData,
+        Label label) {
+      Map<File, Label> sourceToTarget = new LinkedHashMap<>();
+      recursivelyAddJavaSources(
+          artifactLocationDecoder, blazeData, label, new HashSet<>(), sourceToTarget);
+      return new TargetSources(sourceToTarget);
+    }
+
+    private static void recursivelyAddJavaSources(
+        ArtifactLocationDecoder artifactLocationDecoder,
+        Map<Label, FastBuildBlazeData> blazeData,
+        Label label,
+        Set<Label> seenTargets,
+        Map<File, Label> sourceToTarget) {
+      if (!seenTargets.add(label)) {
+        return;
+      }
+
+      FastBuildBlazeData targetIdeInfo = blazeData.get(label);
+      if (targetIdeInfo == null || !targetIdeInfo.javaInfo().isPresent()) {
+        return;
+      }
+
+      for (ArtifactLocation sourceArtifact : targetIdeInfo.javaInfo().get().sources()) {
+        File sourceFile = artifactLocationDecoder.decode(sourceArtifact);
+        if (sourceFile.getName().endsWith(".java")) {
+          sourceToTarget.putIfAbsent(sourceFile, label);
+        }
+      }
+
+      targetIdeInfo
+          .dependencies()
+          .forEach(
+              dep ->
+                  recursivelyAddJavaSources(
+                      artifactLocationDecoder, blazeData, dep, seenTargets, sourceToTarget));
+    }
   }
 
   private static class BlazeConsoleWriter extends Writer {
@@ -25,11 +25,15 @@ import com.sun.tools.javac.util.JCDiagnostic;
 import com.sun.tools.javac.util.JavacMessages;
 import com.sun.tools.javac.util.Log;
 import java.io.File;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
 import javax.tools.Diagnostic;
 import javax.tools.DiagnosticListener;
 import javax.tools.JavaFileObject;
@@ -48,13 +52,33 @@ import javax.tools.JavaFileObject;
  */
 public final class FastBuildJavacImpl implements FastBuildJavac {
 
+  /** Options whose values are lists of jars / directories read through the file manager. */
+  private static final Set<String> PATH_OPTIONS =
+      new HashSet<>(
+          Arrays.asList(
+              "-cp",
+              "-classpath",
+              "--class-path",
+              "-bootclasspath",
+              "--boot-class-path",
+              "-processorpath",
+              "--processor-path"));
+
+  private final JavacTool javacTool = JavacTool.create();
+
+  /**
+   * The file manager is kept between compilations, so that classpath jars aren't reopened and
+   * re-indexed each time. It's recreated whenever the path options or any of the jars change.
+   */
+  private JavacFileManager fileManager;
+
+  private List<String> fileManagerKey;
+
   @Override
-  public Object[] compile(List<String> args, Collection<File> sources) {
+  public synchronized Object[] compile(List<String> args, Collection<File> sources) {
     Context context = new Context();
     DiagnosticsCollector collector = new DiagnosticsCollector(context);
-    JavacTool javacTool = JavacTool.create();
-    JavacFileManager fileManager =
-        javacTool.getStandardFileManager(collector, Locale.ENGLISH, StandardCharsets.UTF_8);
+    JavacFileManager fileManager = getFileManager(args);
     Iterable<? extends JavaFileObject> filesToCompile =
         fileManager.getJavaFileObjects(sources.toArray(new File[] {}));
     JavacTask task =
@@ -66,11 +90,64 @@ public final class FastBuildJavacImpl implements FastBuildJavac {
             /* classes= */ null,
             filesToCompile,
             context);
-    boolean result = task.call();
+    boolean result;
+    try {
+      result = task.call();
+    } finally {
+      try {
+        fileManager.flush();
+      } catch (IOException e) {
+        resetFileManager();
+      }
+    }
     CompilerOutput results = new CompilerOutput(result, collector.diagnostics);
     return results.encode();
   }
 
+  private JavacFileManager getFileManager(List<String> args) {
+    List<String> key = getFileManagerKey(args);
+    if (fileManager == null || !key.equals(fileManagerKey)) {
+      resetFileManager();
+      // diagnostics from the file manager itself aren't tied to a single compilation
+      fileManager =
+          javacTool.getStandardFileManager(
+              /* diagnosticListener= */ null, Locale.ENGLISH, StandardCharsets.UTF_8);
+      fileManagerKey = key;
+    }
+    return fileManager;
+  }
+
+  private void resetFileManager() {
+    if (fileManager != null) {
+      try {
+        fileManager.close();
+      } catch (IOException e) {
+        // ignore -- we're discarding it anyway
+      }
+    }
+    fileManager = null;
+    fileManagerKey = null;
+  }
+
+  /**
+   * Returns the path options along with the size and modification time of each path entry, so that
+   * the cached file manager isn't used with stale jars.
+   */
+  private static List<String> getFileManagerKey(List<String> args) {
+    List<String> key = new ArrayList<>();
+    for (int i = 0; i < args.size() - 1; i++) {
+      if (!PATH_OPTIONS.contains(args.get(i))) {
+        continue;
+      }
+      key.add(args.get(i));
+      for (String path : args.get(i + 1).split(File.pathSeparator)) {
+        File file = new File(path);
+        key.add(path + "@" + file.lastModified() + ":" + file.length());
+      }
+    }
+    return key;
+  }
+
   @Trusted
   private static final class DiagnosticsCollector implements DiagnosticListener<JavaFileObject> {
 
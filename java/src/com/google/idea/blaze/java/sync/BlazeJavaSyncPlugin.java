@@ -122,8 +122,7 @@ public class BlazeJavaSyncPlugin implements BlazeSyncPlugin {
               workspaceRoot, workingSet, Blaze.getBuildSystemProvider(project)::isBuildFile);
     }
     JavaSourceFilter sourceFilter =
-        new JavaSourceFilter(
-            Blaze.getBuildSystem(project), workspaceRoot, projectViewSet, targetMap);
+        JavaSourceFilter.getInstance(project, workspaceRoot, projectViewSet, targetMap);
 
     JdepsMap jdepsMap =
         jdepsFileReader.loadJdepsFiles(
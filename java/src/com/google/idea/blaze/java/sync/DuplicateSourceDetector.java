@@ -15,57 +15,96 @@
  */
 package com.google.idea.blaze.java.sync;
 
-import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.Lists;
-import com.google.common.collect.Multimap;
-import com.google.common.collect.Sets;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
 import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
 import com.google.idea.blaze.base.ideinfo.TargetKey;
 import com.google.idea.blaze.base.scope.BlazeContext;
 import com.google.idea.blaze.base.scope.output.PerformanceWarning;
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
-/** Detects and reports duplicate sources */
+/**
+ * Detects and reports duplicate sources.
+ *
+ * <p>Sources and targets are interned to dense int ids, and only the first target consuming each
+ * source is recorded per source. Additional (source, target) pairs are appended to a pair of
+ * primitive arrays, so the memory used is proportional to the number of distinct sources rather
+ * than the number of (source, target) pairs, and grouping the duplicates only sorts those pairs.
+ */
 public class DuplicateSourceDetector {
-  Multimap<ArtifactLocation, TargetKey> artifacts = ArrayListMultimap.create();
+  private final Interner<ArtifactLocation> sources = new Interner<>();
+  private final Interner<TargetKey> targets = new Interner<>();
+
+  /** The id of the first target consuming each source, indexed by source id. */
+  private int[] owners = new int[64];
+
+  /** (source id, target id) pairs for sources consumed by more than one target. */
+  private long[] extraOwners = new long[16];
+
+  private int extraOwnerCount = 0;
 
   public void add(TargetKey targetKey, ArtifactLocation artifactLocation) {
-    artifacts.put(artifactLocation, targetKey);
+    int sourceCount = sources.size();
+    int source = sources.intern(artifactLocation);
+    int target = targets.intern(targetKey);
+    if (source == sourceCount) {
+      if (source == owners.length) {
+        owners = Arrays.copyOf(owners, owners.length * 2);
+      }
+      owners[source] = target;
+    } else if (owners[source] != target) {
+      if (extraOwnerCount == extraOwners.length) {
+        extraOwners = Arrays.copyOf(extraOwners, extraOwners.length * 2);
+      }
+      extraOwners[extraOwnerCount++] = ((long) source << 32) | target;
+    }
   }
 
   static class Duplicate {
     final ArtifactLocation artifactLocation;
-    final Collection<TargetKey> targets;
+    final ImmutableList<TargetKey> targets;
 
-    public Duplicate(ArtifactLocation artifactLocation, Collection<TargetKey> targets) {
+    public Duplicate(ArtifactLocation artifactLocation, ImmutableList<TargetKey> targets) {
       this.artifactLocation = artifactLocation;
       this.targets = targets;
     }
   }
 
-  public void reportDuplicates(BlazeContext context) {
-    List<Duplicate> duplicates = Lists.newArrayList();
-    for (ArtifactLocation key : artifacts.keySet()) {
-      Collection<TargetKey> labels = artifacts.get(key);
-      if (labels.size() > 1) {
-
-        // Workaround for aspect bug. Can be removed after the next blaze release, as of May 27 2016
-        Set<TargetKey> labelSet = Sets.newHashSet(labels);
-        if (labelSet.size() > 1) {
-          duplicates.add(new Duplicate(key, labelSet));
-        }
+  /** Returns the sources consumed by more than one target, sorted by relative path. */
+  @VisibleForTesting
+  List<Duplicate> findDuplicates() {
+    // sorting the packed pairs groups them by source id
+    long[] pairs = Arrays.copyOf(extraOwners, extraOwnerCount);
+    Arrays.sort(pairs);
+    List<Duplicate> duplicates = new ArrayList<>();
+    int i = 0;
+    while (i < pairs.length) {
+      int source = (int) (pairs[i] >>> 32);
+      // Workaround for aspect bug. Can be removed after the next blaze release, as of May 27 2016
+      Set<TargetKey> owningTargets = new LinkedHashSet<>();
+      owningTargets.add(targets.get(owners[source]));
+      for (; i < pairs.length && (int) (pairs[i] >>> 32) == source; i++) {
+        owningTargets.add(targets.get((int) pairs[i]));
+      }
+      if (owningTargets.size() > 1) {
+        duplicates.add(new Duplicate(sources.get(source), ImmutableList.copyOf(owningTargets)));
       }
     }
+    duplicates.sort(Comparator.comparing(lhs -> lhs.artifactLocation.getRelativePath()));
+    return duplicates;
+  }
 
+  public void reportDuplicates(BlazeContext context) {
+    List<Duplicate> duplicates = findDuplicates();
     if (duplicates.isEmpty()) {
       return;
     }
 
-    duplicates.sort(Comparator.comparing(lhs -> lhs.artifactLocation.getRelativePath()));
-
     context.output(new PerformanceWarning("Duplicate sources detected:"));
     for (Duplicate duplicate : duplicates) {
       ArtifactLocation artifactLocation = duplicate.artifactLocation;
@@ -77,4 +116,59 @@ public class DuplicateSourceDetector {
       context.output(new PerformanceWarning("")); // Newline
     }
   }
+
+  /**
+   * Assigns dense int ids to objects, using an open-addressing hash table of ids rather than a map
+   * of boxed values.
+   */
+  private static final class Interner<T> {
+    private final List<T> values = new ArrayList<>();
+
+    /** Hash table slots, holding the value's id + 1, or 0 if empty. */
+    private int[] slots = new int[128];
+
+    int size() {
+      return values.size();
+    }
+
+    T get(int id) {
+      return values.get(id);
+    }
+
+    int intern(T value) {
+      int mask = slots.length - 1;
+      for (int i = mix(value.hashCode()) & mask; ; i = (i + 1) & mask) {
+        int slot = slots[i];
+        if (slot == 0) {
+          int id = values.size();
+          values.add(value);
+          slots[i] = id + 1;
+          if (values.size() * 2 > slots.length) {
+            rehash();
+          }
+          return id;
+        }
+        if (values.get(slot - 1).equals(value)) {
+          return slot - 1;
+        }
+      }
+    }
+
+    private void rehash() {
+      slots = new int[slots.length * 2];
+      int mask = slots.length - 1;
+      for (int id = 0; id < values.size(); id++) {
+        int i = mix(values.get(id).hashCode()) & mask;
+        while (slots[i] != 0) {
+          i = (i + 1) & mask;
+        }
+        slots[i] = id + 1;
+      }
+    }
+
+    private static int mix(int hash) {
+      int h = hash * 0x9E3779B9;
+      return h ^ (h >>> 16);
+    }
+  }
 }
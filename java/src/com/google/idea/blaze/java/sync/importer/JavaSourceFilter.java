@@ -16,6 +16,7 @@
 package com.google.idea.blaze.java.sync.importer;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
@@ -24,12 +25,20 @@ import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
 import com.google.idea.blaze.base.ideinfo.TargetKey;
 import com.google.idea.blaze.base.ideinfo.TargetMap;
 import com.google.idea.blaze.base.model.primitives.GenericBlazeRules;
+import com.google.idea.blaze.base.model.primitives.LanguageClass;
 import com.google.idea.blaze.base.model.primitives.WorkspaceRoot;
 import com.google.idea.blaze.base.projectview.ProjectViewSet;
+import com.google.idea.blaze.base.scope.BlazeContext;
+import com.google.idea.blaze.base.settings.Blaze;
 import com.google.idea.blaze.base.settings.BuildSystem;
+import com.google.idea.blaze.base.sync.SyncListener;
+import com.google.idea.blaze.base.sync.SyncMode;
+import com.google.idea.blaze.base.sync.SyncResult;
 import com.google.idea.blaze.base.sync.projectview.ProjectViewTargetImportFilter;
 import com.google.idea.blaze.java.JavaBlazeRules;
 import com.google.idea.blaze.java.sync.source.JavaLikeLanguage;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Key;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
@@ -40,50 +49,68 @@ import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 
-/** Segments java rules into source/libraries */
+/**
+ * Segments java rules into source/libraries.
+ *
+ * <p>The classification is made in a single pass over the target map, and shared between the
+ * importers of the JVM languages during a sync (see {@link #getInstance}).
+ */
 public class JavaSourceFilter {
+  private static final Key<JavaSourceFilter> SYNC_INSTANCE_KEY =
+      Key.create("blaze.java.sync.source.filter");
+
   final List<TargetIdeInfo> sourceTargets;
   final List<TargetIdeInfo> libraryTargets;
   final Map<TargetKey, Collection<ArtifactLocation>> targetToJavaSources;
   /** The set of workspace-relative paths for excluded library artifacts. */
   final Set<String> jdepsPathsForExcludedJars = new HashSet<>();
 
+  /** Java targets under the project's import roots, including excluded targets. */
+  private final List<TargetIdeInfo> projectTargets;
+
+  /** Java targets imported as source, including excluded targets. */
+  private final Set<TargetKey> importedAsSource;
+
+  private final TargetMap targetMap;
+  private final ProjectViewSet projectViewSet;
+
   public JavaSourceFilter(
       BuildSystem buildSystem,
       WorkspaceRoot workspaceRoot,
       ProjectViewSet projectViewSet,
       TargetMap targetMap) {
+    this.targetMap = targetMap;
+    this.projectViewSet = projectViewSet;
     ProjectViewTargetImportFilter importFilter =
         new ProjectViewTargetImportFilter(buildSystem, workspaceRoot, projectViewSet);
+    Predicate<ArtifactLocation> isSourceFile = JavaLikeLanguage.getSourceFileMatcher();
 
-    List<TargetIdeInfo> excludedTargets =
-        targetMap
-            .targets()
-            .stream()
-            .filter(importFilter::excludeTarget)
-            .collect(Collectors.toList());
-    excludedTargets.forEach(t -> jdepsPathsForExcludedJars.addAll(relativeArtifactPaths(t)));
-
-    List<TargetIdeInfo> includedTargets = new ArrayList<>(targetMap.targets());
-    includedTargets.removeAll(excludedTargets);
-
-    List<TargetIdeInfo> javaTargets =
-        includedTargets.stream()
+    // only java targets contribute sources, libraries or excluded jars
+    List<ClassifiedTarget> javaTargets =
+        targetMap.targets().parallelStream()
             .filter(target -> target.getJavaIdeInfo() != null)
+            .map(target -> new ClassifiedTarget(importFilter, isSourceFile, target))
             .collect(Collectors.toList());
 
-    targetToJavaSources = Maps.newHashMap();
-    Predicate<ArtifactLocation> isSourceFile = JavaLikeLanguage.getSourceFileMatcher();
-    for (TargetIdeInfo target : javaTargets) {
-      List<ArtifactLocation> javaLikeSources =
-          target.getSources().stream().filter(isSourceFile).collect(Collectors.toList());
-      targetToJavaSources.put(target.getKey(), javaLikeSources);
-    }
-
+    targetToJavaSources = Maps.newHashMapWithExpectedSize(javaTargets.size());
     sourceTargets = Lists.newArrayList();
     libraryTargets = Lists.newArrayList();
-    for (TargetIdeInfo target : javaTargets) {
-      if (importAsSource(importFilter, target, targetToJavaSources.get(target.getKey()))) {
+    projectTargets = Lists.newArrayList();
+    importedAsSource = new HashSet<>();
+    for (ClassifiedTarget classified : javaTargets) {
+      TargetIdeInfo target = classified.target;
+      if (classified.inProject) {
+        projectTargets.add(target);
+      }
+      if (classified.importAsSource) {
+        importedAsSource.add(target.getKey());
+      }
+      if (classified.excluded) {
+        jdepsPathsForExcludedJars.addAll(relativeArtifactPaths(target));
+        continue;
+      }
+      targetToJavaSources.put(target.getKey(), classified.javaLikeSources);
+      if (classified.importAsSource) {
         sourceTargets.add(target);
         jdepsPathsForExcludedJars.addAll(relativeArtifactPaths(target));
       } else {
@@ -92,6 +119,29 @@ public class JavaSourceFilter {
     }
   }
 
+  /**
+   * Returns the source filter for the given sync inputs, reusing the one created by an earlier
+   * importer during the same sync if possible.
+   */
+  public static JavaSourceFilter getInstance(
+      Project project,
+      WorkspaceRoot workspaceRoot,
+      ProjectViewSet projectViewSet,
+      TargetMap targetMap) {
+    synchronized (SYNC_INSTANCE_KEY) {
+      JavaSourceFilter filter = project.getUserData(SYNC_INSTANCE_KEY);
+      if (filter == null
+          || filter.targetMap != targetMap
+          || filter.projectViewSet != projectViewSet) {
+        filter =
+            new JavaSourceFilter(
+                Blaze.getBuildSystem(project), workspaceRoot, projectViewSet, targetMap);
+        project.putUserData(SYNC_INSTANCE_KEY, filter);
+      }
+      return filter;
+    }
+  }
+
   public Collection<TargetIdeInfo> getSourceTargets() {
     return sourceTargets;
   }
@@ -100,6 +150,24 @@ public class JavaSourceFilter {
     return libraryTargets;
   }
 
+  /**
+   * Returns the java targets of the given language under the project's import roots, whether or
+   * not they're imported as source.
+   */
+  public ImmutableList<TargetIdeInfo> getProjectTargets(LanguageClass language) {
+    return projectTargets.stream()
+        .filter(target -> target.getKind().hasLanguage(language))
+        .collect(ImmutableList.toImmutableList());
+  }
+
+  /**
+   * Whether the given java target is imported as source. Unlike {@link #getSourceTargets}, this
+   * includes excluded targets.
+   */
+  public boolean isImportedAsSource(TargetKey key) {
+    return importedAsSource.contains(key);
+  }
+
   /** Whether the given target should be treated as a source or library target. */
   public static boolean importAsSource(
       ProjectViewTargetImportFilter importFilter, TargetIdeInfo target) {
@@ -135,7 +203,29 @@ public class JavaSourceFilter {
     return sources.stream().anyMatch(ArtifactLocation::isSource);
   }
 
-  private List<String> relativeArtifactPaths(TargetIdeInfo target) {
+  /** The classification of a single java target, computed independently of other targets. */
+  private static class ClassifiedTarget {
+    final TargetIdeInfo target;
+    final List<ArtifactLocation> javaLikeSources;
+    final boolean excluded;
+    final boolean inProject;
+    final boolean importAsSource;
+
+    ClassifiedTarget(
+        ProjectViewTargetImportFilter importFilter,
+        Predicate<ArtifactLocation> isSourceFile,
+        TargetIdeInfo target) {
+      this.target = target;
+      this.javaLikeSources =
+          target.getSources().stream().filter(isSourceFile).collect(Collectors.toList());
+      this.excluded = importFilter.excludeTarget(target);
+      this.inProject = importFilter.isSourceTarget(target);
+      this.importAsSource =
+          inProject && (isJavaSourceTarget(target, javaLikeSources) || isJavaProtoTarget(target));
+    }
+  }
+
+  private static List<String> relativeArtifactPaths(TargetIdeInfo target) {
     if (target.getJavaIdeInfo() == null) {
       return ImmutableList.of();
     }
@@ -144,7 +234,7 @@ public class JavaSourceFilter {
         .collect(Collectors.toList());
   }
 
-  private List<String> relativeArtifactPaths(LibraryArtifact jar) {
+  private static List<String> relativeArtifactPaths(LibraryArtifact jar) {
     List<String> list = new ArrayList<>();
     addRelativePath(list, jar.getClassJar());
     addRelativePath(list, jar.getInterfaceJar());
@@ -152,9 +242,24 @@ public class JavaSourceFilter {
     return list;
   }
 
-  private void addRelativePath(List<String> paths, @Nullable ArtifactLocation artifact) {
+  private static void addRelativePath(List<String> paths, @Nullable ArtifactLocation artifact) {
     if (artifact != null) {
       paths.add(artifact.getRelativePath());
     }
   }
+
+  /** Releases the source filter shared during a sync. */
+  static class ClearAfterSync implements SyncListener {
+    @Override
+    public void afterSync(
+        Project project,
+        BlazeContext context,
+        SyncMode syncMode,
+        SyncResult syncResult,
+        ImmutableSet<Integer> buildIds) {
+      synchronized (SYNC_INSTANCE_KEY) {
+        project.putUserData(SYNC_INSTANCE_KEY, null);
+      }
+    }
+  }
 }
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.java.sync.importer.emptylibrary;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.google.idea.blaze.base.command.buildresult.BlazeArtifact;
+import com.google.idea.blaze.base.command.buildresult.RemoteOutputArtifact;
+import com.google.idea.common.experiments.BoolExperiment;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * Caches the empty status of JARs across syncs, projects and IDE restarts, keyed by the artifact's
+ * content digest, so that JARs shared between projects or checkouts aren't fetched and reopened.
+ *
+ * <p>Only artifacts with a content digest (i.e. remote outputs) are cached. {@link EmptyJarTracker}
+ * already avoids reopening unchanged local JARs between syncs of the same project.
+ */
+public class EmptyJarCache {
+  private static final Logger logger = Logger.getInstance(EmptyJarCache.class);
+
+  private static final BoolExperiment enabled = new BoolExperiment("blaze.empty.jar.cache", true);
+
+  private static final String CACHE_FILE_NAME = "empty_jars.dat";
+
+  private static final int MAX_ENTRIES = 200_000;
+
+  private static final int VERSION = 1;
+
+  private final File cacheFile;
+
+  private final Cache<String, Boolean> emptyStatusByDigest =
+      CacheBuilder.newBuilder().maximumSize(MAX_ENTRIES).build();
+
+  private volatile boolean modified = false;
+
+  @GuardedBy("this")
+  private boolean loaded = false;
+
+  public EmptyJarCache() {
+    this(new File(PathManager.getSystemPath(), "blaze/" + CACHE_FILE_NAME).getAbsoluteFile());
+  }
+
+  @VisibleForTesting
+  EmptyJarCache(File cacheFile) {
+    this.cacheFile = cacheFile;
+  }
+
+  @Nullable
+  public static EmptyJarCache getInstance() {
+    return enabled.getValue() ? ServiceManager.getService(EmptyJarCache.class) : null;
+  }
+
+  /**
+   * Returns the cached empty status of the given artifact, or null if it isn't known. Loads the
+   * persisted cache if necessary.
+   */
+  @Nullable
+  Boolean getEmptyStatus(BlazeArtifact artifact) {
+    String digest = getDigest(artifact);
+    if (digest == null) {
+      return null;
+    }
+    ensureLoaded();
+    return emptyStatusByDigest.getIfPresent(digest);
+  }
+
+  void putEmptyStatus(BlazeArtifact artifact, boolean isEmpty) {
+    String digest = getDigest(artifact);
+    if (digest == null) {
+      return;
+    }
+    ensureLoaded();
+    Boolean previous = emptyStatusByDigest.asMap().put(digest, isEmpty);
+    if (previous == null || previous != isEmpty) {
+      modified = true;
+    }
+  }
+
+  /** Persists the cache, if it has changed since it was last loaded or saved. */
+  void save() {
+    if (!modified) {
+      return;
+    }
+    Path cachePath = cacheFile.toPath();
+    try {
+      Files.createDirectories(cachePath.getParent());
+      Path tmp = Files.createTempFile(cachePath.getParent(), CACHE_FILE_NAME, ".tmp");
+      try {
+        modified = false;
+        try (DataOutputStream out =
+            new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+          write(out);
+        }
+        Files.move(tmp, cachePath, StandardCopyOption.REPLACE_EXISTING);
+      } finally {
+        Files.deleteIfExists(tmp);
+      }
+    } catch (IOException e) {
+      modified = true;
+      logger.warn("Failed to write empty JAR cache", e);
+    }
+  }
+
+  /**
+   * Returns a key identifying the contents of the given artifact, or null if it can't be
+   * determined without reading the artifact.
+   */
+  @Nullable
+  private static String getDigest(BlazeArtifact artifact) {
+    if (artifact instanceof RemoteOutputArtifact) {
+      return ((RemoteOutputArtifact) artifact).getHashId();
+    }
+    return null;
+  }
+
+  private synchronized void ensureLoaded() {
+    if (loaded) {
+      return;
+    }
+    loaded = true;
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(cacheFile.toPath())))) {
+      read(in);
+    } catch (NoSuchFileException e) {
+      // nothing cached yet
+    } catch (IOException e) {
+      logger.warn("Failed to read empty JAR cache", e);
+      emptyStatusByDigest.invalidateAll();
+    }
+  }
+
+  private void write(DataOutputStream out) throws IOException {
+    out.writeInt(VERSION);
+    ImmutableMap<String, Boolean> snapshot = ImmutableMap.copyOf(emptyStatusByDigest.asMap());
+    out.writeInt(snapshot.size());
+    for (Map.Entry<String, Boolean> entry : snapshot.entrySet()) {
+      out.writeUTF(entry.getKey());
+      out.writeBoolean(entry.getValue());
+    }
+  }
+
+  private void read(DataInputStream in) throws IOException {
+    if (in.readInt() != VERSION) {
+      return;
+    }
+    int count = in.readInt();
+    for (int i = 0; i < count; i++) {
+      String digest = in.readUTF();
+      boolean isEmpty = in.readBoolean();
+      // entries added during this session take precedence
+      emptyStatusByDigest.asMap().putIfAbsent(digest, isEmpty);
+    }
+  }
+}
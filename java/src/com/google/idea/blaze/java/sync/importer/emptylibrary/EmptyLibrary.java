@@ -44,10 +44,12 @@ import com.google.idea.blaze.java.sync.model.BlazeJarLibrary;
 import com.google.idea.blaze.java.sync.model.BlazeJavaImportResult;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
@@ -173,26 +175,42 @@ public class EmptyLibrary {
       builder.addAllEntries(oldTracker);
       builder.removeEntries(removed);
 
-      // Prefetch updated artifacts
+      // Look up updated artifacts whose contents have been seen before, by any project
+      EmptyJarCache cache = EmptyJarCache.getInstance();
+      List<OutputArtifact> uncached = new ArrayList<>();
+      for (OutputArtifact artifact : updated) {
+        Boolean isEmpty = cache != null ? cache.getEmptyStatus(artifact) : null;
+        if (isEmpty != null) {
+          builder.addEntry(artifact.toArtifactState(), isEmpty);
+        } else {
+          uncached.add(artifact);
+        }
+      }
+
+      // Prefetch the remaining updated artifacts
       ListenableFuture<?> future =
           RemoteArtifactPrefetcher.getInstance()
-              .downloadArtifacts(project.getName(), BlazeArtifact.getRemoteArtifacts(updated));
+              .downloadArtifacts(project.getName(), BlazeArtifact.getRemoteArtifacts(uncached));
 
       FutureUtil.waitForFuture(context, future)
           .timed("FetchJarsForEmptyStatusTracking", EventType.Prefetching)
           .withProgressMessage("Fetching JARs to track empty status..")
           .run();
 
-      // Evaluate if the updated artifacts are empty or not
+      // Evaluate if the remaining updated artifacts are empty or not
       Map<ArtifactState, Boolean> updatedStatuses =
-          getEmptyStatusInParallel(updated, new EmptyLibraryFilter(), FetchExecutor.EXECUTOR);
+          getEmptyStatusInParallel(uncached, new EmptyLibraryFilter(cache), FetchExecutor.EXECUTOR);
       builder.addAllEntries(updatedStatuses);
+      if (cache != null) {
+        cache.save();
+      }
 
       if (!updated.isEmpty()) {
         context.output(
             PrintOutput.log(
                 String.format(
-                    "[Empty JAR Filter] Calculated empty status of %d JARs", updated.size())));
+                    "[Empty JAR Filter] Calculated empty status of %d JARs (%d cached)",
+                    updated.size(), updated.size() - uncached.size())));
       }
 
       if (!removed.isEmpty()) {
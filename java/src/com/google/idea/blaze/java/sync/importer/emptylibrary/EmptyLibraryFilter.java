@@ -17,6 +17,7 @@
 package com.google.idea.blaze.java.sync.importer.emptylibrary;
 
 import com.google.idea.blaze.base.command.buildresult.BlazeArtifact;
+import com.google.idea.blaze.base.command.buildresult.BlazeArtifact.LocalFileArtifact;
 import com.google.idea.common.experiments.IntExperiment;
 import com.intellij.openapi.diagnostic.Logger;
 import java.io.IOException;
@@ -24,6 +25,9 @@ import java.io.InputStream;
 import java.util.function.Predicate;
 import java.util.jar.JarEntry;
 import java.util.jar.JarInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import javax.annotation.Nullable;
 
 /**
  * Assumes that the passed {@link BlazeArtifact} is a JAR and checks whether the JAR is effectively
@@ -60,12 +64,21 @@ public class EmptyLibraryFilter implements Predicate<BlazeArtifact> {
 
   private static final Logger logger = Logger.getInstance(EmptyLibraryFilter.class);
 
-  EmptyLibraryFilter() {}
+  @Nullable private final EmptyJarCache cache;
+
+  /** If {@code cache} is non-null, successfully calculated results are added to it. */
+  EmptyLibraryFilter(@Nullable EmptyJarCache cache) {
+    this.cache = cache;
+  }
 
   @Override
   public boolean test(BlazeArtifact blazeLibrary) {
     try {
-      return isEmpty(blazeLibrary);
+      boolean isEmpty = isEmpty(blazeLibrary);
+      if (cache != null) {
+        cache.putEmptyStatus(blazeLibrary, isEmpty);
+      }
+      return isEmpty;
     } catch (IOException e) {
       logger.warn(e);
       return false; // If something went wrong reading the file, consider it non-empty
@@ -85,6 +98,12 @@ public class EmptyLibraryFilter implements Predicate<BlazeArtifact> {
     if (length >= presumedNonEmptyThresholdBytes.getValue()) {
       return false;
     }
+    if (artifact instanceof LocalFileArtifact) {
+      // only reads the central directory, rather than inflating each entry in turn
+      try (ZipFile zipFile = new ZipFile(((LocalFileArtifact) artifact).getFile())) {
+        return zipFile.stream().allMatch(EmptyLibraryFilter::isEmptyJarEntry);
+      }
+    }
     try (InputStream inputStream = artifact.getInputStream();
         JarInputStream jarInputStream = new JarInputStream(inputStream)) {
       return isEmpty(jarInputStream);
@@ -93,10 +112,14 @@ public class EmptyLibraryFilter implements Predicate<BlazeArtifact> {
 
   private static boolean isEmpty(JarInputStream jar) throws IOException {
     for (JarEntry entry = jar.getNextJarEntry(); entry != null; entry = jar.getNextJarEntry()) {
-      if (!entry.isDirectory() && !entry.getName().endsWith(FN_MANIFEST)) {
+      if (!isEmptyJarEntry(entry)) {
         return false;
       }
     }
     return true;
   }
+
+  private static boolean isEmptyJarEntry(ZipEntry entry) {
+    return entry.isDirectory() || entry.getName().endsWith(FN_MANIFEST);
+  }
 }
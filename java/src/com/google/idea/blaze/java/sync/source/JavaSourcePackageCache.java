@@ -0,0 +1,231 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.java.sync.source;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.idea.blaze.base.io.FileOperationProvider;
+import com.google.idea.blaze.base.scope.BlazeContext;
+import com.google.idea.blaze.base.settings.BlazeImportSettings;
+import com.google.idea.blaze.base.settings.BlazeImportSettingsManager;
+import com.google.idea.blaze.base.sync.data.BlazeDataStorage;
+import com.google.idea.blaze.base.sync.workspace.ArtifactLocationDecoder;
+import com.google.idea.common.experiments.BoolExperiment;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * Caches the package declared by each Java source file across syncs and IDE restarts, keyed by the
+ * file's modification time and size, so that unchanged sources aren't re-read on every sync.
+ *
+ * <p>Only entries for sources read during the latest sync are persisted.
+ */
+final class JavaSourcePackageCache {
+  private static final Logger logger = Logger.getInstance(JavaSourcePackageCache.class);
+
+  private static final BoolExperiment enabled =
+      new BoolExperiment("blaze.java.source.package.cache", true);
+
+  private static final String CACHE_FILE_NAME = "java_source_packages.dat";
+
+  /**
+   * Sources modified more recently than this aren't cached, as further edits may not change the
+   * modification time on file systems with coarse timestamps.
+   */
+  private static final long MIN_CACHEABLE_AGE_MILLIS = 2000;
+
+  private static final int VERSION = 1;
+
+  private final Project project;
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+  private final Set<String> usedPaths = ConcurrentHashMap.newKeySet();
+  private volatile boolean modified = false;
+
+  @GuardedBy("this")
+  private boolean loaded = false;
+
+  JavaSourcePackageCache(Project project) {
+    this.project = project;
+  }
+
+  @Nullable
+  static JavaSourcePackageCache getInstance(Project project) {
+    return enabled.getValue()
+        ? ServiceManager.getService(project, JavaSourcePackageCache.class)
+        : null;
+  }
+
+  /**
+   * Returns a reader which looks up sources in this cache, only delegating to {@code reader} for
+   * sources which are new or have changed. Loads the persisted cache if necessary.
+   */
+  JavaPackageReader wrap(JavaPackageReader reader) {
+    ensureLoaded();
+    usedPaths.clear();
+    return new JavaPackageReader() {
+      @Nullable
+      @Override
+      String getDeclaredPackageOfJavaFile(
+          BlazeContext context, ArtifactLocationDecoder decoder, SourceArtifact sourceArtifact) {
+        File file =
+            sourceArtifact.artifactLocation.isGenerated()
+                ? null
+                : decoder.resolveSource(sourceArtifact.artifactLocation);
+        FileOperationProvider fileOperations = FileOperationProvider.getInstance();
+        if (file == null || !fileOperations.isFile(file)) {
+          return reader.getDeclaredPackageOfJavaFile(context, decoder, sourceArtifact);
+        }
+        long modifiedTime = fileOperations.getFileModifiedTime(file);
+        if (modifiedTime == 0) {
+          // the modification time couldn't be read
+          return reader.getDeclaredPackageOfJavaFile(context, decoder, sourceArtifact);
+        }
+        String path = file.getPath();
+        long size = fileOperations.getFileSize(file);
+        usedPaths.add(path);
+        Entry entry = entries.get(path);
+        if (entry != null && entry.modifiedTime == modifiedTime && entry.size == size) {
+          return entry.javaPackage;
+        }
+        String javaPackage = reader.getDeclaredPackageOfJavaFile(context, decoder, sourceArtifact);
+        if (javaPackage != null
+            && System.currentTimeMillis() - modifiedTime >= MIN_CACHEABLE_AGE_MILLIS) {
+          entries.put(path, new Entry(modifiedTime, size, javaPackage));
+        } else {
+          // sources without a package are re-read (and reported) each sync, as are recently
+          // modified sources
+          usedPaths.remove(path);
+          entries.remove(path);
+        }
+        modified = true;
+        return javaPackage;
+      }
+    };
+  }
+
+  /** Drops entries for sources not read since the last {@link #wrap}, and persists the cache. */
+  void save() {
+    if (entries.keySet().retainAll(usedPaths)) {
+      modified = true;
+    }
+    if (!modified) {
+      return;
+    }
+    File cacheFile = getCacheFile();
+    if (cacheFile == null) {
+      return;
+    }
+    try {
+      Path cachePath = cacheFile.toPath();
+      Files.createDirectories(cachePath.getParent());
+      Path tmp = Files.createTempFile(cachePath.getParent(), CACHE_FILE_NAME, ".tmp");
+      try {
+        try (DataOutputStream out =
+            new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+          write(out);
+        }
+        Files.move(tmp, cachePath, StandardCopyOption.REPLACE_EXISTING);
+        modified = false;
+      } finally {
+        Files.deleteIfExists(tmp);
+      }
+    } catch (IOException e) {
+      logger.warn("Failed to write Java source package cache", e);
+    }
+  }
+
+  private synchronized void ensureLoaded() {
+    if (loaded) {
+      return;
+    }
+    loaded = true;
+    File cacheFile = getCacheFile();
+    if (cacheFile == null) {
+      return;
+    }
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(cacheFile.toPath())))) {
+      read(in);
+    } catch (NoSuchFileException e) {
+      // nothing cached yet
+    } catch (IOException e) {
+      logger.warn("Failed to read Java source package cache", e);
+      entries.clear();
+    }
+  }
+
+  private void write(DataOutputStream out) throws IOException {
+    out.writeInt(VERSION);
+    ImmutableMap<String, Entry> snapshot = ImmutableMap.copyOf(entries);
+    out.writeInt(snapshot.size());
+    for (Map.Entry<String, Entry> e : snapshot.entrySet()) {
+      out.writeUTF(e.getKey());
+      out.writeLong(e.getValue().modifiedTime);
+      out.writeLong(e.getValue().size);
+      out.writeUTF(e.getValue().javaPackage);
+    }
+  }
+
+  private void read(DataInputStream in) throws IOException {
+    if (in.readInt() != VERSION) {
+      return;
+    }
+    int count = in.readInt();
+    for (int i = 0; i < count; i++) {
+      String path = in.readUTF();
+      long modifiedTime = in.readLong();
+      long size = in.readLong();
+      String javaPackage = in.readUTF();
+      entries.put(path, new Entry(modifiedTime, size, javaPackage));
+    }
+  }
+
+  @Nullable
+  private File getCacheFile() {
+    BlazeImportSettings importSettings =
+        BlazeImportSettingsManager.getInstance(project).getImportSettings();
+    return importSettings != null
+        ? new File(BlazeDataStorage.getProjectDataDir(importSettings), CACHE_FILE_NAME)
+        : null;
+  }
+
+  private static final class Entry {
+    final long modifiedTime;
+    final long size;
+    final String javaPackage;
+
+    Entry(long modifiedTime, long size, String javaPackage) {
+      this.modifiedTime = modifiedTime;
+      this.size = size;
+      this.javaPackage = javaPackage;
+    }
+  }
+}
@@ -29,7 +29,6 @@ import com.google.common.collect.Multiset;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
-import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
 import com.google.idea.blaze.base.ideinfo.TargetKey;
@@ -72,7 +71,6 @@ public final class SourceDirectoryCalculator {
 
   private static final JavaPackageReader generatedFileJavaPackageReader =
       new FilePathJavaPackageReader();
-  private final ListeningExecutorService executorService = MoreExecutors.newDirectExecutorService();
 
   public ImmutableList<BlazeContentEntry> calculateContentEntries(
       Project project,
@@ -99,11 +97,14 @@ public final class SourceDirectoryCalculator {
               return new ManifestFilePackageReader(manifestMap);
             });
 
+    JavaSourcePackageCache packageCache = JavaSourcePackageCache.getInstance(project);
+    JavaPackageReader sourcePackageReader =
+        packageCache != null
+            ? packageCache.wrap(JavaSourcePackageReader.getInstance())
+            : JavaSourcePackageReader.getInstance();
     final List<JavaPackageReader> javaPackageReaders =
         Lists.newArrayList(
-            manifestFilePackageReader,
-            JavaSourcePackageReader.getInstance(),
-            generatedFileJavaPackageReader);
+            manifestFilePackageReader, sourcePackageReader, generatedFileJavaPackageReader);
 
     Collection<SourceArtifact> nonGeneratedSources = filterGeneratedArtifacts(sources);
 
@@ -116,23 +117,69 @@ public final class SourceDirectoryCalculator {
         context,
         (childContext) -> {
           childContext.push(new TimingScope("CalculateSourceDirectories", EventType.Other));
+          // read the java sources of all content roots in parallel, then calculate the source
+          // directories of each content root in parallel
+          List<ListenableFuture<BlazeContentEntry>> contentEntries = Lists.newArrayList();
           for (WorkspacePath workspacePath : importRoots.rootDirectories()) {
             File contentRoot = workspaceRoot.fileForPath(workspacePath);
-            ImmutableList<BlazeSourceDirectory> sourceDirectories =
-                calculateSourceDirectoriesForContentRoot(
+            ListenableFuture<List<SourceRoot>> sourceRoots =
+                readJavaSourceRoots(
                     context,
-                    workspaceRoot,
                     artifactLocationDecoder,
-                    workspacePath,
                     sourcesUnderDirectoryRoot.get(workspacePath),
                     javaPackageReaders);
-            result.add(new BlazeContentEntry(contentRoot, sourceDirectories));
+            contentEntries.add(
+                Futures.transform(
+                    sourceRoots,
+                    roots ->
+                        new BlazeContentEntry(
+                            contentRoot,
+                            calculateSourceDirectoriesForContentRoot(
+                                workspaceRoot, workspacePath, roots)),
+                    FetchExecutor.EXECUTOR));
+          }
+          try {
+            result.addAll(Futures.allAsList(contentEntries).get());
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            context.setCancelled();
+          } catch (ExecutionException e) {
+            throw new IllegalStateException("Could not read sources", e);
           }
           result.sort(Comparator.comparing(lhs -> lhs.contentRoot));
         });
+    if (packageCache != null && !context.isCancelled()) {
+      packageCache.save();
+    }
     return ImmutableList.copyOf(result);
   }
 
+  /**
+   * Asynchronously reads the declared package of each java-like source, returning the source root
+   * implied by each.
+   */
+  private ListenableFuture<List<SourceRoot>> readJavaSourceRoots(
+      BlazeContext context,
+      ArtifactLocationDecoder artifactLocationDecoder,
+      Collection<SourceArtifact> sourceArtifacts,
+      Collection<JavaPackageReader> javaPackageReaders) {
+    Predicate<ArtifactLocation> isSourceFile = JavaLikeLanguage.getSourceFileMatcher();
+    List<ListenableFuture<SourceRoot>> sourceRootFutures = Lists.newArrayList();
+    for (SourceArtifact sourceArtifact : sourceArtifacts) {
+      if (isSourceFile.test(sourceArtifact.artifactLocation)) {
+        sourceRootFutures.add(
+            FetchExecutor.EXECUTOR.submit(
+                () ->
+                    sourceRootForJavaSource(
+                        context, artifactLocationDecoder, sourceArtifact, javaPackageReaders)));
+      }
+    }
+    return Futures.transform(
+        Futures.allAsList(sourceRootFutures),
+        roots -> roots.stream().filter(r -> r != null).collect(Collectors.toList()),
+        MoreExecutors.directExecutor());
+  }
+
   private Collection<SourceArtifact> filterGeneratedArtifacts(
       Collection<SourceArtifact> artifactLocations) {
     return artifactLocations.stream()
@@ -170,34 +217,14 @@ public final class SourceDirectoryCalculator {
   }
 
   /** Calculates all source directories for a single content root. */
-  private ImmutableList<BlazeSourceDirectory> calculateSourceDirectoriesForContentRoot(
-      BlazeContext context,
+  private static ImmutableList<BlazeSourceDirectory> calculateSourceDirectoriesForContentRoot(
       WorkspaceRoot workspaceRoot,
-      ArtifactLocationDecoder artifactLocationDecoder,
       WorkspacePath directoryRoot,
-      Collection<SourceArtifact> sourceArtifacts,
-      Collection<JavaPackageReader> javaPackageReaders) {
-
-    // Split out java-like files
-    Predicate<ArtifactLocation> isSourceFile = JavaLikeLanguage.getSourceFileMatcher();
-    List<SourceArtifact> javaArtifacts = Lists.newArrayList();
-    for (SourceArtifact sourceArtifact : sourceArtifacts) {
-      if (isSourceFile.test(sourceArtifact.artifactLocation)) {
-        javaArtifacts.add(sourceArtifact);
-      }
-    }
-
+      List<SourceRoot> sourceRootsPerFile) {
     List<BlazeSourceDirectory> result = Lists.newArrayList();
 
     // Add java source directories
-    calculateJavaSourceDirectories(
-        context,
-        workspaceRoot,
-        artifactLocationDecoder,
-        directoryRoot,
-        javaArtifacts,
-        javaPackageReaders,
-        result);
+    calculateJavaSourceDirectories(workspaceRoot, directoryRoot, sourceRootsPerFile, result);
 
     if (result.isEmpty()) {
       // if there are no nested source directories, then mark the content root as a source directory
@@ -213,40 +240,12 @@ public final class SourceDirectoryCalculator {
   }
 
   /** Adds the java source directories. */
-  private void calculateJavaSourceDirectories(
-      BlazeContext context,
+  private static void calculateJavaSourceDirectories(
       WorkspaceRoot workspaceRoot,
-      ArtifactLocationDecoder artifactLocationDecoder,
       WorkspacePath directoryRoot,
-      Collection<SourceArtifact> javaArtifacts,
-      Collection<JavaPackageReader> javaPackageReaders,
+      List<SourceRoot> sourceRootsPerFile,
       Collection<BlazeSourceDirectory> result) {
 
-    List<SourceRoot> sourceRootsPerFile = Lists.newArrayList();
-
-    // Get java sources
-    List<ListenableFuture<SourceRoot>> sourceRootFutures = Lists.newArrayList();
-    for (final SourceArtifact sourceArtifact : javaArtifacts) {
-      ListenableFuture<SourceRoot> future =
-          executorService.submit(
-              () ->
-                  sourceRootForJavaSource(
-                      context, artifactLocationDecoder, sourceArtifact, javaPackageReaders));
-      sourceRootFutures.add(future);
-    }
-    try {
-      for (SourceRoot sourceRoot : Futures.allAsList(sourceRootFutures).get()) {
-        if (sourceRoot != null) {
-          sourceRootsPerFile.add(sourceRoot);
-        }
-      }
-    } catch (InterruptedException e) {
-      Thread.currentThread().interrupt();
-      context.setCancelled();
-    } catch (ExecutionException e) {
-      throw new IllegalStateException("Could not read sources", e);
-    }
-
     // Sort source roots into their respective directories
     Map<WorkspacePath, Multiset<SourceRoot>> sourceDirectoryToSourceRoots = new HashMap<>();
     for (SourceRoot sourceRoot : sourceRootsPerFile) {
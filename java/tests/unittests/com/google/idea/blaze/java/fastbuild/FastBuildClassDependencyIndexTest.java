@@ -0,0 +1,222 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.java.fastbuild;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.idea.blaze.java.fastbuild.FastBuildClassDependencyIndex.ClassFileInfo;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link FastBuildClassDependencyIndex}. */
+@RunWith(JUnit4.class)
+public final class FastBuildClassDependencyIndexTest {
+
+  private static final String PACKAGE_PATH = "com/google/idea/blaze/java/fastbuild/";
+
+  @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void readClassFile_findsSourceFileAndReferencedClasses() throws IOException {
+    ClassFileInfo info = readClass(Referencing.class);
+
+    assertThat(info.className)
+        .isEqualTo(PACKAGE_PATH + "FastBuildClassDependencyIndexTest$Referencing");
+    assertThat(info.sourceFile).isEqualTo("FastBuildClassDependencyIndexTest.java");
+    assertThat(info.sourcePath())
+        .isEqualTo(PACKAGE_PATH + "FastBuildClassDependencyIndexTest.java");
+    assertThat(info.referencedClasses)
+        .containsAtLeast(
+            PACKAGE_PATH + "FastBuildClassDependencyIndexTest$Referenced",
+            "java/lang/StringBuilder");
+  }
+
+  @Test
+  public void readClassFile_findsClassesOnlyReferencedByDescriptorsAndSignatures()
+      throws IOException {
+    ClassFileInfo info = readClass(DescriptorsOnly.class);
+
+    assertThat(info.referencedClasses)
+        .containsAtLeast(
+            PACKAGE_PATH + "FastBuildClassDependencyIndexTest$Referenced",
+            PACKAGE_PATH + "FastBuildClassDependencyIndexTest$InSignature",
+            PACKAGE_PATH + "FastBuildClassDependencyIndexTest$InBound");
+  }
+
+  @Test
+  public void addDescriptorTypes_parsesGenericSignatures() {
+    Set<String> referenced = new HashSet<>();
+    ClassFileInfo.addDescriptorTypes(
+        "<T:Ljava/lang/Object;:Lcom/foo/Bound<-TT;>;Lx::Lcom/foo/Iface;>"
+            + "(TT;[[Lcom/foo/Param;I)Lcom/foo/Outer<+Lcom/foo/Arg;*>.Inner<TLx;>;^Lcom/foo/Ex;",
+        referenced);
+
+    assertThat(referenced)
+        .containsExactly(
+            "java/lang/Object",
+            "com/foo/Bound",
+            "com/foo/Iface",
+            "com/foo/Param",
+            "com/foo/Outer",
+            "com/foo/Arg",
+            "com/foo/Outer$Inner",
+            "com/foo/Ex");
+  }
+
+  @Test
+  public void addDescriptorTypes_ignoresMalformedDescriptors() {
+    Set<String> referenced = new HashSet<>();
+    ClassFileInfo.addDescriptorTypes("(Lcom/foo/Complete;Lcom/foo/Incomp", referenced);
+    ClassFileInfo.addDescriptorTypes("TT", referenced);
+
+    assertThat(referenced).containsExactly("com/foo/Complete");
+  }
+
+  @Test
+  public void getDependentSources_returnsDirectDependentsOnly() {
+    FastBuildClassDependencyIndex index =
+        new FastBuildClassDependencyIndex.Builder()
+            .addClass(classInfo("com/foo/Base", "Base.java"))
+            .addClass(classInfo("com/foo/Base$Inner", "Base.java"))
+            .addClass(classInfo("com/foo/UsesBase", "UsesBase.java", "com/foo/Base"))
+            .addClass(classInfo("com/bar/UsesInner", "UsesInner.java", "com/foo/Base$Inner"))
+            .addClass(classInfo("com/bar/Transitive", "Transitive.java", "com/foo/UsesBase"))
+            .build();
+
+    assertThat(index.containsSource("com/foo/Base.java")).isTrue();
+    assertThat(index.containsSource("Base.java")).isFalse();
+    assertThat(index.getDependentSources("com/foo/Base.java"))
+        .containsExactly("com/foo/UsesBase.java", "com/bar/UsesInner.java");
+    assertThat(index.getDependentSources("com/bar/Transitive.java")).isEmpty();
+  }
+
+  @Test
+  public void getDependentSources_excludesSelfReferences() {
+    FastBuildClassDependencyIndex index =
+        new FastBuildClassDependencyIndex.Builder()
+            .addClass(classInfo("com/foo/Outer", "Outer.java", "com/foo/Outer$Inner"))
+            .addClass(classInfo("com/foo/Outer$Inner", "Outer.java", "com/foo/Outer"))
+            .build();
+
+    assertThat(index.getDependentSources("com/foo/Outer.java")).isEmpty();
+  }
+
+  @Test
+  public void update_replacesClassesOfRecompiledSources() {
+    FastBuildClassDependencyIndex index =
+        new FastBuildClassDependencyIndex.Builder()
+            .addClass(classInfo("com/foo/Base", "Base.java"))
+            .addClass(classInfo("com/foo/Other", "Other.java"))
+            .addClass(classInfo("com/foo/User", "User.java", "com/foo/Base"))
+            .addClass(classInfo("com/foo/User$Inner", "User.java", "com/foo/Base"))
+            .build();
+
+    index.update(ImmutableList.of(classInfo("com/foo/User", "User.java", "com/foo/Other")));
+
+    assertThat(index.getDependentSources("com/foo/Base.java")).isEmpty();
+    assertThat(index.getDependentSources("com/foo/Other.java"))
+        .containsExactly("com/foo/User.java");
+  }
+
+  @Test
+  public void update_readsRecentlyModifiedClassFiles() throws IOException {
+    FastBuildClassDependencyIndex index =
+        new FastBuildClassDependencyIndex.Builder()
+            .addClass(
+                classInfo(PACKAGE_PATH + "FastBuildClassDependencyIndexTest$Referenced", "R.java"))
+            .build();
+    File classDirectory = temporaryFolder.newFolder("classes");
+    writeClass(classDirectory, Referencing.class);
+
+    index.update(classDirectory, /* modifiedSinceMillis= */ 0);
+
+    assertThat(index.getDependentSources(PACKAGE_PATH + "R.java"))
+        .containsExactly(PACKAGE_PATH + "FastBuildClassDependencyIndexTest.java");
+  }
+
+  @Test
+  public void update_skipsClassFilesModifiedBeforeCompile() throws IOException {
+    FastBuildClassDependencyIndex index = new FastBuildClassDependencyIndex.Builder().build();
+    File classDirectory = temporaryFolder.newFolder("classes");
+    File classFile = writeClass(classDirectory, Referencing.class);
+    assertThat(classFile.setLastModified(1000)).isTrue();
+
+    index.update(classDirectory, /* modifiedSinceMillis= */ 2000);
+
+    assertThat(index.containsSource(PACKAGE_PATH + "FastBuildClassDependencyIndexTest.java"))
+        .isFalse();
+  }
+
+  private static File writeClass(File classDirectory, Class<?> clazz) throws IOException {
+    File classFile = new File(classDirectory, clazz.getName().replace('.', '/') + ".class");
+    classFile.getParentFile().mkdirs();
+    try (InputStream in = clazz.getResourceAsStream(getClassFileName(clazz))) {
+      Files.copy(in, classFile.toPath());
+    }
+    return classFile;
+  }
+
+  private static String getClassFileName(Class<?> clazz) {
+    return clazz.getName().substring(clazz.getName().lastIndexOf('.') + 1) + ".class";
+  }
+
+  private static ClassFileInfo classInfo(
+      String className, String sourceFile, String... referencedClasses) {
+    return new ClassFileInfo(className, sourceFile, ImmutableSet.copyOf(referencedClasses));
+  }
+
+  private static ClassFileInfo readClass(Class<?> clazz) throws IOException {
+    try (InputStream in = clazz.getResourceAsStream(getClassFileName(clazz))) {
+      return ClassFileInfo.read(in);
+    }
+  }
+
+  private static class Referenced {
+    String value() {
+      return "value";
+    }
+  }
+
+  @SuppressWarnings("unused") // only used via its class file
+  private static class Referencing {
+    String describe(Referenced referenced) {
+      return new StringBuilder().append(referenced.value()).toString();
+    }
+  }
+
+  private static class InSignature {}
+
+  private static class InBound {}
+
+  @SuppressWarnings("unused") // only used via its class file
+  private abstract static class DescriptorsOnly<T extends InBound> {
+    List<InSignature> field;
+
+    abstract void accept(Referenced referenced);
+  }
+}
@@ -250,6 +250,34 @@ public final class FastBuildCompilerFactoryImplTest {
     }
   }
 
+  @Test
+  public void repeatedCompilesPickUpClasspathChanges() throws IOException, FastBuildException {
+    String java =
+        ""
+            + "package com.google.idea.blaze.java.fastbuild;\n"
+            + "\n"
+            + "import com.google.common.collect.ImmutableSet;\n"
+            + "\n"
+            + "final class Main {\n"
+            + "  private static void main(String[] args) {\n"
+            + "    System.out.println(ImmutableSet.of());\n"
+            + "  }\n"
+            + "}\n";
+    StringWriter javacOutput = new StringWriter();
+    try {
+      compile(java, javacOutput, GUAVA_JAR);
+      compile(java, javacOutput, GUAVA_JAR);
+    } catch (FastBuildIncrementalCompileException e) {
+      throw new AssertionError("Compilation failed:\n" + javacOutput, e);
+    }
+    try {
+      compile(java, javacOutput);
+      fail("Should have thrown FastBuildIncrementalCompileException");
+    } catch (FastBuildIncrementalCompileException e) {
+      assertThat(javacOutput.toString()).contains("ImmutableSet");
+    }
+  }
+
   @Test
   public void errorOnMissingClasses() throws IOException, FastBuildException {
     String java =
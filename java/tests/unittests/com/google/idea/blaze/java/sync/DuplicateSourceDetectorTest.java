@@ -0,0 +1,107 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.java.sync;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
+import com.google.idea.blaze.base.ideinfo.TargetKey;
+import com.google.idea.blaze.base.model.primitives.Label;
+import com.google.idea.blaze.java.sync.DuplicateSourceDetector.Duplicate;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link DuplicateSourceDetector}. */
+@RunWith(JUnit4.class)
+public class DuplicateSourceDetectorTest {
+
+  @Test
+  public void testNoDuplicates() {
+    DuplicateSourceDetector detector = new DuplicateSourceDetector();
+    detector.add(target("//foo:a"), source("foo/A.java"));
+    detector.add(target("//foo:b"), source("foo/B.java"));
+
+    assertThat(detector.findDuplicates()).isEmpty();
+  }
+
+  @Test
+  public void testSameTargetAddedTwiceIsNotDuplicate() {
+    DuplicateSourceDetector detector = new DuplicateSourceDetector();
+    detector.add(target("//foo:a"), source("foo/A.java"));
+    detector.add(target("//foo:a"), source("foo/A.java"));
+
+    assertThat(detector.findDuplicates()).isEmpty();
+  }
+
+  @Test
+  public void testDuplicatesSortedByPathWithDistinctTargets() {
+    DuplicateSourceDetector detector = new DuplicateSourceDetector();
+    detector.add(target("//foo:a"), source("foo/Z.java"));
+    detector.add(target("//foo:a"), source("foo/A.java"));
+    detector.add(target("//foo:b"), source("foo/Z.java"));
+    detector.add(target("//foo:b"), source("foo/A.java"));
+    detector.add(target("//foo:c"), source("foo/Z.java"));
+    detector.add(target("//foo:b"), source("foo/Z.java"));
+    detector.add(target("//foo:c"), source("foo/Unique.java"));
+
+    List<Duplicate> duplicates = detector.findDuplicates();
+
+    assertThat(duplicates).hasSize(2);
+    assertThat(duplicates.get(0).artifactLocation).isEqualTo(source("foo/A.java"));
+    assertThat(duplicates.get(0).targets)
+        .containsExactly(target("//foo:a"), target("//foo:b"))
+        .inOrder();
+    assertThat(duplicates.get(1).artifactLocation).isEqualTo(source("foo/Z.java"));
+    assertThat(duplicates.get(1).targets)
+        .containsExactly(target("//foo:a"), target("//foo:b"), target("//foo:c"));
+  }
+
+  /** A synthetic target map with 500k sources, each owned by one of 5k targets. */
+  @Test
+  public void testLargeTargetMap() {
+    int targetCount = 5000;
+    int sourcesPerTarget = 100;
+    DuplicateSourceDetector detector = new DuplicateSourceDetector();
+    for (int t = 0; t < targetCount; t++) {
+      TargetKey target = target("//pkg" + t + ":lib");
+      for (int s = 0; s < sourcesPerTarget; s++) {
+        detector.add(target, source("pkg" + t + "/Source" + s + ".java"));
+      }
+    }
+    // every 1000th target also consumes a source of the next package
+    for (int t = 0; t < targetCount - 1; t += 1000) {
+      detector.add(target("//pkg" + t + ":lib"), source("pkg" + (t + 1) + "/Source0.java"));
+    }
+
+    List<Duplicate> duplicates = detector.findDuplicates();
+
+    assertThat(duplicates).hasSize(5);
+    assertThat(duplicates.get(0).artifactLocation).isEqualTo(source("pkg1/Source0.java"));
+    assertThat(duplicates.get(0).targets)
+        .containsExactly(target("//pkg1:lib"), target("//pkg0:lib"))
+        .inOrder();
+  }
+
+  private static TargetKey target(String label) {
+    return TargetKey.forPlainTarget(Label.create(label));
+  }
+
+  private static ArtifactLocation source(String relativePath) {
+    return ArtifactLocation.builder().setRelativePath(relativePath).setIsSource(true).build();
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.java.sync.importer.emptylibrary;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.idea.blaze.base.command.buildresult.RemoteOutputArtifact;
+import com.google.idea.blaze.base.command.buildresult.SourceArtifact;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link EmptyJarCache}. */
+@RunWith(JUnit4.class)
+public class EmptyJarCacheTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final RemoteOutputArtifact emptyJar = remoteArtifact("empty-digest");
+  private final RemoteOutputArtifact nonEmptyJar = remoteArtifact("non-empty-digest");
+
+  private File cacheFile;
+
+  @Before
+  public void setUp() {
+    cacheFile = new File(temporaryFolder.getRoot(), "blaze/empty_jars.dat");
+  }
+
+  @Test
+  public void getEmptyStatus_nothingCached() {
+    EmptyJarCache cache = new EmptyJarCache(cacheFile);
+
+    assertThat(cache.getEmptyStatus(emptyJar)).isNull();
+  }
+
+  @Test
+  public void putEmptyStatus_localArtifactsNotCached() {
+    EmptyJarCache cache = new EmptyJarCache(cacheFile);
+    SourceArtifact localJar = new SourceArtifact(new File("/out/lib.jar"));
+
+    cache.putEmptyStatus(localJar, true);
+    cache.save();
+
+    assertThat(cache.getEmptyStatus(localJar)).isNull();
+    assertThat(cacheFile.exists()).isFalse();
+  }
+
+  @Test
+  public void save_loadedByNewInstance() {
+    EmptyJarCache cache = new EmptyJarCache(cacheFile);
+    cache.putEmptyStatus(emptyJar, true);
+    cache.putEmptyStatus(nonEmptyJar, false);
+
+    cache.save();
+
+    EmptyJarCache loaded = new EmptyJarCache(cacheFile);
+    assertThat(loaded.getEmptyStatus(emptyJar)).isTrue();
+    assertThat(loaded.getEmptyStatus(nonEmptyJar)).isFalse();
+    assertThat(loaded.getEmptyStatus(remoteArtifact("other-digest"))).isNull();
+  }
+
+  @Test
+  public void save_unmodifiedCacheNotWritten() {
+    EmptyJarCache cache = new EmptyJarCache(cacheFile);
+    cache.putEmptyStatus(emptyJar, true);
+    cache.save();
+    assertThat(cacheFile.delete()).isTrue();
+
+    cache.putEmptyStatus(emptyJar, true);
+    cache.save();
+
+    assertThat(cacheFile.exists()).isFalse();
+  }
+
+  @Test
+  public void load_versionMismatchIgnored() throws IOException {
+    Files.createDirectories(cacheFile.getParentFile().toPath());
+    try (DataOutputStream out = new DataOutputStream(new FileOutputStream(cacheFile))) {
+      out.writeInt(-1);
+      out.writeInt(1);
+      out.writeUTF("empty-digest");
+      out.writeBoolean(true);
+    }
+
+    EmptyJarCache cache = new EmptyJarCache(cacheFile);
+
+    assertThat(cache.getEmptyStatus(emptyJar)).isNull();
+  }
+
+  @Test
+  public void load_corruptFileIgnored() throws IOException {
+    Files.createDirectories(cacheFile.getParentFile().toPath());
+    Files.write(cacheFile.toPath(), new byte[] {0, 0});
+
+    EmptyJarCache cache = new EmptyJarCache(cacheFile);
+    assertThat(cache.getEmptyStatus(emptyJar)).isNull();
+
+    cache.putEmptyStatus(emptyJar, true);
+    cache.save();
+    assertThat(new EmptyJarCache(cacheFile).getEmptyStatus(emptyJar)).isTrue();
+  }
+
+  @Test
+  public void putEmptyStatus_takesPrecedenceOverPersistedStatus() {
+    EmptyJarCache previousSession = new EmptyJarCache(cacheFile);
+    previousSession.putEmptyStatus(emptyJar, true);
+    previousSession.save();
+
+    EmptyJarCache cache = new EmptyJarCache(cacheFile);
+    cache.putEmptyStatus(emptyJar, false);
+
+    assertThat(cache.getEmptyStatus(emptyJar)).isFalse();
+    cache.save();
+    assertThat(new EmptyJarCache(cacheFile).getEmptyStatus(emptyJar)).isFalse();
+  }
+
+  private static RemoteOutputArtifact remoteArtifact(String digest) {
+    RemoteOutputArtifact artifact = mock(RemoteOutputArtifact.class);
+    when(artifact.getHashId()).thenReturn(digest);
+    return artifact;
+  }
+}
@@ -18,13 +18,17 @@ package com.google.idea.blaze.java.sync.importer.emptylibrary;
 
 import static com.google.common.truth.Truth.assertThat;
 
+import com.google.common.collect.Range;
 import com.google.idea.blaze.base.BlazeTestCase;
+import com.google.idea.blaze.base.command.buildresult.BlazeArtifact;
 import com.google.idea.blaze.base.command.buildresult.SourceArtifact;
 import com.google.idea.blaze.base.io.FileOperationProvider;
 import com.google.idea.common.experiments.ExperimentService;
 import com.google.idea.common.experiments.MockExperimentService;
 import com.intellij.testFramework.rules.TempDirectory;
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import org.junit.Rule;
 import org.junit.Test;
@@ -96,4 +100,60 @@ public class EmptyLibraryFilterTest extends BlazeTestCase {
             .build();
     assertThat(EmptyLibraryFilter.isEmpty(new SourceArtifact(jar))).isFalse();
   }
+
+  @Test
+  public void isEmpty_manifestOnly_localAndStreamedJarsAgree() throws IOException {
+    File jar = JarBuilder.newEmptyJar(tempDirectory).addManifest().bloatBy(200).build();
+    assertContentsChecked(jar);
+
+    assertThat(EmptyLibraryFilter.isEmpty(new SourceArtifact(jar))).isTrue();
+    assertThat(EmptyLibraryFilter.isEmpty(streamedArtifact(jar))).isTrue();
+  }
+
+  @Test
+  public void isEmpty_manifestAndDirectories_localAndStreamedJarsAgree() throws IOException {
+    File jar =
+        JarBuilder.newEmptyJar(tempDirectory)
+            .addDirectory("META-INF/")
+            .addDirectory("dir1/")
+            .addManifest()
+            .build();
+    assertContentsChecked(jar);
+
+    assertThat(EmptyLibraryFilter.isEmpty(new SourceArtifact(jar))).isTrue();
+    assertThat(EmptyLibraryFilter.isEmpty(streamedArtifact(jar))).isTrue();
+  }
+
+  @Test
+  public void isEmpty_nonEmpty_localAndStreamedJarsAgree() throws IOException {
+    File jar =
+        JarBuilder.newEmptyJar(tempDirectory)
+            .addManifest()
+            .addFile("com/google/example/A.java", "package com.google.example; class A {}")
+            .build();
+    assertContentsChecked(jar);
+
+    assertThat(EmptyLibraryFilter.isEmpty(new SourceArtifact(jar))).isFalse();
+    assertThat(EmptyLibraryFilter.isEmpty(streamedArtifact(jar))).isFalse();
+  }
+
+  /** Checks the JAR's size doesn't let {@link EmptyLibraryFilter} skip reading its entries. */
+  private static void assertContentsChecked(File jar) {
+    assertThat(jar.length()).isIn(Range.open(359L, 470L));
+  }
+
+  /** A JAR which can only be streamed, e.g. a remote output. */
+  private static BlazeArtifact streamedArtifact(File jar) {
+    return new BlazeArtifact() {
+      @Override
+      public long getLength() {
+        return jar.length();
+      }
+
+      @Override
+      public BufferedInputStream getInputStream() throws IOException {
+        return new BufferedInputStream(new FileInputStream(jar));
+      }
+    };
+  }
 }
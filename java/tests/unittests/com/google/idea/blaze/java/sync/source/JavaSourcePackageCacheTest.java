@@ -0,0 +1,177 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.java.sync.source;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.idea.blaze.base.BlazeTestCase;
+import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
+import com.google.idea.blaze.base.ideinfo.TargetKey;
+import com.google.idea.blaze.base.io.FileOperationProvider;
+import com.google.idea.blaze.base.model.primitives.Label;
+import com.google.idea.blaze.base.scope.BlazeContext;
+import com.google.idea.blaze.base.settings.BlazeImportSettingsManager;
+import com.google.idea.blaze.base.sync.workspace.ArtifactLocationDecoder;
+import com.google.idea.blaze.base.sync.workspace.MockArtifactLocationDecoder;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link JavaSourcePackageCache}. */
+@RunWith(JUnit4.class)
+public class JavaSourcePackageCacheTest extends BlazeTestCase {
+
+  @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+  private final BlazeContext context = new BlazeContext();
+  private final CountingPackageReader delegate = new CountingPackageReader();
+  private final FakeFileOperationProvider fileOperationProvider = new FakeFileOperationProvider();
+  private JavaSourcePackageCache cache;
+  private ArtifactLocationDecoder decoder;
+
+  @Override
+  protected void initTest(Container applicationServices, Container projectServices) {
+    super.initTest(applicationServices, projectServices);
+    applicationServices.register(FileOperationProvider.class, fileOperationProvider);
+    projectServices.register(
+        BlazeImportSettingsManager.class, new BlazeImportSettingsManager(project));
+    cache = new JavaSourcePackageCache(project);
+    decoder =
+        new MockArtifactLocationDecoder() {
+          @Override
+          public File decode(ArtifactLocation artifactLocation) {
+            return new File(folder.getRoot(), artifactLocation.getRelativePath());
+          }
+        };
+  }
+
+  @Test
+  public void unchangedSource_isOnlyReadOnce() throws Exception {
+    SourceArtifact source = createSource("Foo.java", "package com.google;", /* old= */ true);
+    JavaPackageReader reader = cache.wrap(delegate);
+
+    assertThat(reader.getDeclaredPackageOfJavaFile(context, decoder, source))
+        .isEqualTo("com.google");
+    assertThat(reader.getDeclaredPackageOfJavaFile(context, decoder, source))
+        .isEqualTo("com.google");
+    assertThat(delegate.readCount).isEqualTo(1);
+  }
+
+  @Test
+  public void modifiedSource_isReadAgain() throws Exception {
+    SourceArtifact source = createSource("Foo.java", "package com.google;", /* old= */ true);
+    JavaPackageReader reader = cache.wrap(delegate);
+    reader.getDeclaredPackageOfJavaFile(context, decoder, source);
+
+    createSource("Foo.java", "package com.google.other;", /* old= */ true);
+
+    assertThat(reader.getDeclaredPackageOfJavaFile(context, decoder, source))
+        .isEqualTo("com.google.other");
+    assertThat(delegate.readCount).isEqualTo(2);
+  }
+
+  @Test
+  public void recentlyModifiedSource_isNotCached() throws Exception {
+    SourceArtifact source = createSource("Foo.java", "package com.google;", /* old= */ false);
+    JavaPackageReader reader = cache.wrap(delegate);
+
+    reader.getDeclaredPackageOfJavaFile(context, decoder, source);
+    reader.getDeclaredPackageOfJavaFile(context, decoder, source);
+
+    assertThat(delegate.readCount).isEqualTo(2);
+  }
+
+  @Test
+  public void missingSource_isDelegated() {
+    SourceArtifact source = sourceArtifact("Missing.java");
+    JavaPackageReader reader = cache.wrap(delegate);
+
+    assertThat(reader.getDeclaredPackageOfJavaFile(context, decoder, source)).isNull();
+    assertThat(delegate.readCount).isEqualTo(1);
+  }
+
+  @Test
+  public void modificationTime_isReadThroughFileOperationProvider() throws Exception {
+    SourceArtifact source = createSource("Foo.java", "package com.google;", /* old= */ true);
+    JavaPackageReader reader = cache.wrap(delegate);
+    reader.getDeclaredPackageOfJavaFile(context, decoder, source);
+
+    fileOperationProvider.modifiedTimes.put(
+        new File(folder.getRoot(), "Foo.java"),
+        System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(1));
+
+    reader.getDeclaredPackageOfJavaFile(context, decoder, source);
+    assertThat(delegate.readCount).isEqualTo(2);
+  }
+
+  private SourceArtifact createSource(String relativePath, String contents, boolean old)
+      throws Exception {
+    File file = new File(folder.getRoot(), relativePath);
+    Files.write(file.toPath(), contents.getBytes(UTF_8));
+    if (old) {
+      // a different modification time for each write, all older than the cacheable age
+      file.setLastModified(
+          System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1) + contents.length() * 1000L);
+    }
+    return sourceArtifact(relativePath);
+  }
+
+  private static SourceArtifact sourceArtifact(String relativePath) {
+    return SourceArtifact.builder(TargetKey.forPlainTarget(Label.create("//fake:label")))
+        .setArtifactLocation(
+            ArtifactLocation.builder().setRelativePath(relativePath).setIsSource(true))
+        .build();
+  }
+
+  /** Reports the real file attributes, unless a modification time is overridden. */
+  private static class FakeFileOperationProvider extends FileOperationProvider {
+    final Map<File, Long> modifiedTimes = new HashMap<>();
+
+    @Override
+    public long getFileModifiedTime(File file) {
+      Long modifiedTime = modifiedTimes.get(file);
+      return modifiedTime != null ? modifiedTime : super.getFileModifiedTime(file);
+    }
+  }
+
+  /** Reads the package from the first line of the source. */
+  private static class CountingPackageReader extends JavaPackageReader {
+    int readCount = 0;
+
+    @Nullable
+    @Override
+    String getDeclaredPackageOfJavaFile(
+        BlazeContext context, ArtifactLocationDecoder decoder, SourceArtifact sourceArtifact) {
+      readCount++;
+      File file = decoder.resolveSource(sourceArtifact.artifactLocation);
+      try {
+        String line = Files.readAllLines(file.toPath(), UTF_8).get(0);
+        return line.substring("package ".length(), line.length() - 1);
+      } catch (Exception e) {
+        return null;
+      }
+    }
+  }
+}
@@ -16,15 +16,12 @@
 package com.google.idea.blaze.typescript;
 
 import com.google.common.base.Ascii;
-import com.google.common.base.Charsets;
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import com.google.idea.blaze.base.command.info.BlazeInfo;
 import com.google.idea.blaze.base.io.FileOperationProvider;
-import com.google.idea.blaze.base.io.InputStreamProvider;
 import com.google.idea.blaze.base.io.VfsUtils;
 import com.google.idea.blaze.base.model.primitives.Label;
 import com.google.idea.blaze.base.model.primitives.WorkspaceRoot;
@@ -51,7 +48,6 @@ import com.intellij.psi.PsiFileSystemItem;
 import com.intellij.psi.PsiManager;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -80,6 +76,7 @@ class BlazeTypeScriptConfig implements TypeScriptConfig {
   private final VirtualFile configFile;
   private final String workspaceRelativePathPrefix;
   private final String workspaceRelativePathReplacement;
+  private final TsConfigCache cache;
 
   private final NotNullLazyValue<ImmutableList<VirtualFile>> dependencies;
   private final NotNullLazyValue<TypeScriptConfigIncludeBase> includeChecker;
@@ -114,7 +111,8 @@ class BlazeTypeScriptConfig implements TypeScriptConfig {
   private final NotNullLazyValue<List<VirtualFile>> files;
 
   @Nullable
-  static TypeScriptConfig getInstance(Project project, Label label, File tsconfig) {
+  static TypeScriptConfig getInstance(
+      Project project, Label label, File tsconfig, TsConfigCache cache) {
     WorkspaceRoot workspaceRoot = WorkspaceRoot.fromProject(project);
 
     // as seen by the project
@@ -125,12 +123,7 @@ class BlazeTypeScriptConfig implements TypeScriptConfig {
 
     File tsconfigEditor;
     try {
-      JsonObject object =
-          new JsonParser()
-              .parse(
-                  new InputStreamReader(
-                      InputStreamProvider.getInstance().forFile(tsconfig), Charsets.UTF_8))
-              .getAsJsonObject();
+      JsonObject object = cache.parseJson(tsconfig);
       tsconfigEditor =
           FileOperationProvider.getInstance()
               .getCanonicalFile(
@@ -156,7 +149,13 @@ class BlazeTypeScriptConfig implements TypeScriptConfig {
 
     return FileOperationProvider.getInstance().exists(tsconfigEditor)
         ? new BlazeTypeScriptConfig(
-            project, label, configFile, tsconfigEditor, workspacePrefix, workspaceRelativePath)
+            project,
+            label,
+            configFile,
+            tsconfigEditor,
+            workspacePrefix,
+            workspaceRelativePath,
+            cache)
         : null;
   }
 
@@ -194,12 +193,14 @@ class BlazeTypeScriptConfig implements TypeScriptConfig {
       VirtualFile configFile,
       File tsconfigEditor,
       String workspaceRelativePathPrefix,
-      String workspaceRelativePathReplacement) {
+      String workspaceRelativePathReplacement,
+      TsConfigCache cache) {
     this.project = project;
     this.label = label;
     this.configFile = configFile;
     this.workspaceRelativePathPrefix = workspaceRelativePathPrefix;
     this.workspaceRelativePathReplacement = workspaceRelativePathReplacement;
+    this.cache = cache;
 
     this.baseUrlFile =
         NullableLazyValue.createValue(
@@ -244,12 +245,7 @@ class BlazeTypeScriptConfig implements TypeScriptConfig {
         NotNullLazyValue.createValue(() -> new TypeScriptFileImportsImpl(project, this));
 
     try {
-      parseJson(
-          new JsonParser()
-              .parse(
-                  new InputStreamReader(
-                      InputStreamProvider.getInstance().forFile(tsconfigEditor), Charsets.UTF_8))
-              .getAsJsonObject());
+      parseJson(cache.parseJson(tsconfigEditor));
     } catch (IOException e) {
       logger.warn(e);
     }
@@ -286,7 +282,8 @@ class BlazeTypeScriptConfig implements TypeScriptConfig {
   }
 
   private void parseCompilerOptions(JsonObject json) {
-    this.compilerOptions = json;
+    // the parsed tsconfig is shared with other configs via the TsConfigCache
+    this.compilerOptions = json.deepCopy();
     for (Map.Entry<String, JsonElement> entry : json.entrySet()) {
       String name = entry.getKey();
       JsonElement value = entry.getValue();
@@ -438,7 +435,7 @@ class BlazeTypeScriptConfig implements TypeScriptConfig {
         }
         mappings.add(pathString);
       }
-      paths.add(new PathSubstitution(name, mappings, alternativePrefixes, runfilesPrefix));
+      paths.add(cache.getPathSubstitution(name, mappings, alternativePrefixes, runfilesPrefix));
     }
   }
 
@@ -56,6 +56,7 @@ class BlazeTypeScriptConfigServiceImpl implements TypeScriptConfigService {
   private final List<TypeScriptConfigsChangedListener> listeners;
 
   private volatile ImmutableMap<VirtualFile, TypeScriptConfig> configs;
+  private volatile TsConfigCache cache = new TsConfigCache();
   private final AtomicInteger configsHash = new AtomicInteger(Objects.hash());
 
   BlazeTypeScriptConfigServiceImpl(Project project) {
@@ -76,14 +77,17 @@ class BlazeTypeScriptConfigServiceImpl implements TypeScriptConfigService {
       logger.error("Updating tsconfig files on EDT or with a read lock.");
       return;
     }
+    TsConfigCache updatedCache = cache.nextGeneration();
     configs =
         tsconfigs.entrySet().parallelStream()
             .map(
                 entry ->
-                    BlazeTypeScriptConfig.getInstance(project, entry.getKey(), entry.getValue()))
+                    BlazeTypeScriptConfig.getInstance(
+                        project, entry.getKey(), entry.getValue(), updatedCache))
             .filter(Objects::nonNull)
             .collect(
                 ImmutableMap.toImmutableMap(TypeScriptConfig::getConfigFile, Functions.identity()));
+    cache = updatedCache;
     for (TypeScriptConfigsChangedListener listener : listeners) {
       listener.afterUpdate(configs.keySet());
     }
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.typescript;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.idea.blaze.base.io.InputStreamProvider;
+import com.google.idea.blaze.typescript.BlazeTypeScriptConfig.PathSubstitution;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nullable;
+
+/**
+ * Caches parsed tsconfig files by content hash, and resolved {@link PathSubstitution}s by their
+ * inputs, across updates of the tsconfig files.
+ *
+ * <p>Each update uses a new cache, seeded from the previous one, so that only entries still in use
+ * are retained. Path substitutions are shared between all tsconfig files of the project, which
+ * typically list largely the same paths.
+ */
+final class TsConfigCache {
+
+  private final Map<HashCode, JsonObject> jsonByContentHash = new ConcurrentHashMap<>();
+  private final Map<PathSubstitutionKey, PathSubstitution> pathSubstitutions =
+      new ConcurrentHashMap<>();
+
+  /** Entries of the previous generation, reused if still needed. */
+  private final Map<HashCode, JsonObject> previousJsonByContentHash;
+
+  private final Map<PathSubstitutionKey, PathSubstitution> previousPathSubstitutions;
+
+  TsConfigCache() {
+    this(ImmutableMap.of(), ImmutableMap.of());
+  }
+
+  private TsConfigCache(
+      Map<HashCode, JsonObject> previousJsonByContentHash,
+      Map<PathSubstitutionKey, PathSubstitution> previousPathSubstitutions) {
+    this.previousJsonByContentHash = previousJsonByContentHash;
+    this.previousPathSubstitutions = previousPathSubstitutions;
+  }
+
+  /** Returns a new, empty cache, which reuses entries from this one. */
+  TsConfigCache nextGeneration() {
+    return new TsConfigCache(jsonByContentHash, pathSubstitutions);
+  }
+
+  /**
+   * Parses the given JSON file, reusing the result of previous parses of the same content. The
+   * returned object is shared, so must not be modified, and any part retained must be copied.
+   */
+  JsonObject parseJson(File file) throws IOException {
+    byte[] content;
+    try (InputStream in = InputStreamProvider.getInstance().forFile(file)) {
+      content = ByteStreams.toByteArray(in);
+    }
+    HashCode hash = Hashing.murmur3_128().hashBytes(content);
+    JsonObject json = jsonByContentHash.get(hash);
+    if (json == null) {
+      json = previousJsonByContentHash.get(hash);
+    }
+    if (json == null) {
+      json =
+          new JsonParser()
+              .parse(new InputStreamReader(new ByteArrayInputStream(content), UTF_8))
+              .getAsJsonObject();
+    }
+    jsonByContentHash.put(hash, json);
+    return json;
+  }
+
+  /** Returns a {@link PathSubstitution}, reusing an identical one if available. */
+  PathSubstitution getPathSubstitution(
+      String pattern,
+      List<String> mappings,
+      List<String> alternativePrefixes,
+      @Nullable String runfilesPrefix) {
+    PathSubstitutionKey key =
+        new PathSubstitutionKey(pattern, mappings, alternativePrefixes, runfilesPrefix);
+    PathSubstitution substitution = pathSubstitutions.get(key);
+    if (substitution == null) {
+      substitution = previousPathSubstitutions.get(key);
+    }
+    if (substitution == null) {
+      substitution = new PathSubstitution(pattern, mappings, alternativePrefixes, runfilesPrefix);
+    }
+    PathSubstitution existing = pathSubstitutions.putIfAbsent(key, substitution);
+    return existing != null ? existing : substitution;
+  }
+
+  private static final class PathSubstitutionKey {
+    private final String pattern;
+    private final ImmutableList<String> mappings;
+    private final ImmutableList<String> alternativePrefixes;
+    @Nullable private final String runfilesPrefix;
+    private final int hashCode;
+
+    private PathSubstitutionKey(
+        String pattern,
+        List<String> mappings,
+        List<String> alternativePrefixes,
+        @Nullable String runfilesPrefix) {
+      this.pattern = pattern;
+      this.mappings = ImmutableList.copyOf(mappings);
+      this.alternativePrefixes = ImmutableList.copyOf(alternativePrefixes);
+      this.runfilesPrefix = runfilesPrefix;
+      this.hashCode =
+          Objects.hash(this.pattern, this.mappings, this.alternativePrefixes, this.runfilesPrefix);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof PathSubstitutionKey)) {
+        return false;
+      }
+      PathSubstitutionKey other = (PathSubstitutionKey) o;
+      return hashCode == other.hashCode
+          && pattern.equals(other.pattern)
+          && mappings.equals(other.mappings)
+          && alternativePrefixes.equals(other.alternativePrefixes)
+          && Objects.equals(runfilesPrefix, other.runfilesPrefix);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+}
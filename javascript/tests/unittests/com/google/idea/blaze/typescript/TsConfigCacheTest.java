@@ -0,0 +1,152 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.typescript;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gson.JsonObject;
+import com.google.idea.blaze.base.BlazeTestCase;
+import com.google.idea.blaze.base.io.InputStreamProvider;
+import com.google.idea.blaze.base.io.MockInputStreamProvider;
+import com.google.idea.blaze.typescript.BlazeTypeScriptConfig.PathSubstitution;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link TsConfigCache}. */
+@RunWith(JUnit4.class)
+public class TsConfigCacheTest extends BlazeTestCase {
+
+  private static final File TSCONFIG = new File("/out/tsconfig.json");
+  private static final File OTHER_TSCONFIG = new File("/out/other/tsconfig.json");
+
+  private static final ImmutableList<String> MAPPINGS = ImmutableList.of("runfiles/foo/*");
+  private static final ImmutableList<String> PREFIXES = ImmutableList.of("/workspace");
+
+  private final MockInputStreamProvider inputStreamProvider = new MockInputStreamProvider();
+
+  @Override
+  protected void initTest(Container applicationServices, Container projectServices) {
+    super.initTest(applicationServices, projectServices);
+    applicationServices.register(InputStreamProvider.class, inputStreamProvider);
+  }
+
+  @Test
+  public void parseJson_identicalContentsParsedOnce() throws IOException {
+    setContents(TSCONFIG, "{\"compilerOptions\": {\"baseUrl\": \".\"}}");
+    setContents(OTHER_TSCONFIG, "{\"compilerOptions\": {\"baseUrl\": \".\"}}");
+    TsConfigCache cache = new TsConfigCache();
+
+    JsonObject json = cache.parseJson(TSCONFIG);
+
+    assertThat(json.getAsJsonObject("compilerOptions").get("baseUrl").getAsString())
+        .isEqualTo(".");
+    assertThat(cache.parseJson(TSCONFIG)).isSameInstanceAs(json);
+    assertThat(cache.parseJson(OTHER_TSCONFIG)).isSameInstanceAs(json);
+  }
+
+  @Test
+  public void parseJson_unchangedContentsReusedByNextGeneration() throws IOException {
+    setContents(TSCONFIG, "{\"compileOnSave\": false}");
+    TsConfigCache cache = new TsConfigCache();
+    JsonObject json = cache.parseJson(TSCONFIG);
+
+    assertThat(cache.nextGeneration().parseJson(TSCONFIG)).isSameInstanceAs(json);
+  }
+
+  @Test
+  public void parseJson_changedContentsReparsed() throws IOException {
+    setContents(TSCONFIG, "{\"compileOnSave\": false}");
+    TsConfigCache cache = new TsConfigCache();
+    JsonObject json = cache.parseJson(TSCONFIG);
+
+    setContents(TSCONFIG, "{\"compileOnSave\": true}");
+    JsonObject changed = cache.nextGeneration().parseJson(TSCONFIG);
+
+    assertThat(changed).isNotSameInstanceAs(json);
+    assertThat(changed.get("compileOnSave").getAsBoolean()).isTrue();
+  }
+
+  @Test
+  public void parseJson_entriesUnusedForAGenerationDropped() throws IOException {
+    setContents(TSCONFIG, "{\"compileOnSave\": false}");
+    TsConfigCache cache = new TsConfigCache();
+    JsonObject json = cache.parseJson(TSCONFIG);
+
+    TsConfigCache unused = cache.nextGeneration();
+    JsonObject reparsed = unused.nextGeneration().parseJson(TSCONFIG);
+
+    assertThat(reparsed).isNotSameInstanceAs(json);
+    assertThat(reparsed).isEqualTo(json);
+  }
+
+  @Test
+  public void getPathSubstitution_identicalInputsInterned() {
+    TsConfigCache cache = new TsConfigCache();
+    PathSubstitution substitution =
+        cache.getPathSubstitution("foo/*", MAPPINGS, PREFIXES, "runfiles");
+
+    List<String> mappings = new ArrayList<>(MAPPINGS);
+    assertThat(cache.getPathSubstitution("foo/*", mappings, PREFIXES, "runfiles"))
+        .isSameInstanceAs(substitution);
+    assertThat(substitution.getMappings()).containsExactly("/workspace/foo/*", "runfiles/foo/*");
+
+    // the key isn't affected by later changes to the inputs
+    mappings.add("runfiles/bar/*");
+    assertThat(cache.getPathSubstitution("foo/*", MAPPINGS, PREFIXES, "runfiles"))
+        .isSameInstanceAs(substitution);
+  }
+
+  @Test
+  public void getPathSubstitution_differentInputsNotShared() {
+    TsConfigCache cache = new TsConfigCache();
+    PathSubstitution substitution =
+        cache.getPathSubstitution("foo/*", MAPPINGS, PREFIXES, "runfiles");
+
+    assertThat(cache.getPathSubstitution("bar/*", MAPPINGS, PREFIXES, "runfiles"))
+        .isNotSameInstanceAs(substitution);
+    assertThat(cache.getPathSubstitution("foo/*", MAPPINGS, ImmutableList.of(), "runfiles"))
+        .isNotSameInstanceAs(substitution);
+    assertThat(cache.getPathSubstitution("foo/*", MAPPINGS, PREFIXES, null))
+        .isNotSameInstanceAs(substitution);
+  }
+
+  @Test
+  public void getPathSubstitution_reusedByNextGenerationOnlyIfStillUsed() {
+    TsConfigCache cache = new TsConfigCache();
+    PathSubstitution foo = cache.getPathSubstitution("foo/*", MAPPINGS, PREFIXES, "runfiles");
+    PathSubstitution bar = cache.getPathSubstitution("bar/*", MAPPINGS, PREFIXES, "runfiles");
+
+    TsConfigCache next = cache.nextGeneration();
+    assertThat(next.getPathSubstitution("foo/*", MAPPINGS, PREFIXES, "runfiles"))
+        .isSameInstanceAs(foo);
+
+    TsConfigCache last = next.nextGeneration();
+    assertThat(last.getPathSubstitution("foo/*", MAPPINGS, PREFIXES, "runfiles"))
+        .isSameInstanceAs(foo);
+    assertThat(last.getPathSubstitution("bar/*", MAPPINGS, PREFIXES, "runfiles"))
+        .isNotSameInstanceAs(bar);
+  }
+
+  private void setContents(File file, String contents) {
+    inputStreamProvider.addFile(file.getPath(), contents);
+  }
+}
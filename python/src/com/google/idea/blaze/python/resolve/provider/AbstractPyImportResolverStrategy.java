@@ -15,17 +15,32 @@
  */
 package com.google.idea.blaze.python.resolve.provider;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.idea.blaze.base.async.executor.BlazeExecutor;
 import com.google.idea.blaze.base.command.buildresult.OutputArtifactResolver;
 import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
 import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
 import com.google.idea.blaze.base.model.BlazeProjectData;
 import com.google.idea.blaze.base.model.primitives.LanguageClass;
+import com.google.idea.blaze.base.scope.BlazeContext;
+import com.google.idea.blaze.base.settings.Blaze;
+import com.google.idea.blaze.base.settings.BuildSystem;
 import com.google.idea.blaze.base.sync.SyncCache;
+import com.google.idea.blaze.base.sync.SyncListener;
+import com.google.idea.blaze.base.sync.SyncMode;
+import com.google.idea.blaze.base.sync.SyncResult;
+import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
 import com.google.idea.blaze.base.sync.workspace.ArtifactLocationDecoder;
 import com.google.idea.blaze.python.resolve.BlazePyResolverUtils;
+import com.google.idea.blaze.python.resolve.provider.PySourcesIndex.TargetSources;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.psi.PsiElement;
@@ -38,9 +53,11 @@ import com.jetbrains.python.codeInsight.imports.AutoImportQuickFix;
 import com.jetbrains.python.psi.PyUtil;
 import com.jetbrains.python.psi.resolve.PyQualifiedNameResolveContext;
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
 import javax.annotation.Nullable;
 
 /**
@@ -49,6 +66,8 @@ import javax.annotation.Nullable;
  */
 public abstract class AbstractPyImportResolverStrategy implements PyImportResolverStrategy {
 
+  private static final int TARGETS_PER_BATCH = 1000;
+
   @Nullable
   @Override
   public final PsiElement resolveFromSyncData(
@@ -57,7 +76,7 @@ public abstract class AbstractPyImportResolverStrategy implements PyImportResolv
     if (index == null) {
       return null;
     }
-    PsiElementProvider resolver = index.sourceMap.get(name);
+    PsiElementProvider resolver = index.get(name);
     return resolver != null ? resolver.get(context.getPsiManager()) : null;
   }
 
@@ -70,8 +89,8 @@ public abstract class AbstractPyImportResolverStrategy implements PyImportResolv
       return;
     }
     PsiManager psiManager = PsiManager.getInstance(project);
-    for (QualifiedName candidate : index.shortNames.get(name)) {
-      PsiElementProvider resolver = index.sourceMap.get(candidate);
+    for (QualifiedName candidate : index.getImportStringsWithShortName(name)) {
+      PsiElementProvider resolver = index.get(candidate);
       if (resolver == null) {
         continue;
       }
@@ -91,26 +110,89 @@ public abstract class AbstractPyImportResolverStrategy implements PyImportResolv
     return SyncCache.getInstance(project).get(getClass(), this::buildSourcesIndex);
   }
 
-  @SuppressWarnings("unused")
   private PySourcesIndex buildSourcesIndex(Project project, BlazeProjectData projectData) {
-    ImmutableSetMultimap.Builder<String, QualifiedName> shortNames = ImmutableSetMultimap.builder();
-    Map<QualifiedName, PsiElementProvider> map = new HashMap<>();
     ArtifactLocationDecoder decoder = projectData.getArtifactLocationDecoder();
-    for (TargetIdeInfo target : projectData.getTargetMap().targets()) {
-      for (ArtifactLocation source : getPySources(target)) {
-        QualifiedName name = toImportString(source);
-        if (name == null || name.getLastComponent() == null) {
-          continue;
-        }
-        shortNames.put(name.getLastComponent(), name);
-        PsiElementProvider psiProvider = psiProviderFromArtifact(project, decoder, source);
-        map.put(name, psiProvider);
+    return buildSourcesIndex(
+        ImmutableList.copyOf(projectData.getTargetMap().targets()),
+        TARGETS_PER_BATCH,
+        source -> psiProviderFromArtifact(project, decoder, source));
+  }
+
+  /**
+   * Builds the sources index from scratch. The import strings of each batch of targets are computed
+   * in parallel, then added to the index in the order of {@code targets}, so that later targets
+   * take priority for duplicate import strings.
+   */
+  @VisibleForTesting
+  PySourcesIndex buildSourcesIndex(
+      List<TargetIdeInfo> targets,
+      int targetsPerBatch,
+      Function<ArtifactLocation, PsiElementProvider> psiProviders) {
+    PySourcesIndex.Builder builder = PySourcesIndex.builder();
+    for (TargetSources sources : getTargetSources(targets, targetsPerBatch)) {
+      for (int i = 0; i < sources.importStrings.size(); i++) {
+        QualifiedName name = sources.importStrings.get(i);
+        ArtifactLocation source = sources.importedSources.get(i);
+        PsiElementProvider psiProvider = psiProviders.apply(source);
+        builder.addSource(name, psiProvider);
         if (includeParentDirectory(source)) {
-          map.put(name.removeTail(1), PsiElementProvider.getParent(psiProvider));
+          builder.add(name.removeTail(1), PsiElementProvider.getParent(psiProvider));
         }
       }
     }
-    return new PySourcesIndex(shortNames.build(), ImmutableMap.copyOf(map));
+    return builder.build();
+  }
+
+  /**
+   * Returns the import strings of the sources of each target with importable sources, in the same
+   * order as {@code targets}. Targets are processed in parallel batches.
+   */
+  private List<TargetSources> getTargetSources(List<TargetIdeInfo> targets, int targetsPerBatch) {
+    ListeningExecutorService executor = BlazeExecutor.getInstance().getExecutor();
+    List<ListenableFuture<List<TargetSources>>> futures = new ArrayList<>();
+    for (List<TargetIdeInfo> batch : Lists.partition(targets, targetsPerBatch)) {
+      futures.add(
+          executor.submit(
+              () -> {
+                List<TargetSources> result = new ArrayList<>(batch.size());
+                for (TargetIdeInfo target : batch) {
+                  TargetSources sources = getTargetSources(target);
+                  if (sources != null) {
+                    result.add(sources);
+                  }
+                }
+                return result;
+              }));
+    }
+    try {
+      List<TargetSources> result = new ArrayList<>(targets.size());
+      Futures.allAsList(futures).get().forEach(result::addAll);
+      return result;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ProcessCanceledException(e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  @Nullable
+  private TargetSources getTargetSources(TargetIdeInfo target) {
+    Collection<ArtifactLocation> sources = getPySources(target);
+    if (sources.isEmpty()) {
+      return null;
+    }
+    ImmutableList.Builder<QualifiedName> importStrings = ImmutableList.builder();
+    ImmutableList.Builder<ArtifactLocation> importedSources = ImmutableList.builder();
+    for (ArtifactLocation source : sources) {
+      QualifiedName name = toImportString(source);
+      if (name == null || name.getLastComponent() == null) {
+        continue;
+      }
+      importStrings.add(name);
+      importedSources.add(source);
+    }
+    return new TargetSources(importStrings.build(), importedSources.build());
   }
 
   private static PsiElementProvider psiProviderFromArtifact(
@@ -150,4 +232,34 @@ public abstract class AbstractPyImportResolverStrategy implements PyImportResolv
     relativePath = StringUtil.trimExtensions(relativePath);
     return QualifiedName.fromComponents(StringUtil.split(relativePath, File.separator));
   }
+
+  /**
+   * Builds the sources index in the background after each sync (including loading the project),
+   * so that the first import resolved afterwards doesn't pay for it.
+   */
+  static class PrepareSourcesIndex implements SyncListener {
+    @Override
+    public void afterSync(
+        Project project,
+        BlazeContext context,
+        SyncMode syncMode,
+        SyncResult syncResult,
+        ImmutableSet<Integer> buildIds) {
+      BlazeProjectData projectData =
+          BlazeProjectDataManager.getInstance(project).getBlazeProjectData();
+      if (projectData == null
+          || !projectData.getWorkspaceLanguageSettings().isLanguageActive(LanguageClass.PYTHON)) {
+        return;
+      }
+      BuildSystem buildSystem = Blaze.getBuildSystem(project);
+      for (PyImportResolverStrategy strategy : PyImportResolverStrategy.EP_NAME.getExtensions()) {
+        if (strategy instanceof AbstractPyImportResolverStrategy
+            && strategy.appliesToBuildSystem(buildSystem)) {
+          ApplicationManager.getApplication()
+              .executeOnPooledThread(
+                  () -> ((AbstractPyImportResolverStrategy) strategy).getSourcesIndex(project));
+        }
+      }
+    }
+  }
 }
@@ -15,19 +15,131 @@
  */
 package com.google.idea.blaze.python.resolve.provider;
 
-import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
 import com.intellij.psi.util.QualifiedName;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
 
-/** An index of python sources and their associated import strings. */
+/**
+ * An index of python sources and their associated import strings.
+ *
+ * <p>Import strings are stored in a trie of their components, so that the many import strings
+ * sharing a package prefix share its storage.
+ */
 class PySourcesIndex {
-  final ImmutableSetMultimap<String, QualifiedName> shortNames;
-  final ImmutableMap<QualifiedName, PsiElementProvider> sourceMap;
 
-  PySourcesIndex(
-      ImmutableSetMultimap<String, QualifiedName> shortNames,
-      ImmutableMap<QualifiedName, PsiElementProvider> sourceMap) {
+  /** The import strings of a single target's python sources. */
+  static class TargetSources {
+    /** The import strings of the importable sources, parallel to {@link #importedSources}. */
+    final ImmutableList<QualifiedName> importStrings;
+
+    final ImmutableList<ArtifactLocation> importedSources;
+
+    TargetSources(
+        ImmutableList<QualifiedName> importStrings,
+        ImmutableList<ArtifactLocation> importedSources) {
+      this.importStrings = importStrings;
+      this.importedSources = importedSources;
+    }
+  }
+
+  private final Node root;
+  private final Map<String, List<Node>> shortNames;
+
+  private PySourcesIndex(Node root, Map<String, List<Node>> shortNames) {
+    this.root = root;
     this.shortNames = shortNames;
-    this.sourceMap = sourceMap;
+  }
+
+  /** Returns the provider for the given import string, or null if it isn't in the index. */
+  @Nullable
+  PsiElementProvider get(QualifiedName name) {
+    Node node = root;
+    for (String component : name.getComponents()) {
+      node = node.children != null ? node.children.get(component) : null;
+      if (node == null) {
+        return null;
+      }
+    }
+    return node.provider;
+  }
+
+  /** Returns all indexed source import strings with the given last component. */
+  ImmutableList<QualifiedName> getImportStringsWithShortName(String shortName) {
+    List<Node> nodes = shortNames.get(shortName);
+    if (nodes == null) {
+      return ImmutableList.of();
+    }
+    return nodes.stream().map(Node::getQualifiedName).collect(ImmutableList.toImmutableList());
+  }
+
+  static Builder builder() {
+    return new Builder();
+  }
+
+  /** Builder for {@link PySourcesIndex}. Later entries for the same import string take priority. */
+  static class Builder {
+    private final Node root = new Node(null, "");
+    private final Map<String, List<Node>> shortNames = new HashMap<>();
+
+    /** Adds a source's import string, which can also be looked up by its last component. */
+    Builder addSource(QualifiedName name, PsiElementProvider provider) {
+      Node node = getOrCreateNode(name);
+      node.provider = provider;
+      if (!node.isShortName) {
+        node.isShortName = true;
+        shortNames.computeIfAbsent(node.component, k -> new ArrayList<>(1)).add(node);
+      }
+      return this;
+    }
+
+    /** Adds an import string, which is only looked up in full. */
+    Builder add(QualifiedName name, PsiElementProvider provider) {
+      getOrCreateNode(name).provider = provider;
+      return this;
+    }
+
+    private Node getOrCreateNode(QualifiedName name) {
+      Node node = root;
+      for (String component : name.getComponents()) {
+        if (node.children == null) {
+          node.children = new HashMap<>(4);
+        }
+        Node parent = node;
+        node = node.children.computeIfAbsent(component, c -> new Node(parent, c));
+      }
+      return node;
+    }
+
+    PySourcesIndex build() {
+      return new PySourcesIndex(root, shortNames);
+    }
+  }
+
+  private static class Node {
+    @Nullable private final Node parent;
+    private final String component;
+    @Nullable private Map<String, Node> children;
+    @Nullable private PsiElementProvider provider;
+    private boolean isShortName;
+
+    private Node(@Nullable Node parent, String component) {
+      this.parent = parent;
+      this.component = component;
+    }
+
+    private QualifiedName getQualifiedName() {
+      Deque<String> components = new ArrayDeque<>();
+      for (Node node = this; node.parent != null; node = node.parent) {
+        components.addFirst(node.component);
+      }
+      return QualifiedName.fromComponents(components);
+    }
   }
 }
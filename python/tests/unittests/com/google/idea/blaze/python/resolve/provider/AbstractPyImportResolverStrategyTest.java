@@ -0,0 +1,215 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.python.resolve.provider;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.idea.blaze.base.BlazeTestCase;
+import com.google.idea.blaze.base.async.executor.BlazeExecutor;
+import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
+import com.google.idea.blaze.base.ideinfo.PyIdeInfo;
+import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
+import com.google.idea.blaze.base.settings.BuildSystem;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiManager;
+import com.intellij.psi.util.QualifiedName;
+import com.jetbrains.python.psi.resolve.PyQualifiedNameResolveContext;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import javax.annotation.Nullable;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link AbstractPyImportResolverStrategy}. */
+@RunWith(JUnit4.class)
+public class AbstractPyImportResolverStrategyTest extends BlazeTestCase {
+
+  private final ListeningExecutorService executor =
+      MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(4));
+  private final Map<ArtifactLocation, PsiElementProvider> providers = new HashMap<>();
+  private final TestStrategy strategy = new TestStrategy();
+
+  @Override
+  protected void initTest(Container applicationServices, Container projectServices) {
+    super.initTest(applicationServices, projectServices);
+    applicationServices.register(BlazeExecutor.class, new TestBlazeExecutor(executor));
+  }
+
+  @After
+  public final void shutdownExecutor() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void buildSourcesIndex_indexesSourcesAndPackages() {
+    ArtifactLocation bar = source("foo/bar.py");
+    ArtifactLocation init = source("foo/baz/__init__.py");
+
+    PySourcesIndex index =
+        buildSourcesIndex(ImmutableList.of(target("//foo:foo", bar, init)), 1000);
+
+    assertThat(index.get(name("foo.bar"))).isSameAs(providers.get(bar));
+    assertThat(index.get(name("foo.baz"))).isSameAs(providers.get(init));
+    assertThat(index.get(name("foo"))).isNotNull();
+    assertThat(index.getImportStringsWithShortName("bar")).containsExactly(name("foo.bar"));
+  }
+
+  @Test
+  public void buildSourcesIndex_sourcesWithoutImportStringsIgnored() {
+    PySourcesIndex index =
+        buildSourcesIndex(
+            ImmutableList.of(target("//foo:foo", source("foo/data.txt"), source("foo/bar.py"))),
+            1000);
+
+    assertThat(index.get(name("foo.data"))).isNull();
+    assertThat(index.get(name("foo.bar"))).isNotNull();
+  }
+
+  @Test
+  public void buildSourcesIndex_laterTargetsTakePriorityAcrossBatches() {
+    List<TargetIdeInfo> targets = new ArrayList<>();
+    List<ArtifactLocation> duplicates = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      // each target has a unique source, and a source with the same import string as the others
+      ArtifactLocation duplicate = generated("bin-" + i, "foo/common.py");
+      duplicates.add(duplicate);
+      targets.add(target("//foo:t" + i, source("foo/t" + i + ".py"), duplicate));
+    }
+
+    PySourcesIndex index = buildSourcesIndex(targets, 3);
+
+    assertThat(index.get(name("foo.common"))).isSameAs(providers.get(duplicates.get(49)));
+    for (int i = 0; i < 50; i++) {
+      assertThat(index.get(name("foo.t" + i))).isNotNull();
+    }
+    assertThat(index.getImportStringsWithShortName("common")).containsExactly(name("foo.common"));
+  }
+
+  @Test
+  public void buildSourcesIndex_resultIndependentOfBatchSize() {
+    List<TargetIdeInfo> targets = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      targets.add(
+          target(
+              "//foo:t" + i, generated("bin-" + i, "foo/common.py"), source("foo/t" + i + ".py")));
+    }
+
+    PySourcesIndex inOneBatch = buildSourcesIndex(targets, 1000);
+    PySourcesIndex inManyBatches = buildSourcesIndex(targets, 1);
+
+    assertThat(inManyBatches.get(name("foo.common")))
+        .isSameAs(inOneBatch.get(name("foo.common")));
+  }
+
+  private PySourcesIndex buildSourcesIndex(List<TargetIdeInfo> targets, int targetsPerBatch) {
+    return strategy.buildSourcesIndex(
+        targets, targetsPerBatch, source -> providers.computeIfAbsent(source, SourceProvider::new));
+  }
+
+  private static TargetIdeInfo target(String label, ArtifactLocation... sources) {
+    return TargetIdeInfo.builder()
+        .setLabel(label)
+        .setPyInfo(PyIdeInfo.builder().addSources(ImmutableList.copyOf(sources)))
+        .build();
+  }
+
+  private static ArtifactLocation source(String relativePath) {
+    return ArtifactLocation.builder().setRelativePath(relativePath).setIsSource(true).build();
+  }
+
+  private static ArtifactLocation generated(String rootExecutionPath, String relativePath) {
+    return ArtifactLocation.builder()
+        .setRootExecutionPathFragment(rootExecutionPath)
+        .setRelativePath(relativePath)
+        .setIsSource(false)
+        .build();
+  }
+
+  private static QualifiedName name(String name) {
+    return QualifiedName.fromDottedString(name);
+  }
+
+  /** A distinct provider for each source, so the source an import string resolves to is known. */
+  private static class SourceProvider implements PsiElementProvider {
+    private final ArtifactLocation source;
+
+    SourceProvider(ArtifactLocation source) {
+      this.source = source;
+    }
+
+    @Nullable
+    @Override
+    public PsiElement get(PsiManager manager) {
+      return null;
+    }
+
+    @Override
+    public String toString() {
+      return source.toString();
+    }
+  }
+
+  private static class TestStrategy extends AbstractPyImportResolverStrategy {
+    @Override
+    public boolean appliesToBuildSystem(BuildSystem buildSystem) {
+      return true;
+    }
+
+    @Nullable
+    @Override
+    public PsiElement resolveToWorkspaceSource(
+        QualifiedName name, PyQualifiedNameResolveContext context) {
+      return null;
+    }
+
+    @Nullable
+    @Override
+    QualifiedName toImportString(ArtifactLocation source) {
+      if (!source.getRelativePath().endsWith(".py")) {
+        return null;
+      }
+      return fromRelativePath(source.getRelativePath());
+    }
+  }
+
+  private static class TestBlazeExecutor extends BlazeExecutor {
+    private final ListeningExecutorService executor;
+
+    TestBlazeExecutor(ListeningExecutorService executor) {
+      this.executor = executor;
+    }
+
+    @Override
+    public <T> ListenableFuture<T> submit(Callable<T> callable) {
+      return executor.submit(callable);
+    }
+
+    @Override
+    public ListeningExecutorService getExecutor() {
+      return executor;
+    }
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.python.resolve.provider;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.intellij.psi.util.QualifiedName;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link PySourcesIndex}. */
+@RunWith(JUnit4.class)
+public class PySourcesIndexTest {
+
+  private static final PsiElementProvider FOO = manager -> null;
+  private static final PsiElementProvider BAR = manager -> null;
+  private static final PsiElementProvider PARENT = manager -> null;
+
+  @Test
+  public void testLookupByFullName() {
+    PySourcesIndex index =
+        PySourcesIndex.builder()
+            .addSource(name("com.google.foo"), FOO)
+            .addSource(name("com.google.bar"), BAR)
+            .add(name("com.google"), PARENT)
+            .build();
+
+    assertThat(index.get(name("com.google.foo"))).isSameAs(FOO);
+    assertThat(index.get(name("com.google.bar"))).isSameAs(BAR);
+    assertThat(index.get(name("com.google"))).isSameAs(PARENT);
+    assertThat(index.get(name("com"))).isNull();
+    assertThat(index.get(name("com.google.foo.baz"))).isNull();
+    assertThat(index.get(name("org.google.foo"))).isNull();
+  }
+
+  @Test
+  public void testLaterEntriesTakePriority() {
+    PySourcesIndex index =
+        PySourcesIndex.builder()
+            .addSource(name("com.google.foo"), FOO)
+            .addSource(name("com.google.foo"), BAR)
+            .build();
+
+    assertThat(index.get(name("com.google.foo"))).isSameAs(BAR);
+    assertThat(index.getImportStringsWithShortName("foo")).containsExactly(name("com.google.foo"));
+  }
+
+  @Test
+  public void testLookupByShortName() {
+    PySourcesIndex index =
+        PySourcesIndex.builder()
+            .addSource(name("com.google.foo"), FOO)
+            .addSource(name("org.foo"), FOO)
+            .addSource(name("com.google.bar"), BAR)
+            .add(name("com.google"), PARENT)
+            .build();
+
+    assertThat(index.getImportStringsWithShortName("foo"))
+        .containsExactly(name("com.google.foo"), name("org.foo"));
+    assertThat(index.getImportStringsWithShortName("bar")).containsExactly(name("com.google.bar"));
+    // only sources are indexed by their short name
+    assertThat(index.getImportStringsWithShortName("google")).isEmpty();
+  }
+
+  private static QualifiedName name(String name) {
+    return QualifiedName.fromDottedString(name);
+  }
+}
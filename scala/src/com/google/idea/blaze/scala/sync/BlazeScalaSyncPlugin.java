@@ -34,6 +34,7 @@ import com.google.idea.blaze.base.sync.libraries.LibrarySource;
 import com.google.idea.blaze.base.sync.projectview.WorkspaceLanguageSettings;
 import com.google.idea.blaze.base.sync.workspace.ArtifactLocationDecoder;
 import com.google.idea.blaze.base.sync.workspace.WorkingSet;
+import com.google.idea.blaze.java.sync.importer.JavaSourceFilter;
 import com.google.idea.blaze.scala.sync.importer.BlazeScalaWorkspaceImporter;
 import com.google.idea.blaze.scala.sync.model.BlazeScalaImportResult;
 import com.google.idea.blaze.scala.sync.model.BlazeScalaSyncData;
@@ -103,7 +104,9 @@ public class BlazeScalaSyncPlugin implements BlazeSyncPlugin {
       return;
     }
     BlazeScalaWorkspaceImporter blazeScalaWorkspaceImporter =
-        new BlazeScalaWorkspaceImporter(project, workspaceRoot, projectViewSet, targetMap);
+        new BlazeScalaWorkspaceImporter(
+            targetMap,
+            JavaSourceFilter.getInstance(project, workspaceRoot, projectViewSet, targetMap));
     BlazeScalaImportResult importResult =
         Scope.push(
             context,
@@ -25,7 +25,6 @@ import com.google.idea.blaze.base.model.primitives.LanguageClass;
 import com.google.idea.blaze.base.model.primitives.WorkspaceRoot;
 import com.google.idea.blaze.base.projectview.ProjectViewSet;
 import com.google.idea.blaze.base.settings.Blaze;
-import com.google.idea.blaze.base.sync.projectview.ProjectViewTargetImportFilter;
 import com.google.idea.blaze.base.targetmaps.TransitiveDependencyMap;
 import com.google.idea.blaze.java.sync.importer.JavaSourceFilter;
 import com.google.idea.blaze.java.sync.model.BlazeJarLibrary;
@@ -37,32 +36,28 @@ import java.util.stream.Collectors;
 
 /** Builds a BlazeWorkspace. */
 public final class BlazeScalaWorkspaceImporter {
-  private final Project project;
-  private final WorkspaceRoot workspaceRoot;
-  private final ProjectViewSet projectViewSet;
   private final TargetMap targetMap;
+  private final JavaSourceFilter sourceFilter;
 
   public BlazeScalaWorkspaceImporter(
       Project project,
       WorkspaceRoot workspaceRoot,
       ProjectViewSet projectViewSet,
       TargetMap targetMap) {
-    this.project = project;
-    this.workspaceRoot = workspaceRoot;
-    this.projectViewSet = projectViewSet;
+    this(
+        targetMap,
+        new JavaSourceFilter(
+            Blaze.getBuildSystem(project), workspaceRoot, projectViewSet, targetMap));
+  }
+
+  public BlazeScalaWorkspaceImporter(TargetMap targetMap, JavaSourceFilter sourceFilter) {
     this.targetMap = targetMap;
+    this.sourceFilter = sourceFilter;
   }
 
   public BlazeScalaImportResult importWorkspace() {
-    ProjectViewTargetImportFilter importFilter =
-        new ProjectViewTargetImportFilter(
-            Blaze.getBuildSystem(project), workspaceRoot, projectViewSet);
-
     List<TargetKey> scalaSourceTargets =
-        targetMap.targets().stream()
-            .filter(target -> target.getJavaIdeInfo() != null)
-            .filter(target -> target.getKind().hasLanguage(LanguageClass.SCALA))
-            .filter(importFilter::isSourceTarget)
+        sourceFilter.getProjectTargets(LanguageClass.SCALA).stream()
             .map(TargetIdeInfo::getKey)
             .collect(Collectors.toList());
 
@@ -78,7 +73,7 @@ public final class BlazeScalaWorkspaceImporter {
         continue;
       }
       // Except source targets.
-      if (JavaSourceFilter.importAsSource(importFilter, target)) {
+      if (sourceFilter.isImportedAsSource(dependency)) {
         continue;
       }
       if (target.getJavaIdeInfo() != null) {
@@ -15,6 +15,7 @@
  */
 package com.google.idea.blaze.skylark.debugger.impl;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
@@ -27,8 +28,13 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 import javax.annotation.Nullable;
 import org.jetbrains.ide.PooledThreadExecutor;
@@ -51,18 +57,28 @@ class DebugClientTransport implements Closeable {
 
   private final int port;
   private final SkylarkDebugProcess debugProcess;
+  private final int responseTimeoutMillis;
 
   private final AtomicLong sequence = new AtomicLong(1);
   private final Map<Long, DebugEvent> responseQueue = new HashMap<>();
 
+  /** Requests we've stopped waiting for, whose responses are dropped. Guarded by responseQueue. */
+  private final Set<Long> abandonedRequests = new HashSet<>();
+
   @Nullable private Socket clientSocket;
   @Nullable private OutputStream requestStream;
   @Nullable private ListenableFuture<?> readTask;
   private volatile boolean isStopCalled = false;
 
   DebugClientTransport(SkylarkDebugProcess debugProcess, int port) {
+    this(debugProcess, port, RESPONSE_TIMEOUT_MILLIS);
+  }
+
+  @VisibleForTesting
+  DebugClientTransport(SkylarkDebugProcess debugProcess, int port, int responseTimeoutMillis) {
     this.port = port;
     this.debugProcess = debugProcess;
+    this.responseTimeoutMillis = responseTimeoutMillis;
     Runtime.getRuntime().addShutdownHook(new Thread(this::close));
   }
 
@@ -102,8 +118,7 @@ class DebugClientTransport implements Closeable {
       try {
         clientSocket = new Socket();
         clientSocket.connect(new InetSocketAddress(LOCAL_HOST, port), CONNECTION_TIMEOUT_MILLIS);
-        requestStream = clientSocket.getOutputStream();
-        readTask = processEvents(clientSocket.getInputStream());
+        connect(clientSocket.getInputStream(), clientSocket.getOutputStream());
         logger.info("Connection established");
         return true;
 
@@ -123,6 +138,12 @@ class DebugClientTransport implements Closeable {
     return false;
   }
 
+  @VisibleForTesting
+  void connect(InputStream eventStream, OutputStream requestStream) {
+    this.requestStream = requestStream;
+    readTask = processEvents(eventStream);
+  }
+
   /**
    * Sends a {@link DebugRequest} to the server, and blocks waiting for a response. The sequence
    * number will be populated prior to sending the request.
@@ -149,6 +170,42 @@ class DebugClientTransport implements Closeable {
     }
   }
 
+  /**
+   * Sends several {@link DebugRequest}s to the server without waiting for each response in turn,
+   * then blocks waiting for all the responses.
+   *
+   * @return the {@link DebugEvent} responses from the server, in the order of the requests. An
+   *     entry is null if no response was received within the timeout.
+   */
+  List<DebugEvent> sendRequests(List<DebugRequest.Builder> builders) {
+    List<DebugEvent> responses = new ArrayList<>(Collections.nCopies(builders.size(), null));
+    long firstSeq;
+    try {
+      synchronized (requestStream) {
+        firstSeq = sequence.getAndAdd(builders.size());
+        for (int i = 0; i < builders.size(); i++) {
+          builders.get(i).setSequenceNumber(firstSeq + i).build().writeDelimitedTo(requestStream);
+        }
+        requestStream.flush();
+      }
+    } catch (IOException e) {
+      if (!ignoreErrors()) {
+        logger.error("Error sending requests to Skylark debugger", e);
+      }
+      return responses;
+    }
+    for (int i = 0; i < builders.size(); i++) {
+      DebugEvent response = waitForResponse(firstSeq + i);
+      if (response == null) {
+        // the remaining responses would time out too
+        abandonResponses(firstSeq + i + 1, firstSeq + builders.size());
+        break;
+      }
+      responses.set(i, response);
+    }
+    return responses;
+  }
+
   private ListenableFuture<?> processEvents(InputStream eventStream) {
     ListeningExecutorService executor =
         MoreExecutors.listeningDecorator(PooledThreadExecutor.INSTANCE);
@@ -179,6 +236,9 @@ class DebugClientTransport implements Closeable {
 
   private void placeResponse(long sequence, DebugEvent response) {
     synchronized (responseQueue) {
+      if (abandonedRequests.remove(sequence)) {
+        return;
+      }
       responseQueue.put(sequence, response);
       responseQueue.notifyAll();
     }
@@ -186,29 +246,56 @@ class DebugClientTransport implements Closeable {
 
   /**
    * Wait for a response from the debug server. Returns null if no response was received, or this
-   * thread was interrupted.
+   * thread was interrupted. In that case the request is abandoned, and any later response dropped.
    */
   @Nullable
   private DebugEvent waitForResponse(long sequence) {
     DebugEvent response = null;
     long startTime = System.currentTimeMillis();
     synchronized (responseQueue) {
+      // the response may have arrived before we started waiting
+      response = responseQueue.remove(sequence);
       while (response == null && shouldWaitForResponse(startTime)) {
         try {
           responseQueue.wait(RESPONSE_RECHECK_TIME_MILLIS);
         } catch (InterruptedException e) {
           Thread.currentThread().interrupt();
+          abandonedRequests.add(sequence);
           return null;
         }
         response = responseQueue.remove(sequence);
       }
+      if (response == null) {
+        abandonedRequests.add(sequence);
+      }
     }
     return response;
   }
 
+  /**
+   * Stops waiting for the responses to the requests with sequence numbers in the range [from, to),
+   * dropping those which have already arrived.
+   */
+  private void abandonResponses(long from, long to) {
+    synchronized (responseQueue) {
+      for (long seq = from; seq < to; seq++) {
+        if (responseQueue.remove(seq) == null) {
+          abandonedRequests.add(seq);
+        }
+      }
+    }
+  }
+
+  @VisibleForTesting
+  int queuedResponseCount() {
+    synchronized (responseQueue) {
+      return responseQueue.size();
+    }
+  }
+
   private boolean shouldWaitForResponse(long startTime) {
-    return clientSocket.isConnected()
+    return readTask != null
         && !readTask.isDone()
-        && System.currentTimeMillis() - startTime < RESPONSE_TIMEOUT_MILLIS;
+        && System.currentTimeMillis() - startTime < responseTimeoutMillis;
   }
 }
@@ -15,14 +15,16 @@
  */
 package com.google.idea.blaze.skylark.debugger.impl;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 import com.google.devtools.build.lib.starlarkdebugging.StarlarkDebuggingProtos;
 import com.google.devtools.build.lib.starlarkdebugging.StarlarkDebuggingProtos.DebugEvent;
+import com.google.devtools.build.lib.starlarkdebugging.StarlarkDebuggingProtos.DebugEvent.PayloadCase;
 import com.google.devtools.build.lib.starlarkdebugging.StarlarkDebuggingProtos.DebugRequest;
 import com.google.devtools.build.lib.starlarkdebugging.StarlarkDebuggingProtos.GetChildrenRequest;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 import javax.annotation.Nullable;
 
 /**
@@ -31,9 +33,21 @@ import javax.annotation.Nullable;
  */
 class SingleThreadChildCache {
 
+  /** The maximum number of child values retained, summed over all cached values. */
+  private static final long MAX_CACHED_CHILDREN = 100_000;
+
+  /** The maximum number of values whose children are prefetched at a time. */
+  private static final int MAX_PREFETCHED_VALUES = 100;
+
+  /** The maximum number of requests sent before waiting for their responses. */
+  private static final int MAX_REQUESTS_PER_BATCH = 25;
+
   private final long threadId;
-  private final ConcurrentMap<Long, List<StarlarkDebuggingProtos.Value>> identifierToChildrenMap =
-      new ConcurrentHashMap<>();
+  private final Cache<Long, List<StarlarkDebuggingProtos.Value>> identifierToChildrenMap =
+      CacheBuilder.newBuilder()
+          .maximumWeight(MAX_CACHED_CHILDREN)
+          .weigher((Long id, List<StarlarkDebuggingProtos.Value> children) -> children.size())
+          .build();
 
   SingleThreadChildCache(long threadId) {
     this.threadId = threadId;
@@ -42,20 +56,68 @@ class SingleThreadChildCache {
   @Nullable
   List<StarlarkDebuggingProtos.Value> getChildren(
       DebugClientTransport transport, StarlarkDebuggingProtos.Value value) {
-    // protocol specifies a non-zero ID for values with children
-    if (!value.getHasChildren() || value.getId() == 0) {
+    if (!hasChildren(value)) {
       return ImmutableList.of();
     }
-    return identifierToChildrenMap.computeIfAbsent(
-        value.getId(), id -> queryChildren(transport, value));
+    List<StarlarkDebuggingProtos.Value> children =
+        identifierToChildrenMap.getIfPresent(value.getId());
+    if (children != null) {
+      return children;
+    }
+    children = getChildren(transport.sendRequest(getChildrenRequest(value)));
+    if (children != null) {
+      identifierToChildrenMap.put(value.getId(), children);
+    }
+    return children;
   }
 
-  @Nullable
-  private List<StarlarkDebuggingProtos.Value> queryChildren(
-      DebugClientTransport transport, StarlarkDebuggingProtos.Value value) {
+  /**
+   * Fetches and caches the children of the given values, pipelining the requests rather than
+   * waiting for each response in turn. Only the first {@link #MAX_PREFETCHED_VALUES} uncached
+   * values are fetched.
+   */
+  void prefetchChildren(
+      DebugClientTransport transport, List<StarlarkDebuggingProtos.Value> values) {
+    List<StarlarkDebuggingProtos.Value> toFetch =
+        values.stream()
+            .filter(SingleThreadChildCache::hasChildren)
+            .filter(value -> identifierToChildrenMap.getIfPresent(value.getId()) == null)
+            .limit(MAX_PREFETCHED_VALUES)
+            .collect(ImmutableList.toImmutableList());
+    for (List<StarlarkDebuggingProtos.Value> batch :
+        Lists.partition(toFetch, MAX_REQUESTS_PER_BATCH)) {
+      List<DebugEvent> responses =
+          transport.sendRequests(
+              batch.stream()
+                  .map(this::getChildrenRequest)
+                  .collect(ImmutableList.toImmutableList()));
+      for (int i = 0; i < batch.size(); i++) {
+        List<StarlarkDebuggingProtos.Value> children = getChildren(responses.get(i));
+        if (children == null) {
+          // the thread may have resumed, or the connection been lost
+          return;
+        }
+        identifierToChildrenMap.put(batch.get(i).getId(), children);
+      }
+    }
+  }
+
+  private static boolean hasChildren(StarlarkDebuggingProtos.Value value) {
+    // protocol specifies a non-zero ID for values with children
+    return value.getHasChildren() && value.getId() != 0;
+  }
+
+  private DebugRequest.Builder getChildrenRequest(StarlarkDebuggingProtos.Value value) {
     GetChildrenRequest request =
         GetChildrenRequest.newBuilder().setThreadId(threadId).setValueId(value.getId()).build();
-    DebugEvent response = transport.sendRequest(DebugRequest.newBuilder().setGetChildren(request));
-    return response == null ? null : response.getGetChildren().getChildrenList();
+    return DebugRequest.newBuilder().setGetChildren(request);
+  }
+
+  @Nullable
+  private static List<StarlarkDebuggingProtos.Value> getChildren(@Nullable DebugEvent response) {
+    if (response == null || response.getPayloadCase() != PayloadCase.GET_CHILDREN) {
+      return null;
+    }
+    return response.getGetChildren().getChildrenList();
   }
 }
@@ -428,6 +428,17 @@ public class SkylarkDebugProcess extends XDebugProcess {
     return threadState.childCache.getChildren(transport, value);
   }
 
+  /**
+   * Fetches the children of the given values ahead of time, so that they're available immediately
+   * if the values are expanded.
+   */
+  void prefetchChildren(long threadId, List<StarlarkDebuggingProtos.Value> values) {
+    PausedThreadState threadState = pausedThreads.get(threadId);
+    if (threadState != null) {
+      threadState.childCache.prefetchChildren(transport, values);
+    }
+  }
+
   void listFrames(long threadId, XExecutionStack.XStackFrameContainer container) {
     DebugEvent response =
         transport.sendRequest(
@@ -446,6 +457,10 @@ public class SkylarkDebugProcess extends XDebugProcess {
     List<StarlarkDebuggingProtos.Frame> frames = response.getListFrames().getFrameList();
     container.addStackFrames(
         frames.stream().map(f -> convert(threadId, f)).collect(Collectors.toList()), true);
+    // the local scope of the top frame is expanded by default
+    if (!frames.isEmpty() && frames.get(0).getScopeCount() > 0) {
+      prefetchChildren(threadId, frames.get(0).getScope(0).getBindingList());
+    }
   }
 
   private SkylarkStackFrame convert(long threadId, StarlarkDebuggingProtos.Frame frame) {
@@ -145,6 +145,7 @@ class SkylarkDebugValue extends XNamedValue {
               XValueChildrenList children = new XValueChildrenList(response.size());
               response.forEach(v -> children.add(SkylarkDebugValue.fromProto(frameContext, v)));
               node.addChildren(children, true);
+              frameContext.debugProcess.prefetchChildren(frameContext.threadId, response);
             });
   }
 }
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2021 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.skylark.debugger.impl;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import com.google.common.collect.ImmutableList;
+import com.google.devtools.build.lib.starlarkdebugging.StarlarkDebuggingProtos.DebugEvent;
+import com.google.devtools.build.lib.starlarkdebugging.StarlarkDebuggingProtos.DebugRequest;
+import com.google.devtools.build.lib.starlarkdebugging.StarlarkDebuggingProtos.GetChildrenRequest;
+import com.google.devtools.build.lib.starlarkdebugging.StarlarkDebuggingProtos.ThreadPausedEvent;
+import com.google.idea.blaze.base.BlazeTestCase;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link DebugClientTransport}. */
+@RunWith(JUnit4.class)
+public class DebugClientTransportTest extends BlazeTestCase {
+
+  private static final int RESPONSE_TIMEOUT_MILLIS = 200;
+
+  private final SkylarkDebugProcess debugProcess = mock(SkylarkDebugProcess.class);
+  private final ByteArrayOutputStream requestStream = new ByteArrayOutputStream();
+  private final PipedOutputStream eventStream = new PipedOutputStream();
+
+  private DebugClientTransport transport;
+
+  @Override
+  protected void initTest(Container applicationServices, Container projectServices) {
+    super.initTest(applicationServices, projectServices);
+    transport = new DebugClientTransport(debugProcess, 0, RESPONSE_TIMEOUT_MILLIS);
+    try {
+      transport.connect(new PipedInputStream(eventStream), requestStream);
+    } catch (IOException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  @After
+  public final void closeTransport() throws IOException {
+    transport.close();
+    eventStream.close();
+  }
+
+  @Test
+  public void sendRequests_returnsResponsesInRequestOrder() throws IOException {
+    sendResponse(3);
+    sendResponse(1);
+    sendResponse(2);
+
+    List<DebugEvent> responses =
+        transport.sendRequests(ImmutableList.of(request(10), request(20), request(30)));
+
+    assertThat(responses).containsExactly(response(1), response(2), response(3)).inOrder();
+    assertThat(sentRequests())
+        .containsExactly(
+            request(10).setSequenceNumber(1).build(),
+            request(20).setSequenceNumber(2).build(),
+            request(30).setSequenceNumber(3).build())
+        .inOrder();
+    assertThat(transport.queuedResponseCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void sendRequests_missingResponse_laterResponsesAbandoned() throws IOException {
+    sendResponse(1);
+    sendResponse(3);
+
+    List<DebugEvent> responses =
+        transport.sendRequests(ImmutableList.of(request(10), request(20), request(30)));
+
+    assertThat(responses).containsExactly(response(1), null, null).inOrder();
+    assertThat(transport.queuedResponseCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void sendRequests_lateResponsesToAbandonedRequests_dropped() throws IOException {
+    transport.sendRequests(ImmutableList.of(request(10), request(20)));
+
+    sendResponse(2);
+    sendResponse(1);
+    DebugEvent marker = threadPausedEvent();
+    sendEvent(marker);
+    // events are handled in order, so the late responses have been read
+    verify(debugProcess, timeout(5000)).handleEvent(marker);
+
+    assertThat(transport.queuedResponseCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void sendRequest_afterAbandonedRequests_receivesItsResponse() throws IOException {
+    sendResponse(1);
+    transport.sendRequests(ImmutableList.of(request(10), request(20)));
+
+    sendResponse(2);
+    sendResponse(3);
+
+    assertThat(transport.sendRequest(request(30))).isEqualTo(response(3));
+    assertThat(transport.queuedResponseCount()).isEqualTo(0);
+  }
+
+  private static DebugRequest.Builder request(long valueId) {
+    return DebugRequest.newBuilder()
+        .setGetChildren(GetChildrenRequest.newBuilder().setThreadId(1).setValueId(valueId));
+  }
+
+  private static DebugEvent response(long sequenceNumber) {
+    return DebugEvent.newBuilder().setSequenceNumber(sequenceNumber).build();
+  }
+
+  private static DebugEvent threadPausedEvent() {
+    return DebugEvent.newBuilder().setThreadPaused(ThreadPausedEvent.getDefaultInstance()).build();
+  }
+
+  private void sendResponse(long sequenceNumber) throws IOException {
+    sendEvent(response(sequenceNumber));
+  }
+
+  private void sendEvent(DebugEvent event) throws IOException {
+    event.writeDelimitedTo(eventStream);
+    eventStream.flush();
+  }
+
+  private List<DebugRequest> sentRequests() throws IOException {
+    InputStream in = new ByteArrayInputStream(requestStream.toByteArray());
+    List<DebugRequest> requests = new ArrayList<>();
+    DebugRequest request;
+    while ((request = DebugRequest.parseDelimitedFrom(in)) != null) {
+      requests.add(request);
+    }
+    return requests;
+  }
+}